@@ -0,0 +1,23 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife;
+
+import rife.engine.BenchUrlTemplate;
+import rife.servlet.BenchRequestObjectReuse;
+
+/**
+ * Runs all the benchmarks, each one can also be run by itself through its
+ * own {@code main} method.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+public class Benchmarks {
+    public static void main(String[] args)
+    throws Exception {
+        BenchRequestObjectReuse.main(args);
+        BenchUrlTemplate.main(args);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.test.MockConversation;
+import rife.tools.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the time and the bytes that are allocated to generate a link
+ * through the precompiled {@link UrlTemplate} of a route, with the stepwise
+ * generation that {@link UrlBuilder#generateSegments()} did before.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+public class BenchUrlTemplate {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 20000;
+
+    static class LinkSite extends Site {
+        Route mapped;
+
+        public void setup() {
+            mapped = get("/pathinfo/map", PathInfoHandling.MAP(
+                m -> m.t("text").s().p("param1").s().t("x").p("param2", "\\d+"),
+                m -> m.t("text").s().p("param1"),
+                m -> m.p("param3", "[a-z]+").t(".html")
+            ), c -> c.print(c.pathInfo()));
+        }
+    }
+
+    // the link generation of generateSegments before the templates were
+    // compiled
+    private static String stepwiseLink(String rootUrl, Route route, Map<String, String[]> outParameters) {
+        final var path = new StringBuilder(rootUrl);
+
+        path.append(StringUtils.stripFromFront(route.path(), "/"));
+
+        var parameters = new LinkedHashMap<String, String[]>();
+
+        var out_params = new LinkedHashMap<>(outParameters);
+
+        Set<String> in_params = new HashSet<>();
+        in_params.add(SpecialParameters.CONT_ID);
+
+        // input parameters
+        if (route instanceof RouteAnnotated route_annotated) {
+            in_params.addAll(route_annotated.getAnnotatedInParameters());
+        }
+
+        // path info parameters
+        if (route.pathInfoHandling().type() == PathInfoType.MAP) {
+            for (var mapping : route.pathInfoHandling().mappings()) {
+                in_params.addAll(mapping.parameters());
+            }
+        }
+        // retain the appropriate output parameters
+        out_params.keySet().retainAll(in_params);
+
+        parameters.putAll(out_params);
+        parameters.putAll(outParameters);
+
+        // handle path info mapping
+        if (route.pathInfoHandling().type() == PathInfoType.MAP) {
+            for (var mapping : route.pathInfoHandling().mappings()) {
+                if (parameters.keySet().containsAll(mapping.parameters())) {
+                    var parameters_it = mapping.parameters().iterator();
+
+                    var builder = new StringBuilder();
+                    String parameter_name;
+                    String[] parameter_value;
+                    for (var segment : mapping.segments()) {
+                        if (segment.isRegexp()) {
+                            if (!parameters_it.hasNext()) {
+                                continue;
+                            }
+
+                            parameter_name = parameters_it.next();
+
+                            // ensure that the parameter has at least one value
+                            parameter_value = parameters.get(parameter_name);
+                            if (null == parameter_value ||
+                                parameter_value.length < 1) {
+                                continue;
+                            }
+
+                            // ensure that the parameter value corresponds to the
+                            // regexp pattern for it
+                            var matcher = segment.pattern().matcher(parameter_value[0]);
+                            if (!matcher.matches()) {
+                                continue;
+                            }
+
+                            // add the url-encoded parameter value to the path info
+                            builder.append(StringUtils.encodeUrl(parameter_value[0]));
+                            parameters.remove(parameter_name);
+                        } else {
+                            builder.append(segment.text());
+                        }
+                    }
+
+                    // append the new path info
+                    var path_info = builder.toString();
+                    if (!path_info.isEmpty()) {
+                        if (path_info.charAt(0) != '/' && path.charAt(path.length() - 1) != '/') {
+                            path.append('/');
+                        }
+                        path.append(path_info);
+                    }
+
+                    break;
+                }
+            }
+        }
+
+        return path.toString();
+    }
+
+    // the link generation of generateSegments with the compiled template
+    private static String templateLink(String rootUrl, UrlTemplate template, Map<String, String[]> outParameters) {
+        final var path = new StringBuilder(rootUrl.length() + template.path().length() + 32);
+        path.append(rootUrl);
+        path.append(template.path());
+
+        var parameters = new LinkedHashMap<String, String[]>(outParameters.size() * 2);
+        for (var entry : outParameters.entrySet()) {
+            if (template.inParameters().contains(entry.getKey())) {
+                parameters.put(entry.getKey(), entry.getValue());
+            }
+        }
+        parameters.putAll(outParameters);
+
+        if (template.hasMappings()) {
+            template.appendPathInfo(path, parameters);
+        }
+
+        return path.toString();
+    }
+
+    public static void main(String[] args) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) ||
+            !bean.isThreadAllocatedMemorySupported() ||
+            !bean.isThreadAllocatedMemoryEnabled()) {
+            System.out.println("URL templates: the allocated memory of threads can't be measured by this JVM.");
+            return;
+        }
+        var thread_id = Thread.currentThread().getId();
+
+        var site = new LinkSite();
+        new MockConversation(site);
+        var template = site.urlTemplate(site.mapped);
+        var root_url = "http://localhost/";
+        var parameters = new LinkedHashMap<String, String[]>();
+        parameters.put("param1", new String[]{"v1"});
+        parameters.put("param2", new String[]{"412"});
+        parameters.put("other", new String[]{"o"});
+
+        var stepwise_link = stepwiseLink(root_url, site.mapped, parameters);
+        var template_link = templateLink(root_url, template, parameters);
+        if (!stepwise_link.equals(template_link)) {
+            throw new IllegalStateException("The links differ, stepwise: " + stepwise_link + ", template: " + template_link);
+        }
+
+        for (var i = 0; i < WARMUP; ++i) {
+            stepwiseLink(root_url, site.mapped, parameters);
+            templateLink(root_url, template, parameters);
+        }
+
+        var before = bean.getThreadAllocatedBytes(thread_id);
+        var start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; ++i) {
+            stepwiseLink(root_url, site.mapped, parameters);
+        }
+        var stepwise_nanos = (System.nanoTime() - start) / ITERATIONS;
+        var stepwise_bytes = (bean.getThreadAllocatedBytes(thread_id) - before) / ITERATIONS;
+
+        before = bean.getThreadAllocatedBytes(thread_id);
+        start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; ++i) {
+            templateLink(root_url, template, parameters);
+        }
+        var template_nanos = (System.nanoTime() - start) / ITERATIONS;
+        var template_bytes = (bean.getThreadAllocatedBytes(thread_id) - before) / ITERATIONS;
+
+        System.out.println("URL templates, per link: " + stepwise_nanos + "ns and " + stepwise_bytes + " bytes stepwise, " + template_nanos + "ns and " + template_bytes + " bytes with the template.");
+    }
+}
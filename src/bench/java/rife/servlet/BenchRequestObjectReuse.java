@@ -0,0 +1,122 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.servlet;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import rife.engine.Site;
+import rife.ioc.HierarchicalProperties;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+/**
+ * Measures the bytes that are allocated for each request, with and
+ * without {@link Site#reuseRequestObjects(boolean) reusing the request
+ * objects}.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+public class BenchRequestObjectReuse {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 20000;
+
+    static class HelloSite extends Site {
+        public void setup() {
+            get("/hello", c -> c.print("hello"));
+        }
+    }
+
+    static class DiscardingOutputStream extends ServletOutputStream {
+        public boolean isReady() {
+            return true;
+        }
+
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+
+    private static HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(BenchRequestObjectReuse.class.getClassLoader(), new Class[]{HttpServletRequest.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getRequestURI" -> "/hello";
+            case "getContextPath" -> "";
+            case "getMethod" -> "GET";
+            case "getParameterMap" -> Collections.emptyMap();
+            case "getParameterNames", "getHeaderNames", "getAttributeNames" -> Collections.emptyEnumeration();
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    private static HttpServletResponse response(DiscardingOutputStream out) {
+        return (HttpServletResponse) Proxy.newProxyInstance(BenchRequestObjectReuse.class.getClassLoader(), new Class[]{HttpServletResponse.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getOutputStream" -> out;
+            case "getCharacterEncoding" -> "UTF-8";
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    private static long allocatedBytesPerRequest(com.sun.management.ThreadMXBean bean, RifeFilter filter, HttpServletRequest request, HttpServletResponse response)
+    throws Exception {
+        var thread_id = Thread.currentThread().getId();
+
+        for (var i = 0; i < WARMUP; ++i) {
+            filter.doFilter(request, response, (req, res) -> {
+                throw new IllegalStateException("the request wasn't handled");
+            });
+        }
+
+        var before = bean.getThreadAllocatedBytes(thread_id);
+        for (var i = 0; i < ITERATIONS; ++i) {
+            filter.doFilter(request, response, (req, res) -> {
+                throw new IllegalStateException("the request wasn't handled");
+            });
+        }
+        return (bean.getThreadAllocatedBytes(thread_id) - before) / ITERATIONS;
+    }
+
+    public static void main(String[] args)
+    throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) ||
+            !bean.isThreadAllocatedMemorySupported() ||
+            !bean.isThreadAllocatedMemoryEnabled()) {
+            System.out.println("Request object reuse: the allocated memory of threads can't be measured by this JVM.");
+            return;
+        }
+
+        var site = new HelloSite();
+        var filter = new RifeFilter();
+        filter.init(new HierarchicalProperties(), site);
+        try {
+            var request = request();
+            var response = response(new DiscardingOutputStream());
+
+            site.reuseRequestObjects(false);
+            var fresh = allocatedBytesPerRequest(bean, filter, request, response);
+            site.reuseRequestObjects(true);
+            var reused = allocatedBytesPerRequest(bean, filter, request, response);
+
+            System.out.println("Request object reuse, bytes allocated per request: " + fresh + " with new objects, " + reused + " with reused objects.");
+        } finally {
+            filter.destroy();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife;
+
+import rife.bld.Project;
+
+import java.io.File;
+
+public class BenchmarksBuild extends Project {
+    public BenchmarksBuild(Rife2Build mainBuild) {
+        pkg = "rife";
+        name = "Benchmarks";
+        mainClass = "rife.Benchmarks";
+        version = version(1,0,0);
+
+        javaRelease = 17;
+
+        // the benchmarks measure the JVM they run in, which makes them too
+        // unpredictable to be part of the tests
+        srcMainJavaDirectory = new File(new File(srcDirectory(), "bench"), "java");
+        buildMainDirectory = new File(buildDirectory(), "main_bench");
+
+        compileOperation()
+            .compileMainClasspath(mainBuild.testsBadgeOperation.classpath())
+            .compileMainClasspath(mainBuild.buildMainDirectory().getAbsolutePath());
+        runOperation()
+            .classpath(mainBuild.testsBadgeOperation.classpath())
+            .classpath(mainBuild.buildMainDirectory().getAbsolutePath());
+    }
+}
@@ -158,6 +158,7 @@ public class Rife2Build extends AbstractRife2Build {
                 new PublishArtifact(jarContinuationsOperation.destinationFile(), "agent-continuations", "jar"));
 
         examples = new ExamplesBuild(this);
+        benchmarks = new BenchmarksBuild(this);
     }
 
     @Override
@@ -349,6 +350,16 @@ public class Rife2Build extends AbstractRife2Build {
         examples.run();
     }
 
+    final BenchmarksBuild benchmarks;
+
+    @BuildCommand(value = "run-benchmarks", summary = "Runs the RIFE2 benchmarks")
+    public void runBenchmarks()
+    throws Exception {
+        compile();
+        benchmarks.compile();
+        benchmarks.run();
+    }
+
     public static void main(String[] args)
     throws Exception {
         new Rife2Build().start(args);
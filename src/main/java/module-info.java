@@ -92,4 +92,6 @@ module rife {
     exports rife.workflow;
     exports rife.xml;
     exports rife.xml.exceptions;
+
+    uses rife.engine.ContentEncoder;
 }
\ No newline at end of file
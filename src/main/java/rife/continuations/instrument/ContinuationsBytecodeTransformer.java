@@ -19,6 +19,34 @@ import java.util.logging.Level;
  * @since 1.0
  */
 public abstract class ContinuationsBytecodeTransformer {
+    /**
+     * Determines whether a class would be made resumable by the
+     * transformation, without actually transforming it.
+     * <p>Only classes whose entry method pauses or answers are made
+     * resumable, the instances of other classes can never be part of a
+     * continuation.
+     *
+     * @param configInstrument the configuration for the instrumentation
+     * @param rawBytes         the raw bytes of the class to inspect
+     * @param classname        the name of the class to inspect
+     * @return {@code true} if the class would be made resumable; or
+     * <p>{@code false} otherwise
+     * @throws ClassNotFoundException when an error occurs during the
+     *                                inspection
+     * @since 1.10
+     */
+    public static boolean isResumable(ContinuationConfigInstrument configInstrument, byte[] rawBytes, String classname)
+    throws ClassNotFoundException {
+        try {
+            var metrics_reader = new ClassReader(rawBytes);
+            var metrics_visitor = new MetricsClassVisitor(configInstrument, classname);
+            metrics_reader.accept(metrics_visitor, ClassReader.SKIP_FRAMES);
+            return metrics_visitor.makeResumable();
+        } catch (Exception e) {
+            throw new ClassNotFoundException(classname, e);
+        }
+    }
+
     /**
      * Perform the class transformation.
      * <p>If the class doesn't implement the marker interface that is set up
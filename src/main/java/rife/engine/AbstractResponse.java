@@ -12,11 +12,12 @@ import rife.template.Template;
 import rife.tools.HttpUtils;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.zip.GZIPOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 
 /**
  * This abstract class implements parts of the {@link Response} interface to
@@ -28,6 +29,9 @@ import java.util.zip.GZIPOutputStream;
  * @since 1.0
  */
 public abstract class AbstractResponse implements Response {
+    private static final EncodedFragmentCache ENCODED_FRAGMENTS = new EncodedFragmentCache();
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
     private final Request request_;
 
     protected String contentType_ = null;
@@ -35,11 +39,17 @@ public abstract class AbstractResponse implements Response {
     protected boolean textBufferEnabled_ = true;
     private boolean outputStarted_ = false;
     private volatile SseConnection detachedConnection_ = null;
+    private volatile boolean detached_ = false;
     protected ArrayList<CharSequence> textBuffer_ = null;
     protected OutputStream responseOutputStream_ = null;
-    protected ByteArrayOutputStream gzipByteOutputStream_ = null;
-    protected GZIPOutputStream gzipOutputStream_ = null;
+    protected ContentEncoder contentEncoder_ = null;
+    protected ByteArrayOutputStream encodedByteOutputStream_ = null;
+    protected OutputStream encodedOutputStream_ = null;
     protected OutputStream outputStream_ = null;
+    private Site site_ = null;
+    private byte[] writeBuffer_ = null;
+    private CoalescingOutput coalescingOutput_ = null;
+    private boolean contentEncodingDisabled_ = false;
 
     /**
      * This method needs to be implemented by the extending back-end class and
@@ -86,6 +96,49 @@ public abstract class AbstractResponse implements Response {
         return request_;
     }
 
+    /**
+     * Clears the state of this response so that the back-end class can
+     * reuse the instance for another request of the same {@link Request}
+     * instance.
+     * <p>The text buffer and the write buffer are kept so that their
+     * capacity is reused.
+     *
+     * @since 1.10
+     */
+    protected void recycle() {
+        contentType_ = null;
+        lastElement_ = null;
+        textBufferEnabled_ = true;
+        outputStarted_ = false;
+        detachedConnection_ = null;
+        detached_ = false;
+        if (textBuffer_ != null) {
+            textBuffer_.clear();
+        }
+        if (coalescingOutput_ != null) {
+            coalescingOutput_.release();
+            coalescingOutput_ = null;
+        }
+        responseOutputStream_ = null;
+        contentEncoder_ = null;
+        encodedByteOutputStream_ = null;
+        encodedOutputStream_ = null;
+        outputStream_ = null;
+        site_ = null;
+        contentEncodingDisabled_ = false;
+    }
+
+    /**
+     * Associates this response with the site that handles it, whose
+     * settings determine how the content is compressed.
+     *
+     * @param site the site that handles the response
+     * @since 1.10
+     */
+    void site(Site site) {
+        site_ = site;
+    }
+
     public void setLastElement(Element element) {
         lastElement_ = element;
     }
@@ -113,8 +166,19 @@ public abstract class AbstractResponse implements Response {
         detachedConnection_ = connection;
     }
 
+    /**
+     * Records that the response is completed asynchronously by another
+     * party than the element that handles it, like while the request body
+     * is being read.
+     *
+     * @since 1.10
+     */
+    void markDetached() {
+        detached_ = true;
+    }
+
     boolean isDetached() {
-        return detachedConnection_ != null;
+        return detached_ || detachedConnection_ != null;
     }
 
     SseConnection detachedConnection() {
@@ -238,8 +302,13 @@ public abstract class AbstractResponse implements Response {
             ensureOutputStream();
 
             try {
-                outputStream_.write(text.getBytes(getCharacterEncoding()));
-                outputStream_.flush();
+                var coalescing = coalescingOutput();
+                if (coalescing != null) {
+                    coalescing.write(text, getCharacterEncoding());
+                } else {
+                    outputStream_.write(text.getBytes(getCharacterEncoding()));
+                    outputStream_.flush();
+                }
             } catch (IOException e) {
                 throw new EngineException(e);
             }
@@ -251,22 +320,66 @@ public abstract class AbstractResponse implements Response {
         // create a string version of each char sequence so that any state operation happens
         // before any content is actually being written
         for (CharSequence charsequence : deferredContent) {
-            charsequence.toString();
+            if (!(charsequence instanceof String)) {
+                charsequence.toString();
+            }
         }
 
         ensureOutputStream();
 
         String encoding = getCharacterEncoding();
         try {
+            var coalescing = coalescingOutput();
+            if (coalescing != null) {
+                for (CharSequence charsequence : deferredContent) {
+                    if (charsequence instanceof InternalString internal_string) {
+                        var bytes = internal_string.getBytes(encoding);
+                        coalescing.write(bytes, 0, bytes.length);
+                    } else if (charsequence instanceof String string) {
+                        var bytes = ENCODED_FRAGMENTS.getBytes(string, encoding);
+                        coalescing.write(bytes, 0, bytes.length);
+                    }
+                }
+                return;
+            }
+
             outputStream_.flush();
 
-            // write the content to the output stream
+            // gather the encoded content in the write buffer so that it's
+            // written to the output stream in as few calls as possible
+            var buffer = writeBuffer_;
+            if (null == buffer) {
+                buffer = new byte[WRITE_BUFFER_SIZE];
+                writeBuffer_ = buffer;
+            }
+            var length = 0;
             for (CharSequence charsequence : deferredContent) {
-                if (charsequence instanceof InternalString) {
-                    outputStream_.write(((InternalString) charsequence).getBytes(encoding));
-                } else if (charsequence instanceof String) {
-                    outputStream_.write(((String) charsequence).getBytes(encoding));
+                byte[] bytes;
+                if (charsequence instanceof InternalString internal_string) {
+                    bytes = internal_string.getBytes(encoding);
+                } else if (charsequence instanceof String string) {
+                    // strings are immutable, the bytes of the ones that are
+                    // written over and over again are encoded only once
+                    bytes = ENCODED_FRAGMENTS.getBytes(string, encoding);
+                } else {
+                    continue;
+                }
+
+                if (length + bytes.length > buffer.length) {
+                    if (length > 0) {
+                        outputStream_.write(buffer, 0, length);
+                        length = 0;
+                    }
+                    if (bytes.length > buffer.length) {
+                        outputStream_.write(bytes);
+                        continue;
+                    }
                 }
+                System.arraycopy(bytes, 0, buffer, length, bytes.length);
+                length += bytes.length;
+            }
+            if (length > 0) {
+                outputStream_.write(buffer, 0, length);
             }
 
             outputStream_.flush();
@@ -276,6 +389,197 @@ public abstract class AbstractResponse implements Response {
         }
     }
 
+    /**
+     * Fingerprints the content of the text buffer with a strong
+     * {@code ETag}, turning the response into a {@code 304 Not Modified}
+     * without content when it matches the {@code If-None-Match} header of
+     * the request.
+     * <p>Nothing happens when content was already written out, since the
+     * fingerprint has to cover the complete response.
+     *
+     * @param ifNoneMatch the value of the {@code If-None-Match} header; or
+     *                    {@code null} if the request didn't provide it
+     * @return {@code true} if the response became a {@code 304 Not
+     * Modified}; or
+     * <p>{@code false} otherwise
+     * @see #applyETag(String, String)
+     * @since 1.10
+     */
+    boolean applyETag(String ifNoneMatch) {
+        if (outputStream_ != null ||
+            null == textBuffer_ ||
+            textBuffer_.isEmpty()) {
+            return false;
+        }
+
+        var fingerprint = bufferedContentFingerprint();
+        if (null == fingerprint) {
+            return false;
+        }
+
+        return applyETag(ifNoneMatch, fingerprint);
+    }
+
+    /**
+     * Sets the strong {@code ETag} of the content with a fingerprint,
+     * turning the response into a {@code 304 Not Modified} without content
+     * when it matches the {@code If-None-Match} header of the request.
+     * <p>The content coding that the response will be sent with is part of
+     * the tag, since each coding is a different representation of the
+     * content with its own bytes.
+     *
+     * @param ifNoneMatch the value of the {@code If-None-Match} header; or
+     *                    {@code null} if the request didn't provide it
+     * @param fingerprint the fingerprint of the content
+     * @return {@code true} if the response became a {@code 304 Not
+     * Modified}; or
+     * <p>{@code false} otherwise
+     * @see #contentFingerprint(byte[])
+     * @since 1.10
+     */
+    boolean applyETag(String ifNoneMatch, String fingerprint) {
+        var encoder = contentEncoder_;
+        if (null == encoder &&
+            outputStream_ == null &&
+            isContentEncodable()) {
+            encoder = negotiateContentEncoder();
+        }
+
+        var etag = new StringBuilder("\"").append(fingerprint);
+        if (encoder != null) {
+            etag.append('-').append(encoder.name());
+        }
+        etag.append('"');
+        setHeader("ETag", etag.toString());
+
+        if (ifNoneMatch != null &&
+            matchesETag(ifNoneMatch, etag.toString())) {
+            setStatus(304);
+            if (textBuffer_ != null) {
+                textBuffer_.clear();
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private String bufferedContentFingerprint() {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            var encoding = getCharacterEncoding();
+            for (var charsequence : textBuffer_) {
+                if (charsequence instanceof InternalString internal_string) {
+                    digest.update(internal_string.getBytes(encoding));
+                } else if (charsequence instanceof String string) {
+                    digest.update(ENCODED_FRAGMENTS.getBytes(string, encoding));
+                }
+            }
+            return fingerprint(digest);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fingerprints encoded content for its {@code ETag}, the fingerprint
+     * is identical to the one of the same content in the text buffer.
+     *
+     * @param content the encoded content
+     * @return the fingerprint of the content; or
+     * <p>{@code null} if it couldn't be calculated
+     * @see #applyETag(String, String)
+     * @since 1.10
+     */
+    static String contentFingerprint(byte[] content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            return fingerprint(digest);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static String fingerprint(MessageDigest digest) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), 18));
+    }
+
+    // If-None-Match uses the weak comparison, which ignores the weakness
+    // indicator of the listed tags
+    static boolean matchesETag(String ifNoneMatch, String etag) {
+        for (var candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the content of the text buffer, so that the complete
+     * response can be cached.
+     *
+     * @return the encoded content of the text buffer; or
+     * <p>{@code null} when content was already written out
+     * @since 1.10
+     */
+    byte[] bufferedContent() {
+        if (outputStream_ != null) {
+            return null;
+        }
+        if (null == textBuffer_ ||
+            textBuffer_.isEmpty()) {
+            return new byte[0];
+        }
+
+        try {
+            var encoding = getCharacterEncoding();
+            var content = new ByteArrayOutputStream();
+            for (var charsequence : textBuffer_) {
+                if (charsequence instanceof InternalString internal_string) {
+                    content.write(internal_string.getBytes(encoding));
+                } else if (charsequence instanceof String string) {
+                    content.write(ENCODED_FRAGMENTS.getBytes(string, encoding));
+                }
+            }
+            return content.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes content that was already encoded with the character encoding
+     * of this response, for instance because it was cached.
+     *
+     * @param content the encoded content to write
+     * @since 1.10
+     */
+    void writeEncodedContent(byte[] content)
+    throws EngineException {
+        ensureOutputStream();
+
+        try {
+            var coalescing = coalescingOutput();
+            if (coalescing != null) {
+                coalescing.write(content, 0, content.length);
+            } else {
+                outputStream_.write(content);
+            }
+        } catch (IOException e) {
+            // don't do anything since this exception is merely caused by someone that
+            // stopped or closed his browsing request
+        }
+    }
+
     public void clearBuffer() {
         if (textBuffer_ != null &&
             !textBuffer_.isEmpty()) {
@@ -284,6 +588,11 @@ public abstract class AbstractResponse implements Response {
     }
 
     public void flush()
+    throws EngineException {
+        flush(true);
+    }
+
+    private void flush(boolean force)
     throws EngineException {
         if (textBuffer_ != null &&
             !textBuffer_.isEmpty()) {
@@ -294,7 +603,16 @@ public abstract class AbstractResponse implements Response {
 
         if (outputStream_ != null) {
             try {
-                outputStream_.flush();
+                // an explicit flush sends out all the content that was
+                // coalesced or encoded so far, regardless of the thresholds
+                if (force && coalescingOutput_ != null) {
+                    coalescingOutput_.drain();
+                }
+                if (force && outputStream_ instanceof ThresholdFlushOutputStream threshold_stream) {
+                    threshold_stream.flushAll();
+                } else {
+                    outputStream_.flush();
+                }
             } catch (IOException e) {
                 // don't do anything, the response stream has probably been
                 // closed or reset
@@ -304,21 +622,30 @@ public abstract class AbstractResponse implements Response {
 
     public void close()
     throws EngineException {
-        flush();
+        flush(false);
 
         if (outputStream_ != null) {
             try {
-                if (gzipOutputStream_ != null) {
-                    gzipOutputStream_.flush();
-                    gzipOutputStream_.finish();
+                if (coalescingOutput_ != null) {
+                    try {
+                        coalescingOutput_.drain();
+                    } finally {
+                        coalescingOutput_.release();
+                        coalescingOutput_ = null;
+                    }
+                }
+
+                if (encodedByteOutputStream_ != null) {
+                    // finish the encoding, the encoded content has been
+                    // buffered so that its length can be provided
+                    encodedOutputStream_.close();
 
-                    byte[] bytes = gzipByteOutputStream_.toByteArray();
+                    byte[] bytes = encodedByteOutputStream_.toByteArray();
 
-                    gzipOutputStream_ = null;
-                    gzipByteOutputStream_ = null;
+                    encodedOutputStream_ = null;
+                    encodedByteOutputStream_ = null;
 
                     setContentLength(bytes.length);
-                    addHeader("Content-Encoding", "gzip");
                     responseOutputStream_.write(bytes);
                     outputStream_ = responseOutputStream_;
                 }
@@ -343,9 +670,60 @@ public abstract class AbstractResponse implements Response {
     throws EngineException {
         ensureOutputStream();
 
+        // in the streaming output mode, writes to the output stream are
+        // coalesced together with the printed text to preserve their order
+        var coalescing = coalescingOutput();
+        if (coalescing != null) {
+            return coalescing.stream();
+        }
+
         return outputStream_;
     }
 
+    /**
+     * Provides the output stream of the response without content encoding
+     * or coalescing, so that content with an exact length can be written
+     * straight to it.
+     * <p>When content was already written out through an encoded stream,
+     * that stream is returned instead, to preserve the encoding of the
+     * response.
+     *
+     * @return the direct output stream of the response
+     * @since 1.10
+     */
+    OutputStream directOutputStream()
+    throws EngineException {
+        if (null == outputStream_) {
+            contentEncodingDisabled_ = true;
+        }
+        ensureOutputStream();
+
+        if (outputStream_ != responseOutputStream_) {
+            return getOutputStream();
+        }
+
+        if (coalescingOutput_ != null) {
+            try {
+                coalescingOutput_.drain();
+            } catch (IOException e) {
+                // don't do anything, the response stream has probably been
+                // closed or reset
+            }
+        }
+        return responseOutputStream_;
+    }
+
+    private CoalescingOutput coalescingOutput() {
+        if (null == coalescingOutput_ &&
+            site_ != null) {
+            var pool = site_.streamingOutputPool();
+            if (pool != null) {
+                coalescingOutput_ = new CoalescingOutput(pool, outputStream_);
+            }
+        }
+        return coalescingOutput_;
+    }
+
     private void ensureOutputStream()
     throws EngineException {
         markOutputStarted();
@@ -354,33 +732,184 @@ public abstract class AbstractResponse implements Response {
                 try {
                     responseOutputStream_ = _getOutputStream();
 
-                    if (contentType_ != null) {
-                        String content_type = HttpUtils.extractMimeTypeFromContentType(contentType_);
-
-                        // check if the content type should be gzip encoded,
-                        // event streams are excluded since gzip would buffer the
-                        // events instead of sending them to the client right away
-                        if (RifeConfig.engine().getGzipCompression() &&
-                            RifeConfig.engine().getGzipCompressionTypes().contains(content_type) &&
-                            !SseConnection.CONTENT_TYPE_EVENT_STREAM.equals(content_type)) {
-                            String accept_encoding = request_.getHeader("Accept-Encoding");
-                            if (accept_encoding != null &&
-                                accept_encoding.contains("gzip")) {
-                                gzipByteOutputStream_ = new ByteArrayOutputStream();
-                                gzipOutputStream_ = new GZIPOutputStream(gzipByteOutputStream_);
-                            }
-                        }
+                    if (isContentEncodable()) {
+                        setupContentEncoding();
                     }
                 } catch (IOException e) {
                     throw new ResponseOutputStreamRetrievalErrorException(e);
                 }
             }
 
-            if (gzipOutputStream_ != null) {
-                outputStream_ = gzipOutputStream_;
+            if (encodedOutputStream_ != null) {
+                outputStream_ = encodedOutputStream_;
             } else {
                 outputStream_ = responseOutputStream_;
             }
         }
     }
+
+    // checks if the content type should be compressed, event streams are
+    // excluded since compression would buffer the events instead of sending
+    // them to the client right away
+    private boolean isContentEncodable() {
+        if (null == contentType_ ||
+            contentEncodingDisabled_ ||
+            !RifeConfig.engine().getGzipCompression()) {
+            return false;
+        }
+
+        var content_type = HttpUtils.extractMimeTypeFromContentType(contentType_);
+        return RifeConfig.engine().getGzipCompressionTypes().contains(content_type) &&
+               !SseConnection.CONTENT_TYPE_EVENT_STREAM.equals(content_type);
+    }
+
+    private ContentEncoder negotiateContentEncoder() {
+        List<ContentEncoder> encoders;
+        if (site_ != null) {
+            encoders = site_.contentEncoders();
+        } else {
+            encoders = List.of(ContentEncoder.GZIP);
+        }
+        return negotiateContentEncoder(request_.getHeader("Accept-Encoding"), encoders);
+    }
+
+    private void setupContentEncoding()
+    throws IOException {
+        var streaming = false;
+        var level = -1;
+        var threshold = 0;
+        if (site_ != null) {
+            streaming = site_.streamingCompression();
+            level = site_.compressionLevel();
+            threshold = site_.compressionFlushThreshold();
+        }
+
+        var encoder = negotiateContentEncoder();
+        if (null == encoder) {
+            return;
+        }
+
+        contentEncoder_ = encoder;
+        addHeader("Content-Encoding", encoder.name());
+        addHeader("Vary", "Accept-Encoding");
+
+        if (streaming) {
+            // the encoded content is sent out as it's produced, which means
+            // that its length isn't known and the response is chunked
+            encodedOutputStream_ = new ThresholdFlushOutputStream(encoder.encode(responseOutputStream_, level, true), threshold);
+        } else {
+            encodedByteOutputStream_ = new ByteArrayOutputStream();
+            encodedOutputStream_ = encoder.encode(encodedByteOutputStream_, level, false);
+        }
+    }
+
+    /**
+     * Selects the content encoder for an {@code Accept-Encoding} header.
+     * <p>The encoder with the highest quality value is selected, encoders
+     * with the same quality are selected in the order of the provided list.
+     * A wildcard provides the quality of all the encoders that aren't
+     * explicitly mentioned, and encoders with a quality of zero are never
+     * selected.
+     *
+     * @param acceptEncoding the value of the {@code Accept-Encoding} header
+     * @param encoders       the available encoders in their order of
+     *                       preference
+     * @return the selected encoder; or
+     * <p>{@code null} if none of the encoders is acceptable
+     * @since 1.10
+     */
+    static ContentEncoder negotiateContentEncoder(String acceptEncoding, List<ContentEncoder> encoders) {
+        if (null == acceptEncoding ||
+            acceptEncoding.isBlank() ||
+            encoders.isEmpty()) {
+            return null;
+        }
+
+        var names = new ArrayList<String>();
+        var qualities = new ArrayList<Float>();
+        var wildcard = 0f;
+        for (var part : acceptEncoding.split(",")) {
+            var semicolon = part.indexOf(';');
+            var name = (semicolon == -1 ? part : part.substring(0, semicolon)).trim().toLowerCase(Locale.ENGLISH);
+            if (name.isEmpty()) {
+                continue;
+            }
+
+            var quality = 1f;
+            if (semicolon != -1) {
+                var parameter = part.substring(semicolon + 1).trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                }
+            }
+
+            if (name.equals("*")) {
+                wildcard = quality;
+            } else {
+                // x-gzip is an alias that is still sent by some clients
+                if (name.equals("x-gzip")) {
+                    name = "gzip";
+                }
+                names.add(name);
+                qualities.add(quality);
+            }
+        }
+
+        ContentEncoder selected = null;
+        var selected_quality = 0f;
+        for (var encoder : encoders) {
+            var index = names.indexOf(encoder.name());
+            var quality = index == -1 ? wildcard : qualities.get(index);
+            if (quality > selected_quality) {
+                selected = encoder;
+                selected_quality = quality;
+            }
+        }
+        return selected;
+    }
+
+    // only lets flushes through once enough content has been written
+    // since the previous one, so that frequent flushes while the response is
+    // being produced don't degrade the compression
+    private static class ThresholdFlushOutputStream extends FilterOutputStream {
+        private final int threshold_;
+        private long pending_ = 0;
+
+        ThresholdFlushOutputStream(OutputStream out, int threshold) {
+            super(out);
+            threshold_ = threshold;
+        }
+
+        @Override
+        public void write(int b)
+        throws IOException {
+            out.write(b);
+            pending_ += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        throws IOException {
+            out.write(b, off, len);
+            pending_ += len;
+        }
+
+        @Override
+        public void flush()
+        throws IOException {
+            if (pending_ >= threshold_) {
+                flushAll();
+            }
+        }
+
+        void flushAll()
+        throws IOException {
+            pending_ = 0;
+            out.flush();
+        }
+    }
 }
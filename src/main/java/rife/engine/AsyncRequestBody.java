@@ -0,0 +1,346 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import rife.engine.exceptions.EngineException;
+import rife.engine.exceptions.RequestBodyTooLargeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the body of a request as it arrives, without blocking a
+ * thread while waiting for the client.
+ * <p>In a servlet container, the request is switched to asynchronous
+ * processing and the body is read by a servlet {@link ReadListener} as the
+ * subscriber requests it. The response is detached from the element and is
+ * only completed when the whole body was published and the element
+ * returned, so that the subscriber can still write the response.
+ * <p>Outside a servlet container, like with the out-of-container testing
+ * API, the body is already available and is published right away.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Context#bodyPublisher(long)
+ * @see Context#bodyAsync(long)
+ * @since 1.10
+ */
+final class AsyncRequestBody implements Flow.Publisher<ByteBuffer>, Flow.Subscription {
+    static final int CHUNK_SIZE = 8192;
+
+    private final Context context_;
+    private final long maxSize_;
+    private final AtomicBoolean subscribed_ = new AtomicBoolean(false);
+    private final AtomicLong demand_ = new AtomicLong();
+    private final AtomicInteger work_ = new AtomicInteger();
+    private final AtomicBoolean done_ = new AtomicBoolean(false);
+    // the body and the element both have to be finished before the
+    // response can be completed
+    private final AtomicInteger pending_ = new AtomicInteger(2);
+    private final AtomicBoolean completed_ = new AtomicBoolean(false);
+    private volatile Throwable abort_ = null;
+    private volatile Runnable errorResponse_ = null;
+
+    private Flow.Subscriber<? super ByteBuffer> subscriber_ = null;
+    private AsyncContext asyncContext_ = null;
+    private ServletInputStream input_ = null;
+    private byte[] body_ = null;
+    private int bodyOffset_ = 0;
+    private long received_ = 0;
+
+    AsyncRequestBody(Context context, long maxSize) {
+        context_ = context;
+        maxSize_ = maxSize;
+    }
+
+    boolean isDetached() {
+        return asyncContext_ != null;
+    }
+
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (null == subscriber) throw new NullPointerException("subscriber can't be null");
+
+        if (!subscribed_.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                }
+
+                /**
+     * Stops publishing the body because the element failed, after which the
+     * subscriber receives the error instead of further chunks.
+     * <p>The error response is only written when the response is
+     * completed, once the subscriber can't write it anymore, so that the
+     * response is never written by two threads at the same time.
+     *
+     * @param error         the error of the element
+     * @param errorResponse writes the error response
+     * @since 1.10
+     */
+    void abort(Throwable error, Runnable errorResponse) {
+        errorResponse_ = errorResponse;
+        abort_ = error;
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            // the subscriber failed while receiving the error, which is
+            // already being handled
+        }
+    }
+
+    public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The request body can only be published once."));
+            return;
+        }
+        subscriber_ = subscriber;
+
+        var request = context_.request();
+        var servlet_request = request.getHttpServletRequest();
+        if (null == servlet_request) {
+            body_ = request.getBodyAsBytes();
+            if (null == body_) {
+                body_ = new byte[0];
+            }
+            subscriber.onSubscribe(this);
+            if (maxSize_ >= 0 && body_.length > maxSize_) {
+                fail(new RequestBodyTooLargeException(maxSize_));
+                return;
+            }
+            drain();
+            return;
+        }
+
+        // refuse a body that announces its size upfront before anything
+        // is read
+        if (maxSize_ >= 0 && servlet_request.getContentLengthLong() > maxSize_) {
+            subscriber.onSubscribe(this);
+            fail(new RequestBodyTooLargeException(maxSize_));
+            return;
+        }
+
+        if (!servlet_request.isAsyncSupported()) {
+            throw new EngineException("Couldn't read the request body asynchronously because asynchronous request processing isn't supported for this request.");
+        }
+        try {
+            asyncContext_ = servlet_request.startAsync(servlet_request, context_.response().getHttpServletResponse());
+            input_ = servlet_request.getInputStream();
+        } catch (IllegalStateException | IOException e) {
+            asyncContext_ = null;
+            throw new EngineException(e);
+        }
+        asyncContext_.setTimeout(0);
+        asyncContext_.addListener(new AsyncListener() {
+            public void onComplete(AsyncEvent event) {
+            }
+
+            public void onTimeout(AsyncEvent event) {
+                fail(new EngineException("The request body timed out."));
+            }
+
+            public void onError(AsyncEvent event) {
+                fail(new EngineException(event.getThrowable()));
+            }
+
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        if (context_.response() instanceof AbstractResponse response) {
+            response.markDetached();
+        }
+
+        subscriber.onSubscribe(this);
+        input_.setReadListener(new ReadListener() {
+            public void onDataAvailable() {
+                drain();
+            }
+
+            public void onAllDataRead() {
+                drain();
+            }
+
+            public void onError(Throwable t) {
+                fail(t);
+            }
+        });
+    }
+
+    public void request(long n) {
+        if (n <= 0) {
+            fail(new IllegalArgumentException("The requested number of chunks should be positive."));
+            return;
+        }
+        demand_.getAndAccumulate(n, (current, added) -> {
+            var sum = current + added;
+            return sum < 0 ? Long.MAX_VALUE : sum;
+        });
+        drain();
+    }
+
+    public void cancel() {
+        if (done_.compareAndSet(false, true)) {
+            bodyFinished();
+        }
+    }
+
+    // publishes chunks for as long as there's demand and data, only a
+    // single thread at a time reads the body
+    private void drain() {
+        if (work_.getAndIncrement() != 0) {
+            return;
+        }
+
+        do {
+            try {
+                // the error of the element is signalled by the thread that
+                // drains, which keeps the signals of the subscriber serial
+                var abort = abort_;
+                if (abort != null) {
+                    fail(abort);
+                }
+
+                while (!done_.get() && demand_.get() > 0) {
+                    var chunk = readChunk();
+                    if (null == chunk) {
+                        break;
+                    }
+                    if (0 == chunk.remaining()) {
+                        complete();
+                        break;
+                    }
+
+                    received_ += chunk.remaining();
+                    if (maxSize_ >= 0 && received_ > maxSize_) {
+                        fail(new RequestBodyTooLargeException(maxSize_));
+                        break;
+                    }
+
+                    demand_.decrementAndGet();
+                    subscriber_.onNext(chunk);
+                }
+
+                // the end of the body can be detected without demand
+                if (!done_.get() && isFinished()) {
+                    complete();
+                }
+            } catch (IOException e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                // subscribers aren't allowed to throw, cancel when they do
+                cancel();
+                throw e;
+            }
+        } while (work_.decrementAndGet() != 0);
+    }
+
+    // provides the next chunk of the body, an empty one at the end of the
+    // body, or null when no data is available yet
+    private ByteBuffer readChunk()
+    throws IOException {
+        if (body_ != null) {
+            var length = Math.min(CHUNK_SIZE, body_.length - bodyOffset_);
+            var chunk = ByteBuffer.wrap(Arrays.copyOfRange(body_, bodyOffset_, bodyOffset_ + length));
+            bodyOffset_ += length;
+            return chunk;
+        }
+
+        if (input_.isFinished()) {
+            return ByteBuffer.allocate(0);
+        }
+        // when no data is ready, the container calls the read listener
+        // again once it is
+        if (!input_.isReady()) {
+            return null;
+        }
+
+        var buffer = new byte[CHUNK_SIZE];
+        var read = input_.read(buffer);
+        if (-1 == read) {
+            return ByteBuffer.allocate(0);
+        }
+        if (0 == read) {
+            return null;
+        }
+        return ByteBuffer.wrap(buffer, 0, read).slice();
+    }
+
+    private boolean isFinished() {
+        if (body_ != null) {
+            return bodyOffset_ == body_.length;
+        }
+        return input_.isFinished();
+    }
+
+    private void complete() {
+        if (done_.compareAndSet(false, true)) {
+            try {
+                subscriber_.onComplete();
+            } finally {
+                bodyFinished();
+            }
+        }
+    }
+
+    private void fail(Throwable error) {
+        if (done_.compareAndSet(false, true)) {
+            try {
+                if (error instanceof RequestBodyTooLargeException) {
+                    context_.setStatus(413);
+                }
+                subscriber_.onError(error);
+            } finally {
+                bodyFinished();
+            }
+        }
+    }
+
+    private void bodyFinished() {
+        if (0 == pending_.decrementAndGet()) {
+            completeResponse();
+        }
+    }
+
+    /**
+     * Notifies that the element that requested the body returned, after
+     * which the response can be completed when the body was published.
+     *
+     * @since 1.10
+     */
+    void elementReturned() {
+        if (0 == pending_.decrementAndGet()) {
+            completeResponse();
+        }
+    }
+
+    private void completeResponse() {
+        if (null == asyncContext_ ||
+            !completed_.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            var error_response = errorResponse_;
+            if (error_response != null) {
+                error_response.run();
+            }
+            context_.response().close();
+        } finally {
+            try {
+                asyncContext_.complete();
+            } catch (IllegalStateException e) {
+                // the async context has already been completed or recycled
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.List;
+
+/**
+ * A route of the flattened before or after chain of a deployed
+ * {@link Router}, together with the flags that determine how its
+ * element is processed.
+ *
+ * @param route         the route of the element
+ * @param continuations {@code true} when the element can take part in
+ *                      continuations; or
+ *                      {@code false} for element instance routes
+ * @param resumable     {@code true} when the element class can be resumed
+ *                      from a continuation; or
+ *                      {@code false} when it can never pause
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+record ChainedRoute(Route route, boolean continuations, boolean resumable) {
+    static final ChainedRoute[] EMPTY_CHAIN = new ChainedRoute[0];
+
+    /**
+     * Determines whether the element of a route can take part in
+     * continuations.
+     *
+     * @param route the route to check
+     * @return {@code true} when a continuation context should be set up
+     * for the element; or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    static boolean usesContinuations(Route route) {
+        // continuations are only supported on element class routes, not element instance routes
+        return !(route instanceof RouteInstance);
+    }
+
+    /**
+     * Determines whether the element of a route can be resumed from a
+     * continuation.
+     *
+     * @param route the route to check
+     * @return {@code true} when the element class can pause; or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    static boolean isResumable(Route route) {
+        if (route instanceof RouteAnnotated annotated) {
+            return annotated.isResumable();
+        }
+        return false;
+    }
+
+    /**
+     * Creates the immutable chain of a list of routes.
+     *
+     * @param routes the routes in the order they should be processed
+     * @return the chain of routes
+     * @since 1.10
+     */
+    static ChainedRoute[] chain(List<Route> routes) {
+        if (routes.isEmpty()) {
+            return EMPTY_CHAIN;
+        }
+
+        var chain = new ChainedRoute[routes.size()];
+        for (var i = 0; i < chain.length; ++i) {
+            var route = routes.get(i);
+            chain[i] = new ChainedRoute(route, usesContinuations(route), isResumable(route));
+        }
+        return chain;
+    }
+}
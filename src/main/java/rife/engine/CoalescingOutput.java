@@ -0,0 +1,240 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces the output of a response into a buffer that is only written
+ * to the underlying stream when it's full or when it's explicitly flushed.
+ * <p>Text is encoded straight into the buffer with a
+ * {@link CharsetEncoder}, without creating intermediate byte arrays. The
+ * buffers are borrowed from a {@link Pool} and have to be given back with
+ * {@link #release()} when the response is done.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Site#streamingOutput(int)
+ * @since 1.10
+ */
+final class CoalescingOutput {
+    private final Pool pool_;
+    private final OutputStream out_;
+    private ByteBuffer buffer_;
+    private CharsetEncoder encoder_ = null;
+    private String encoderCharset_ = null;
+    private OutputStream stream_ = null;
+
+    CoalescingOutput(Pool pool, OutputStream out) {
+        pool_ = pool;
+        out_ = out;
+        buffer_ = pool.borrow();
+    }
+
+    /**
+     * Encodes text into the buffer, writing out the buffer each time it
+     * fills up.
+     *
+     * @param text    the text to write
+     * @param charset the name of the charset to encode the text with
+     * @throws IOException when the buffer couldn't be written out
+     * @since 1.10
+     */
+    void write(CharSequence text, String charset)
+    throws IOException {
+        var encoder = encoder(charset);
+        var in = CharBuffer.wrap(text);
+        try {
+            while (encoder.encode(in, buffer_, true).isOverflow()) {
+                if (0 == buffer_.position()) {
+                    // the buffer is too small for a single encoded character
+                    encodeUnbuffered(in, charset);
+                    return;
+                }
+                drain();
+            }
+            while (encoder.flush(buffer_) == CoderResult.OVERFLOW) {
+                if (0 == buffer_.position()) {
+                    encodeUnbuffered(in, charset);
+                    return;
+                }
+                drain();
+            }
+        } finally {
+            encoder.reset();
+        }
+    }
+
+    private void encodeUnbuffered(CharBuffer remaining, String charset)
+    throws IOException {
+        out_.write(remaining.toString().getBytes(charset));
+    }
+
+    /**
+     * Adds bytes to the buffer, writing out the buffer each time it fills
+     * up.
+     *
+     * @param bytes  the bytes to write
+     * @param offset the offset of the first byte to write
+     * @param length the number of bytes to write
+     * @throws IOException when the buffer couldn't be written out
+     * @since 1.10
+     */
+    void write(byte[] bytes, int offset, int length)
+    throws IOException {
+        if (length > buffer_.remaining()) {
+            drain();
+
+            // content that is larger than the buffer is written at once
+            if (length > buffer_.capacity()) {
+                out_.write(bytes, offset, length);
+                return;
+            }
+        }
+        buffer_.put(bytes, offset, length);
+    }
+
+    /**
+     * Writes out the content of the buffer, without flushing the
+     * underlying stream.
+     *
+     * @throws IOException when the buffer couldn't be written out
+     * @since 1.10
+     */
+    void drain()
+    throws IOException {
+        if (buffer_.position() > 0) {
+            out_.write(buffer_.array(), buffer_.arrayOffset(), buffer_.position());
+            buffer_.clear();
+        }
+    }
+
+    /**
+     * Writes out the content of the buffer and flushes the underlying
+     * stream.
+     *
+     * @throws IOException when the buffer couldn't be written out
+     * @since 1.10
+     */
+    void flush()
+    throws IOException {
+        drain();
+        out_.flush();
+    }
+
+    /**
+     * Provides an output stream that writes through this coalescing
+     * output, flushing the returned stream writes out the buffer.
+     *
+     * @return the coalescing output stream
+     * @since 1.10
+     */
+    OutputStream stream() {
+        if (null == stream_) {
+            stream_ = new OutputStream() {
+                @Override
+                public void write(int b)
+                throws IOException {
+                    if (!buffer_.hasRemaining()) {
+                        drain();
+                    }
+                    buffer_.put((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                throws IOException {
+                    CoalescingOutput.this.write(b, off, len);
+                }
+
+                @Override
+                public void flush()
+                throws IOException {
+                    CoalescingOutput.this.flush();
+                }
+
+                @Override
+                public void close()
+                throws IOException {
+                    drain();
+                    out_.close();
+                }
+            };
+        }
+        return stream_;
+    }
+
+    /**
+     * Gives the buffer back to the pool, the content that wasn't written
+     * out yet is discarded.
+     *
+     * @since 1.10
+     */
+    void release() {
+        var buffer = buffer_;
+        if (buffer != null) {
+            buffer_ = null;
+            pool_.release(buffer);
+        }
+    }
+
+    private CharsetEncoder encoder(String charset) {
+        if (null == encoder_ || !charset.equals(encoderCharset_)) {
+            // mirror the behavior of String.getBytes for invalid text
+            encoder_ = Charset.forName(charset).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoderCharset_ = charset;
+        }
+        return encoder_;
+    }
+
+    /**
+     * Bounded pool of the buffers of coalescing outputs.
+     *
+     * @since 1.10
+     */
+    static final class Pool {
+        private final int bufferSize_;
+        private final int capacity_;
+        private final ConcurrentLinkedQueue<ByteBuffer> buffers_ = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size_ = new AtomicInteger();
+
+        Pool(int bufferSize, int capacity) {
+            bufferSize_ = bufferSize;
+            capacity_ = capacity;
+        }
+
+        int bufferSize() {
+            return bufferSize_;
+        }
+
+        ByteBuffer borrow() {
+            var buffer = buffers_.poll();
+            if (buffer != null) {
+                size_.decrementAndGet();
+                return buffer;
+            }
+            return ByteBuffer.allocate(bufferSize_);
+        }
+
+        void release(ByteBuffer buffer) {
+            buffer.clear();
+            if (size_.incrementAndGet() > capacity_) {
+                size_.decrementAndGet();
+                return;
+            }
+            buffers_.offer(buffer);
+        }
+    }
+}
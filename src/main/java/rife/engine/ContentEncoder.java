@@ -0,0 +1,129 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the content of responses for a particular HTTP content coding.
+ * <p>The encoder that's used for a response is negotiated from the
+ * {@code Accept-Encoding} header of the request, out of the encoders that
+ * have been set up with {@link Site#contentEncoders(ContentEncoder...)}.
+ * Next to the built-in {@link #GZIP} and {@link #DEFLATE} encoders, any
+ * implementation that is registered as a {@link ServiceLoader} provider of
+ * this interface is available by default, which makes it possible to plug
+ * in codings like Brotli by simply adding a library to the classpath.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Site#contentEncoders(ContentEncoder...)
+ * @since 1.10
+ */
+public interface ContentEncoder {
+    /**
+     * Encoder for the {@code gzip} content coding.
+     *
+     * @since 1.10
+     */
+    ContentEncoder GZIP = new ContentEncoder() {
+        public String name() {
+            return "gzip";
+        }
+
+        public OutputStream encode(OutputStream out, int level, boolean syncFlush)
+        throws IOException {
+            return new GZIPOutputStream(out, 8192, syncFlush) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+    };
+
+    /**
+     * Encoder for the {@code deflate} content coding.
+     *
+     * @since 1.10
+     */
+    ContentEncoder DEFLATE = new ContentEncoder() {
+        public String name() {
+            return "deflate";
+        }
+
+        public OutputStream encode(OutputStream out, int level, boolean syncFlush) {
+            var deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater, 8192, syncFlush) {
+                @Override
+                public void close()
+                throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * The name of the content coding, as it appears in the
+     * {@code Accept-Encoding} and {@code Content-Encoding} headers.
+     *
+     * @return the name of the content coding
+     * @since 1.10
+     */
+    String name();
+
+    /**
+     * Creates a stream that encodes the content that is written to it.
+     * <p>Closing the returned stream has to finish the encoding and close
+     * the underlying stream.
+     *
+     * @param out       the stream that the encoded content will be written to
+     * @param level     the compression level between {@code 0} and
+     *                  {@code 9}; or
+     *                  <p>{@code -1} for the default level of the encoder
+     * @param syncFlush {@code true} if flushing the returned stream should
+     *                  write out all the content that was encoded so far; or
+     *                  <p>{@code false} if the encoder is free to keep
+     *                  content for later
+     * @return the encoding stream
+     * @throws IOException when the encoding stream couldn't be created
+     * @since 1.10
+     */
+    OutputStream encode(OutputStream out, int level, boolean syncFlush)
+    throws IOException;
+
+    /**
+     * Retrieves the encoders that are available by default, starting with
+     * the ones that were registered as {@link ServiceLoader} providers,
+     * followed by {@link #GZIP} and {@link #DEFLATE}.
+     *
+     * @return the list of default content encoders in their order of
+     * preference
+     * @since 1.10
+     */
+    static List<ContentEncoder> defaultEncoders() {
+        var encoders = new ArrayList<ContentEncoder>();
+        try {
+            for (var encoder : ServiceLoader.load(ContentEncoder.class)) {
+                encoders.add(encoder);
+            }
+        } catch (ServiceConfigurationError e) {
+            // providers that can't be loaded are simply not available
+        }
+        encoders.add(GZIP);
+        encoders.add(DEFLATE);
+        return encoders;
+    }
+}
@@ -9,6 +9,7 @@ import rife.continuations.ContinuationConfigRuntime;
 import rife.continuations.ContinuationContext;
 import rife.continuations.exceptions.ContinuationsNotActiveException;
 import rife.continuations.exceptions.PauseException;
+import rife.engine.annotations.ETag;
 import rife.engine.exceptions.*;
 import rife.forms.FormBuilder;
 import rife.ioc.HierarchicalProperties;
@@ -25,12 +26,19 @@ import rife.validation.ConstrainedUtils;
 import rife.validation.Validated;
 
 import java.beans.PropertyDescriptor;
+import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 
 /**
  * This class provides the context for the current HTTP request.
@@ -45,6 +53,12 @@ public class Context {
     public static final double DEFAULT_DOUBLE = 0.0d;
     public static final float DEFAULT_FLOAT = 0.0f;
 
+    /**
+     * Status code (206) indicating that the server has fulfilled the partial GET request for the resource.
+     */
+    public static final int SC_PARTIAL_CONTENT = 206;
+
+
     /**
      * Status code (304) indicating that a conditional GET operation found that the resource was available and not modified.
      */
@@ -57,6 +71,18 @@ public class Context {
     public static final int SC_FORBIDDEN = 403;
 
 
+    /**
+     * Status code (404) indicating that the requested resource is not available.
+     */
+    public static final int SC_NOT_FOUND = 404;
+
+
+    /**
+     * Status code (416) indicating that the server cannot serve the requested byte range.
+     */
+    public static final int SC_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+
     /**
      * Status code (500) indicating an error inside the HTTP server which prevented it from fulfilling the request.
      */
@@ -77,6 +103,15 @@ public class Context {
     private Set<String> variedHeaders_ = null;
     private Map<String, LinkedHashMap<String, Object>> hxTriggers_ = null;
     private Element processedElement_ = null;
+    private boolean etag_ = false;
+    private int status_ = 200;
+    private List<Consumer<Response>> renderedHeaders_ = null;
+    private boolean renderUncacheable_ = false;
+    private AsyncRequestBody asyncRequestBody_ = null;
+    private List<PooledElement> pooledElements_ = null;
+
+    private record PooledElement(RouteClass route, Element element) {
+    }
 
     Context(String gateUrl, Site site, Request request, Response response, RouteMatch routeMatch) {
         gateUrl_ = gateUrl;
@@ -85,22 +120,13 @@ public class Context {
         response_ = response;
         routeMatch_ = routeMatch;
 
-        var params = new LinkedHashMap<>(request_.getParameters());
+        // the path info mapping was already matched while resolving the route,
+        // the request parameters are only obtained when they're needed
         if (routeMatch_ != null) {
-            if (routeMatch_.route().pathInfoHandling().type() == PathInfoType.MAP) {
-                for (var mapping : routeMatch_.route().pathInfoHandling().mappings()) {
-                    var matcher = mapping.regexp().matcher(pathInfo());
-                    if (matcher.matches()) {
-                        var i = 1;
-                        for (var param : mapping.parameters()) {
-                            params.put(param, new String[]{matcher.group(i++)});
-                        }
-                        break;
-                    }
-                }
-            }
+            parametersIn_ = new RequestParameters(request_, routeMatch_.pathInfoParameters());
+        } else {
+            parametersIn_ = new RequestParameters(request_, Collections.emptyMap());
         }
-        parametersIn_ = params;
         parametersOut_ = null;
     }
 
@@ -114,25 +140,30 @@ public class Context {
         }
 
         var route = routeMatch_.route();
+        if (route.getElementClass() != null &&
+            ETAG_ELEMENTS.get(route.getElementClass())) {
+            etag_ = true;
+        }
 
         try {
             // establishing an SSE connection is terminal for the element
             // chain: output from later elements would corrupt the
             // event stream
-            for (var before_route : route.router().before_) {
-                processElement(before_route);
+            final var router = route.router();
+            for (var before_route : router.beforeChain_) {
+                processElement(before_route.route(), before_route.continuations(), before_route.resumable());
                 if (sseConnection_ != null) {
                     return;
                 }
             }
 
-            processElement(route);
+            processElement(route, ChainedRoute.usesContinuations(route), ChainedRoute.isResumable(route));
 
-            for (var after_route : route.router().after_) {
+            for (var after_route : router.afterChain_) {
                 if (sseConnection_ != null) {
                     return;
                 }
-                processElement(after_route);
+                processElement(after_route.route(), after_route.continuations(), after_route.resumable());
             }
         } catch (RespondException ignored) {
             // processing is over, just send the current response
@@ -143,18 +174,46 @@ public class Context {
         }
     }
 
+    private static final ClassValue<Boolean> ETAG_ELEMENTS = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isAnnotationPresent(ETag.class);
+        }
+    };
+
     void processElement(Route route)
+    throws Exception {
+        processElement(route, ChainedRoute.usesContinuations(route), ChainedRoute.isResumable(route));
+    }
+
+    private void processElement(Route route, boolean continuations, boolean resumable)
     throws Exception {
         parametersOut_ = null;
 
+        // elements that can't pause only need the continuation context
+        // when one is being resumed, to expose its ID
+        continuations = continuations &&
+                        (resumable || parameter(SpecialParameters.CONT_ID) != null);
+
         // try to set up a continuation context and try to
         // retrieve the element instance that belongs to it
-        var element = setupContinuationContext(route);
+        Element element = null;
+        if (continuations) {
+            element = setupContinuationContext(route);
+        }
 
         // if not element can be obtained from a continuation,
         // get a new instance from the route
+        RouteClass pooling_route = null;
         if (element == null) {
             element = route.obtainElementInstance(this);
+
+            // only instances that were obtained from the route can go back
+            // to its pool, those of a continuation belong to its context
+            if (route instanceof RouteClass route_class &&
+                route_class.isReusable()) {
+                pooling_route = route_class;
+            }
         }
 
         route.prepareElementInstance(element, this);
@@ -164,25 +223,36 @@ public class Context {
         response_.setLastElement(element);
 
         // process the element with this context
+        var paused = false;
         try {
             element.process(this);
         } catch (NextException ignored) {
             // this element is done processing
             // move on to the next one
+        } catch (PauseException e) {
+            // the paused element is now referenced by the continuation context
+            paused = true;
+            throw e;
         } finally {
             route.finalizeElementInstance(element, this);
-            ContinuationConfigRuntime.clearActiveConfigRuntime();
-            ContinuationContext.clearActiveContext();
+            if (continuations) {
+                ContinuationConfigRuntime.clearActiveConfigRuntime();
+                ContinuationContext.clearActiveContext();
+            }
+
+            // the instance can still be referenced until the response is
+            // complete, it's only released afterwards
+            if (pooling_route != null && !paused) {
+                if (null == pooledElements_) {
+                    pooledElements_ = new ArrayList<>(2);
+                }
+                pooledElements_.add(new PooledElement(pooling_route, element));
+            }
         }
     }
 
     private Element setupContinuationContext(Route route)
     throws Exception {
-        // continuations are only supported on element class routes, not element instance routes
-        if (route instanceof RouteInstance) {
-            return null;
-        }
-
         Element element = null;
         ContinuationContext continuation_context = null;
 
@@ -257,6 +327,32 @@ public class Context {
         site_.continuationManager_.addContext(continuation_context);
     }
 
+    /**
+     * Returns the instances of reusable elements that processed this
+     * context to the pools of their routes, once its response is complete.
+     * <p>The instances aren't reused when the response is completed
+     * asynchronously, since they can then still be referenced by
+     * the parties that complete it.
+     *
+     * @since 1.10
+     */
+    void releasePooledElements() {
+        var pooled_elements = pooledElements_;
+        pooledElements_ = null;
+        if (null == pooled_elements ||
+            asyncRequestBody_ != null ||
+            sseConnection_ != null ||
+            (response_ instanceof AbstractResponse response && response.isDetached())) {
+            return;
+        }
+
+        processedElement_ = null;
+        response_.setLastElement(null);
+        for (var pooled_element : pooled_elements) {
+            pooled_element.route().releaseElementInstance(pooled_element.element());
+        }
+    }
+
     Route processedRoute() {
         return processedRoute_;
     }
@@ -620,6 +716,85 @@ public class Context {
         }
     }
 
+    /**
+     * Prepares the progressive printing of a template, which sends its
+     * skeleton to the client right away and streams the content of its
+     * slow values as soon as they have been computed concurrently.
+     * <pre>c.progressive(t)
+     *     .defer("report", () -> renderReport(filter))
+     *     .print();</pre>
+     *
+     * @param template the template to print progressively
+     * @return the progressive rendering of the template, which is only
+     * printed when its {@link ProgressiveRendering#print() print} method is
+     * called
+     * @throws SseOutputRefusedException when an SSE connection has been
+     *                                   established for this request
+     * @see ProgressiveRendering
+     * @since 1.10
+     */
+    public ProgressiveRendering progressive(Template template) {
+        ensureNoSseConnection();
+        return new ProgressiveRendering(this, template);
+    }
+
+    /**
+     * Prepares the concurrent computation of the content of independent
+     * template values, whose results are assigned to the template in a
+     * deterministic order.
+     * <pre>c.parallel(t)
+     *     .value("orders", () -> renderOrders(customer))
+     *     .value("invoices", () -> renderInvoices(customer))
+     *     .assign();
+     * c.print(t);</pre>
+     *
+     * @param template the template whose values should be computed
+     * @return the parallel rendering of the template values, which only
+     * starts when its {@link ParallelRendering#assign() assign} method is
+     * called
+     * @see ParallelRendering
+     * @since 1.10
+     */
+    public ParallelRendering parallel(Template template) {
+        return new ParallelRendering(this, template);
+    }
+
+    /**
+     * Processes the filtered tags of a template and renders its content.
+     *
+     * @param template the template to render
+     * @return the rendered content of the template
+     * @since 1.10
+     */
+    String renderTemplate(Template template)
+    throws TemplateException {
+        if (!template.hasAttribute(Context.class.getName())) {
+            template.setAttribute(Context.class.getName(), this);
+        }
+
+        new EngineTemplateProcessor(this, template).processTemplate();
+
+        return template.getContent();
+    }
+
+    /**
+     * Sets the content type of the response from a template when it
+     * wasn't set yet.
+     *
+     * @param template the template that provides the content type
+     * @since 1.10
+     */
+    void ensureContentType(Template template) {
+        if (!response_.isContentTypeSet()) {
+            var content_type = template.getDefaultContentType();
+            if (null == content_type) {
+                content_type = RifeConfig.engine().getDefaultContentType();
+            }
+
+            response_.setContentType(content_type);
+        }
+    }
+
     /**
      * Retrieves the context that was stored in a template attribute.
      * <p>Each template that was obtained through a context, automatically
@@ -1259,9 +1434,110 @@ public class Context {
      * @since 1.0
      */
     public void preventCaching() {
+        captureHeader(ServletUtils::preventCaching);
         ServletUtils.preventCaching(response_);
     }
 
+    /**
+     * Fingerprints the response with a strong {@code ETag} when it's
+     * complete, so that clients can make conditional requests for it.
+     * <p>When the request already carries the same {@code ETag} in its
+     * {@code If-None-Match} header, the response becomes a
+     * {@code 304 Not Modified} without body, which saves transferring and
+     * parsing content that the client already has. A compressed response
+     * gets a different tag for each content coding, since each one is a
+     * different representation of the content.
+     * <p>This only applies to {@code GET} and {@code HEAD} requests whose
+     * status wasn't changed through {@link #setStatus(int)}, and whose
+     * content was entirely collected by the text buffer. Responses that
+     * were flushed or written to the output stream are sent as-is.
+     * <p>Element classes can also be annotated with {@link ETag} to enable
+     * this for all their responses.
+     *
+     * @since 1.10
+     */
+    public void enableETag() {
+        etag_ = true;
+    }
+
+    /**
+     * Fingerprints the completed response when this was enabled.
+     *
+     * @see #enableETag()
+     * @since 1.10
+     */
+    void applyETag() {
+        if (!etag_ || status_ != 200) {
+            return;
+        }
+
+        var method = request_.getMethod();
+        if (method != RequestMethod.GET &&
+            method != RequestMethod.HEAD) {
+            return;
+        }
+
+        if (response_ instanceof AbstractResponse response) {
+            response.applyETag(request_.getHeader("If-None-Match"));
+        }
+    }
+
+    /**
+     * Starts remembering the headers that are set through this context,
+     * so that they can be replayed with the rendered output when it's
+     * cached.
+     *
+     * @see Router#cacheRendering
+     * @since 1.10
+     */
+    void captureRendering() {
+        renderedHeaders_ = new ArrayList<>();
+    }
+
+    private void captureHeader(Consumer<Response> header) {
+        if (renderedHeaders_ != null) {
+            renderedHeaders_.add(header);
+        }
+    }
+
+    /**
+     * Stores the completed response in the render cache of the site, when
+     * it was captured and can be served again as-is.
+     *
+     * @param key the render cache key of the request
+     * @see #captureRendering()
+     * @since 1.10
+     */
+    void storeRendering(RenderCache.PrimaryKey key) {
+        if (null == renderedHeaders_ ||
+            renderUncacheable_ ||
+            status_ != 200 ||
+            request_.getMethod() != RequestMethod.GET) {
+            return;
+        }
+
+        if (response_ instanceof AbstractResponse response) {
+            var body = response.bufferedContent();
+            if (null == body) {
+                return;
+            }
+
+            String[] varied_headers;
+            if (null == variedHeaders_) {
+                varied_headers = new String[0];
+            } else {
+                varied_headers = variedHeaders_.toArray(new String[0]);
+            }
+
+            String fingerprint = null;
+            if (etag_ && body.length > 0) {
+                fingerprint = AbstractResponse.contentFingerprint(body);
+            }
+
+            site_.storeRendering(key, request_, varied_headers, response.getContentType(), List.copyOf(renderedHeaders_), body, fingerprint);
+        }
+    }
+
     /**
      * Returns the HTTP {@code RequestMethod} with which this context's request was made.
      *
@@ -2051,6 +2327,108 @@ public class Context {
         return request_.getBodyAsBytes();
     }
 
+    /**
+     * Publishes the body of this context's request in chunks as it arrives,
+     * without blocking a thread while waiting for the client.
+     * <p>In a servlet container, the request switches to asynchronous
+     * processing and the response is only completed after the body was
+     * entirely published, or failed, and the element returned. The
+     * subscriber can thus still write the response when it receives the end
+     * of the body.
+     * <p>When the body exceeds the maximum size, the response status is set
+     * to 413 and the subscriber receives a {@link RequestBodyTooLargeException}.
+     * The body can only be published once and shouldn't have been read
+     * before, for instance through {@link #body()} or the parameters of a
+     * form submission.
+     *
+     * @param maxSize the maximum number of bytes of the body; or {@code -1}
+     *                for no limit
+     * @return the publisher of the request body
+     * @see #bodyAsync(long)
+     * @since 1.10
+     */
+    public Flow.Publisher<ByteBuffer> bodyPublisher(long maxSize) {
+        if (asyncRequestBody_ != null) {
+            throw new IllegalStateException("The request body can only be published once.");
+        }
+
+        asyncRequestBody_ = new AsyncRequestBody(this, maxSize);
+        return asyncRequestBody_;
+    }
+
+    /**
+     * Reads the complete body of this context's request without blocking a
+     * thread while waiting for the client.
+     * <p>The response is completed after the dependent stages that don't run
+     * asynchronously themselves, like those of
+     * {@link CompletionStage#thenAccept}, so that these can still write the
+     * response.
+     *
+     * @param maxSize the maximum number of bytes of the body; or {@code -1}
+     *                for no limit
+     * @return the stage that completes with the bytes of the request body; or
+     * exceptionally with a {@link RequestBodyTooLargeException} when the body
+     * exceeds the maximum size
+     * @see #bodyPublisher(long)
+     * @since 1.10
+     */
+    public CompletionStage<byte[]> bodyAsync(long maxSize) {
+        var result = new CompletableFuture<byte[]>();
+        bodyPublisher(maxSize).subscribe(new Flow.Subscriber<>() {
+            private final ByteArrayOutputStream body_ = new ByteArrayOutputStream();
+
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            public void onNext(ByteBuffer chunk) {
+                if (chunk.hasArray()) {
+                    body_.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                } else {
+                    var bytes = new byte[chunk.remaining()];
+                    chunk.get(bytes);
+                    body_.writeBytes(bytes);
+                }
+            }
+
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            public void onComplete() {
+                result.complete(body_.toByteArray());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Hands the error of the element over to the request body that is
+     * read asynchronously, when the response was detached for it.
+     *
+     * @param error         the error of the element
+     * @param errorResponse writes the error response once the body
+     *                      stopped being published
+     * @return {@code true} when the response is completed by the request
+     * body; or
+     * <p>{@code false} when the error response can be written right away
+     * @since 1.10
+     */
+    boolean abortAsyncBody(Throwable error, Runnable errorResponse) {
+        if (null == asyncRequestBody_ || !asyncRequestBody_.isDetached()) {
+            return false;
+        }
+
+        asyncRequestBody_.abort(error, errorResponse);
+        return true;
+    }
+
+    void releaseAsyncBody() {
+        if (asyncRequestBody_ != null) {
+            asyncRequestBody_.elementReturned();
+        }
+    }
+
     /**
      * Retrieves the list of uploaded file names.
      *
@@ -2895,6 +3273,82 @@ public class Context {
         return response_.getOutputStream();
     }
 
+    /**
+     * Sends a file as the content of the response, deriving its content
+     * type from its name.
+     *
+     * @param path the path of the file to send
+     * @see #sendFile(Path, String)
+     * @since 1.10
+     */
+    public void sendFile(Path path) {
+        sendFile(path, null);
+    }
+
+    /**
+     * Sends a file as the content of the response.
+     * <p>The response carries {@code ETag}, {@code Last-Modified} and
+     * {@code Accept-Ranges} headers. Conditional requests for a file that
+     * the client already has are answered with {@code 304 Not Modified}, and
+     * requests for a single byte range with {@code 206 Partial Content}. A
+     * file that doesn't exist results in a {@code 404 Not Found} status.
+     * <p>The file isn't compressed and replaces any content that was
+     * buffered, as does the {@code 404 Not Found} status. Hot small files are
+     * sent from a {@link Site#mappedFileCache(long) memory-mapped buffer},
+     * which is handed to the servlet container without copying it through
+     * the heap when its output stream can write buffers. Other files are
+     * transferred from their channel through a heap buffer.
+     * <p>The path is sent as-is, make sure to validate it when it's derived
+     * from the request.
+     *
+     * @param path        the path of the file to send
+     * @param contentType the content type of the file; or {@code null} to
+     *                    derive it from the file name
+     * @throws SseOutputRefusedException when an SSE connection has been
+     *                                   established for this request
+     * @since 1.10
+     */
+    public void sendFile(Path path, String contentType) {
+        if (null == path) throw new IllegalArgumentException("path can't be null");
+        ensureNoSseConnection();
+
+        FileTransfer.sendFile(this, path, contentType);
+    }
+
+    /**
+     * Sends a classpath resource as the content of the response, deriving
+     * its content type from its name.
+     *
+     * @param name the name of the resource to send
+     * @see #sendResource(String, String)
+     * @since 1.10
+     */
+    public void sendResource(String name) {
+        sendResource(name, null);
+    }
+
+    /**
+     * Sends a classpath resource as the content of the response, with the
+     * same conditional and range request handling as
+     * {@link #sendFile(Path, String)}.
+     * <p>Resources that are files are sent exactly like
+     * {@link #sendFile(Path, String)} does, resources inside archives are
+     * streamed from the archive.
+     *
+     * @param name        the name of the resource to send
+     * @param contentType the content type of the resource; or {@code null}
+     *                    to derive it from the resource name
+     * @throws SseOutputRefusedException when an SSE connection has been
+     *                                   established for this request
+     * @since 1.10
+     */
+    public void sendResource(String name, String contentType) {
+        if (null == name) throw new IllegalArgumentException("name can't be null");
+        ensureNoSseConnection();
+
+        FileTransfer.sendResource(this, name, contentType);
+    }
+
     /**
      * Turns the response into a server-sent events (SSE) stream that remains
      * under the control of this element.
@@ -3120,6 +3574,7 @@ public class Context {
      * @since 1.0
      */
     public void setLocale(Locale locale) {
+        captureHeader(r -> r.setLocale(locale));
         response_.setLocale(locale);
     }
 
@@ -3224,6 +3679,7 @@ public class Context {
      * @since 1.0
      */
     public void addCookie(CookieBuilder builder) {
+        renderUncacheable_ = true;
         response_.addCookie(builder.cookie());
     }
 
@@ -3257,6 +3713,7 @@ public class Context {
      * @since 1.0
      */
     public void setHeader(String name, String value) {
+        captureHeader(r -> r.setHeader(name, value));
         response_.setHeader(name, value);
     }
 
@@ -3269,6 +3726,7 @@ public class Context {
      * @since 1.0
      */
     public void addHeader(String name, String value) {
+        captureHeader(r -> r.addHeader(name, value));
         response_.addHeader(name, value);
     }
 
@@ -3281,6 +3739,7 @@ public class Context {
      * @since 1.0
      */
     public void setDateHeader(String name, long date) {
+        captureHeader(r -> r.setDateHeader(name, date));
         response_.setDateHeader(name, date);
     }
 
@@ -3293,6 +3752,7 @@ public class Context {
      * @since 1.0
      */
     public void addDateHeader(String name, long date) {
+        captureHeader(r -> r.addDateHeader(name, date));
         response_.addDateHeader(name, date);
     }
 
@@ -3305,6 +3765,7 @@ public class Context {
      * @since 1.0
      */
     public void setHeader(String name, int value) {
+        captureHeader(r -> r.setIntHeader(name, value));
         response_.setIntHeader(name, value);
     }
 
@@ -3317,6 +3778,7 @@ public class Context {
      * @since 1.0
      */
     public void addHeader(String name, int value) {
+        captureHeader(r -> r.addIntHeader(name, value));
         response_.addIntHeader(name, value);
     }
 
@@ -3327,6 +3789,7 @@ public class Context {
      * @since 1.0
      */
     public void setStatus(int statusCode) {
+        status_ = statusCode;
         response_.setStatus(statusCode);
     }
 
@@ -0,0 +1,566 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.engine.annotations.*;
+import rife.engine.exceptions.EngineException;
+import rife.tools.*;
+import rife.tools.exceptions.ConversionException;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Describes how the annotated fields of the element class of a
+ * {@link RouteAnnotated} route are injected and extracted.
+ * <p>The plan is built once per route, which resolves the annotation of
+ * each field into its kind, name, flow direction and conversion target,
+ * and obtains method handles to read and write the field. Preparing and
+ * finalizing an element instance then simply loops over the steps that
+ * apply, without looking up any annotations or fields.
+ * <p>The steps are resolved with exactly the same precedence as the
+ * annotations have always been checked in, so that a field that carries
+ * several annotations is handled in the same way.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class ElementInjectionPlan {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    enum Kind {
+        ACTIVE_SITE,
+        PARAMETER,
+        PARAMETERS_BEAN,
+        PROPERTY,
+        CONFIG,
+        HEADER,
+        BODY,
+        PATH_INFO,
+        FILE_UPLOAD,
+        COOKIE,
+        REQUEST_ATTRIBUTE,
+        SESSION_ATTRIBUTE
+    }
+
+    private final Step[] injectors_;
+    private final Step[] extractors_;
+    private final Step[] outParameters_;
+    // the injectors, followed by the fields that are only written by
+    // requests, which are all restored when an instance is reused
+    private final Step[] resettable_;
+    private final Set<String> inParameters_;
+
+    ElementInjectionPlan(Class<? extends Element> elementClass, PathInfoHandling pathInfoHandling) {
+        var injectors = new ArrayList<Step>();
+        var extractors = new ArrayList<Step>();
+        var out_parameters = new ArrayList<Step>();
+        var out_only = new ArrayList<Step>();
+        var in_parameters = new HashSet<String>();
+        try {
+            var lookup = MethodHandles.lookup();
+            Class<?> klass = elementClass;
+            while (klass != null && klass != Element.class) {
+                for (var field : klass.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) ||
+                        Modifier.isFinal(field.getModifiers()) ||
+                        Modifier.isTransient(field.getModifiers())) {
+                        continue;
+                    }
+
+                    var injector = injectorKind(field, pathInfoHandling);
+                    var extractor = extractorKind(field);
+                    var out_parameter = outParameterKind(field);
+                    if (null == injector && null == extractor && null == out_parameter) {
+                        continue;
+                    }
+
+                    field.setAccessible(true);
+                    var getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                    var setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+
+                    if (injector != null) {
+                        injectors.add(new Step(injector, field, getter, setter, elementClass));
+                    }
+                    if (extractor != null) {
+                        var step = new Step(extractor, field, getter, setter, elementClass);
+                        extractors.add(step);
+                        if (null == injector) {
+                            out_only.add(step);
+                        }
+                    }
+                    if (out_parameter != null) {
+                        var step = new Step(out_parameter, field, getter, setter, elementClass);
+                        out_parameters.add(step);
+                        if (null == injector && null == extractor) {
+                            out_only.add(step);
+                        }
+                    }
+
+                    var parameter = field.getAnnotation(Parameter.class);
+                    var parameters_bean = field.getAnnotation(ParametersBean.class);
+                    if (parameter != null && shouldProcessInFlow(parameter.flow())) {
+                        in_parameters.add(nameOf(parameter.value(), field));
+                    } else if (parameters_bean != null && shouldProcessInFlow(parameters_bean.flow())) {
+                        in_parameters.addAll(BeanUtils.getPropertyNames(field.getType(), null, null, parameters_bean.prefix()));
+                    }
+                }
+
+                klass = klass.getSuperclass();
+            }
+        } catch (Exception e) {
+            throw new EngineException(e);
+        }
+
+        injectors_ = injectors.toArray(new Step[0]);
+        extractors_ = extractors.toArray(new Step[0]);
+        outParameters_ = out_parameters.toArray(new Step[0]);
+        var resettable = new ArrayList<>(injectors);
+        resettable.addAll(out_only);
+        resettable_ = resettable.toArray(new Step[0]);
+        inParameters_ = Collections.unmodifiableSet(in_parameters);
+    }
+
+    private static boolean shouldProcessInFlow(FlowDirection flow) {
+        return flow == FlowDirection.IN || flow == FlowDirection.IN_OUT;
+    }
+
+    private static boolean shouldProcessOutFlow(FlowDirection flow) {
+        return flow == FlowDirection.OUT || flow == FlowDirection.IN_OUT;
+    }
+
+    private static String nameOf(String annotationName, Field field) {
+        if (annotationName != null && !annotationName.isEmpty()) {
+            return annotationName;
+        }
+        return field.getName();
+    }
+
+    private static Kind injectorKind(Field field, PathInfoHandling pathInfoHandling) {
+        if (field.isAnnotationPresent(ActiveSite.class)) {
+            return Kind.ACTIVE_SITE;
+        } else if (field.isAnnotationPresent(Parameter.class) &&
+                   shouldProcessInFlow(field.getAnnotation(Parameter.class).flow())) {
+            return Kind.PARAMETER;
+        } else if (field.isAnnotationPresent(ParametersBean.class) &&
+                   shouldProcessInFlow(field.getAnnotation(ParametersBean.class).flow())) {
+            return Kind.PARAMETERS_BEAN;
+        } else if (field.isAnnotationPresent(Property.class)) {
+            return Kind.PROPERTY;
+        } else if (field.isAnnotationPresent(Config.class)) {
+            return Kind.CONFIG;
+        } else if (field.isAnnotationPresent(Header.class) &&
+                   shouldProcessInFlow(field.getAnnotation(Header.class).flow())) {
+            return Kind.HEADER;
+        } else if (field.isAnnotationPresent(Body.class) &&
+                   shouldProcessInFlow(field.getAnnotation(Body.class).flow())) {
+            return Kind.BODY;
+        } else if (field.isAnnotationPresent(PathInfo.class) &&
+                   pathInfoHandling.type() != PathInfoType.NONE) {
+            return Kind.PATH_INFO;
+        } else if (field.isAnnotationPresent(FileUpload.class)) {
+            return Kind.FILE_UPLOAD;
+        } else if (field.isAnnotationPresent(Cookie.class) &&
+                   shouldProcessInFlow(field.getAnnotation(Cookie.class).flow())) {
+            return Kind.COOKIE;
+        } else if (field.isAnnotationPresent(RequestAttribute.class) &&
+                   shouldProcessInFlow(field.getAnnotation(RequestAttribute.class).flow())) {
+            return Kind.REQUEST_ATTRIBUTE;
+        } else if (field.isAnnotationPresent(SessionAttribute.class) &&
+                   shouldProcessInFlow(field.getAnnotation(SessionAttribute.class).flow())) {
+            return Kind.SESSION_ATTRIBUTE;
+        }
+        return null;
+    }
+
+    private static Kind extractorKind(Field field) {
+        if (field.isAnnotationPresent(Header.class) &&
+            shouldProcessOutFlow(field.getAnnotation(Header.class).flow())) {
+            return Kind.HEADER;
+        } else if (field.isAnnotationPresent(Body.class) &&
+                   shouldProcessOutFlow(field.getAnnotation(Body.class).flow())) {
+            return Kind.BODY;
+        } else if (field.isAnnotationPresent(Cookie.class) &&
+                   shouldProcessOutFlow(field.getAnnotation(Cookie.class).flow())) {
+            return Kind.COOKIE;
+        } else if (field.isAnnotationPresent(RequestAttribute.class) &&
+                   shouldProcessOutFlow(field.getAnnotation(RequestAttribute.class).flow())) {
+            return Kind.REQUEST_ATTRIBUTE;
+        } else if (field.isAnnotationPresent(SessionAttribute.class) &&
+                   shouldProcessOutFlow(field.getAnnotation(SessionAttribute.class).flow())) {
+            return Kind.SESSION_ATTRIBUTE;
+        }
+        return null;
+    }
+
+    private static Kind outParameterKind(Field field) {
+        if (field.isAnnotationPresent(Parameter.class) &&
+            shouldProcessOutFlow(field.getAnnotation(Parameter.class).flow())) {
+            return Kind.PARAMETER;
+        } else if (field.isAnnotationPresent(ParametersBean.class) &&
+                   shouldProcessOutFlow(field.getAnnotation(ParametersBean.class).flow())) {
+            return Kind.PARAMETERS_BEAN;
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the names of the parameters that are injected into the
+     * element.
+     *
+     * @return the unmodifiable set of parameter names
+     * @since 1.10
+     */
+    Set<String> inParameters() {
+        return inParameters_;
+    }
+
+    /**
+     * Collects the values of the out-flow parameter fields of an element.
+     *
+     * @param element    the element to read the fields from
+     * @param retain     the names of the parameters that should be
+     *                   collected; or
+     *                   <p>{@code null} if all of them should be collected
+     * @param parameters the map that the parameter values will be added to
+     * @since 1.10
+     */
+    void collectOutParameters(Element element, Set<String> retain, Map<String, String[]> parameters)
+    throws Exception {
+        for (var step : outParameters_) {
+            if (Kind.PARAMETER == step.kind &&
+                retain != null && !retain.contains(step.name)) {
+                continue;
+            }
+
+            var value = step.get(element);
+            if (null == value) {
+                continue;
+            }
+
+            if (Kind.PARAMETER == step.kind) {
+                parameters.put(step.name, ArrayUtils.createStringArray(value, null));
+            } else {
+                BeanUtils.processPropertyValues(value, null, null, step.name, (propertyName, descriptor, propertyValue, constrainedProperty) -> {
+                    if (propertyValue != null &&
+                        (null == retain || retain.contains(propertyName))) {
+                        parameters.put(propertyName, ArrayUtils.createStringArray(propertyValue, constrainedProperty));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Injects the in-flow values of the context into the fields of an
+     * element.
+     *
+     * @param element the element to inject the values into
+     * @param context the context to obtain the values from
+     * @since 1.10
+     */
+    void inject(Element element, Context context)
+    throws Exception {
+        for (var step : injectors_) {
+            final var name = step.name;
+            switch (step.kind) {
+                case ACTIVE_SITE -> {
+                    if (step.type.isAssignableFrom(context.site().getClass())) {
+                        step.set(element, context.site());
+                    }
+                }
+                case PARAMETER -> {
+                    var values = context.parameters().get(name);
+                    if (values != null && values.length > 0) {
+                        step.set(element, step.convert(values[0]));
+                    }
+                }
+                case PARAMETERS_BEAN -> {
+                    var bean = step.get(element);
+                    if (null == bean) {
+                        step.set(element, context.parametersBean(step.type, name));
+                    } else {
+                        context.parametersBean(bean, name);
+                    }
+                }
+                case PROPERTY -> {
+                    var prop_value = context.properties().getValue(name);
+                    if (prop_value != null) {
+                        step.set(element, step.convert(prop_value));
+                    }
+                }
+                case CONFIG -> {
+                    var config = context.site().config();
+                    if (List.class.isAssignableFrom(step.type)) {
+                        var list_items = config.getStringItems(name);
+                        if (list_items != null) {
+                            var item_class = step.listItemClass(element.getClass());
+                            if (item_class != null) {
+                                var converted_list = new ArrayList<>();
+                                for (var item : list_items) {
+                                    converted_list.add(Convert.fromString(item, item_class));
+                                }
+                                step.set(element, converted_list);
+                            } else {
+                                step.set(element, list_items);
+                            }
+                        }
+                    } else {
+                        var param_value = config.getString(name);
+                        if (param_value != null) {
+                            step.set(element, step.convert(param_value));
+                        }
+                    }
+                }
+                case HEADER -> {
+                    var header = context.header(name);
+                    if (header != null) {
+                        step.set(element, step.convert(header));
+                    }
+                }
+                case BODY -> step.set(element, step.convert(context.body()));
+                case PATH_INFO -> step.set(element, step.convert(context.pathInfo()));
+                case FILE_UPLOAD -> {
+                    var uploaded_file = context.file(name);
+                    if (uploaded_file != null) {
+                        Object value;
+                        if (UploadedFile.class.isAssignableFrom(step.type)) {
+                            value = uploaded_file;
+                        } else if (File.class.isAssignableFrom(step.type)) {
+                            value = uploaded_file.getFile();
+                        } else {
+                            value = step.convert(uploaded_file.getFile().getAbsolutePath());
+                        }
+                        step.set(element, value);
+                    }
+                }
+                case COOKIE -> {
+                    if (context.hasCookie(name)) {
+                        var cookie_value = context.cookieValue(name);
+                        if (cookie_value != null) {
+                            step.set(element, step.convert(cookie_value));
+                        }
+                    }
+                }
+                case REQUEST_ATTRIBUTE -> {
+                    var value = context.attribute(name);
+                    if (value != null) {
+                        step.set(element, step.convert(value));
+                    }
+                }
+                case SESSION_ATTRIBUTE -> {
+                    var session = context.session(false);
+                    if (session != null) {
+                        var value = session.attribute(name);
+                        if (value != null) {
+                            step.set(element, step.convert(value));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Captures the values of the injected fields of an element, and of the
+     * fields that only provide out-flow values, so that they can later be
+     * {@link #restore restored}.
+     * <p>Injected parameters beans are captured as {@code null}, since they
+     * are filled in instead of replaced when they're present.
+     *
+     * @param element the element to read the fields from
+     * @return the captured values
+     * @since 1.10
+     */
+    Object[] snapshot(Element element)
+    throws Exception {
+        var values = new Object[resettable_.length];
+        for (var i = 0; i < resettable_.length; ++i) {
+            var step = resettable_[i];
+            if (i >= injectors_.length || step.kind != Kind.PARAMETERS_BEAN) {
+                values[i] = step.get(element);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Indicates whether captured values can be restored into any number of
+     * element instances, which is only the case when none of them can be
+     * modified since the instances would otherwise share their state.
+     *
+     * @param snapshot the values that were captured by {@link #snapshot}
+     * @return {@code true} if all the values are immutable; or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    static boolean isShareable(Object[] snapshot) {
+        for (var value : snapshot) {
+            if (value != null &&
+                !(value instanceof String ||
+                  value instanceof Boolean ||
+                  value instanceof Character ||
+                  value instanceof Byte ||
+                  value instanceof Short ||
+                  value instanceof Integer ||
+                  value instanceof Long ||
+                  value instanceof Float ||
+                  value instanceof Double ||
+                  value instanceof BigInteger ||
+                  value instanceof BigDecimal ||
+                  value instanceof Enum<?> ||
+                  value instanceof UUID ||
+                  value.getClass().getPackageName().equals("java.time"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restores the injected and out-flow fields of an element to previously
+     * captured values, so that a reused instance never provides the
+     * out-flow values of an earlier request.
+     *
+     * @param element  the element to write the fields of
+     * @param snapshot the values that were captured by {@link #snapshot}
+     * @since 1.10
+     */
+    void restore(Element element, Object[] snapshot)
+    throws Exception {
+        for (var i = 0; i < resettable_.length; ++i) {
+            resettable_[i].set(element, snapshot[i]);
+        }
+    }
+
+    /**
+     * Extracts the out-flow values of the fields of an element into the
+     * context.
+     *
+     * @param element the element to read the fields from
+     * @param context the context to provide the values to
+     * @since 1.10
+     */
+    void extract(Element element, Context context)
+    throws Exception {
+        for (var step : extractors_) {
+            final var name = step.name;
+            var value = step.get(element);
+            switch (step.kind) {
+                case HEADER -> context.addHeader(name, Convert.toString(value));
+                case BODY -> context.print(value);
+                case COOKIE -> context.addCookie(new CookieBuilder(name, Convert.toString(value)));
+                case REQUEST_ATTRIBUTE -> context.setAttribute(name, value);
+                case SESSION_ATTRIBUTE -> context.request().getSession().setAttribute(name, value);
+                default -> throw new IllegalStateException(step.kind.name());
+            }
+        }
+    }
+
+    private static final class Step {
+        private final Kind kind;
+        private final String name;
+        private final Class<?> type;
+        private final Object defaultValue;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final Class<?> elementClass;
+        private final Type listItemType;
+        private final Class<?> listItemClass;
+
+        Step(Kind kind, Field field, MethodHandle getter, MethodHandle setter, Class<?> elementClass) {
+            this.kind = kind;
+            this.elementClass = elementClass;
+            this.type = field.getType();
+            this.defaultValue = Convert.getDefaultValue(type);
+            this.getter = getter;
+            this.setter = setter;
+            this.name = switch (kind) {
+                case PARAMETER -> nameOf(field.getAnnotation(Parameter.class).value(), field);
+                // the prefix of a parameters bean takes the place of its name
+                case PARAMETERS_BEAN -> field.getAnnotation(ParametersBean.class).prefix();
+                case PROPERTY -> nameOf(field.getAnnotation(Property.class).value(), field);
+                case CONFIG -> nameOf(field.getAnnotation(Config.class).value(), field);
+                case HEADER -> nameOf(field.getAnnotation(Header.class).value(), field);
+                case FILE_UPLOAD -> nameOf(field.getAnnotation(FileUpload.class).value(), field);
+                case COOKIE -> nameOf(field.getAnnotation(Cookie.class).value(), field);
+                case REQUEST_ATTRIBUTE -> nameOf(field.getAnnotation(RequestAttribute.class).value(), field);
+                case SESSION_ATTRIBUTE -> nameOf(field.getAnnotation(SessionAttribute.class).value(), field);
+                default -> field.getName();
+            };
+
+            if (Kind.CONFIG == kind &&
+                field.getGenericType() instanceof ParameterizedType param_type &&
+                param_type.getActualTypeArguments().length == 1) {
+                listItemType = param_type.getActualTypeArguments()[0];
+                listItemClass = erasedItemClass(elementClass, listItemType);
+            } else {
+                listItemType = null;
+                listItemClass = null;
+            }
+        }
+
+        private static Class<?> erasedItemClass(Class<?> elementClass, Type itemType) {
+            // resolve the element type against the concrete element class,
+            // so that generic supertypes work
+            var erased = ClassUtils.erasedType(elementClass, itemType);
+            if (erased != Object.class) {
+                return erased;
+            }
+            return null;
+        }
+
+        Class<?> listItemClass(Class<?> concreteClass) {
+            if (null == listItemType) {
+                return null;
+            }
+            // element instances can be subclasses of the class the plan was built for
+            if (concreteClass != elementClass) {
+                return erasedItemClass(concreteClass, listItemType);
+            }
+            return listItemClass;
+        }
+
+        Object convert(Object value) {
+            try {
+                return Convert.toType(value, type);
+            } catch (ConversionException e) {
+                return defaultValue;
+            }
+        }
+
+        Object get(Element element)
+        throws Exception {
+            try {
+                return (Object) getter.invokeExact((Object) element);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new EngineException(e);
+            }
+        }
+
+        void set(Element element, Object value)
+        throws Exception {
+            try {
+                setter.invokeExact((Object) element, value);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new EngineException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Caches the encoded bytes of the text fragments that are written to
+ * responses over and over again, like the static text of templates.
+ * <p>Fragments are recognized by their identity, since the static text of
+ * a template is the same {@code String} instance for every render, while
+ * strings are immutable and can thus never change after they've been
+ * encoded. A fragment is only cached when the same instance is seen a
+ * second time, so that the text that is generated for a single response
+ * doesn't push out the fragments that are reused.
+ * <p>The cache only references the fragments weakly, so that it never
+ * keeps them from being garbage collected, and the total size of the
+ * encoded bytes that it holds is bounded. The entries of fragments that
+ * were garbage collected are removed as soon as this is noticed, which
+ * releases their bytes from that size. Fragments that don't fit in the
+ * remainder of that size aren't cached until other entries are replaced or
+ * removed.
+ * <p>The cache is a fixed-size table that replaces its entries when their
+ * slots collide, and is safe to be used by concurrent requests without
+ * locking since each entry is immutable.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class EncodedFragmentCache {
+    static final int MAX_FRAGMENT_LENGTH = 16 * 1024;
+    static final long MAX_TOTAL_BYTES = 4L * 1024 * 1024;
+
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+
+    private final AtomicReferenceArray<Entry> entries_ = new AtomicReferenceArray<>(CAPACITY);
+    private final int[] candidates_ = new int[CAPACITY];
+    private final AtomicLong totalBytes_ = new AtomicLong();
+    private final ReferenceQueue<String> collected_ = new ReferenceQueue<>();
+
+    private static class Entry extends WeakReference<String> {
+        private final int index_;
+        private final String charset_;
+        private final byte[] bytes_;
+
+        private Entry(int index, String fragment, String charset, byte[] bytes, ReferenceQueue<String> queue) {
+            super(fragment, queue);
+            index_ = index;
+            charset_ = charset;
+            bytes_ = bytes;
+        }
+    }
+
+    /**
+     * Retrieves the encoded bytes of a fragment.
+     *
+     * @param fragment the fragment to encode
+     * @param charset  the name of the charset to encode the fragment with
+     * @return the encoded bytes, which should never be modified
+     * @throws UnsupportedEncodingException when the charset isn't supported
+     * @since 1.10
+     */
+    byte[] getBytes(String fragment, String charset)
+    throws UnsupportedEncodingException {
+        if (fragment.length() > MAX_FRAGMENT_LENGTH) {
+            return fragment.getBytes(charset);
+        }
+
+        var hash = System.identityHashCode(fragment);
+        var index = (hash ^ (hash >>> 16)) & MASK;
+
+        var entry = entries_.get(index);
+        if (entry != null) {
+            var cached = entry.get();
+            if (cached == fragment &&
+                entry.charset_.equals(charset)) {
+                return entry.bytes_;
+            }
+            if (null == cached) {
+                remove(entry);
+                entry = null;
+            }
+        }
+
+        var bytes = fragment.getBytes(charset);
+
+        // only the identity hash of a fragment is remembered the first time
+        // it's seen, this never retains the fragment and a rare false match
+        // merely caches a fragment that isn't reused
+        if (candidates_[index] == hash) {
+            expungeCollected();
+            admit(index, entry, new Entry(index, fragment, charset, bytes, collected_));
+        } else {
+            candidates_[index] = hash;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Retrieves the total size of the encoded bytes that are cached.
+     *
+     * @return the size in bytes
+     * @since 1.10
+     */
+    long totalBytes() {
+        return totalBytes_.get();
+    }
+
+    // removes the entries of the fragments that were garbage collected
+    private void expungeCollected() {
+        Reference<? extends String> collected;
+        while ((collected = collected_.poll()) != null) {
+            remove((Entry) collected);
+        }
+    }
+
+    private void remove(Entry entry) {
+        // the bytes of an entry are only released by the thread that
+        // removes it from its slot
+        if (entries_.compareAndSet(entry.index_, entry, null)) {
+            totalBytes_.addAndGet(-entry.bytes_.length);
+        }
+    }
+
+    private void admit(int index, Entry previous, Entry entry) {
+        var previous_bytes = previous == null ? 0 : previous.bytes_.length;
+        var delta = entry.bytes_.length - previous_bytes;
+        if (delta > 0 &&
+            totalBytes_.addAndGet(delta) > MAX_TOTAL_BYTES) {
+            totalBytes_.addAndGet(-delta);
+            return;
+        }
+
+        if (entries_.compareAndSet(index, previous, entry)) {
+            if (delta < 0) {
+                totalBytes_.addAndGet(delta);
+            }
+        } else if (delta > 0) {
+            // another thread replaced the entry first
+            totalBytes_.addAndGet(-delta);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.engine.exceptions.EngineException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Sends files and classpath resources as the content of a response,
+ * handling conditional and byte range requests.
+ * <p>Hot small files are memory-mapped, and when the output stream of the
+ * servlet container can write a {@code ByteBuffer}, the mapped buffer is
+ * handed over as-is without being copied to the heap. Other files are
+ * transferred from their {@link FileChannel} to a channel that wraps the
+ * output stream, which still copies the content through a heap buffer
+ * since the output stream of a servlet container isn't a channel that the
+ * operating system can transfer to directly.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Context#sendFile(Path)
+ * @see Context#sendResource(String)
+ * @since 1.10
+ */
+final class FileTransfer {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * A single satisfiable byte range of the content, both positions are
+     * inclusive.
+     *
+     * @since 1.10
+     */
+    record ByteRange(long start, long end) {
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void write(OutputStream out, long position, long count)
+        throws IOException;
+    }
+
+    private FileTransfer() {
+        // no-op
+    }
+
+    /**
+     * Sends a file as the content of a response.
+     * <p>A file that can't be opened results in an {@code EngineException},
+     * while failures to write the content are ignored since the client has
+     * then disconnected.
+     *
+     * @param context     the context of the request
+     * @param path        the path of the file
+     * @param contentType the content type of the file; or {@code null} to
+     *                    derive it from the file name
+     * @since 1.10
+     */
+    static void sendFile(Context context, Path path, String contentType) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            notFound(context);
+            return;
+        } catch (IOException e) {
+            throw new EngineException(e);
+        }
+        if (!attributes.isRegularFile()) {
+            notFound(context);
+            return;
+        }
+
+        var size = attributes.size();
+        var last_modified = attributes.lastModifiedTime().toMillis();
+        if (null == contentType) {
+            contentType = guessContentType(path.getFileName().toString());
+        }
+
+        FileChannel opened;
+        try {
+            opened = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            notFound(context);
+            return;
+        } catch (IOException e) {
+            throw new EngineException(e);
+        }
+
+        try (var channel = opened) {
+            var cache = context.site().mappedFileCacheInstance();
+            send(context, contentType, size, last_modified, (out, position, count) -> {
+                ByteBuffer mapping = null;
+                if (cache != null) {
+                    mapping = cache.get(path, channel, size, last_modified);
+                }
+                if (mapping != null) {
+                    mapping.position((int) position);
+                    mapping.limit((int) (position + count));
+                    writeBuffer(out, mapping);
+                } else {
+                    transfer(channel, position, count, out);
+                }
+            });
+        } catch (IOException e) {
+            // don't do anything, the response stream has probably been
+            // closed or reset
+        }
+    }
+
+    /**
+     * Sends a classpath resource as the content of a response, resources
+     * that are files are sent with {@link #sendFile}.
+     * <p>Errors are handled like those of {@link #sendFile}.
+     *
+     * @param context     the context of the request
+     * @param name        the name of the resource
+     * @param contentType the content type of the resource; or {@code null}
+     *                    to derive it from the resource name
+     * @since 1.10
+     */
+    static void sendResource(Context context, String name, String contentType) {
+        if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+
+        URL resource = null;
+        var loader = Thread.currentThread().getContextClassLoader();
+        if (loader != null) {
+            resource = loader.getResource(name);
+        }
+        if (null == resource) {
+            resource = FileTransfer.class.getClassLoader().getResource(name);
+        }
+        if (null == resource) {
+            notFound(context);
+            return;
+        }
+
+        if (null == contentType) {
+            contentType = guessContentType(name);
+        }
+
+        if ("file".equals(resource.getProtocol())) {
+            try {
+                sendFile(context, Path.of(resource.toURI()), contentType);
+                return;
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // fall back to reading the resource
+            }
+        }
+
+        URLConnection connection;
+        long size;
+        try {
+            connection = resource.openConnection();
+            size = connection.getContentLengthLong();
+            if (size < 0) {
+                try (var in = connection.getInputStream()) {
+                    size = in.transferTo(OutputStream.nullOutputStream());
+                }
+                connection = resource.openConnection();
+            }
+        } catch (IOException e) {
+            throw new EngineException(e);
+        }
+
+        var resource_connection = connection;
+        try {
+            send(context, contentType, size, connection.getLastModified(), (out, position, count) -> {
+                try (var in = resource_connection.getInputStream()) {
+                    in.skipNBytes(position);
+                    copy(in, out, count);
+                }
+            });
+        } catch (IOException e) {
+            // don't do anything, the response stream has probably been
+            // closed or reset
+        }
+    }
+
+    // content that was printed before doesn't belong to the response of a
+    // missing file
+    private static void notFound(Context context) {
+        context.response().clearBuffer();
+        context.setStatus(Context.SC_NOT_FOUND);
+    }
+
+    private static void send(Context context, String contentType, long size, long lastModified, Body body)
+    throws IOException {
+        var request = context.request();
+        var response = context.response();
+        response.clearBuffer();
+
+        // HTTP dates only have a precision of seconds
+        lastModified = lastModified - lastModified % 1000;
+        var etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+
+        context.setHeader("Accept-Ranges", "bytes");
+        context.setHeader("ETag", etag);
+        if (lastModified > 0) {
+            context.setDateHeader("Last-Modified", lastModified);
+        }
+
+        if (isNotModified(request, etag, lastModified)) {
+            context.setStatus(Context.SC_NOT_MODIFIED);
+            return;
+        }
+
+        context.setContentType(contentType);
+
+        var start = 0L;
+        var length = size;
+        var range_header = request.getHeader("Range");
+        if (range_header != null &&
+            request.getMethod() == RequestMethod.GET &&
+            isRangeValid(request, etag, lastModified)) {
+            var range = parseRange(range_header, size);
+            if (ByteRange.UNSATISFIABLE == range) {
+                context.setStatus(Context.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                context.setHeader("Content-Range", "bytes */" + size);
+                return;
+            }
+            if (range != null) {
+                context.setStatus(Context.SC_PARTIAL_CONTENT);
+                context.setHeader("Content-Range", "bytes " + range.start() + "-" + range.end() + "/" + size);
+                start = range.start();
+                length = range.length();
+            }
+        }
+
+        context.setHeader("Content-Length", Long.toString(length));
+        if (request.getMethod() == RequestMethod.HEAD ||
+            0 == length) {
+            return;
+        }
+
+        OutputStream out;
+        if (response instanceof AbstractResponse abstract_response) {
+            out = abstract_response.directOutputStream();
+        } else {
+            out = response.getOutputStream();
+        }
+        body.write(out, start, length);
+        out.flush();
+    }
+
+    private static boolean isNotModified(Request request, String etag, long lastModified) {
+        var method = request.getMethod();
+        if (method != RequestMethod.GET &&
+            method != RequestMethod.HEAD) {
+            return false;
+        }
+
+        // If-Modified-Since is ignored when If-None-Match is present
+        var if_none_match = request.getHeader("If-None-Match");
+        if (if_none_match != null) {
+            return AbstractResponse.matchesETag(if_none_match, etag);
+        }
+
+        if (lastModified > 0) {
+            var if_modified_since = dateHeader(request, "If-Modified-Since");
+            return if_modified_since >= lastModified;
+        }
+
+        return false;
+    }
+
+    private static boolean isRangeValid(Request request, String etag, long lastModified) {
+        var if_range = request.getHeader("If-Range");
+        if (null == if_range) {
+            return true;
+        }
+
+        // If-Range requires a strong comparison of the entity tag
+        if (if_range.startsWith("\"") || if_range.startsWith("W/")) {
+            return if_range.equals(etag);
+        }
+
+        return lastModified > 0 &&
+               dateHeader(request, "If-Range") == lastModified;
+    }
+
+    private static long dateHeader(Request request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the value of a {@code Range} header.
+     * <p>Only single byte ranges are supported, a request for multiple
+     * ranges is answered with the complete content, as allowed by the
+     * HTTP specification.
+     *
+     * @param header the value of the {@code Range} header
+     * @param size   the size of the content
+     * @return the requested range; or
+     * <p>{@link ByteRange#UNSATISFIABLE} if it lies beyond the content; or
+     * <p>{@code null} if the header should be ignored
+     * @since 1.10
+     */
+    static ByteRange parseRange(String header, long size) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        var spec = header.substring("bytes=".length()).trim();
+        if (spec.indexOf(',') != -1) {
+            return null;
+        }
+
+        var dash = spec.indexOf('-');
+        if (-1 == dash) {
+            return null;
+        }
+
+        try {
+            // a suffix range provides the length of the end of the content
+            if (0 == dash) {
+                var suffix = Long.parseLong(spec.substring(1).trim());
+                if (suffix <= 0 || 0 == size) {
+                    return ByteRange.UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, size - suffix), size - 1);
+            }
+
+            var start = Long.parseLong(spec.substring(0, dash).trim());
+            var end = size - 1;
+            if (dash < spec.length() - 1) {
+                end = Long.parseLong(spec.substring(dash + 1).trim());
+                if (end < start) {
+                    return null;
+                }
+                end = Math.min(end, size - 1);
+            }
+            if (start < 0) {
+                return null;
+            }
+            if (start >= size) {
+                return ByteRange.UNSATISFIABLE;
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static String guessContentType(String name) {
+        var content_type = URLConnection.guessContentTypeFromName(name);
+        if (null == content_type) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+        return content_type;
+    }
+
+    private static void transfer(FileChannel channel, long position, long count, OutputStream out)
+    throws IOException {
+        var target = Channels.newChannel(out);
+        while (count > 0) {
+            var transferred = channel.transferTo(position, count, target);
+            if (transferred <= 0) {
+                // the file was truncated while it was being sent
+                break;
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, long count)
+    throws IOException {
+        var buffer = new byte[(int) Math.min(count, 8192)];
+        while (count > 0) {
+            var read = in.read(buffer, 0, (int) Math.min(count, buffer.length));
+            if (-1 == read) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            count -= read;
+        }
+    }
+
+    // servlet containers that can write a buffer without copying it
+    // expose this through their output stream class
+    private static final ClassValue<Method> BUFFER_WRITERS = new ClassValue<>() {
+        @Override
+        protected Method computeValue(Class<?> type) {
+            try {
+                var method = type.getMethod("write", ByteBuffer.class);
+                if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // not available
+            }
+            return null;
+        }
+    };
+
+    private static void writeBuffer(OutputStream out, ByteBuffer buffer)
+    throws IOException {
+        var writer = BUFFER_WRITERS.get(out.getClass());
+        if (writer != null) {
+            try {
+                writer.invoke(out, buffer);
+                return;
+            } catch (ReflectiveOperationException e) {
+                if (e.getCause() instanceof IOException io_exception) {
+                    throw io_exception;
+                }
+                // fall back to writing through a channel
+            }
+        }
+
+        var target = Channels.newChannel(out);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+}
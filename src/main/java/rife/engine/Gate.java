@@ -106,6 +106,10 @@ public class Gate {
             elementUrl = elementUrl.substring(0, path_parameters_index);
         }
 
+        if (response instanceof AbstractResponse abstract_response) {
+            abstract_response.site(site_);
+        }
+
         // Handle the request
         // check if an exception occurred during the initialization
         if (initException_ != null) {
@@ -114,7 +118,7 @@ public class Gate {
         }
 
         // Set up the element request and process it.
-        var match = site_.findRouteForRequest(request, elementUrl);
+        var match = site_.findCachedRouteForRequest(request, elementUrl);
         // If no element was found, don't continue executing the gate logic.
         // This could allow a next filter in the chain to be executed.
         if (null == match) {
@@ -122,6 +126,20 @@ public class Gate {
         }
 
         var context = new Context(gateUrl, site_, request, response, match);
+
+        // serve the cached rendering of the route before any element is
+        // processed, or capture the rendering so that it can be cached
+        var render_key = site_.renderCacheKey(request, match, context.parameters());
+        if (render_key != null) {
+            var rendering = site_.cachedRendering(render_key, request);
+            if (rendering != null) {
+                rendering.serve(request, response);
+                response.close();
+                return true;
+            }
+            context.captureRendering();
+        }
+
         try {
             context.process();
             if (!isDetached(response)) {
@@ -130,8 +148,14 @@ public class Gate {
                 var sse_connection = context.sseConnection();
                 if (sse_connection != null) {
                     sse_connection.close();
+                } else {
+                    if (render_key != null) {
+                        context.storeRendering(render_key);
+                    }
+                    context.applyETag();
                 }
                 response.close();
+                context.releasePooledElements();
             }
         } catch (RedirectException e) {
             var sse_connection = sseConnection(context, response);
@@ -162,10 +186,17 @@ public class Gate {
                     Logger.getLogger("rife.engine").severe(message + "\n" + ExceptionUtils.getExceptionStackTrace(e));
                 }
                 sse_connection.close();
+            } else if (context.abortAsyncBody(e, () -> handleAsyncRequestException(e, context))) {
+                // the body subscriber can still be writing the response,
+                // which is completed once the body stopped being published
             } else {
                 handleRequestException(e, context);
                 response.close();
             }
+        } finally {
+            // a response that waits for the asynchronous request body
+            // completes once both the body and the element are done
+            context.releaseAsyncBody();
         }
 
         return true;
@@ -237,6 +268,17 @@ public class Gate {
         printExceptionDetails(exception, c.response());
     }
 
+    private void handleAsyncRequestException(Throwable exception, Context c) {
+        try {
+            handleRequestException(exception, c);
+        } catch (RuntimeException e) {
+            // the exception can't be thrown to the servlet container anymore
+            // once the request is processed asynchronously
+            c.response().clearBuffer();
+            c.response().setStatus(Context.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
     private void printExceptionDetails(Throwable exception, Response response) {
         response.clearBuffer();
 
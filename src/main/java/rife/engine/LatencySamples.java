@@ -0,0 +1,66 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent durations of an operation, from which percentiles
+ * are computed on demand.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class LatencySamples {
+    static final int CAPACITY = 1024;
+
+    private final long[] samples_ = new long[CAPACITY];
+    private long count_ = 0;
+    private long max_ = 0;
+
+    synchronized void record(long nanos) {
+        samples_[(int) (count_ % CAPACITY)] = nanos;
+        count_ += 1;
+        if (nanos > max_) {
+            max_ = nanos;
+        }
+    }
+
+    synchronized long count() {
+        return count_;
+    }
+
+    synchronized long max() {
+        return max_;
+    }
+
+    /**
+     * Computes percentiles over the retained samples.
+     *
+     * @param percentiles the percentiles to compute, between {@code 0} and
+     *                    {@code 100}
+     * @return the value of each percentile; or {@code 0} for each when no
+     * samples were recorded
+     * @since 1.10
+     */
+    long[] percentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples_, (int) Math.min(count_, CAPACITY));
+        }
+        Arrays.sort(sorted);
+
+        var result = new long[percentiles.length];
+        if (0 == sorted.length) {
+            return result;
+        }
+        for (var i = 0; i < percentiles.length; i++) {
+            // nearest-rank percentile
+            var rank = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length);
+            result[i] = sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+        }
+        return result;
+    }
+}
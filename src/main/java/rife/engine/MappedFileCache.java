@@ -0,0 +1,112 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of memory-mapped files, bounded by the total
+ * size of the mapped files.
+ * <p>Only small files are mapped, and only once they're requested a second
+ * time, so that files that are sent once don't push the hot ones out. The
+ * size and modification time of a file are part of its key, a changed file
+ * is mapped again.
+ * <p>The mappings can't be released explicitly, evicted files stay mapped
+ * until the garbage collector reclaims their buffers.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Site#mappedFileCache(long)
+ * @since 1.10
+ */
+final class MappedFileCache {
+    static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    private final long capacity_;
+    private final LinkedHashMap<Key, MappedByteBuffer> mappings_ = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Boolean> candidates_ = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+            return size() > 1024;
+        }
+    };
+    private long size_ = 0;
+
+    private record Key(Path path, long size, long lastModified) {
+    }
+
+    MappedFileCache(long capacity) {
+        capacity_ = capacity;
+    }
+
+    long capacity() {
+        return capacity_;
+    }
+
+    /**
+     * Retrieves the mapped content of a file, mapping it when it's
+     * requested for the second time.
+     *
+     * @param path         the path of the file
+     * @param channel      the open channel of the file
+     * @param size         the size of the file
+     * @param lastModified the modification time of the file
+     * @return a read-only view on the mapped content of the file; or
+     * <p>{@code null} if the file isn't mapped
+     * @throws IOException when the file couldn't be mapped
+     * @since 1.10
+     */
+    ByteBuffer get(Path path, FileChannel channel, long size, long lastModified)
+    throws IOException {
+        if (size > MAX_FILE_SIZE ||
+            size > capacity_ ||
+            0 == size) {
+            return null;
+        }
+
+        var key = new Key(path, size, lastModified);
+        synchronized (this) {
+            var mapping = mappings_.get(key);
+            if (mapping != null) {
+                return mapping.asReadOnlyBuffer();
+            }
+
+            if (null == candidates_.put(key, Boolean.TRUE)) {
+                return null;
+            }
+            candidates_.remove(key);
+        }
+
+        // a mapping stays valid after its channel is closed
+        var mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        synchronized (this) {
+            var existing = mappings_.putIfAbsent(key, mapping);
+            if (existing != null) {
+                return existing.asReadOnlyBuffer();
+            }
+
+            size_ += size;
+            var iterator = mappings_.entrySet().iterator();
+            while (size_ > capacity_ && iterator.hasNext()) {
+                var eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                size_ -= eldest.getKey().size();
+                iterator.remove();
+            }
+        }
+        return mapping.asReadOnlyBuffer();
+    }
+
+    synchronized long size() {
+        return size_;
+    }
+}
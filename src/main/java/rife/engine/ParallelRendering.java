@@ -0,0 +1,109 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.engine.exceptions.EngineException;
+import rife.template.Template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Computes the content of independent template values concurrently and
+ * assigns them to the template, so that a page takes as long as its
+ * slowest section instead of the sum of all of them.
+ * <pre>c.parallel(t)
+ *     .value("orders", () -> renderOrders(customer))
+ *     .value("invoices", () -> renderInvoices(customer))
+ *     .assign();
+ * c.print(t);</pre>
+ * <p>Each computation runs on the {@link Site#renderExecutor() render
+ * executor} of the site. When all of them succeeded, the results are
+ * assigned on the request thread in the order in which the values were
+ * declared, regardless of the order in which they completed. As soon as one
+ * computation fails, the others are cancelled and its failure is thrown as
+ * an {@link EngineException}, without assigning any value.
+ * <p>The computations run on other threads than the request, so they
+ * shouldn't use the {@code Context} or modify the assigned template. They
+ * can return any object, whose string representation is assigned, or
+ * another {@link Template} instance, whose filtered tags are processed on
+ * the request thread before its content is assigned.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Context#parallel(Template)
+ * @see ProgressiveRendering
+ * @since 1.10
+ */
+public class ParallelRendering {
+    private final Context context_;
+    private final Template template_;
+    private final List<String> valueIds_ = new ArrayList<>();
+    private final List<Callable<?>> computations_ = new ArrayList<>();
+
+    ParallelRendering(Context context, Template template) {
+        if (null == template) throw new IllegalArgumentException("template can't be null");
+
+        context_ = context;
+        template_ = template;
+    }
+
+    /**
+     * Adds the computation of the content of a template value.
+     *
+     * @param valueId     the id of the template value
+     * @param computation the computation that provides the content of the
+     *                    value
+     * @return this {@code ParallelRendering} instance, so that method calls
+     * can be chained
+     * @since 1.10
+     */
+    public ParallelRendering value(String valueId, Callable<?> computation) {
+        if (null == valueId) throw new IllegalArgumentException("valueId can't be null");
+        if (null == computation) throw new IllegalArgumentException("computation can't be null");
+
+        valueIds_.add(valueId);
+        computations_.add(computation);
+        return this;
+    }
+
+    /**
+     * Runs all the computations concurrently and assigns their results to
+     * the template, this only returns when all of them completed or when
+     * one of them failed.
+     *
+     * @throws EngineException when a computation failed or when the
+     *                         thread was interrupted while waiting for them
+     * @since 1.10
+     */
+    public void assign()
+    throws EngineException {
+        if (computations_.isEmpty()) {
+            return;
+        }
+
+        var tasks = new RenderTasks(context_.site().renderExecutor(), computations_);
+        try {
+            // fail as soon as any computation fails, instead of waiting for
+            // the ones that were declared before it
+            for (var i = 0; i < computations_.size(); ++i) {
+                tasks.result(tasks.nextCompleted());
+            }
+
+            var texts = new String[valueIds_.size()];
+            for (var i = 0; i < texts.length; ++i) {
+                texts[i] = tasks.text(context_, i);
+            }
+            for (var i = 0; i < texts.length; ++i) {
+                template_.setValue(valueIds_.get(i), texts[i]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EngineException(e);
+        } finally {
+            tasks.cancel();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches a path info against the mappings of a series of
+ * {@link PathInfoType#MAP} routes in one pass.
+ * <p>The regular expressions of all the mappings are combined into a single
+ * ordered alternation, where each mapping is wrapped in its own capturing
+ * group. The first mapping that matches the whole path info wins, exactly
+ * like when the mappings are tried one after the other, and the groups of
+ * that alternative provide the values of the mapped parameters.
+ * <p>Mappings whose regular expressions can't be combined, for instance
+ * because they use back references or named groups, are matched one after
+ * the other instead.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class PathInfoMatcher {
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:\\d|k<)|\\(\\?<[a-zA-Z]");
+
+    private final Route[] routes_;
+    private final PathInfoMapping[] mappings_;
+    private final int[] groups_;
+    private final Pattern combined_;
+
+    PathInfoMatcher(Route[] routes) {
+        var routes_list = new ArrayList<Route>();
+        var mappings_list = new ArrayList<PathInfoMapping>();
+        var groups_list = new ArrayList<Integer>();
+        var combined = new StringBuilder();
+        var combinable = true;
+        var group = 1;
+        for (var route : routes) {
+            for (var mapping : route.pathInfoHandling().mappings()) {
+                var regexp = mapping.regexp();
+                if (BACK_REFERENCE.matcher(regexp.pattern()).find()) {
+                    combinable = false;
+                }
+
+                routes_list.add(route);
+                mappings_list.add(mapping);
+                groups_list.add(group);
+
+                if (!combined.isEmpty()) {
+                    combined.append('|');
+                }
+                combined.append('(').append(regexp.pattern()).append(')');
+                group += regexp.matcher("").groupCount() + 1;
+            }
+        }
+
+        routes_ = routes_list.toArray(new Route[0]);
+        mappings_ = mappings_list.toArray(new PathInfoMapping[0]);
+        groups_ = new int[groups_list.size()];
+        for (var i = 0; i < groups_.length; ++i) {
+            groups_[i] = groups_list.get(i);
+        }
+
+        Pattern pattern = null;
+        if (combinable && mappings_.length > 1) {
+            try {
+                pattern = Pattern.compile(combined.toString());
+            } catch (PatternSyntaxException e) {
+                pattern = null;
+            }
+        }
+        combined_ = pattern;
+    }
+
+    /**
+     * Matches the path info against the mappings of the routes.
+     *
+     * @param pathInfo the path info to match, without its leading slash
+     * @return the route match with the values of the mapped parameters; or
+     * <p>{@code null} if none of the mappings matched
+     * @since 1.10
+     */
+    RouteMatch match(String pathInfo) {
+        if (combined_ == null) {
+            for (var i = 0; i < mappings_.length; ++i) {
+                var matcher = mappings_[i].regexp().matcher(pathInfo);
+                if (matcher.matches()) {
+                    return new RouteMatch(routes_[i], pathInfo, parameters(mappings_[i], matcher, 1));
+                }
+            }
+            return null;
+        }
+
+        var matcher = combined_.matcher(pathInfo);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        for (var i = 0; i < mappings_.length; ++i) {
+            if (matcher.start(groups_[i]) != -1) {
+                return new RouteMatch(routes_[i], pathInfo, parameters(mappings_[i], matcher, groups_[i] + 1));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Matches a path info against the mappings of a single route, one after
+     * the other.
+     *
+     * @param route    the route whose mappings will be matched
+     * @param pathInfo the path info to match, without its leading slash
+     * @return the values of the mapped parameters; or
+     * <p>{@code null} if none of the mappings matched
+     * @since 1.10
+     */
+    static Map<String, String> matchParameters(Route route, String pathInfo) {
+        for (var mapping : route.pathInfoHandling().mappings()) {
+            var matcher = mapping.regexp().matcher(pathInfo);
+            if (matcher.matches()) {
+                return parameters(mapping, matcher, 1);
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> parameters(PathInfoMapping mapping, Matcher matcher, int firstGroup) {
+        var parameters = mapping.parameters();
+        if (parameters.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        var result = new LinkedHashMap<String, String>(parameters.size() * 2);
+        var group = firstGroup;
+        for (var parameter : parameters) {
+            result.put(parameter, matcher.group(group++));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.engine.exceptions.EngineException;
+import rife.template.Template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Prints a template progressively, sending its skeleton to the client
+ * right away while the content of its slow values is still being computed.
+ * <p>Each deferred value is computed concurrently by the
+ * {@link Site#renderExecutor() render executor} of the site and streamed
+ * to the client as soon as it's available. By default, the skeleton is sent
+ * with an empty placeholder in place of each deferred value, and the
+ * content is swapped into its placeholder by a small inline script when it
+ * arrives, in whichever order the values complete:
+ * <pre>c.progressive(t)
+ *     .defer("report", () -> renderReport(filter))
+ *     .defer("chart", () -> renderChart(filter))
+ *     .print();</pre>
+ * <p>A value that is used several times in the template gets a
+ * placeholder for each occurrence, which are all filled with its content.
+ * <p>When the values are streamed {@link #inOrder(boolean) in order}, the
+ * template is sent up to the first deferred value, which is waited for
+ * before sending the content up to the next one, and so on. This doesn't
+ * need any script, but a slow value holds back all the content that
+ * follows it.
+ * <p>The computations run on other threads than the request, so they
+ * shouldn't use the {@code Context} or modify the printed template. They
+ * can return any object, whose string representation is printed, or
+ * another {@link Template} instance, whose filtered tags are processed on
+ * the request thread before it's printed. When a computation fails, the
+ * others are cancelled and the failure is thrown as an
+ * {@link EngineException}.
+ * <p>The content is flushed after each value, you should enable
+ * {@link Site#streamingCompression(boolean) streaming compression} for it
+ * to reach the client right away when the response is compressed.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Context#progressive(Template)
+ * @since 1.10
+ */
+public class ProgressiveRendering {
+    private static final String MARKER_PREFIX = "\u0000rife-progressive-";
+    private static final String MARKER_SUFFIX = "\u0000";
+    private static final String SWAP_SCRIPT = "<script>function rifeSwap(n,k){var c=document.getElementById('rife-fill-'+n);if(!c)return;for(var i=0;i<k;i++){var p=document.getElementById('rife-slot-'+n+'-'+i);if(p)p.replaceWith(c.content.cloneNode(true));}c.remove();}</script>";
+
+    private final Context context_;
+    private final Template template_;
+    private final List<String> valueIds_ = new ArrayList<>();
+    private final List<Callable<?>> computations_ = new ArrayList<>();
+    private boolean inOrder_ = false;
+
+    ProgressiveRendering(Context context, Template template) {
+        if (null == template) throw new IllegalArgumentException("template can't be null");
+
+        context_ = context;
+        template_ = template;
+    }
+
+    /**
+     * Defers the content of a template value to a computation that will
+     * run concurrently with the other ones.
+     *
+     * @param valueId     the id of the template value
+     * @param computation the computation that provides the content of the
+     *                    value
+     * @return this {@code ProgressiveRendering} instance, so that method
+     * calls can be chained
+     * @since 1.10
+     */
+    public ProgressiveRendering defer(String valueId, Callable<?> computation) {
+        if (null == valueId) throw new IllegalArgumentException("valueId can't be null");
+        if (null == computation) throw new IllegalArgumentException("computation can't be null");
+
+        valueIds_.add(valueId);
+        computations_.add(computation);
+        return this;
+    }
+
+    /**
+     * Sets whether the deferred values are streamed in the order in which
+     * they appear in the template, instead of being swapped into
+     * placeholders as they complete.
+     *
+     * @param inOrder {@code true} to stream the values in order; or
+     *                <p>{@code false} to swap them into placeholders, which
+     *                is the default
+     * @return this {@code ProgressiveRendering} instance, so that method
+     * calls can be chained
+     * @since 1.10
+     */
+    public ProgressiveRendering inOrder(boolean inOrder) {
+        inOrder_ = inOrder;
+        return this;
+    }
+
+    /**
+     * Starts the deferred computations and prints the template
+     * progressively, this only returns when all the content has been
+     * printed.
+     *
+     * @throws EngineException when a computation failed or when the
+     *                         thread was interrupted while waiting for them
+     * @since 1.10
+     */
+    public void print()
+    throws EngineException {
+        // start the computations before rendering the skeleton, so that
+        // they can progress while it's being sent
+        var tasks = new RenderTasks(context_.site().renderExecutor(), computations_);
+        try {
+            for (var i = 0; i < valueIds_.size(); ++i) {
+                template_.setValue(valueIds_.get(i), marker(i));
+            }
+            context_.ensureContentType(template_);
+            var content = context_.renderTemplate(template_);
+
+            if (inOrder_) {
+                printInOrder(content, tasks);
+            } else {
+                printSwapped(content, tasks);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EngineException(e);
+        } finally {
+            tasks.cancel();
+        }
+    }
+
+    private void printInOrder(String content, RenderTasks tasks)
+    throws InterruptedException {
+        var start = 0;
+        while (true) {
+            var marker_start = content.indexOf(MARKER_PREFIX, start);
+            if (-1 == marker_start) {
+                break;
+            }
+            var marker_end = content.indexOf(MARKER_SUFFIX, marker_start + MARKER_PREFIX.length());
+            if (-1 == marker_end) {
+                break;
+            }
+            var index = Integer.parseInt(content.substring(marker_start + MARKER_PREFIX.length(), marker_end));
+
+            context_.print(content.substring(start, marker_start));
+            context_.flush();
+            context_.print(tasks.text(context_, index));
+            start = marker_end + MARKER_SUFFIX.length();
+        }
+        context_.print(content.substring(start));
+        context_.flush();
+    }
+
+    private void printSwapped(String content, RenderTasks tasks)
+    throws InterruptedException {
+        // each occurrence of a value gets its own placeholder, so that the
+        // ids of the placeholders remain unique in the document
+        var occurrences = new int[valueIds_.size()];
+        var skeleton = new StringBuilder(content.length());
+        var start = 0;
+        while (true) {
+            var marker_start = content.indexOf(MARKER_PREFIX, start);
+            if (-1 == marker_start) {
+                break;
+            }
+            var marker_end = content.indexOf(MARKER_SUFFIX, marker_start + MARKER_PREFIX.length());
+            if (-1 == marker_end) {
+                break;
+            }
+            var index = Integer.parseInt(content.substring(marker_start + MARKER_PREFIX.length(), marker_end));
+
+            skeleton.append(content, start, marker_start)
+                .append("<template id=\"rife-slot-").append(index).append('-').append(occurrences[index]).append("\"></template>");
+            occurrences[index]++;
+            start = marker_end + MARKER_SUFFIX.length();
+        }
+        skeleton.append(content, start, content.length());
+
+        var pending = 0;
+        for (var i = 0; i < occurrences.length; ++i) {
+            if (occurrences[i] > 0) {
+                pending++;
+            } else {
+                // the value isn't used in the template
+                tasks.cancel(i);
+            }
+        }
+
+        context_.print(skeleton.toString());
+        if (pending > 0) {
+            context_.print(SWAP_SCRIPT);
+        }
+        context_.flush();
+
+        while (pending > 0) {
+            var index = tasks.nextCompleted();
+            if (tasks.isCancelled(index)) {
+                continue;
+            }
+
+            context_.print("<template id=\"rife-fill-" + index + "\">" + tasks.text(context_, index) + "</template><script>rifeSwap(" + index + "," + occurrences[index] + ")</script>");
+            context_.flush();
+            pending--;
+        }
+    }
+
+    private static String marker(int index) {
+        return MARKER_PREFIX + index + MARKER_SUFFIX;
+    }
+}
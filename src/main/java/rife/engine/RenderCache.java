@@ -0,0 +1,245 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Least recently used cache of the rendered output of the routes that
+ * opted into it.
+ * <p>Entries are looked up in two steps. The primary key consists of the
+ * route, the path info and the parameters that were selected by the
+ * {@link Policy} of the route. The first time a primary key is rendered,
+ * the request headers that the response varies on are remembered for it,
+ * and the values of those headers complete the key of the actual entry.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Site#renderCache(int)
+ * @since 1.10
+ */
+final class RenderCache {
+    private final int capacity_;
+    private final LinkedHashMap<Key, Entry> entries_;
+    private final ConcurrentHashMap<PrimaryKey, String[]> variedHeaders_ = new ConcurrentHashMap<>();
+    private final LongAdder hits_ = new LongAdder();
+    private final LongAdder misses_ = new LongAdder();
+
+    /**
+     * How the output of a route is cached.
+     *
+     * @param ttlNanos   how long the output stays valid, in nanoseconds
+     * @param parameters the names of the parameters that are part of the
+     *                   key; or an empty array if all the parameters are
+     * @since 1.10
+     */
+    record Policy(long ttlNanos, String[] parameters) {
+    }
+
+    record PrimaryKey(Route route, String pathInfo, String parameters) {
+    }
+
+    private record Key(PrimaryKey primary, String varied) {
+    }
+
+    /**
+     * A cached response.
+     *
+     * @param expires     the {@link System#nanoTime()} after which the
+     *                    entry is stale
+     * @param contentType the content type of the response
+     * @param headers     replays the headers of the response
+     * @param body        the encoded content of the response
+     * @param fingerprint the fingerprint of the content for its
+     *                    {@code ETag}; or {@code null} when the response
+     *                    isn't fingerprinted
+     * @since 1.10
+     */
+    record Entry(long expires, String contentType, List<Consumer<Response>> headers, byte[] body, String fingerprint) {
+        void serve(Request request, Response response) {
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            for (var header : headers) {
+                header.accept(response);
+            }
+            if (response instanceof AbstractResponse abstract_response) {
+                // the tag depends on the content coding of this request
+                if (fingerprint != null &&
+                    abstract_response.applyETag(request.getHeader("If-None-Match"), fingerprint)) {
+                    return;
+                }
+                abstract_response.writeEncodedContent(body);
+            } else {
+                try {
+                    response.getOutputStream().write(body);
+                } catch (java.io.IOException e) {
+                    // don't do anything, the response stream has probably been
+                    // closed or reset
+                }
+            }
+        }
+    }
+
+    RenderCache(int capacity) {
+        capacity_ = capacity;
+        entries_ = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity_;
+            }
+        };
+    }
+
+    /**
+     * Creates the primary key of a request for a route.
+     *
+     * @param route      the route that handles the request
+     * @param pathInfo   the path info of the request
+     * @param parameters the parameters of the request
+     * @param policy     the cache policy of the route
+     * @return the primary key
+     * @since 1.10
+     */
+    static PrimaryKey primaryKey(Route route, String pathInfo, Map<String, String[]> parameters, Policy policy) {
+        Collection<String> names;
+        if (policy.parameters().length > 0) {
+            names = Arrays.asList(policy.parameters());
+        } else {
+            names = new TreeSet<>(parameters.keySet());
+        }
+
+        // the separators can't occur in decoded parameters, which keeps
+        // distinct parameter combinations apart
+        var key = new StringBuilder();
+        for (var name : names) {
+            var values = parameters.get(name);
+            if (null == values) {
+                continue;
+            }
+            key.append(name);
+            for (var value : values) {
+                key.append('\u0001').append(value);
+            }
+            key.append('\u0000');
+        }
+
+        return new PrimaryKey(route, pathInfo, key.toString());
+    }
+
+    private static String variedKey(String[] headers, Request request) {
+        if (headers.length == 0) {
+            return "";
+        }
+
+        var key = new StringBuilder();
+        for (var header : headers) {
+            var value = request.getHeader(header);
+            if (value != null) {
+                key.append(value);
+            }
+            key.append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Retrieves the cached response for a request.
+     *
+     * @param primary the primary key of the request
+     * @param request the request, whose headers complete the key
+     * @return the cached response; or
+     * <p>{@code null} if it isn't cached or if it's stale
+     * @since 1.10
+     */
+    Entry get(PrimaryKey primary, Request request) {
+        var headers = variedHeaders_.get(primary);
+        if (null == headers) {
+            misses_.increment();
+            return null;
+        }
+
+        var key = new Key(primary, variedKey(headers, request));
+        Entry entry;
+        synchronized (entries_) {
+            entry = entries_.get(key);
+            if (entry != null &&
+                entry.expires() - System.nanoTime() < 0) {
+                entries_.remove(key);
+                entry = null;
+            }
+        }
+
+        if (null == entry) {
+            misses_.increment();
+        } else {
+            hits_.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the rendered response for a request.
+     *
+     * @param primary       the primary key of the request
+     * @param variedHeaders the names of the request headers that the
+     *                      response varies on
+     * @param request       the request, whose headers complete the key
+     * @param entry         the response to cache
+     * @since 1.10
+     */
+    void put(PrimaryKey primary, String[] variedHeaders, Request request, Entry entry) {
+        variedHeaders_.put(primary, variedHeaders);
+
+        var key = new Key(primary, variedKey(variedHeaders, request));
+        synchronized (entries_) {
+            entries_.put(key, entry);
+
+            // forget the varied headers of the keys that are no longer cached
+            if (variedHeaders_.size() > capacity_ * 2) {
+                var primaries = new HashSet<PrimaryKey>();
+                for (var cached : entries_.keySet()) {
+                    primaries.add(cached.primary());
+                }
+                variedHeaders_.keySet().retainAll(primaries);
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached responses.
+     *
+     * @since 1.10
+     */
+    void invalidate() {
+        synchronized (entries_) {
+            entries_.clear();
+            variedHeaders_.clear();
+        }
+    }
+
+    /**
+     * Removes all the cached responses of a route.
+     *
+     * @param route the route whose responses should be removed
+     * @since 1.10
+     */
+    void invalidate(Route route) {
+        synchronized (entries_) {
+            entries_.keySet().removeIf(key -> key.primary().route() == route);
+            variedHeaders_.keySet().removeIf(key -> key.route() == route);
+        }
+    }
+
+    RenderCacheStats stats() {
+        int size;
+        synchronized (entries_) {
+            size = entries_.size();
+        }
+        return new RenderCacheStats(capacity_, size, hits_.sum(), misses_.sum());
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+/**
+ * Provides a snapshot of the state of the render cache of a {@link Site},
+ * which is intended to help you tune its capacity and the time-to-live of
+ * the cached routes.
+ *
+ * @param capacity the configured cache capacity
+ * @param size     the number of rendered responses that are currently
+ *                 cached
+ * @param hits     the number of requests that were served from the cache
+ * @param misses   the number of requests for cached routes that had to be
+ *                 rendered by their elements
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Site#renderCacheStats()
+ * @see Site#renderCache(int)
+ * @since 1.10
+ */
+public record RenderCacheStats(int capacity, int size, long hits, long misses) {
+    public String toString() {
+        return "capacity: " + capacity +
+               ", size: " + size +
+               ", hits: " + hits +
+               ", misses: " + misses;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.engine.exceptions.EngineException;
+import rife.template.Template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs the computations of the content of a page concurrently, while
+ * keeping track of the order in which they complete.
+ * <p>The results are only converted to text on the thread of the request,
+ * since templates have to be processed with its {@link Context}.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see ProgressiveRendering
+ * @see ParallelRendering
+ * @since 1.10
+ */
+final class RenderTasks {
+    private final List<FutureTask<Object>> futures_;
+    private final BlockingQueue<Integer> completed_ = new LinkedBlockingQueue<>();
+
+    RenderTasks(Executor executor, List<Callable<?>> computations) {
+        futures_ = new ArrayList<>(computations.size());
+        for (var i = 0; i < computations.size(); ++i) {
+            var index = i;
+            futures_.add(new FutureTask<>(computations.get(i)) {
+                @Override
+                protected void done() {
+                    completed_.add(index);
+                }
+            });
+        }
+
+        // only start when all the tasks exist, so that a task that
+        // completes right away can't be missed by a cancellation
+        try {
+            for (var future : futures_) {
+                executor.execute(future);
+            }
+        } catch (RejectedExecutionException e) {
+            cancel();
+            throw new EngineException(e);
+        }
+    }
+
+    /**
+     * Waits for the next computation to complete, including the ones that
+     * failed or were cancelled.
+     *
+     * @return the index of the computation that completed
+     * @throws InterruptedException when the thread was interrupted while
+     *                              waiting
+     * @since 1.10
+     */
+    int nextCompleted()
+    throws InterruptedException {
+        return completed_.take();
+    }
+
+    boolean isCancelled(int index) {
+        return futures_.get(index).isCancelled();
+    }
+
+    void cancel(int index) {
+        futures_.get(index).cancel(true);
+    }
+
+    /**
+     * Cancels all the computations that are still running.
+     *
+     * @since 1.10
+     */
+    void cancel() {
+        for (var future : futures_) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Waits for the result of a computation.
+     *
+     * @param index the index of the computation
+     * @return the result of the computation
+     * @throws EngineException      when the computation failed, with the
+     *                              failure as its cause
+     * @throws InterruptedException when the thread was interrupted while
+     *                              waiting
+     * @since 1.10
+     */
+    Object result(int index)
+    throws InterruptedException {
+        try {
+            return futures_.get(index).get();
+        } catch (ExecutionException e) {
+            throw new EngineException(e.getCause());
+        }
+    }
+
+    /**
+     * Waits for the result of a computation and renders it as text.
+     *
+     * @param context the context of the request
+     * @param index   the index of the computation
+     * @return the rendered result of the computation
+     * @throws EngineException      when the computation failed, with the
+     *                              failure as its cause
+     * @throws InterruptedException when the thread was interrupted while
+     *                              waiting
+     * @since 1.10
+     */
+    String text(Context context, int index)
+    throws InterruptedException {
+        var result = result(index);
+        if (result instanceof Template template) {
+            return context.renderTemplate(template);
+        }
+        if (null == result) {
+            return "";
+        }
+        return String.valueOf(result);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.*;
+
+/**
+ * Copy-on-write view of the parameters of a {@link Context}.
+ * <p>The parameters of the request are only obtained when they're first
+ * read, and the values that were captured by the path info mapping are
+ * overlaid on top of them. Reading a parameter never copies anything, a
+ * mutable copy of the combined parameters is only created when they're
+ * modified or iterated over.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class RequestParameters extends AbstractMap<String, String[]> {
+    private final Request request_;
+    private final Map<String, String[]> overlay_;
+    private Map<String, String[]> base_ = null;
+    private Map<String, String[]> copy_ = null;
+
+    RequestParameters(Request request, Map<String, String> overlay) {
+        request_ = request;
+        if (overlay.isEmpty()) {
+            overlay_ = Collections.emptyMap();
+        } else {
+            var values = new LinkedHashMap<String, String[]>(overlay.size() * 2);
+            for (var entry : overlay.entrySet()) {
+                values.put(entry.getKey(), new String[]{entry.getValue()});
+            }
+            overlay_ = values;
+        }
+    }
+
+    private Map<String, String[]> base() {
+        var base = base_;
+        if (null == base) {
+            base = request_.getParameters();
+            if (null == base) {
+                base = Collections.emptyMap();
+            }
+            base_ = base;
+        }
+        return base;
+    }
+
+    private Map<String, String[]> copy() {
+        if (null == copy_) {
+            var copy = new LinkedHashMap<>(base());
+            copy.putAll(overlay_);
+            copy_ = copy;
+        }
+        return copy_;
+    }
+
+    @Override
+    public String[] get(Object key) {
+        if (copy_ != null) {
+            return copy_.get(key);
+        }
+
+        var overlaid = overlay_.get(key);
+        if (overlaid != null) {
+            return overlaid;
+        }
+        return base().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (copy_ != null) {
+            return copy_.containsKey(key);
+        }
+
+        return overlay_.containsKey(key) || base().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        if (copy_ != null) {
+            return copy_.size();
+        }
+
+        var base = base();
+        var size = base.size();
+        for (var key : overlay_.keySet()) {
+            if (!base.containsKey(key)) {
+                size += 1;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (copy_ != null) {
+            return copy_.isEmpty();
+        }
+
+        return overlay_.isEmpty() && base().isEmpty();
+    }
+
+    @Override
+    public String[] put(String key, String[] value) {
+        return copy().put(key, value);
+    }
+
+    @Override
+    public String[] remove(Object key) {
+        return copy().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        copy().clear();
+    }
+
+    @Override
+    public Set<Entry<String, String[]>> entrySet() {
+        return copy().entrySet();
+    }
+}
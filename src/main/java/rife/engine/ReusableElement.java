@@ -0,0 +1,25 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+/**
+ * Lifecycle hook for element classes that are declared
+ * {@link rife.engine.annotations.Reusable reusable}.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+public interface ReusableElement extends Element {
+    /**
+     * Clears the state that this element accumulated while processing a
+     * request, before the instance is used for another one.
+     * <p>The fields that receive injected values or that provide out-flow
+     * values are already restored by the engine. When this method throws an exception, the instance
+     * is discarded.
+     *
+     * @since 1.10
+     */
+    void reset();
+}
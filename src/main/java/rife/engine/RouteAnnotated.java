@@ -4,15 +4,10 @@
  */
 package rife.engine;
 
-import rife.engine.annotations.*;
+import rife.continuations.instrument.ContinuationsBytecodeTransformer;
 import rife.engine.exceptions.EngineException;
 import rife.tools.*;
-import rife.tools.exceptions.ConversionException;
 
-import java.io.File;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
 import java.util.*;
 
 abstract class RouteAnnotated implements Route {
@@ -21,7 +16,10 @@ abstract class RouteAnnotated implements Route {
     protected String path_;
     protected final PathInfoHandling pathInfoHandling_;
     protected final Class<? extends Element> elementClass_;
-    protected List<Field> fields_ = null;
+    private ElementInjectionPlan plan_ = null;
+    private volatile Boolean resumable_ = null;
+
+    private static final EngineContinuationConfigInstrument CONTINUATION_CONFIG = new EngineContinuationConfigInstrument();
 
     RouteAnnotated(Router router, RequestMethod[] methods, String path, PathInfoHandling pathInfoHandling, Class<? extends Element> elementClass) {
         router_ = router;
@@ -57,348 +55,82 @@ abstract class RouteAnnotated implements Route {
         return pathInfoHandling_;
     }
 
-    private static boolean shouldProcessInFlow(FlowDirection flow) {
-        return flow == FlowDirection.IN || flow == FlowDirection.IN_OUT;
+    /**
+     * Indicates whether the element class of this route can be part of a
+     * continuation, which is only the case when the continuations
+     * instrumentation makes it resumable.
+     * <p>This is detected from the bytecode of the element class and its
+     * superclasses, in the same way as the instrumentation does it. When
+     * the bytecode isn't available, the element class is considered to be
+     * resumable.
+     *
+     * @return {@code true} if the element class can be resumable; or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    boolean isResumable() {
+        var resumable = resumable_;
+        if (null == resumable) {
+            resumable = detectResumable(elementClass_);
+            resumable_ = resumable;
+        }
+        return resumable;
     }
 
-    private static boolean shouldProcessOutFlow(FlowDirection flow) {
-        return flow == FlowDirection.OUT || flow == FlowDirection.IN_OUT;
-    }
+    private static boolean detectResumable(Class<?> elementClass) {
+        Class<?> klass = elementClass;
+        while (klass != null && Element.class.isAssignableFrom(klass)) {
+            try (var stream = klass.getResourceAsStream("/" + klass.getName().replace('.', '/') + ".class")) {
+                if (null == stream ||
+                    ContinuationsBytecodeTransformer.isResumable(CONTINUATION_CONFIG, stream.readAllBytes(), klass.getName())) {
+                    return true;
+                }
+            } catch (Exception e) {
+                return true;
+            }
 
-    private List<Field> getAnnotatedFields() {
-        if (fields_ != null) {
-            return fields_;
+            klass = klass.getSuperclass();
         }
 
-        List<Field> fields = new ArrayList<>();
-        try {
-            Class klass = elementClass_;
-            while (klass != null && klass != Element.class) {
-                for (var field : klass.getDeclaredFields()) {
-                    field.setAccessible(true);
-
-                    if (Modifier.isStatic(field.getModifiers()) ||
-                        Modifier.isFinal(field.getModifiers()) ||
-                        Modifier.isTransient(field.getModifiers())) {
-                        continue;
-                    }
-
-                    if (field.isAnnotationPresent(ActiveSite.class) ||
-                        field.isAnnotationPresent(Body.class) ||
-                        field.isAnnotationPresent(Config.class) ||
-                        field.isAnnotationPresent(Cookie.class) ||
-                        field.isAnnotationPresent(FileUpload.class) ||
-                        field.isAnnotationPresent(Header.class) ||
-                        field.isAnnotationPresent(Parameter.class) ||
-                        field.isAnnotationPresent(ParametersBean.class) ||
-                        field.isAnnotationPresent(PathInfo.class) ||
-                        field.isAnnotationPresent(Property.class) ||
-                        field.isAnnotationPresent(RequestAttribute.class) ||
-                        field.isAnnotationPresent(SessionAttribute.class)) {
-                        fields.add(field);
-                    }
-                }
+        return false;
+    }
 
-                klass = klass.getSuperclass();
-            }
-        } catch (Exception e) {
-            throw new EngineException(e);
+    ElementInjectionPlan getInjectionPlan() {
+        var plan = plan_;
+        if (plan != null) {
+            return plan;
         }
 
-        fields_ = fields;
-        return fields;
+        // the plan is immutable, building it more than once is harmless
+        plan = new ElementInjectionPlan(elementClass_, pathInfoHandling_);
+        plan_ = plan;
+        return plan;
     }
 
     static Map<String, String[]> getAnnotatedOutParameters(Context context) {
-        try {
-            var parameters = new LinkedHashMap<String, String[]>();
+        var parameters = new LinkedHashMap<String, String[]>();
+        collectAnnotatedOutParameters(context, null, parameters);
+        return parameters;
+    }
 
+    static void collectAnnotatedOutParameters(Context context, Set<String> retain, Map<String, String[]> parameters) {
+        try {
             if (context.processedRoute() instanceof RouteAnnotated route) {
-                for (var field : route.getAnnotatedFields()) {
-                    field.setAccessible(true);
-
-                    if (Modifier.isStatic(field.getModifiers()) ||
-                        Modifier.isFinal(field.getModifiers()) ||
-                        Modifier.isTransient(field.getModifiers())) {
-                        continue;
-                    }
-
-                    var name = field.getName();
-                    var value = field.get(context.processedElement());
-
-                    if (value != null) {
-                        if (field.isAnnotationPresent(Parameter.class) &&
-                            shouldProcessOutFlow(field.getAnnotation(Parameter.class).flow())) {
-                            var annotation_name = field.getAnnotation(Parameter.class).value();
-                            if (annotation_name != null && !annotation_name.isEmpty()) {
-                                name = annotation_name;
-                            }
-
-                            parameters.put(name, ArrayUtils.createStringArray(value, null));
-                        } else if (field.isAnnotationPresent(ParametersBean.class) &&
-                                   shouldProcessOutFlow(field.getAnnotation(ParametersBean.class).flow())) {
-                            var annotation_prefix = field.getAnnotation(ParametersBean.class).prefix();
-
-                            BeanUtils.processPropertyValues(value, null, null, annotation_prefix, (propertyName, descriptor, propertyValue, constrainedProperty) -> {
-                                if (propertyValue != null) {
-                                    parameters.put(propertyName, ArrayUtils.createStringArray(propertyValue, constrainedProperty));
-                                }
-                            });
-                        }
-                    }
-                }
+                route.getInjectionPlan().collectOutParameters(context.processedElement(), retain, parameters);
             }
-
-            return parameters;
         } catch (Exception e) {
             throw new EngineException(e);
         }
     }
 
     Set<String> getAnnotatedInParameters() {
-        try {
-            var parameters = new HashSet<String>();
-
-            for (var field : getAnnotatedFields()) {
-                field.setAccessible(true);
-
-                if (Modifier.isStatic(field.getModifiers()) ||
-                    Modifier.isFinal(field.getModifiers()) ||
-                    Modifier.isTransient(field.getModifiers())) {
-                    continue;
-                }
-
-                var name = field.getName();
-
-                if (field.isAnnotationPresent(Parameter.class) &&
-                    shouldProcessInFlow(field.getAnnotation(Parameter.class).flow())) {
-                    var annotation_name = field.getAnnotation(Parameter.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-
-                    parameters.add(name);
-                } else if (field.isAnnotationPresent(ParametersBean.class) &&
-                           shouldProcessInFlow(field.getAnnotation(ParametersBean.class).flow())) {
-                    var type = field.getType();
-                    var annotation_prefix = field.getAnnotation(ParametersBean.class).prefix();
-
-                    parameters.addAll(BeanUtils.getPropertyNames(type, null, null, annotation_prefix));
-                }
-            }
-
-            return parameters;
-        } catch (Exception e) {
-            throw new EngineException(e);
-        }
+        return getInjectionPlan().inParameters();
     }
 
     @Override
     public void prepareElementInstance(Element element, Context context) {
         try {
-            for (var field : getAnnotatedFields()) {
-                var name = field.getName();
-                var type = field.getType();
-
-                if (field.isAnnotationPresent(ActiveSite.class)) {
-                    if (type.isAssignableFrom(context.site().getClass())) {
-                        field.set(element, context.site());
-                    }
-                } else if (field.isAnnotationPresent(Parameter.class) &&
-                           shouldProcessInFlow(field.getAnnotation(Parameter.class).flow())) {
-                    var params = context.parameters();
-                    var annotation_name = field.getAnnotation(Parameter.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    var values = params.get(name);
-                    if (values != null && values.length > 0) {
-                        Object value;
-                        try {
-                            value = Convert.toType(values[0], type);
-                        } catch (ConversionException e) {
-                            value = Convert.getDefaultValue(type);
-                        }
-                        field.set(element, value);
-                    }
-                } else if (field.isAnnotationPresent(ParametersBean.class) &&
-                           shouldProcessInFlow(field.getAnnotation(ParametersBean.class).flow())) {
-                    var annotation_prefix = field.getAnnotation(ParametersBean.class).prefix();
-                    Object bean = field.get(element);
-                    if (bean == null) {
-                        field.set(element, context.parametersBean(type, annotation_prefix));
-                    } else {
-                        context.parametersBean(bean, annotation_prefix);
-                    }
-                } else if (field.isAnnotationPresent(Property.class)) {
-                    var properties = context.properties();
-                    var annotation_name = field.getAnnotation(Property.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    var prop_value = properties.getValue(name);
-                    if (prop_value != null) {
-                        Object value;
-                        try {
-                            value = Convert.toType(prop_value, type);
-                        } catch (ConversionException e) {
-                            value = Convert.getDefaultValue(type);
-                        }
-                        field.set(element, value);
-                    }
-                } else if (field.isAnnotationPresent(Config.class)) {
-                    var config = context.site().config();
-                    var annotation_name = field.getAnnotation(Config.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    if (List.class.isAssignableFrom(type)) {
-                        var list_items = config.getStringItems(name);
-                        if (list_items != null) {
-                            var generic_type = field.getGenericType();
-                            Class<?> param_class = null;
-                            if (generic_type instanceof ParameterizedType param_type &&
-                                param_type.getActualTypeArguments().length == 1) {
-                                // resolve the element type against the concrete
-                                // element class, so that generic supertypes work
-                                var erased = ClassUtils.erasedType(element.getClass(), param_type.getActualTypeArguments()[0]);
-                                if (erased != Object.class) {
-                                    param_class = erased;
-                                }
-                            }
-                            if (param_class != null) {
-                                var converted_list = new ArrayList<>();
-                                for (var item : list_items) {
-                                    converted_list.add(Convert.fromString(item, param_class));
-                                }
-                                field.set(element, converted_list);
-                            } else {
-                                field.set(element, list_items);
-                            }
-                        }
-                    } else {
-                        var param_value = config.getString(name);
-                        if (param_value != null) {
-                            Object value;
-                            try {
-                                value = Convert.toType(param_value, type);
-                            } catch (ConversionException e) {
-                                value = Convert.getDefaultValue(type);
-                            }
-                            field.set(element, value);
-                        }
-                    }
-                } else if (field.isAnnotationPresent(Header.class) &&
-                           shouldProcessInFlow(field.getAnnotation(Header.class).flow())) {
-                    var annotation_name = field.getAnnotation(Header.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    var header = context.header(name);
-                    if (header != null) {
-                        Object value;
-                        try {
-                            value = Convert.toType(header, type);
-                        } catch (ConversionException e) {
-                            value = Convert.getDefaultValue(type);
-                        }
-                        field.set(element, value);
-                    }
-                } else if (field.isAnnotationPresent(Body.class) &&
-                           shouldProcessInFlow(field.getAnnotation(Body.class).flow())) {
-                    var body = context.body();
-                    Object value;
-                    try {
-                        value = Convert.toType(body, type);
-                    } catch (ConversionException e) {
-                        value = Convert.getDefaultValue(type);
-                    }
-                    field.set(element, value);
-                } else if (field.isAnnotationPresent(PathInfo.class) &&
-                           pathInfoHandling_.type() != PathInfoType.NONE) {
-                    var path_info = context.pathInfo();
-                    Object value;
-                    try {
-                        value = Convert.toType(path_info, type);
-                    } catch (ConversionException e) {
-                        value = Convert.getDefaultValue(type);
-                    }
-                    field.set(element, value);
-                } else if (field.isAnnotationPresent(FileUpload.class)) {
-                    var annotation_name = field.getAnnotation(FileUpload.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-
-                    var uploaded_file = context.file(name);
-                    if (uploaded_file != null) {
-                        Object value;
-                        if (UploadedFile.class.isAssignableFrom(type)) {
-                            value = uploaded_file;
-                        } else if (File.class.isAssignableFrom(type)) {
-                            value = uploaded_file.getFile();
-                        } else {
-                            try {
-                                value = Convert.toType(uploaded_file.getFile().getAbsolutePath(), type);
-                            } catch (ConversionException e) {
-                                value = Convert.getDefaultValue(type);
-                            }
-                        }
-                        field.set(element, value);
-                    }
-                } else if (field.isAnnotationPresent(Cookie.class) &&
-                           shouldProcessInFlow(field.getAnnotation(Cookie.class).flow())) {
-                    var annotation_name = field.getAnnotation(Cookie.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    if (context.hasCookie(name)) {
-                        String cookie_value = context.cookieValue(name);
-                        if (cookie_value != null) {
-                            Object value;
-                            try {
-                                value = Convert.toType(cookie_value, type);
-                            } catch (ConversionException e) {
-                                value = Convert.getDefaultValue(type);
-                            }
-                            field.set(element, value);
-                        }
-                    }
-                } else if (field.isAnnotationPresent(RequestAttribute.class) &&
-                           shouldProcessInFlow(field.getAnnotation(RequestAttribute.class).flow())) {
-                    var annotation_name = field.getAnnotation(RequestAttribute.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    var value = context.attribute(name);
-                    if (value != null) {
-                        try {
-                            value = Convert.toType(value, type);
-                        } catch (ConversionException e) {
-                            value = Convert.getDefaultValue(type);
-                        }
-                        field.set(element, value);
-                    }
-                } else if (field.isAnnotationPresent(SessionAttribute.class) &&
-                           shouldProcessInFlow(field.getAnnotation(SessionAttribute.class).flow())) {
-                    var annotation_name = field.getAnnotation(SessionAttribute.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    var session = context.session(false);
-                    if (session != null) {
-                        var value = session.attribute(name);
-                        if (value != null) {
-                            try {
-                                value = Convert.toType(value, type);
-                            } catch (ConversionException e) {
-                                value = Convert.getDefaultValue(type);
-                            }
-                            field.set(element, value);
-                        }
-                    }
-                }
-            }
+            getInjectionPlan().inject(element, context);
         } catch (Exception e) {
             throw new EngineException(e);
         }
@@ -407,53 +139,7 @@ abstract class RouteAnnotated implements Route {
     @Override
     public void finalizeElementInstance(Element element, Context context) {
         try {
-            for (var field : getAnnotatedFields()) {
-                field.setAccessible(true);
-
-                if (Modifier.isStatic(field.getModifiers()) ||
-                    Modifier.isFinal(field.getModifiers()) ||
-                    Modifier.isTransient(field.getModifiers())) {
-                    continue;
-                }
-
-                var name = field.getName();
-                var value = field.get(element);
-
-                if (field.isAnnotationPresent(Header.class) &&
-                    shouldProcessOutFlow(field.getAnnotation(Header.class).flow())) {
-                    var annotation_name = field.getAnnotation(Header.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    context.addHeader(name, Convert.toString(value));
-                } else if (field.isAnnotationPresent(Body.class) &&
-                           shouldProcessOutFlow(field.getAnnotation(Body.class).flow())) {
-                    context.print(value);
-                } else if (field.isAnnotationPresent(Cookie.class) &&
-                           shouldProcessOutFlow(field.getAnnotation(Cookie.class).flow())) {
-                    var annotation_name = field.getAnnotation(Cookie.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    var builder = new CookieBuilder(name, Convert.toString(value));
-                    context.addCookie(builder);
-                } else if (field.isAnnotationPresent(RequestAttribute.class) &&
-                           shouldProcessOutFlow(field.getAnnotation(RequestAttribute.class).flow())) {
-                    var annotation_name = field.getAnnotation(RequestAttribute.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    context.setAttribute(name, value);
-                } else if (field.isAnnotationPresent(SessionAttribute.class) &&
-                           shouldProcessOutFlow(field.getAnnotation(SessionAttribute.class).flow())) {
-                    var annotation_name = field.getAnnotation(SessionAttribute.class).value();
-                    if (annotation_name != null && !annotation_name.isEmpty()) {
-                        name = annotation_name;
-                    }
-                    var session = context.request().getSession();
-                    session.setAttribute(name, value);
-                }
-            }
+            getInjectionPlan().extract(element, context);
         } catch (Exception e) {
             throw new EngineException(e);
         }
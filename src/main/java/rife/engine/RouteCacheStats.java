@@ -0,0 +1,32 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+/**
+ * Provides a snapshot of the state of the route cache of a {@link Site},
+ * which is intended to help you tune its capacity.
+ * <p>When the number of misses keeps growing while the cache is full, the
+ * application serves more distinct URLs than the cache can hold and
+ * increasing the capacity will likely improve the hit rate.
+ *
+ * @param capacity the configured cache capacity
+ * @param size     the number of request methods and URLs that are
+ *                 currently cached
+ * @param hits     the number of requests that were resolved from the cache
+ * @param misses   the number of requests that had to be resolved through
+ *                 the routes of the site
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see Site#routeCacheStats()
+ * @see Site#routeCache(int)
+ * @since 1.10
+ */
+public record RouteCacheStats(int capacity, int size, long hits, long misses) {
+    public String toString() {
+        return "capacity: " + capacity +
+               ", size: " + size +
+               ", hits: " + hits +
+               ", misses: " + misses;
+    }
+}
@@ -4,9 +4,21 @@
  */
 package rife.engine;
 
+import rife.engine.annotations.Reusable;
 import rife.engine.exceptions.EngineException;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
 class RouteClass extends RouteAnnotated {
+    // the initial values of elements that can't be reused
+    private static final Object[] NOT_SHAREABLE = new Object[0];
+
+    private final int poolCapacity_;
+    private final ConcurrentLinkedQueue<Element> pool_;
+    private final AtomicInteger poolSize_;
+    private volatile Object[] initialValues_ = null;
+
     RouteClass(Router router, Class<? extends Element> elementClass) {
         this(router, null, null, null, elementClass);
     }
@@ -25,14 +37,96 @@ class RouteClass extends RouteAnnotated {
 
     RouteClass(Router router, RequestMethod[] methods, String path, PathInfoHandling pathInfoHandling, Class<? extends Element> elementClass) {
         super(router, methods, path, pathInfoHandling, elementClass);
+
+        var reusable = elementClass.getAnnotation(Reusable.class);
+        if (reusable != null && reusable.value() > 0) {
+            poolCapacity_ = reusable.value();
+            pool_ = new ConcurrentLinkedQueue<>();
+            poolSize_ = new AtomicInteger();
+        } else {
+            poolCapacity_ = 0;
+            pool_ = null;
+            poolSize_ = null;
+        }
+    }
+
+    /**
+     * Indicates whether the element instances of this route are pooled.
+     *
+     * @return {@code true} if the element class is reusable; or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    boolean isReusable() {
+        return pool_ != null;
     }
 
     @Override
     public Element obtainElementInstance(Context context) {
+        if (pool_ != null) {
+            var element = pool_.poll();
+            if (element != null) {
+                poolSize_.decrementAndGet();
+                return element;
+            }
+        }
+
         try {
-            return elementClass_.getDeclaredConstructor().newInstance();
+            var element = elementClass_.getDeclaredConstructor().newInstance();
+
+            // capture the values that the injected and out-flow fields have
+            // right after construction, so that reused instances can be restored to them
+            // values that can be modified would be shared by all the
+            // instances that they're restored into, the instances are then
+            // never reused
+            if (pool_ != null && null == initialValues_) {
+                var initial_values = getInjectionPlan().snapshot(element);
+                if (!ElementInjectionPlan.isShareable(initial_values)) {
+                    initial_values = NOT_SHAREABLE;
+                }
+                initialValues_ = initial_values;
+            }
+
+            return element;
         } catch (Exception e) {
             throw new EngineException(e);
         }
     }
+
+    /**
+     * Returns an element instance to the pool of this route after its
+     * request has been completed, discarding it when the pool is full,
+     * when it can't be reset or when the initial values of its injected
+     * fields can be modified.
+     *
+     * @param element the element instance to release
+     * @since 1.10
+     */
+    void releaseElementInstance(Element element) {
+        var initial_values = initialValues_;
+        if (null == pool_ ||
+            NOT_SHAREABLE == initial_values ||
+            element.getClass() != elementClass_ ||
+            poolSize_.get() >= poolCapacity_) {
+            return;
+        }
+
+        try {
+            if (initial_values != null) {
+                getInjectionPlan().restore(element, initial_values);
+            }
+            if (element instanceof ReusableElement reusable) {
+                reusable.reset();
+            }
+        } catch (Exception e) {
+            // an instance that can't be reset is simply not reused
+            return;
+        }
+
+        if (poolSize_.incrementAndGet() > poolCapacity_) {
+            poolSize_.decrementAndGet();
+            return;
+        }
+        pool_.offer(element);
+    }
 }
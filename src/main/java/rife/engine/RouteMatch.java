@@ -4,5 +4,21 @@
  */
 package rife.engine;
 
-record RouteMatch(Route route, String pathInfo) {
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of resolving the route of a request.
+ *
+ * @param route              the route that matched
+ * @param pathInfo           the path info of the request URL
+ * @param pathInfoParameters the parameter values that were captured by the
+ *                           path info mapping that matched, these are
+ *                           empty when the route doesn't map its path info
+ * @since 1.0
+ */
+record RouteMatch(Route route, String pathInfo, Map<String, String> pathInfoParameters) {
+    RouteMatch(Route route, String pathInfo) {
+        this(route, pathInfo, Collections.emptyMap());
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the route matches of a {@link Site}, keyed by request
+ * method and element URL.
+ * <p>Lookups never lock, they go through one concurrent map per request
+ * method and only flip the reference bit of the entry they find. Storing
+ * a new entry is serialized and evicts with the CLOCK algorithm, which
+ * sweeps over the entries in insertion order and gives every entry that
+ * was used since the previous sweep a second chance.
+ * <p>URLs that don't resolve to any route are cached too, since those
+ * requests are typically handed over to the next filter in the chain,
+ * for instance to serve static resources.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class RouteMatchCache {
+    /**
+     * Returned by {@link #get} when the cached URL doesn't resolve to any route.
+     *
+     * @since 1.10
+     */
+    static final RouteMatch NO_MATCH = new RouteMatch(null, "");
+
+    private static final RequestMethod[] METHODS = RequestMethod.values();
+
+    private final int capacity_;
+    private final ConcurrentHashMap<String, Entry>[] entries_;
+    private final Entry[] clock_;
+    private int size_ = 0;
+    private int hand_ = 0;
+
+    private final LongAdder hits_ = new LongAdder();
+    private final LongAdder misses_ = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    RouteMatchCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity should be at least 1.");
+
+        capacity_ = capacity;
+        entries_ = new ConcurrentHashMap[METHODS.length];
+        for (var i = 0; i < entries_.length; ++i) {
+            entries_[i] = new ConcurrentHashMap<>();
+        }
+        clock_ = new Entry[capacity];
+    }
+
+    /**
+     * Retrieves the cached route match of a request method and URL.
+     *
+     * @param method     the request method
+     * @param elementUrl the element URL
+     * @return the cached route match; or
+     * <p>{@link #NO_MATCH} when the URL was cached without a route; or
+     * <p>{@code null} when nothing was cached yet
+     * @since 1.10
+     */
+    RouteMatch get(RequestMethod method, String elementUrl) {
+        var entry = entries_[method.ordinal()].get(elementUrl);
+        if (null == entry) {
+            misses_.increment();
+            return null;
+        }
+
+        // avoid writing to the shared entry when it's already referenced
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits_.increment();
+        return entry.match;
+    }
+
+    /**
+     * Stores the route match of a request method and URL, evicting an
+     * entry that wasn't used recently when the cache is full.
+     *
+     * @param method     the request method
+     * @param elementUrl the element URL
+     * @param match      the route match; or {@code null} when the URL
+     *                   doesn't resolve to any route
+     * @since 1.10
+     */
+    void put(RequestMethod method, String elementUrl, RouteMatch match) {
+        var entry = new Entry(method, elementUrl, null == match ? NO_MATCH : match);
+
+        synchronized (clock_) {
+            var entries = entries_[method.ordinal()];
+            if (entries.containsKey(elementUrl)) {
+                return;
+            }
+
+            if (size_ < capacity_) {
+                clock_[size_++] = entry;
+            } else {
+                while (true) {
+                    var candidate = clock_[hand_];
+                    if (candidate.referenced) {
+                        candidate.referenced = false;
+                        hand_ = (hand_ + 1) % capacity_;
+                        continue;
+                    }
+
+                    entries_[candidate.method.ordinal()].remove(candidate.elementUrl);
+                    clock_[hand_] = entry;
+                    hand_ = (hand_ + 1) % capacity_;
+                    break;
+                }
+            }
+
+            entries.put(elementUrl, entry);
+        }
+    }
+
+    /**
+     * Creates a snapshot of the statistics of this cache.
+     *
+     * @return the statistics of this cache
+     * @since 1.10
+     */
+    RouteCacheStats stats() {
+        int size;
+        synchronized (clock_) {
+            size = size_;
+        }
+        return new RouteCacheStats(capacity_, size, hits_.sum(), misses_.sum());
+    }
+
+    private static final class Entry {
+        private final RequestMethod method;
+        private final String elementUrl;
+        private final RouteMatch match;
+        private volatile boolean referenced = false;
+
+        Entry(RequestMethod method, String elementUrl, RouteMatch match) {
+            this.method = method;
+            this.elementUrl = elementUrl;
+            this.match = match;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.tools.StringUtils;
+
+import java.util.*;
+
+/**
+ * Immutable segment trie that is compiled from the routes of a deployed
+ * {@link Site}.
+ * <p>The trie resolves the route, the path info and the fallback of a
+ * request URL in a single walk over its path segments, producing exactly
+ * the same results as stepping up the segments of the URL and looking up
+ * each of them in the route maps of the site.
+ * <p>Each segment starts with the slash that precedes it, which means
+ * that {@code /one/two} is stored as the segments {@code /one} and
+ * {@code /two}. The children of a node are kept in an open addressing
+ * table that is probed with the characters of the URL itself, so that
+ * walking the trie doesn't allocate.
+ * <p>The routes of each node are stored in dispatch tables that are
+ * indexed by the ordinal of the request method, so that selecting the
+ * route for a method doesn't have to scan the methods of every route that
+ * is registered for the same path.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class RouteTrie {
+    private static final Route[] NO_ROUTES = new Route[0];
+    private static final RequestMethod[] METHODS = RequestMethod.values();
+
+    private final Node root_;
+    private final Node slash_;
+
+    RouteTrie(Map<String, List<Route>> routes, Map<String, List<Route>> pathInfoRoutes, Map<String, Route> fallbackRoutes) {
+        var root = new NodeBuilder();
+        for (var entry : routes.entrySet()) {
+            root.descend(entry.getKey()).routes.addAll(entry.getValue());
+        }
+        for (var entry : pathInfoRoutes.entrySet()) {
+            root.descend(entry.getKey()).pathInfoRoutes.addAll(entry.getValue());
+        }
+        for (var entry : fallbackRoutes.entrySet()) {
+            var key = entry.getKey();
+            if (key.isEmpty()) {
+                root.fallback = entry.getValue();
+                continue;
+            }
+
+            // fallbacks match on string prefixes, so the last segment of
+            // their path is matched as a prefix of the URL segment
+            var last = lastSegmentStart(key);
+            var parent = last == 0 ? root : root.descend(key.substring(0, last));
+            parent.fallbackSegments.put(key.substring(last), entry.getValue());
+        }
+
+        root_ = root.compile(null, 0);
+        slash_ = root_.child("/", 0, 1);
+    }
+
+    private static int segmentEnd(String path, int start) {
+        var end = path.indexOf('/', start + 1);
+        if (-1 == end) {
+            return path.length();
+        }
+        return end;
+    }
+
+    private static int lastSegmentStart(String path) {
+        var start = path.lastIndexOf('/');
+        if (start < 0) {
+            return 0;
+        }
+        return start;
+    }
+
+    /**
+     * Resolves the route that handles a request method and URL.
+     *
+     * @param method     the request method
+     * @param elementUrl the URL that will be used to search for the element
+     * @return the matching route and its path info; or
+     * <p>{@code null} if no suitable route could be found
+     * @since 1.10
+     */
+    RouteMatch resolve(RequestMethod method, String elementUrl) {
+        if (elementUrl.isEmpty()) {
+            elementUrl = "/";
+        }
+
+        final var length = elementUrl.length();
+
+        // walk down the segments as far as the trie allows, while keeping
+        // track of the longest fallback along the way
+        var node = root_;
+        var fallback = root_.fallback_;
+        var position = 0;
+        while (position < length) {
+            var end = segmentEnd(elementUrl, position);
+
+            var segment_fallback = node.fallback(elementUrl, position);
+            if (segment_fallback != null) {
+                fallback = segment_fallback;
+            }
+
+            var child = node.child(elementUrl, position, end);
+            if (null == child) {
+                break;
+            }
+            node = child;
+            position = end;
+        }
+
+        // the whole URL matched a node, look for a route without path info
+        final var method_index = method.ordinal();
+        if (position == length) {
+            var route = node.routes_[method_index];
+            if (null == route) {
+                route = node.captureRoutes_[method_index];
+            }
+            if (route != null) {
+                return new RouteMatch(route, "");
+            }
+            node = node.parent_;
+        }
+
+        // step up the segments, the remainder of the URL becomes the path info
+        while (node != null) {
+            var cut = node.length_;
+            var candidate = node;
+            if (0 == cut) {
+                // the root path info is looked up with a slash
+                if (elementUrl.charAt(0) != '/') {
+                    break;
+                }
+                candidate = slash_;
+            }
+
+            if (candidate != null &&
+                candidate.hasPathInfoRoutes_) {
+                var path_info = StringUtils.stripFromFront(elementUrl.substring(cut), "/");
+                var match = resolvePathInfo(candidate, method_index, path_info);
+                if (match != null) {
+                    return match;
+                }
+            }
+
+            node = node.parent_;
+        }
+
+        if (fallback != null) {
+            return new RouteMatch(fallback, "");
+        }
+
+        return null;
+    }
+
+    private static RouteMatch resolvePathInfo(Node node, int methodIndex, String pathInfo) {
+        // check the path info mappings for the first that matches
+        var matcher = node.pathInfoMatchers_[methodIndex];
+        if (matcher != null) {
+            var match = matcher.match(pathInfo);
+            if (match != null) {
+                return match;
+            }
+        }
+
+        // return the first route that captures the path info
+        var route = node.captureRoutes_[methodIndex];
+        if (route != null) {
+            return new RouteMatch(route, pathInfo);
+        }
+
+        return null;
+    }
+
+    // creates a dispatch table that is indexed by the ordinal of the request
+    // method, with the first route that handles each method
+    private static Route[] firstRouteByMethod(List<Route> routes, PathInfoType type) {
+        var table = new Route[METHODS.length];
+        for (var method : METHODS) {
+            for (var route : routes) {
+                if (route.pathInfoHandling().type() == type &&
+                    Site.routeHandlesMethod(route, method)) {
+                    table[method.ordinal()] = route;
+                    break;
+                }
+            }
+        }
+        return table;
+    }
+
+    // creates a dispatch table that is indexed by the ordinal of the request
+    // method, with a matcher for the path info mappings of all the routes
+    // that handle each method in their registration order
+    private static PathInfoMatcher[] pathInfoMatchersByMethod(List<Route> routes) {
+        var table = new PathInfoMatcher[METHODS.length];
+        for (var method : METHODS) {
+            var method_routes = new ArrayList<Route>();
+            for (var route : routes) {
+                if (route.pathInfoHandling().type() == PathInfoType.MAP &&
+                    Site.routeHandlesMethod(route, method)) {
+                    method_routes.add(route);
+                }
+            }
+            if (!method_routes.isEmpty()) {
+                table[method.ordinal()] = new PathInfoMatcher(method_routes.toArray(NO_ROUTES));
+            }
+        }
+        return table;
+    }
+
+    private static int hash(String text, int start, int end) {
+        var hash = 0;
+        for (var i = start; i < end; ++i) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class NodeBuilder {
+        private final Map<String, NodeBuilder> children = new LinkedHashMap<>();
+        private final List<Route> routes = new ArrayList<>();
+        private final List<Route> pathInfoRoutes = new ArrayList<>();
+        private final Map<String, Route> fallbackSegments = new HashMap<>();
+        private Route fallback = null;
+
+        NodeBuilder descend(String path) {
+            var node = this;
+            var position = 0;
+            while (position < path.length()) {
+                var end = segmentEnd(path, position);
+                node = node.children.computeIfAbsent(path.substring(position, end), k -> new NodeBuilder());
+                position = end;
+            }
+            return node;
+        }
+
+        Node compile(Node parent, int length) {
+            var node = new Node(parent, length, routes, pathInfoRoutes, fallback, fallbackSegments);
+            if (!children.isEmpty()) {
+                var capacity = Integer.highestOneBit(children.size() * 2 - 1) << 1;
+                var keys = new String[capacity];
+                var nodes = new Node[capacity];
+                var mask = capacity - 1;
+                for (var entry : children.entrySet()) {
+                    var key = entry.getKey();
+                    var index = hash(key, 0, key.length()) & mask;
+                    while (keys[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = key;
+                    nodes[index] = entry.getValue().compile(node, length + key.length());
+                }
+                node.childKeys_ = keys;
+                node.children_ = nodes;
+            }
+            return node;
+        }
+    }
+
+    private static final class Node {
+        private final Node parent_;
+        private final int length_;
+        private final Route[] routes_;
+        private final Route[] captureRoutes_;
+        private final PathInfoMatcher[] pathInfoMatchers_;
+        private final boolean hasPathInfoRoutes_;
+        private final Route fallback_;
+        private final String[] fallbackSegments_;
+        private final Route[] fallbackSegmentRoutes_;
+        private String[] childKeys_ = null;
+        private Node[] children_ = null;
+
+        Node(Node parent, int length, List<Route> routes, List<Route> pathInfoRoutes, Route fallback, Map<String, Route> fallbackSegments) {
+            parent_ = parent;
+            length_ = length;
+            routes_ = firstRouteByMethod(routes, PathInfoType.NONE);
+            captureRoutes_ = firstRouteByMethod(pathInfoRoutes, PathInfoType.CAPTURE);
+            pathInfoMatchers_ = pathInfoMatchersByMethod(pathInfoRoutes);
+            hasPathInfoRoutes_ = !pathInfoRoutes.isEmpty();
+            fallback_ = fallback;
+
+            // the longest fallback segment has to win, so check those first
+            var segments = new ArrayList<>(fallbackSegments.keySet());
+            segments.sort(Comparator.comparingInt(String::length).reversed());
+            fallbackSegments_ = segments.toArray(new String[0]);
+            fallbackSegmentRoutes_ = new Route[fallbackSegments_.length];
+            for (var i = 0; i < fallbackSegments_.length; ++i) {
+                fallbackSegmentRoutes_[i] = fallbackSegments.get(fallbackSegments_[i]);
+            }
+        }
+
+        Node child(String url, int start, int end) {
+            var keys = childKeys_;
+            if (null == keys) {
+                return null;
+            }
+
+            var length = end - start;
+            var mask = keys.length - 1;
+            var index = hash(url, start, end) & mask;
+            while (true) {
+                var key = keys[index];
+                if (null == key) {
+                    return null;
+                }
+                if (key.length() == length &&
+                    url.regionMatches(start, key, 0, length)) {
+                    return children_[index];
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        Route fallback(String url, int position) {
+            for (var i = 0; i < fallbackSegments_.length; ++i) {
+                if (url.startsWith(fallbackSegments_[i], position)) {
+                    return fallbackSegmentRoutes_[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -10,6 +10,7 @@ import rife.tools.ExceptionUtils;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
@@ -28,6 +29,9 @@ public class Router {
     final Map<String, List<Route>> pathInfoRoutes_ = new HashMap<>();
     final Map<String, Route> fallbackRoutes_ = new HashMap<>();
     final List<Router> groups_ = new ArrayList<>();
+    final Map<Route, RenderCache.Policy> renderCachePolicies_ = new HashMap<>();
+    ChainedRoute[] beforeChain_ = ChainedRoute.EMPTY_CHAIN;
+    ChainedRoute[] afterChain_ = ChainedRoute.EMPTY_CHAIN;
     Route exceptionRoute_ = null;
     Router parent_ = null;
     boolean deployed_ = false;
@@ -44,12 +48,16 @@ public class Router {
     public void setup() {
     }
 
-    final void deploy() {
+    void deploy() {
         if (parent_ != null) {
             before_.addAll(0, parent_.before_);
             after_.addAll(parent_.after_);
         }
 
+        // the chains include the elements of all the parent routers
+        beforeChain_ = ChainedRoute.chain(before_);
+        afterChain_ = ChainedRoute.chain(after_);
+
         for (var router : groups_) {
             router.deploy();
         }
@@ -1715,6 +1723,41 @@ public class Router {
         return route;
     }
 
+    /**
+     * Caches the rendered output of a route, so that identical requests
+     * are served without processing any element.
+     * <p>The output is keyed on the route, the path info, the selected
+     * parameters and the values of the request headers that the response
+     * {@link Context#varyOn varies on}. Only successful {@code GET}
+     * responses whose content was entirely collected by the text buffer
+     * are cached, and responses that add cookies are never cached. The
+     * headers that were set through the {@link Context} are replayed with
+     * the cached content.
+     * <p>Cached output is served before any element is processed,
+     * including the elements that run {@link #before(Element...) before}
+     * the route. You shouldn't cache routes whose output depends on state
+     * that isn't part of the key, like the user of the session.
+     * <p>Element classes can also be annotated with
+     * {@link rife.engine.annotations.RenderCached RenderCached} instead.
+     *
+     * @param route      the route whose rendered output should be cached
+     * @param ttl        how long the cached output stays valid
+     * @param parameters the names of the parameters that are part of the
+     *                   cache key; or none if all the parameters are
+     * @return the route that is cached
+     * @see Site#renderCache(int)
+     * @see Site#invalidateRenderCache(Route)
+     * @since 1.10
+     */
+    public final Route cacheRendering(Route route, Duration ttl, String... parameters) {
+        ensurePreDeployment();
+        if (null == route) throw new IllegalArgumentException("route can't be null.");
+        if (null == ttl || ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("ttl should be positive.");
+
+        renderCachePolicies_.put(route, new RenderCache.Policy(ttl.toNanos(), parameters == null ? new String[0] : parameters.clone()));
+        return route;
+    }
+
     /**
      * Retrieves the hierarchical properties for this router.
      *
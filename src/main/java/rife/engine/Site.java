@@ -7,14 +7,21 @@ package rife.engine;
 import rife.config.Config;
 import rife.config.exceptions.ConfigErrorException;
 import rife.continuations.ContinuationManager;
+import rife.engine.annotations.RenderCached;
 import rife.engine.exceptions.EngineException;
 import rife.tools.StringUtils;
 import rife.workflow.Workflow;
 
 import java.io.File;
 import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * The main site of your web application, which is also the
@@ -37,6 +44,177 @@ public class Site extends Router {
 
     private Config config_ = new Config();
 
+    private boolean compiledRouting_ = true;
+    private RouteTrie routeTrie_ = null;
+    private int routeCacheCapacity_ = 0;
+    private volatile RouteMatchCache routeCache_ = null;
+    private boolean reuseRequestObjects_ = false;
+    private List<ContentEncoder> contentEncoders_ = null;
+    private boolean streamingCompression_ = false;
+    private int compressionLevel_ = -1;
+    private int compressionFlushThreshold_ = 8192;
+    private volatile CoalescingOutput.Pool streamingOutputPool_ = null;
+    private final ConcurrentHashMap<Route, UrlTemplate> urlTemplates_ = new ConcurrentHashMap<>();
+    private int renderCacheCapacity_ = 1024;
+    private volatile RenderCache renderCache_ = new RenderCache(renderCacheCapacity_);
+    private Map<Route, RenderCache.Policy> renderCachePolicies_ = Map.of();
+    private volatile ExecutorService renderExecutor_ = null;
+    private volatile MappedFileCache mappedFileCache_ = new MappedFileCache(64L * 1024 * 1024);
+
+    @Override
+    final void deploy() {
+        super.deploy();
+
+        routeTrie_ = new RouteTrie(routes_, pathInfoRoutes_, fallbackRoutes_);
+        resetRouteCache();
+
+        // detect which element classes are resumable and compile the URL
+        // templates of the routes before any request
+        urlTemplates_.clear();
+        renderCachePolicies_ = new HashMap<>();
+        collectRenderCachePolicies(this);
+        resetRenderCache();
+        for (var routes : routes_.values()) {
+            routes.forEach(this::prepareRoute);
+        }
+        for (var routes : pathInfoRoutes_.values()) {
+            routes.forEach(this::prepareRoute);
+        }
+        fallbackRoutes_.values().forEach(this::prepareRoute);
+    }
+
+    private void prepareRoute(Route route) {
+        ChainedRoute.isResumable(route);
+        urlTemplate(route);
+
+        var element_class = route.getElementClass();
+        if (element_class != null &&
+            !renderCachePolicies_.containsKey(route)) {
+            var annotation = (RenderCached) element_class.getAnnotation(RenderCached.class);
+            if (annotation != null) {
+                if (annotation.ttl() <= 0) throw new EngineException("The render cache ttl of element '" + element_class.getName() + "' should be positive.");
+                renderCachePolicies_.put(route, new RenderCache.Policy(annotation.ttl() * 1_000_000_000L, annotation.parameters()));
+            }
+        }
+    }
+
+    private void collectRenderCachePolicies(Router router) {
+        renderCachePolicies_.putAll(router.renderCachePolicies_);
+        for (var group : router.groups_) {
+            collectRenderCachePolicies(group);
+        }
+    }
+
+    /**
+     * Retrieves the compiled URL template of a route.
+     * <p>The templates of the routes of the site are compiled when it's
+     * deployed, the template of any other route is compiled the first time
+     * it's needed.
+     *
+     * @param route the route to retrieve the URL template for
+     * @return the URL template of the route
+     * @since 1.10
+     */
+    UrlTemplate urlTemplate(Route route) {
+        var template = urlTemplates_.get(route);
+        if (null == template) {
+            template = urlTemplates_.computeIfAbsent(route, UrlTemplate::new);
+        }
+        return template;
+    }
+
+    private void resetRouteCache() {
+        if (routeCacheCapacity_ > 0) {
+            routeCache_ = new RouteMatchCache(routeCacheCapacity_);
+        } else {
+            routeCache_ = null;
+        }
+    }
+
+    private void resetRenderCache() {
+        if (renderCacheCapacity_ > 0) {
+            renderCache_ = new RenderCache(renderCacheCapacity_);
+        } else {
+            renderCache_ = null;
+        }
+    }
+
+    /**
+     * Sets whether requests are resolved through the route trie that is
+     * compiled when the site is deployed.
+     * <p>The compiled trie resolves the element, the path info and the
+     * fallback of a request in a single walk over the segments of its URL,
+     * which is the default. Disabling it reverts to stepping up the URL
+     * segments and looking up each of them in the route maps, which
+     * produces exactly the same results and is mainly useful to compare
+     * both resolvers.
+     *
+     * @param enabled {@code true} to resolve requests through the compiled
+     *                trie; or
+     *                <p>{@code false} to use the step-wise resolver
+     * @return this site instance
+     * @since 1.10
+     */
+    public Site compiledRouting(boolean enabled) {
+        compiledRouting_ = enabled;
+        resetRouteCache();
+        return this;
+    }
+
+    /**
+     * Sets the capacity of the cache that remembers which route handles
+     * the request method and URL of earlier requests.
+     * <p>When most requests go to a limited set of distinct URLs, the cache
+     * allows them to skip resolving the route altogether. URLs that don't
+     * resolve to any route are remembered too. The cache is emptied
+     * whenever the site is deployed and evicts the entries that weren't
+     * used recently when it's full.
+     * <p>The cache is disabled by default.
+     *
+     * @param capacity the maximum number of request methods and URLs that
+     *                 will be cached; or
+     *                 <p>{@code 0} to disable the cache
+     * @return this site instance
+     * @see #routeCacheStats()
+     * @since 1.10
+     */
+    public Site routeCache(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity can't be negative.");
+
+        routeCacheCapacity_ = capacity;
+        resetRouteCache();
+        return this;
+    }
+
+    /**
+     * Retrieves the capacity of the route cache.
+     *
+     * @return the capacity of the route cache; or
+     * <p>{@code 0} when it's disabled
+     * @see #routeCache(int)
+     * @since 1.10
+     */
+    public int routeCache() {
+        return routeCacheCapacity_;
+    }
+
+    /**
+     * Creates a snapshot of the statistics of the route cache, which is
+     * intended to help you tune its capacity.
+     *
+     * @return the statistics of the route cache; or
+     * <p>{@code null} when the route cache is disabled
+     * @see #routeCache(int)
+     * @since 1.10
+     */
+    public RouteCacheStats routeCacheStats() {
+        var cache = routeCache_;
+        if (null == cache) {
+            return null;
+        }
+        return cache.stats();
+    }
+
     /**
      * Looks up the information of the element that is responsible for handling
      * a certain URL and path info.
@@ -84,7 +262,7 @@ public class Site extends Router {
         return resolvePathInfoUrl(request, url, pathInfo);
     }
 
-    private static boolean routeHandlesMethod(Route route, RequestMethod method) {
+    static boolean routeHandlesMethod(Route route, RequestMethod method) {
         if (route.methods() == null) {
             return true;
         }
@@ -149,6 +327,492 @@ public class Site extends Router {
         }
     }
 
+    /**
+     * Sets whether the servlet filter reuses its request and response
+     * objects across the requests that are handled by the same platform
+     * thread.
+     * <p>The reused objects are reset between requests, which lowers the
+     * allocations per request. Requests that are handled by virtual
+     * threads always use new objects, as do requests that continue
+     * asynchronously, for instance server-sent event streams.
+     * <p>This is disabled by default.
+     *
+     * @param enabled {@code true} to reuse the request and response
+     *                objects; or
+     *                <p>{@code false} to create them for each request
+     * @return this site instance
+     * @since 1.10
+     */
+    public Site reuseRequestObjects(boolean enabled) {
+        reuseRequestObjects_ = enabled;
+        return this;
+    }
+
+    /**
+     * Indicates whether the servlet filter reuses its request and
+     * response objects.
+     *
+     * @return {@code true} if request and response objects are reused; or
+     * <p>{@code false} otherwise
+     * @see #reuseRequestObjects(boolean)
+     * @since 1.10
+     */
+    public boolean reuseRequestObjects() {
+        return reuseRequestObjects_;
+    }
+
+    /**
+     * Sets the encoders that can compress the responses of this site, in
+     * their order of preference.
+     * <p>The encoder of each response is negotiated from the
+     * {@code Accept-Encoding} header of its request, taking the quality
+     * values of the header into account. Responses are only compressed
+     * when gzip compression is enabled in the engine configuration and
+     * their content type is one of the configured compression types.
+     * <p>By default, the encoders that are registered as
+     * {@link java.util.ServiceLoader} providers are preferred, followed by
+     * {@link ContentEncoder#GZIP} and {@link ContentEncoder#DEFLATE}.
+     *
+     * @param encoders the content encoders in their order of preference
+     * @return this site instance
+     * @see ContentEncoder#defaultEncoders()
+     * @since 1.10
+     */
+    public Site contentEncoders(ContentEncoder... encoders) {
+        if (null == encoders) throw new IllegalArgumentException("encoders can't be null.");
+
+        contentEncoders_ = List.of(encoders);
+        return this;
+    }
+
+    /**
+     * Retrieves the encoders that can compress the responses of this site.
+     *
+     * @return the content encoders in their order of preference
+     * @see #contentEncoders(ContentEncoder...)
+     * @since 1.10
+     */
+    public List<ContentEncoder> contentEncoders() {
+        var encoders = contentEncoders_;
+        if (null == encoders) {
+            encoders = List.copyOf(ContentEncoder.defaultEncoders());
+            contentEncoders_ = encoders;
+        }
+        return encoders;
+    }
+
+    /**
+     * Sets whether compressed responses are streamed to the client while
+     * they're being produced.
+     * <p>By default, compressed responses are buffered entirely so that
+     * their length can be sent along. Streaming them sends the compressed
+     * content out as it becomes available with a chunked response, which
+     * keeps large responses out of the heap and lets the client receive
+     * the first bytes earlier.
+     *
+     * @param enabled {@code true} to stream compressed responses; or
+     *                <p>{@code false} to buffer them
+     * @return this site instance
+     * @see #compressionFlushThreshold(int)
+     * @since 1.10
+     */
+    public Site streamingCompression(boolean enabled) {
+        streamingCompression_ = enabled;
+        return this;
+    }
+
+    /**
+     * Indicates whether compressed responses are streamed.
+     *
+     * @return {@code true} if compressed responses are streamed; or
+     * <p>{@code false} if they're buffered
+     * @see #streamingCompression(boolean)
+     * @since 1.10
+     */
+    public boolean streamingCompression() {
+        return streamingCompression_;
+    }
+
+    /**
+     * Sets the level that responses are compressed with.
+     *
+     * @param level the compression level between {@code 0} and {@code 9};
+     *              or
+     *              <p>{@code -1} for the default level of each encoder
+     * @return this site instance
+     * @since 1.10
+     */
+    public Site compressionLevel(int level) {
+        if (level < -1 || level > 9) throw new IllegalArgumentException("level should be between -1 and 9.");
+
+        compressionLevel_ = level;
+        return this;
+    }
+
+    /**
+     * Retrieves the level that responses are compressed with.
+     *
+     * @return the compression level; or
+     * <p>{@code -1} for the default level of each encoder
+     * @see #compressionLevel(int)
+     * @since 1.10
+     */
+    public int compressionLevel() {
+        return compressionLevel_;
+    }
+
+    /**
+     * Sets how many bytes of content need to be written to a streamed
+     * compressed response before it's flushed to the client.
+     * <p>The response is flushed after each print, but compressing many
+     * small fragments separately compresses poorly. These flushes are only
+     * let through once the threshold has been reached, while explicitly
+     * flushing the response always sends out all the content.
+     * <p>The threshold is {@code 8192} bytes by default.
+     *
+     * @param threshold the number of bytes of content after which the
+     *                  compressed response is flushed; or
+     *                  <p>{@code 0} to flush it with each print
+     * @return this site instance
+     * @see #streamingCompression(boolean)
+     * @since 1.10
+     */
+    public Site compressionFlushThreshold(int threshold) {
+        if (threshold < 0) throw new IllegalArgumentException("threshold can't be negative.");
+
+        compressionFlushThreshold_ = threshold;
+        return this;
+    }
+
+    /**
+     * Retrieves how many bytes of content need to be written to a streamed
+     * compressed response before it's flushed to the client.
+     *
+     * @return the flush threshold in bytes
+     * @see #compressionFlushThreshold(int)
+     * @since 1.10
+     */
+    public int compressionFlushThreshold() {
+        return compressionFlushThreshold_;
+    }
+
+    /**
+     * Sets the buffer size of the streaming output mode, which mainly
+     * benefits the responses that have their text buffer disabled.
+     * <p>Without text buffer, each print is normally written and flushed
+     * to the client right away, which sends a network packet per print
+     * when an element prints in a loop. In the streaming output mode, the
+     * printed text is encoded straight into a pooled buffer that is only
+     * written out when it's full, when the response is explicitly
+     * flushed, or when it's closed. Content that is buffered by the text
+     * buffer is written out through the same buffer.
+     * <p>The streaming output mode is disabled by default.
+     *
+     * @param bufferSize the size in bytes of the output buffer of each
+     *                   response; or
+     *                   <p>{@code 0} to disable the streaming output mode
+     * @return this site instance
+     * @see Response#enableTextBuffer(boolean)
+     * @since 1.10
+     */
+    public Site streamingOutput(int bufferSize) {
+        if (bufferSize < 0) throw new IllegalArgumentException("bufferSize can't be negative.");
+
+        if (0 == bufferSize) {
+            streamingOutputPool_ = null;
+        } else {
+            streamingOutputPool_ = new CoalescingOutput.Pool(bufferSize, Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+        }
+        return this;
+    }
+
+    /**
+     * Retrieves the buffer size of the streaming output mode.
+     *
+     * @return the size in bytes of the output buffer of each response; or
+     * <p>{@code 0} when the streaming output mode is disabled
+     * @see #streamingOutput(int)
+     * @since 1.10
+     */
+    public int streamingOutput() {
+        var pool = streamingOutputPool_;
+        if (null == pool) {
+            return 0;
+        }
+        return pool.bufferSize();
+    }
+
+    CoalescingOutput.Pool streamingOutputPool() {
+        return streamingOutputPool_;
+    }
+
+    /**
+     * Sets the capacity of the cache that holds the rendered output of
+     * the routes that opted into it with {@link #cacheRendering} or with
+     * the {@link RenderCached} annotation.
+     * <p>The cache is emptied whenever the site is deployed or its
+     * capacity changes, and evicts the responses that weren't used
+     * recently when it's full.
+     * <p>The default capacity is 1024 responses.
+     *
+     * @param capacity the maximum number of rendered responses that will
+     *                 be cached; or
+     *                 <p>{@code 0} to disable the cache
+     * @return this site instance
+     * @see #renderCacheStats()
+     * @see #invalidateRenderCache()
+     * @since 1.10
+     */
+    public Site renderCache(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity can't be negative.");
+
+        renderCacheCapacity_ = capacity;
+        resetRenderCache();
+        return this;
+    }
+
+    /**
+     * Retrieves the capacity of the render cache.
+     *
+     * @return the capacity of the render cache; or
+     * <p>{@code 0} when it's disabled
+     * @see #renderCache(int)
+     * @since 1.10
+     */
+    public int renderCache() {
+        return renderCacheCapacity_;
+    }
+
+    /**
+     * Creates a snapshot of the statistics of the render cache.
+     *
+     * @return the statistics of the render cache; or
+     * <p>{@code null} when the render cache is disabled
+     * @see #renderCache(int)
+     * @since 1.10
+     */
+    public RenderCacheStats renderCacheStats() {
+        var cache = renderCache_;
+        if (null == cache) {
+            return null;
+        }
+        return cache.stats();
+    }
+
+    /**
+     * Removes all the rendered output from the render cache.
+     *
+     * @see #renderCache(int)
+     * @since 1.10
+     */
+    public void invalidateRenderCache() {
+        var cache = renderCache_;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Removes the rendered output of a route from the render cache, for
+     * instance because the data it displays changed.
+     *
+     * @param route the route whose rendered output should be removed
+     * @see #renderCache(int)
+     * @since 1.10
+     */
+    public void invalidateRenderCache(Route route) {
+        var cache = renderCache_;
+        if (cache != null) {
+            cache.invalidate(route);
+        }
+    }
+
+    /**
+     * Sets the executor that computes the blocks of a page concurrently,
+     * for instance when they're {@link Context#progressive(rife.template.Template)
+     * rendered progressively}.
+     * <p>By default, each block is computed on its own virtual thread when
+     * the JVM supports them, and on a cached pool of daemon threads
+     * otherwise.
+     *
+     * @param executor the executor to use; or
+     *                 <p>{@code null} to use the default executor
+     * @return this site instance
+     * @since 1.10
+     */
+    public Site renderExecutor(ExecutorService executor) {
+        renderExecutor_ = executor;
+        return this;
+    }
+
+    /**
+     * Retrieves the executor that computes the blocks of a page
+     * concurrently.
+     *
+     * @return the executor that was set; or
+     * <p>the default executor when none was set
+     * @see #renderExecutor(ExecutorService)
+     * @since 1.10
+     */
+    public ExecutorService renderExecutor() {
+        var executor = renderExecutor_;
+        if (null == executor) {
+            synchronized (this) {
+                executor = renderExecutor_;
+                if (null == executor) {
+                    executor = createRenderExecutor();
+                    renderExecutor_ = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService createRenderExecutor() {
+        // virtual threads are obtained reflectively to keep running on
+        // older JVMs
+        try {
+            var method = Executors.class.getDeclaredMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Throwable e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "rife-render");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Sets the total size of the memory-mapped files that are kept to send
+     * hot small files with {@link Context#sendFile(java.nio.file.Path)}.
+     * <p>Files of up to one megabyte are mapped the second time they're
+     * sent, which allows them to be handed to the servlet container without
+     * being copied to the heap when its output stream can write buffers.
+     * The files that weren't sent recently are
+     * evicted from the cache when the total size is exceeded.
+     * <p>Evicting a file only drops the reference to its mapping, which is
+     * released whenever the garbage collector reclaims it. A file can thus
+     * stay mapped for a while after it was evicted, which for instance
+     * keeps it from being deleted or replaced on Windows. Disable the cache
+     * for files that have to be modified while the application runs.
+     * <p>The default size is 64 megabytes.
+     *
+     * @param capacity the maximum number of bytes that are mapped; or
+     *                 <p>{@code 0} to disable the cache
+     * @return this site instance
+     * @since 1.10
+     */
+    public Site mappedFileCache(long capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity can't be negative.");
+
+        if (0 == capacity) {
+            mappedFileCache_ = null;
+        } else {
+            mappedFileCache_ = new MappedFileCache(capacity);
+        }
+        return this;
+    }
+
+    /**
+     * Retrieves the total size of the memory-mapped files cache.
+     *
+     * @return the maximum number of bytes that are mapped; or
+     * <p>{@code 0} when the cache is disabled
+     * @see #mappedFileCache(long)
+     * @since 1.10
+     */
+    public long mappedFileCache() {
+        var cache = mappedFileCache_;
+        if (null == cache) {
+            return 0;
+        }
+        return cache.capacity();
+    }
+
+    MappedFileCache mappedFileCacheInstance() {
+        return mappedFileCache_;
+    }
+
+    /**
+     * Creates the render cache key of a request.
+     *
+     * @param request    the request
+     * @param match      the route match of the request
+     * @param parameters the parameters of the request
+     * @return the key of the request; or
+     * <p>{@code null} if the request can't be served from the render cache
+     * @since 1.10
+     */
+    RenderCache.PrimaryKey renderCacheKey(Request request, RouteMatch match, Map<String, String[]> parameters) {
+        if (null == renderCache_) {
+            return null;
+        }
+
+        var method = request.getMethod();
+        if (method != RequestMethod.GET &&
+            method != RequestMethod.HEAD) {
+            return null;
+        }
+
+        var policy = renderCachePolicies_.get(match.route());
+        if (null == policy) {
+            return null;
+        }
+
+        return RenderCache.primaryKey(match.route(), match.pathInfo(), parameters, policy);
+    }
+
+    RenderCache.Entry cachedRendering(RenderCache.PrimaryKey key, Request request) {
+        var cache = renderCache_;
+        if (null == cache) {
+            return null;
+        }
+        return cache.get(key, request);
+    }
+
+    void storeRendering(RenderCache.PrimaryKey key, Request request, String[] variedHeaders, String contentType, List<Consumer<Response>> headers, byte[] body, String fingerprint) {
+        var cache = renderCache_;
+        var policy = renderCachePolicies_.get(key.route());
+        if (null == cache ||
+            null == policy) {
+            return;
+        }
+        cache.put(key, variedHeaders, request, new RenderCache.Entry(System.nanoTime() + policy.ttlNanos(), contentType, headers, body, fingerprint));
+    }
+
+    /**
+     * Looks for an element that corresponds to a particular request URL,
+     * going through the {@link #routeCache(int) route cache} when it's
+     * enabled.
+     *
+     * @param elementUrl the URL that will be used to search for the element
+     * @return an instance of {@code Route} when an element match
+     * was found; or
+     * <p>{@code null} if no suitable element could be found.
+     * @see #findRouteForRequest(Request, String)
+     * @since 1.10
+     */
+    RouteMatch findCachedRouteForRequest(Request request, String elementUrl) {
+        var cache = routeCache_;
+        if (null == cache) {
+            return findRouteForRequest(request, elementUrl);
+        }
+
+        var method = request.getMethod();
+        var match = cache.get(method, elementUrl);
+        if (match != null) {
+            if (RouteMatchCache.NO_MATCH == match) {
+                return null;
+            }
+            return match;
+        }
+
+        match = findRouteForRequest(request, elementUrl);
+        cache.put(method, elementUrl, match);
+        return match;
+    }
+
     /**
      * Looks for an element that corresponds to a particular request URL.
      * <p>
@@ -156,6 +820,9 @@ public class Site extends Router {
      * segments. It will also look for fallback elements, cater for trailing
      * slashes, and figure out the correct path info.
      * <p>
+     * Once the site is deployed, this is delegated to its compiled
+     * {@link RouteTrie}, unless {@link #compiledRouting(boolean) compiled
+     * routing} was disabled.
      *
      * @param elementUrl the URL that will be used to search for the element
      * @return an instance of {@code Route} when an element match
@@ -164,6 +831,11 @@ public class Site extends Router {
      * @since 1.0
      */
     RouteMatch findRouteForRequest(Request request, String elementUrl) {
+        var route_trie = routeTrie_;
+        if (compiledRouting_ && route_trie != null) {
+            return route_trie.resolve(request.getMethod(), elementUrl);
+        }
+
         // obtain the element info that mapped to the requested path info
         Route route;
         var element_url_buffer = new StringBuilder(elementUrl);
@@ -212,6 +884,13 @@ public class Site extends Router {
                 // construct the element path info
                 element_path_info = elementUrl.substring(element_url_buffer.length());
                 element_path_info = StringUtils.stripFromFront(element_path_info, "/");
+
+                if (route.pathInfoHandling().type() == PathInfoType.MAP) {
+                    var parameters = PathInfoMatcher.matchParameters(route, element_path_info);
+                    if (parameters != null) {
+                        return new RouteMatch(route, element_path_info, parameters);
+                    }
+                }
             }
         }
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries the events of {@link SseBroadcaster} instances between the nodes
+ * of a cluster, so that an event that is sent on one node reaches the
+ * connections of all the nodes.
+ * <p>A transport publishes the events of a channel in a single sequence
+ * that is shared by all the nodes, which makes the event IDs of the
+ * broadcasters identical on every node and allows a client to reconnect to
+ * any node of the cluster while its missed events are replayed from the
+ * history.
+ * <p>Implementations must deliver the messages of a channel to each
+ * receiver in the order of their sequence numbers, without skipping any.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcaster#transport(SseBroadcastTransport, String)
+ * @see rife.engine.ssetransports.MemorySseTransport
+ * @see rife.engine.ssetransports.DatabaseSseTransport
+ * @since 1.10
+ */
+public interface SseBroadcastTransport {
+    /**
+     * Retrieves the epoch of a channel, which is shared by all the nodes
+     * and identifies the sequence of the channel in the event IDs.
+     *
+     * @param channel the name of the channel
+     * @return the epoch of the channel
+     * @since 1.10
+     */
+    long epoch(String channel);
+
+    /**
+     * Publishes an event to all the receivers of a channel, including the
+     * receivers of the node that publishes it.
+     *
+     * @param channel  the name of the channel
+     * @param origin   the identifier of the broadcaster that publishes the
+     *                 event
+     * @param event    the event to publish
+     * @param targeted {@code true} when the event was sent with a filter
+     *                 that only the publishing broadcaster can evaluate; or
+     *                 <p>{@code false} otherwise
+     * @return the sequence number that was assigned to the event
+     * @throws IllegalArgumentException when the event can't be carried by
+     *                                  this transport
+     * @since 1.10
+     */
+    long publish(String channel, String origin, ServerSentEvent event, boolean targeted);
+
+    /**
+     * Starts delivering the messages of a channel to a receiver.
+     * <p>The receiver gets all the messages with a sequence number that is
+     * higher than the returned one.
+     *
+     * @param channel  the name of the channel
+     * @param receiver the receiver of the messages
+     * @return the sequence number of the most recently published message of
+     * the channel; or
+     * <p>{@code 0} when no message was published yet
+     * @since 1.10
+     */
+    long subscribe(String channel, Consumer<SseTransportMessage> receiver);
+
+    /**
+     * Stops delivering the messages of a channel to a receiver.
+     *
+     * @param channel  the name of the channel
+     * @param receiver the receiver that was previously subscribed
+     * @since 1.10
+     */
+    void unsubscribe(String channel, Consumer<SseTransportMessage> receiver);
+}
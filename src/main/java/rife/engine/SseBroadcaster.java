@@ -6,17 +6,18 @@ package rife.engine;
 
 import rife.template.Template;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -43,6 +44,9 @@ import java.util.logging.Logger;
  * disconnected.
  * <p>When {@link #history(int) event history} is enabled, clients that
  * reconnect will automatically receive the events that they missed.
+ * <p>Behind a load balancer, the broadcasters of all the nodes can share
+ * their events and event IDs through a
+ * {@link #transport(SseBroadcastTransport, String) transport}.
  *
  * @author Geert Bevin (gbevin[remove] at uwyn dot com)
  * @see SseConnection
@@ -51,25 +55,54 @@ import java.util.logging.Logger;
  * @since 1.10
  */
 public class SseBroadcaster implements AutoCloseable {
-    private final Set<SseConnection> connections_ = ConcurrentHashMap.newKeySet();
-
-    private static final AtomicInteger HEARTBEAT_THREAD_SEQUENCE = new AtomicInteger();
+    private final SseConnectionShards connections_ = new SseConnectionShards(SseConnectionShards.defaultCount());
+    private volatile Executor fanOutExecutor_ = null;
+    private final LatencySamples fanOutLatencies_ = new LatencySamples();
 
     private final Object heartbeatLock_ = new Object();
-    private ScheduledExecutorService heartbeatExecutor_ = null;
+    private SseHeartbeatTimer.Heartbeat heartbeat_ = null;
 
     private final Object historyLock_ = new Object();
     private volatile ArrayDeque<HistoryEntry> history_ = null;
+    private volatile SseHistoryFile historyFile_ = null;
+    // the filters of the targeted events in the persistent history, which
+    // can't be stored in the file
+    private final TreeMap<Long, SseConnectionFilter> historyFilters_ = new TreeMap<>();
     private int historyCapacity_ = 0;
     // a random nonce rather than wall-clock time, so that broadcasters
-    // created within the same millisecond can't share an ID namespace
-    private final long epoch_ = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    // created within the same millisecond can't share an ID namespace; it
+    // also identifies this broadcaster as the origin of transported events
+    private final long nonce_ = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    private final String origin_ = String.valueOf(nonce_);
+    private volatile long epoch_ = nonce_;
     private long lastEventId_ = 0;
+    // the highest event ID that the history no longer covers
+    private long historyFloor_ = 0;
+    // counts the entries that were added to the history, which orders them
+    // even when the events of a transport arrive out of sequence
+    private long historyPosition_ = 0;
     private long replays_ = 0;
     private long gaps_ = 0;
     private long maxMissedEvents_ = 0;
 
-    private record HistoryEntry(long id, ServerSentEvent event, SseConnectionFilter filter) {
+    private volatile int outboundQueueCapacity_ = 0;
+    private volatile SseOverflowPolicy overflowPolicy_ = null;
+
+    private final Object transportLock_ = new Object();
+    private volatile TransportBinding transport_ = null;
+
+    private static final SseConnectionFilter ACCEPT_ALL = connection -> true;
+    private static final SseConnectionFilter REJECT_ALL = connection -> false;
+
+    // entries of a persistent history carry the preformatted event instead
+    // of the event itself
+    private record HistoryEntry(long id, ServerSentEvent event, SseConnectionFilter filter, String name, byte[] preformatted) {
+        HistoryEntry(long id, ServerSentEvent event, SseConnectionFilter filter) {
+            this(id, event, filter, null, null);
+        }
+    }
+
+    private record TransportBinding(SseBroadcastTransport transport, String channel, Consumer<SseTransportMessage> receiver) {
     }
 
     /**
@@ -77,7 +110,8 @@ public class SseBroadcaster implements AutoCloseable {
      * that reconnect automatically receive the events that they missed.
      * <p>When history is enabled, the broadcaster assigns the SSE ID of
      * every event that carries a name, data or a template. These IDs are
-     * composed of an epoch that identifies the broadcaster instance and of
+     * composed of an epoch that identifies the broadcaster instance, or
+     * the channel of its {@link #transport transport}, and of
      * a monotonically increasing sequence number, so that IDs from before
      * an application restart can't be mistaken for positions in the
      * sequence of the new instance. Since application-assigned event IDs
@@ -114,7 +148,8 @@ public class SseBroadcaster implements AutoCloseable {
      * events that are sent through the broadcaster become part of the
      * history, since events that are sent directly to an individual
      * connection bypass it. The history is kept in memory and doesn't
-     * survive an application restart.
+     * survive an application restart, a
+     * {@link #persistentHistory(Path, int, long) persistent history} does.
      * <p>Events are delivered to the connections outside of the internal
      * history lock. When multiple threads broadcast concurrently, the order
      * in which their events reach an individual connection isn't
@@ -129,7 +164,8 @@ public class SseBroadcaster implements AutoCloseable {
      * the container configuration, which is done for the embedded servers
      * through {@link Server#connectionIdleTimeout} or
      * {@link TomcatServer#connectionTimeout}, and keep it longer than the
-     * heartbeat interval.
+     * heartbeat interval, or give the connections an
+     * {@link #outboundQueue(int, SseOverflowPolicy) outbound queue}.
      *
      * @param capacity the number of events to buffer
      * @return this broadcaster instance
@@ -144,10 +180,277 @@ public class SseBroadcaster implements AutoCloseable {
             historyCapacity_ = capacity;
             if (history_ == null) {
                 history_ = new ArrayDeque<>(capacity);
+                if (historyFile_ != null) {
+                    historyFile_.close();
+                    historyFile_ = null;
+                    historyFilters_.clear();
+                    historyFloor_ = lastEventId_;
+                }
             } else {
-                while (history_.size() > historyCapacity_) {
-                    history_.removeFirst();
+                evictHistory();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Enables event history in a memory-mapped file, which survives
+     * application restarts and keeps the buffered events off the heap.
+     * <p>This works like {@link #history(int)}, except that the events are
+     * formatted once and stored as the bytes that are sent to the clients,
+     * in a ring buffer that is bounded both by a number of events and by a
+     * size in bytes. The oldest events are evicted when either bound is
+     * reached. The epoch of the event IDs and the sequence are stored in the
+     * file as well, so that a restarted application continues the same
+     * sequence and clients that reconnect after a deploy have their missed
+     * events replayed instead of being counted as gaps. The file is written
+     * through the operating system's page cache, which survives the
+     * application process, while it's only guaranteed to be on the storage
+     * device after {@link #close()}.
+     * <p>Since the events are stored after formatting, events with a
+     * template can't be sent while a persistent history is enabled. Events
+     * that are {@link #send(ServerSentEvent, SseConnectionFilter) sent with
+     * a filter} are stored with a mark, and their filter is only kept in
+     * memory: after a restart, they're no longer replayed to any connection.
+     * An event that is larger than the size of the ring, or that arrives
+     * from a {@link #transport transport} out of sequence, isn't stored and
+     * makes reconnections from before it count as gaps.
+     * <p>A file that was written with another size in bytes, or by the
+     * broadcaster of another transport channel, starts a new history. Each
+     * broadcaster needs its own file. Calling {@link #history(int)}
+     * afterwards switches back to a history on the heap.
+     *
+     * @param file     the path of the history file, which is created when
+     *                 it doesn't exist
+     * @param capacity the maximum number of events to buffer
+     * @param maxBytes the size of the ring buffer in bytes
+     * @return this broadcaster instance
+     * @throws rife.engine.exceptions.EngineException when the file can't be
+     *                                                opened
+     * @see #history(int)
+     * @see #historyStats()
+     * @since 1.10
+     */
+    public SseBroadcaster persistentHistory(Path file, int capacity, long maxBytes) {
+        if (null == file) throw new IllegalArgumentException("file can't be null");
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        if (maxBytes < 1) throw new IllegalArgumentException("maxBytes must be at least 1");
+
+        synchronized (historyLock_) {
+            var history_file = new SseHistoryFile(file, capacity, maxBytes, epoch_);
+            if (transport_ != null) {
+                if (history_file.epoch() != epoch_) {
+                    history_file.reset(epoch_);
                 }
+            } else if (history_file.epoch() != epoch_) {
+                // the history of a previous application instance, its
+                // sequence is continued
+                epoch_ = history_file.epoch();
+                lastEventId_ = history_file.lastId();
+            }
+            if (lastEventId_ > history_file.lastId()) {
+                // the events that were already sent aren't in the file
+                history_file.advance(lastEventId_);
+                history_file.raiseFloor(lastEventId_);
+            }
+            lastEventId_ = history_file.lastId();
+
+            if (historyFile_ != null) {
+                historyFile_.close();
+            }
+            historyCapacity_ = capacity;
+            historyFilters_.clear();
+            historyFile_ = history_file;
+            history_ = null;
+        }
+        return this;
+    }
+
+    private boolean historyEnabled() {
+        return history_ != null || historyFile_ != null;
+    }
+
+    /**
+     * Gives every connection that registers afterwards a bounded queue of
+     * outbound events, so that sending never waits for a client.
+     * <p>Without a queue, events are written by the thread that sends them,
+     * one connection after the other, and a client on a slow link stalls
+     * the delivery to all the clients that come after it. With a queue,
+     * sending only adds the event to the queue of each connection, and the
+     * servlet container writes the queued events as soon as each client can
+     * receive them, without blocking a thread.
+     * <p>When a client can't keep up and its queue is full, the overflow
+     * policy decides whether older events are discarded, whether events are
+     * coalesced by their name, or whether the connection is closed. A closed
+     * connection is automatically re-established by the browser and catches
+     * up through the {@link #history(int) history}, which should then be
+     * large enough to cover the queue capacity, while the replay itself
+     * should fit in the queue capacity.
+     * <p>Outside a servlet container that supports non-blocking output, the
+     * events are still written as soon as they're queued.
+     *
+     * @param capacity the maximum number of queued events per connection
+     * @param policy   the policy that handles a full queue
+     * @return this broadcaster instance
+     * @see SseOverflowPolicy
+     * @see SseConnection#queuedEvents()
+     * @see SseConnection#droppedEvents()
+     * @since 1.10
+     */
+    public SseBroadcaster outboundQueue(int capacity, SseOverflowPolicy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        if (null == policy) throw new IllegalArgumentException("policy can't be null");
+
+        overflowPolicy_ = policy;
+        outboundQueueCapacity_ = capacity;
+        return this;
+    }
+
+    /**
+     * Delivers every broadcast to the connections in parallel, with the
+     * provided executor.
+     * <p>The connections of a broadcaster are spread over several
+     * independent sets, and without an executor, a broadcast is delivered to
+     * all of them one after the other by the thread that sends it. With many
+     * thousands of connections, each set can instead be delivered by its own
+     * task of the executor. The payload of events without a template is
+     * still formatted only once for all the sets. Sending waits until all
+     * the tasks are done, so that the events that are broadcast sequentially
+     * from a single thread still arrive in order.
+     * <p>Java 21 and later can use virtual threads for this with
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, the executor
+     * isn't shut down by the broadcaster.
+     *
+     * @param executor the executor that delivers to the connection sets; or
+     *                 {@code null} to deliver on the thread that sends the
+     *                 event
+     * @return this broadcaster instance
+     * @see #fanOutStats()
+     * @since 1.10
+     */
+    public SseBroadcaster fanOut(Executor executor) {
+        fanOutExecutor_ = executor;
+        return this;
+    }
+
+    /**
+     * Retrieves a snapshot of the durations of the broadcasts, from the
+     * moment an event is sent until it's delivered to all the connections.
+     *
+     * @return the current fan-out statistics
+     * @see SseFanOutStats
+     * @see #fanOut
+     * @since 1.10
+     */
+    public SseFanOutStats fanOutStats() {
+        var percentiles = fanOutLatencies_.percentiles(50, 90, 99);
+        return new SseFanOutStats(fanOutLatencies_.count(), connections_.count(),
+            percentiles[0], percentiles[1], percentiles[2], fanOutLatencies_.max());
+    }
+
+    /**
+     * Shares the events of this broadcaster with the broadcasters of the
+     * other nodes of a cluster, through a transport.
+     * <p>Every event that is sent is published once to the channel of the
+     * transport, and the broadcasters of all the nodes that use the same
+     * channel deliver it to their own connections. The events of the
+     * channel are numbered in a single sequence that is shared by the
+     * nodes, and the epoch of the event IDs is the one of the channel, which
+     * makes the {@link #history(int) history} IDs identical on every node.
+     * A client that reconnects to another node of the cluster will thus
+     * receive the events that it missed, like when it reconnects to the same
+     * node.
+     * <p>Events that are {@link #send(ServerSentEvent, SseConnectionFilter)
+     * sent with a filter} are only delivered by the node that sent them,
+     * since the filter can't be evaluated elsewhere, and they're only part
+     * of the history of that node. The events that arrive from other nodes
+     * can be delivered out of sequence with the events of this node, and
+     * can be delivered again after a reconnection. When a client reconnects
+     * with the ID of an event that didn't reach this node yet, nothing is
+     * replayed and the events that it missed are delivered live as they
+     * arrive.
+     * <p>Calling this method again replaces the previous transport, and
+     * clears the history since its IDs belong to the previous channel.
+     * The transport is stopped by {@link #stopTransport()} and when this
+     * broadcaster is {@link #close() closed}.
+     *
+     * @param transport the transport that carries the events
+     * @param channel   the name of the channel that is shared by the
+     *                  broadcasters of the nodes
+     * @return this broadcaster instance
+     * @see SseBroadcastTransport
+     * @see rife.engine.ssetransports.MemorySseTransport
+     * @see rife.engine.ssetransports.DatabaseSseTransport
+     * @since 1.10
+     */
+    public SseBroadcaster transport(SseBroadcastTransport transport, String channel) {
+        if (null == transport) throw new IllegalArgumentException("transport can't be null");
+        if (null == channel) throw new IllegalArgumentException("channel can't be null");
+
+        synchronized (transportLock_) {
+            var previous = transport_;
+            if (previous != null) {
+                previous.transport().unsubscribe(previous.channel(), previous.receiver());
+            }
+
+            var epoch = transport.epoch(channel);
+            long persisted;
+            synchronized (historyLock_) {
+                epoch_ = epoch;
+                lastEventId_ = 0;
+                historyFloor_ = 0;
+                if (history_ != null) {
+                    history_.clear();
+                }
+                if (historyFile_ != null) {
+                    // a persistent history of the same channel is continued
+                    if (historyFile_.epoch() != epoch) {
+                        historyFile_.reset(epoch);
+                        historyFilters_.clear();
+                    }
+                    lastEventId_ = historyFile_.lastId();
+                }
+                persisted = lastEventId_;
+            }
+
+            // subscribe outside the history lock, since the transport
+            // delivers messages to the receiver while holding its own locks
+            Consumer<SseTransportMessage> receiver = this::receive;
+            var latest = transport.subscribe(channel, receiver);
+            synchronized (historyLock_) {
+                lastEventId_ = Math.max(lastEventId_, latest);
+                historyFloor_ = Math.max(historyFloor_, latest);
+                if (historyFile_ != null &&
+                    latest > persisted) {
+                    // the events that were published while this node was
+                    // down aren't in the file
+                    historyFile_.advance(latest);
+                    historyFile_.raiseFloor(latest);
+                }
+            }
+
+            transport_ = new TransportBinding(transport, channel, receiver);
+        }
+        return this;
+    }
+
+    /**
+     * Stops sharing the events of this broadcaster through its
+     * {@link #transport transport}, which no longer delivers the events of
+     * the other nodes to it.
+     * <p>The IDs of subsequent events continue the sequence of the channel
+     * on this node only. Nothing happens when no transport is used.
+     *
+     * @return this broadcaster instance
+     * @see #transport(SseBroadcastTransport, String)
+     * @since 1.10
+     */
+    public SseBroadcaster stopTransport() {
+        synchronized (transportLock_) {
+            var binding = transport_;
+            if (binding != null) {
+                transport_ = null;
+                binding.transport().unsubscribe(binding.channel(), binding.receiver());
             }
         }
         return this;
@@ -156,7 +459,12 @@ public class SseBroadcaster implements AutoCloseable {
     void register(SseConnection connection) {
         connection.setBroadcaster(this);
 
-        if (history_ == null) {
+        var queue_capacity = outboundQueueCapacity_;
+        if (queue_capacity > 0) {
+            connection.enableOutboundQueue(queue_capacity, overflowPolicy_);
+        }
+
+        if (!historyEnabled()) {
             synchronized (connection) {
                 // a connection that was closed while registering isn't added
                 if (connection.isOpen()) {
@@ -178,6 +486,7 @@ public class SseBroadcaster implements AutoCloseable {
             List<HistoryEntry> replay;
             synchronized (historyLock_) {
                 replay = selectReplay(connection);
+                connection.setHistoryPosition(historyPosition_);
                 connections_.add(connection);
             }
 
@@ -186,7 +495,10 @@ public class SseBroadcaster implements AutoCloseable {
                 if (!entry.filter().accepts(connection)) {
                     continue;
                 }
-                if (!connection.send(entry.event(), formatId(entry.id()))) {
+                var delivered = entry.preformatted() != null ?
+                    connection.sendPreformatted(entry.name(), entry.preformatted()) :
+                    connection.send(entry.event(), formatId(entry.id()));
+                if (!delivered) {
                     complete = false;
                     break;
                 }
@@ -238,6 +550,14 @@ public class SseBroadcaster implements AutoCloseable {
             return List.of();
         }
 
+        if (transport_ != null &&
+            last_epoch == epoch_ &&
+            last > lastEventId_) {
+            // the client received events from another node that didn't
+            // arrive here yet, they'll be delivered live when they do
+            return List.of();
+        }
+
         if (last_epoch != epoch_ ||
             last > lastEventId_) {
             // the ID originates from another broadcaster instance, most
@@ -261,8 +581,9 @@ public class SseBroadcaster implements AutoCloseable {
             maxMissedEvents_ = missed;
         }
 
-        var oldest = history_.isEmpty() ? lastEventId_ + 1 : history_.peekFirst().id();
-        if (last < oldest - 1) {
+        var floor = historyFile_ != null ? historyFile_.floor() : historyFloor_;
+        var oldest = floor + 1;
+        if (last < floor) {
             gaps_ += 1;
             var capacity = historyCapacity_;
             Logger.getLogger("rife.engine").fine(() ->
@@ -274,6 +595,15 @@ public class SseBroadcaster implements AutoCloseable {
         }
 
         var replay = new ArrayList<HistoryEntry>();
+        if (historyFile_ != null) {
+            for (var record : historyFile_.recordsAfter(last)) {
+                // the filters of targeted events from before a restart are
+                // unknown, those events aren't replayed
+                var filter = record.targeted() ? historyFilters_.getOrDefault(record.id(), REJECT_ALL) : ACCEPT_ALL;
+                replay.add(new HistoryEntry(record.id(), null, filter, record.name(), record.payload()));
+            }
+            return replay;
+        }
         for (var entry : history_) {
             if (entry.id() > last) {
                 replay.add(entry);
@@ -295,7 +625,7 @@ public class SseBroadcaster implements AutoCloseable {
      * @since 1.10
      */
     public int send(ServerSentEvent event) {
-        return send(event, connection -> true);
+        return send(event, ACCEPT_ALL);
     }
 
     /**
@@ -320,7 +650,9 @@ public class SseBroadcaster implements AutoCloseable {
      * untouched.
      * <p>Exceptions that are thrown by the filter propagate to the caller,
      * and the connections that weren't evaluated yet won't receive the
-     * event.
+     * event. When the broadcaster {@link #fanOut fans out}, only the
+     * connections of the same set are skipped, and the first exception
+     * propagates once all the sets have been handled.
      *
      * @param event  the event to broadcast
      * @param filter the filter that determines which connections receive
@@ -341,59 +673,223 @@ public class SseBroadcaster implements AutoCloseable {
             return 0;
         }
 
-        if (history_ == null) {
-            return sendToConnections(connections_, event, filter, null);
-        }
-
-        if (event.id() != null) {
+        if (historyEnabled() &&
+            event.id() != null) {
             throw new IllegalArgumentException(
                 "event IDs are assigned by the broadcaster when history is enabled, " +
                 "remove the id() from the event, or manage reconnection with your " +
                 "own IDs without history()");
         }
 
+        if (historyFile_ != null &&
+            event.template() != null) {
+            throw new IllegalArgumentException(
+                "template events can't be stored in a persistent history, send the " +
+                "processed content of the template as data instead");
+        }
+
+        var transport = transport_;
+        if (transport != null) {
+            return sendThroughTransport(transport, event, filter);
+        }
+
+        if (!historyEnabled()) {
+            return sendToConnections(event, filter, null, 0);
+        }
+
         String id_override = null;
-        List<SseConnection> targets;
+        long position = 0;
         synchronized (historyLock_) {
             if (carriesState(event)) {
-                var id = ++lastEventId_;
-                id_override = formatId(id);
-                history_.addLast(new HistoryEntry(id, snapshotEvent(event), filter));
-                while (history_.size() > historyCapacity_) {
-                    history_.removeFirst();
-                }
+                var sequence = lastEventId_ + 1;
+                id_override = formatId(sequence);
+                position = recordHistory(sequence, snapshotEvent(event), filter);
             }
-            // capture the recipients atomically with the ID assignment, so
-            // that a connection that registers concurrently either receives
-            // this event through the replay or through this delivery
-            targets = new ArrayList<>(connections_);
         }
 
         // deliver outside the history lock, so that a slow client doesn't
-        // hold up other broadcasts or new registrations
-        return sendToConnections(targets, event, filter, id_override);
+        // hold up other broadcasts or new registrations; a connection that
+        // registers concurrently records its history position, and either
+        // receives this event through the replay or through this delivery
+        return sendToConnections(event, filter, id_override, position);
+    }
+
+    private int sendThroughTransport(TransportBinding binding, ServerSentEvent event, SseConnectionFilter filter) {
+        // the sequence is assigned by the transport, and the event is
+        // delivered to the local connections right away, instead of when it
+        // comes back through the transport
+        var snapshot = snapshotEvent(event);
+        var sequence = binding.transport().publish(binding.channel(), origin_, snapshot, filter != ACCEPT_ALL);
+
+        String id_override = null;
+        long position = 0;
+        synchronized (historyLock_) {
+            if (historyEnabled() &&
+                carriesState(event)) {
+                id_override = formatId(sequence);
+                position = recordHistory(sequence, snapshot, filter);
+            } else if (sequence > lastEventId_) {
+                lastEventId_ = sequence;
+            }
+        }
+
+        return sendToConnections(event, filter, id_override, position);
     }
 
-    private int sendToConnections(Iterable<SseConnection> targets, ServerSentEvent event, SseConnectionFilter filter, String idOverride) {
+    private void receive(SseTransportMessage message) {
+        // a message can still be in flight when the transport is stopped
+        if (null == transport_ ||
+            origin_.equals(message.origin())) {
+            return;
+        }
+
+        String id_override = null;
+        long position = 0;
+        synchronized (historyLock_) {
+            // targeted events are only delivered by the node that sent them,
+            // so they don't become part of the history of the other nodes
+            if (historyEnabled() &&
+                !message.targeted() &&
+                carriesState(message.event())) {
+                id_override = formatId(message.sequence());
+                position = recordHistory(message.sequence(), message.event(), ACCEPT_ALL);
+            } else if (message.sequence() > lastEventId_) {
+                lastEventId_ = message.sequence();
+            }
+        }
+
+        if (!message.targeted()) {
+            sendToConnections(message.event(), ACCEPT_ALL, id_override, position);
+        }
+    }
+
+    // adds an event to the history, in the order of its ID, and returns its
+    // history position; must be called while holding the history lock
+    private long recordHistory(long sequence, ServerSentEvent snapshot, SseConnectionFilter filter) {
+        if (sequence > lastEventId_) {
+            lastEventId_ = sequence;
+        }
+
+        if (historyFile_ != null) {
+            return recordHistoryFile(sequence, snapshot, filter);
+        }
+
+        var entry = new HistoryEntry(sequence, snapshot, filter);
+        if (history_.isEmpty() ||
+            history_.peekLast().id() < sequence) {
+            history_.addLast(entry);
+        } else if (sequence > historyFloor_) {
+            // an event from a transport that arrived out of sequence
+            var later = new ArrayDeque<HistoryEntry>();
+            while (!history_.isEmpty() &&
+                   history_.peekLast().id() > sequence) {
+                later.addFirst(history_.removeLast());
+            }
+            history_.addLast(entry);
+            history_.addAll(later);
+        }
+        evictHistory();
+
+        return ++historyPosition_;
+    }
+
+    private long recordHistoryFile(long sequence, ServerSentEvent snapshot, SseConnectionFilter filter) {
+        var targeted = filter != ACCEPT_ALL;
+        // template events can only arrive here from a transport
+        if (snapshot.template() == null &&
+            historyFile_.append(sequence, snapshot.name(), SseConnection.formatDataEventBytes(snapshot, formatId(sequence)), targeted)) {
+            if (targeted) {
+                historyFilters_.put(sequence, filter);
+            }
+            historyFilters_.headMap(historyFile_.floor(), true).clear();
+            return ++historyPosition_;
+        }
+
+        // the event can't be replayed, so reconnections from before it
+        // can't be served anymore
+        historyFile_.advance(sequence);
+        historyFile_.raiseFloor(sequence);
+        return 0;
+    }
+
+    private void evictHistory() {
+        while (history_.size() > historyCapacity_) {
+            historyFloor_ = history_.removeFirst().id();
+        }
+    }
+
+    private int sendToConnections(ServerSentEvent event, SseConnectionFilter filter, String idOverride, long position) {
+        var start = System.nanoTime();
+
         // events without a template have the same payload for every
-        // recipient and are formatted only once
+        // recipient and are formatted only once, for all the shards
         byte[] preformatted = null;
         if (event.template() == null) {
             preformatted = SseConnection.formatDataEventBytes(event, idOverride);
         }
 
         var sent = 0;
-        for (var connection : targets) {
+        var executor = fanOutExecutor_;
+        if (null == executor) {
+            for (var i = 0; i < connections_.count(); i++) {
+                sent += sendToShard(connections_.shard(i), event, preformatted, filter, idOverride, position);
+            }
+        } else {
+            var tasks = new ArrayList<CompletableFuture<Integer>>(connections_.count());
+            for (var i = 0; i < connections_.count(); i++) {
+                var shard = connections_.shard(i);
+                if (!shard.isEmpty()) {
+                    var payload = preformatted;
+                    tasks.add(CompletableFuture.supplyAsync(() -> sendToShard(shard, event, payload, filter, idOverride, position), executor));
+                }
+            }
+
+            // wait for all the shards, so that the events that are broadcast
+            // sequentially still arrive in order
+            RuntimeException failure = null;
+            for (var task : tasks) {
+                try {
+                    sent += task.join();
+                } catch (CompletionException e) {
+                    if (null == failure) {
+                        if (e.getCause() instanceof RuntimeException runtime_exception) {
+                            failure = runtime_exception;
+                        } else if (e.getCause() instanceof Error error) {
+                            throw error;
+                        } else {
+                            failure = e;
+                        }
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        fanOutLatencies_.record(System.nanoTime() - start);
+        return sent;
+    }
+
+    private int sendToShard(Set<SseConnection> shard, ServerSentEvent event, byte[] preformatted, SseConnectionFilter filter, String idOverride, long position) {
+        var sent = 0;
+        for (var connection : shard) {
+            // the connection registered after the event was added to the
+            // history, it was part of its replay
+            if (position != 0 &&
+                connection.historyPosition() >= position) {
+                continue;
+            }
             if (!filter.accepts(connection)) {
                 continue;
             }
             var delivered = preformatted != null ?
-                connection.sendPreformatted(preformatted) :
+                connection.sendPreformatted(event.name(), preformatted) :
                 connection.send(event, idOverride);
             if (delivered) {
                 sent += 1;
             } else {
-                connections_.remove(connection);
+                shard.remove(connection);
             }
         }
         return sent;
@@ -512,9 +1008,17 @@ public class SseBroadcaster implements AutoCloseable {
      * for 30 seconds by default, which makes a 15 second heartbeat
      * appropriate with that default, while a 30 second heartbeat races the
      * timeout. Embedded Tomcat defaults to 60 seconds.
-     * <p>The heartbeat runs on a daemon thread. Calling this method again
-     * will replace the previous interval, while {@link #stopHeartbeat()}
-     * stops the heartbeat, as does {@link #close()}.
+     * <p>Connections that wrote an event to their client during the last
+     * half interval already show that they're alive and are skipped. The
+     * heartbeats of all the broadcasters and connections of the
+     * application are scheduled on a single shared timer, which hands the
+     * heartbeats that are due over to a bounded pool of writer threads, and
+     * skips a heartbeat while its previous run is still writing. The
+     * threads of that timer stop once no heartbeats are left, so
+     * broadcasters with a heartbeat should be closed when the application
+     * is shut down. Calling this method again will replace the previous
+     * interval, while {@link #stopHeartbeat()} stops the heartbeat, as does
+     * {@link #close()}.
      *
      * @param interval the interval between heartbeats
      * @return this broadcaster instance
@@ -527,26 +1031,24 @@ public class SseBroadcaster implements AutoCloseable {
             throw new IllegalArgumentException("interval must be positive");
         }
 
+        var interval_nanos = interval.toNanos();
         synchronized (heartbeatLock_) {
             stopHeartbeat();
-            heartbeatExecutor_ = Executors.newSingleThreadScheduledExecutor(runnable -> {
-                var thread = new Thread(runnable, "sse-heartbeat-" + HEARTBEAT_THREAD_SEQUENCE.incrementAndGet());
-                thread.setDaemon(true);
-                return thread;
-            });
-            heartbeatExecutor_.scheduleAtFixedRate(() -> {
-                try {
-                    comment("keep-alive");
-                } catch (Throwable e) {
-                    // failures of individual connections are already handled
-                    // by the send logic; never let anything else cancel the
-                    // heartbeat schedule
-                }
-            }, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+            heartbeat_ = SseHeartbeatTimer.shared().schedule(interval, () -> sendHeartbeats(interval_nanos));
         }
         return this;
     }
 
+    private void sendHeartbeats(long intervalNanos) {
+        var now = System.nanoTime();
+        for (var connection : connections_) {
+            if (connection.needsHeartbeat(now, intervalNanos) &&
+                !connection.sendPreformatted(null, SseConnection.KEEP_ALIVE)) {
+                connections_.remove(connection);
+            }
+        }
+    }
+
     /**
      * Stops the {@link #heartbeat heartbeat}.
      * <p>The connections and the event history are unaffected, and a new
@@ -559,9 +1061,9 @@ public class SseBroadcaster implements AutoCloseable {
      */
     public SseBroadcaster stopHeartbeat() {
         synchronized (heartbeatLock_) {
-            if (heartbeatExecutor_ != null) {
-                heartbeatExecutor_.shutdownNow();
-                heartbeatExecutor_ = null;
+            if (heartbeat_ != null) {
+                heartbeat_.cancel();
+                heartbeat_ = null;
             }
         }
         return this;
@@ -615,8 +1117,15 @@ public class SseBroadcaster implements AutoCloseable {
      */
     public SseHistoryStats historyStats() {
         synchronized (historyLock_) {
-            var oldest = history_ == null || history_.isEmpty() ? 0 : history_.peekFirst().id();
-            var buffered = history_ == null ? 0 : history_.size();
+            long oldest;
+            int buffered;
+            if (historyFile_ != null) {
+                oldest = historyFile_.oldestId();
+                buffered = historyFile_.size();
+            } else {
+                oldest = history_ == null || history_.isEmpty() ? 0 : history_.peekFirst().id();
+                buffered = history_ == null ? 0 : history_.size();
+            }
             return new SseHistoryStats(historyCapacity_, buffered, oldest, lastEventId_,
                 replays_, gaps_, maxMissedEvents_);
         }
@@ -658,10 +1167,14 @@ public class SseBroadcaster implements AutoCloseable {
 
     /**
      * Closes all the current connections of this broadcaster, clears the
-     * event history and stops the {@link #heartbeat heartbeat}.
+     * event history, stops the {@link #heartbeat heartbeat} and stops the
+     * {@link #transport transport}.
+     * <p>A {@link #persistentHistory persistent history} isn't cleared,
+     * its file is written to the storage device instead, so that the
+     * history survives a restart of the application.
      * <p>The broadcaster itself remains usable: new connections can still
-     * register, subsequent events will be sent to them, and a heartbeat can
-     * be established again.
+     * register, subsequent events will be sent to them, and a heartbeat
+     * and a transport can be established again.
      *
      * @see #close(SseConnectionFilter)
      * @since 1.10
@@ -669,6 +1182,7 @@ public class SseBroadcaster implements AutoCloseable {
     @Override
     public void close() {
         stopHeartbeat();
+        stopTransport();
         for (var connection : connections_) {
             connection.close();
         }
@@ -677,6 +1191,10 @@ public class SseBroadcaster implements AutoCloseable {
             if (history_ != null) {
                 history_.clear();
             }
+            historyFloor_ = lastEventId_;
+            if (historyFile_ != null) {
+                historyFile_.force();
+            }
         }
     }
 }
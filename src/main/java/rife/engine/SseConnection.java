@@ -13,6 +13,7 @@ import rife.template.Template;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 
 /**
  * An {@code SseConnection} instance represents a single server-sent events
@@ -55,11 +56,19 @@ public class SseConnection implements AutoCloseable {
      */
     public static final String CONTENT_TYPE_EVENT_STREAM = "text/event-stream";
 
+    static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
     private final Context context_;
     private final Response response_;
     private final AsyncContext asyncContext_;
     private volatile boolean open_ = true;
     private volatile SseBroadcaster broadcaster_ = null;
+    private SseOutboundQueue outboundQueue_ = null;
+    // the newest history sequence number when this connection registered,
+    // later events are the only ones that are delivered live
+    private volatile long historyPosition_ = 0;
+    private volatile long lastWriteNanos_ = System.nanoTime();
+    private volatile SseHeartbeatTimer.Heartbeat heartbeat_ = null;
 
     SseConnection(Context context, boolean detached) {
         context_ = context;
@@ -140,11 +149,56 @@ public class SseConnection implements AutoCloseable {
         broadcaster_ = broadcaster;
     }
 
+    void setHistoryPosition(long position) {
+        historyPosition_ = position;
+    }
+
+    long historyPosition() {
+        return historyPosition_;
+    }
+
+    // a connection that sent something during the last half interval
+    // doesn't need a heartbeat, so that the silence between two writes
+    // stays below one and a half intervals
+    boolean needsHeartbeat(long now, long intervalNanos) {
+        return now - lastWriteNanos_ >= intervalNanos / 2;
+    }
+
+    // records that content reached the output, events that are merely
+    // queued don't keep a stalled client from getting a heartbeat
+    void written() {
+        lastWriteNanos_ = System.nanoTime();
+    }
+
+    // from now on, events are queued and written without waiting for the
+    // client instead of being written by the sending thread
+    void enableOutboundQueue(int capacity, SseOverflowPolicy policy) {
+        synchronized (this) {
+            if (!open_ || outboundQueue_ != null) {
+                return;
+            }
+
+            var queue = new SseOutboundQueue(this, response_, capacity, policy);
+            try {
+                queue.start(asyncContext_ != null);
+                outboundQueue_ = queue;
+                return;
+            } catch (IOException | RuntimeException e) {
+                // the client has probably disconnected already
+            }
+        }
+        close();
+    }
+
     /**
      * Sends an event to the client of this connection.
      * <p>The event will immediately be flushed. When the client has
      * disconnected, the connection is marked as closed and {@code false} is
      * returned.
+     * <p>When the connection belongs to a broadcaster with an
+     * {@link SseBroadcaster#outboundQueue(int, SseOverflowPolicy) outbound
+     * queue}, the event is queued instead and written as soon as the client
+     * can receive it.
      *
      * @param event the event to send
      * @return {@code true} when the event was sent successfully; or
@@ -168,14 +222,14 @@ public class SseConnection implements AutoCloseable {
         }
 
         var formatted = formatEvent(event, idOverride);
-        return writePayload(formatted.payload().getBytes(StandardCharsets.UTF_8), formatted.processedTemplate());
+        return writePayload(event.name(), formatted.payload().getBytes(StandardCharsets.UTF_8), formatted.processedTemplate());
     }
 
-    boolean sendPreformatted(byte[] payload) {
-        return writePayload(payload, null);
+    boolean sendPreformatted(String name, byte[] payload) {
+        return writePayload(name, payload, null);
     }
 
-    private boolean writePayload(byte[] payload, Template processedTemplate) {
+    private boolean writePayload(String name, byte[] payload, Template processedTemplate) {
         if (!open_) {
             return false;
         }
@@ -186,10 +240,22 @@ public class SseConnection implements AutoCloseable {
             if (!open_) {
                 return false;
             }
+
+            if (outboundQueue_ != null) {
+                if (!outboundQueue_.offer(new SseOutboundQueue.Outbound(name, payload, processedTemplate))) {
+                    // an overflowing client that is disconnected recovers
+                    // the missed events when it reconnects
+                    close();
+                    return false;
+                }
+                return open_;
+            }
+
             try {
                 var out = response_.getOutputStream();
                 out.write(payload);
                 out.flush();
+                written();
                 if (response_ instanceof AbstractResponse abstract_response) {
                     abstract_response.sseEventSent(processedTemplate);
                 }
@@ -266,6 +332,46 @@ public class SseConnection implements AutoCloseable {
         return send(new ServerSentEvent().comment(comment));
     }
 
+    /**
+     * Automatically sends a keep-alive comment to the client of this
+     * connection at a fixed interval, for as long as it's open.
+     * <p>This is intended for connections that aren't registered with a
+     * broadcaster, since the {@link SseBroadcaster#heartbeat heartbeat of a
+     * broadcaster} already covers its connections. The heartbeat is skipped
+     * when the connection sent something during the last half interval.
+     * All heartbeats are scheduled on a single timer that is shared by the
+     * whole application, calling this method again replaces the previous
+     * interval.
+     *
+     * @param interval the interval between heartbeats
+     * @return this connection instance
+     * @see #comment(String)
+     * @see SseBroadcaster#heartbeat(Duration)
+     * @since 1.10
+     */
+    public SseConnection heartbeat(Duration interval) {
+        if (interval == null || interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+
+        var interval_nanos = interval.toNanos();
+        synchronized (this) {
+            if (heartbeat_ != null) {
+                heartbeat_.cancel();
+                heartbeat_ = null;
+            }
+            if (!open_) {
+                return this;
+            }
+            heartbeat_ = SseHeartbeatTimer.shared().schedule(interval, () -> {
+                if (needsHeartbeat(System.nanoTime(), interval_nanos)) {
+                    sendPreformatted(null, KEEP_ALIVE);
+                }
+            });
+        }
+        return this;
+    }
+
     /**
      * Retrieves the ID of the last event that the client received.
      * <p>Browsers transmit this through the {@code Last-Event-ID} request
@@ -306,6 +412,35 @@ public class SseConnection implements AutoCloseable {
         return open_;
     }
 
+    /**
+     * Retrieves the number of events that are queued for this connection
+     * and haven't been written yet.
+     *
+     * @return the number of queued events; or
+     * <p>{@code 0} when the events of this connection aren't queued
+     * @see SseBroadcaster#outboundQueue(int, SseOverflowPolicy)
+     * @since 1.10
+     */
+    public int queuedEvents() {
+        synchronized (this) {
+            return outboundQueue_ == null ? 0 : outboundQueue_.size();
+        }
+    }
+
+    /**
+     * Retrieves the number of events that were discarded by the overflow
+     * policy since the outbound queue of this connection was full.
+     *
+     * @return the number of discarded events
+     * @see SseBroadcaster#outboundQueue(int, SseOverflowPolicy)
+     * @since 1.10
+     */
+    public long droppedEvents() {
+        synchronized (this) {
+            return outboundQueue_ == null ? 0 : outboundQueue_.dropped();
+        }
+    }
+
     /**
      * Retrieves the context of the request that established this
      * connection.
@@ -321,7 +456,8 @@ public class SseConnection implements AutoCloseable {
     /**
      * Closes this connection.
      * <p>For detached connections, this will complete the underlying
-     * asynchronous request and end the response.
+     * asynchronous request and end the response. Events that are still
+     * queued for the client are discarded.
      *
      * @see #isOpen()
      * @since 1.10
@@ -332,6 +468,13 @@ public class SseConnection implements AutoCloseable {
         // written to a response whose asynchronous context has completed
         synchronized (this) {
             open_ = false;
+            if (outboundQueue_ != null) {
+                outboundQueue_.clear();
+            }
+            if (heartbeat_ != null) {
+                heartbeat_.cancel();
+                heartbeat_ = null;
+            }
             completeAsyncContext();
         }
         var broadcaster = broadcaster_;
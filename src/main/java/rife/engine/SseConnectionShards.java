@@ -0,0 +1,80 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The connections of an {@link SseBroadcaster}, spread over several
+ * independent sets so that registrations don't contend with each other and
+ * so that a broadcast can be delivered to the sets in parallel.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcaster#fanOut(java.util.concurrent.Executor)
+ * @since 1.10
+ */
+final class SseConnectionShards implements Iterable<SseConnection> {
+    private final Set<SseConnection>[] shards_;
+    private final int mask_;
+
+    @SuppressWarnings("unchecked")
+    SseConnectionShards(int count) {
+        // a power of two allows the shard to be selected with a mask
+        var size = count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+        shards_ = new Set[size];
+        for (var i = 0; i < size; i++) {
+            shards_[i] = ConcurrentHashMap.newKeySet();
+        }
+        mask_ = size - 1;
+    }
+
+    static int defaultCount() {
+        return Math.min(64, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    private Set<SseConnection> shardOf(SseConnection connection) {
+        var hash = System.identityHashCode(connection);
+        // spread the bits since identity hash codes aren't evenly distributed
+        // in their lower bits
+        return shards_[(hash ^ (hash >>> 16)) & mask_];
+    }
+
+    boolean add(SseConnection connection) {
+        return shardOf(connection).add(connection);
+    }
+
+    boolean remove(SseConnection connection) {
+        return shardOf(connection).remove(connection);
+    }
+
+    int count() {
+        return shards_.length;
+    }
+
+    Set<SseConnection> shard(int index) {
+        return shards_[index];
+    }
+
+    int size() {
+        var size = 0;
+        for (var shard : shards_) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    void clear() {
+        for (var shard : shards_) {
+            shard.clear();
+        }
+    }
+
+    public Iterator<SseConnection> iterator() {
+        return Arrays.stream(shards_).flatMap(Set::stream).iterator();
+    }
+}
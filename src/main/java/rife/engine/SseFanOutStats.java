@@ -0,0 +1,39 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+/**
+ * Provides a snapshot of how long the broadcasts of an
+ * {@link SseBroadcaster} took to reach all of its connections, which is
+ * intended to help you decide whether to {@link SseBroadcaster#fanOut fan
+ * out} the delivery over several threads.
+ * <p>The percentiles are computed over the most recent broadcasts, while
+ * the maximum covers all the broadcasts since the creation of the
+ * broadcaster.
+ *
+ * @param broadcasts the number of broadcasts that were delivered
+ * @param shards     the number of sets that the connections are spread
+ *                   over, which is the highest degree of parallelism of a
+ *                   broadcast
+ * @param p50Nanos   the median duration of a broadcast in nanoseconds
+ * @param p90Nanos   the 90th percentile duration of a broadcast in
+ *                   nanoseconds
+ * @param p99Nanos   the 99th percentile duration of a broadcast in
+ *                   nanoseconds
+ * @param maxNanos   the longest duration of a broadcast in nanoseconds
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcaster#fanOutStats()
+ * @since 1.10
+ */
+public record SseFanOutStats(long broadcasts, int shards, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+    public String toString() {
+        return "broadcasts: " + broadcasts +
+               ", shards: " + shards +
+               ", p50: " + p50Nanos / 1000 + "us" +
+               ", p90: " + p90Nanos / 1000 + "us" +
+               ", p99: " + p99Nanos / 1000 + "us" +
+               ", max: " + maxNanos / 1000 + "us";
+    }
+}
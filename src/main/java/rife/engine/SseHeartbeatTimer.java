@@ -0,0 +1,261 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel that schedules the heartbeats of all the server-sent
+ * events broadcasters and connections of the application.
+ * <p>A single thread advances the wheel, and the heartbeats that are due
+ * are handed over to a small, bounded pool of writer threads, so that a
+ * slow client can't delay the wheel. A heartbeat whose previous run hasn't
+ * finished yet, for instance because its client stalled, is skipped
+ * instead of being run again, which keeps stalled clients from piling up
+ * runs and tying up the writers.
+ * <p>The thread and the writers are only started when a heartbeat is
+ * scheduled, and they're stopped as soon as the last heartbeat is
+ * cancelled, which happens when all the broadcasters and connections stop
+ * their heartbeats or are closed. This keeps the timer from holding on to
+ * the class loader of a web application that is undeployed.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcaster#heartbeat(Duration)
+ * @see SseConnection#heartbeat(Duration)
+ * @since 1.10
+ */
+final class SseHeartbeatTimer {
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final int WHEEL_SIZE = 512;
+    static final int WRITER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final SseHeartbeatTimer SHARED = new SseHeartbeatTimer();
+    private static final AtomicInteger WRITER_THREAD_SEQUENCE = new AtomicInteger();
+
+    /**
+     * A heartbeat that is scheduled on the timer.
+     *
+     * @since 1.10
+     */
+    static final class Heartbeat {
+        private final SseHeartbeatTimer timer_;
+        private final long intervalTicks_;
+        private final Runnable task_;
+        private final AtomicBoolean running_ = new AtomicBoolean(false);
+        private final AtomicBoolean cancelled_ = new AtomicBoolean(false);
+        private long rounds_ = 0;
+
+        private Heartbeat(SseHeartbeatTimer timer, long intervalTicks, Runnable task) {
+            timer_ = timer;
+            intervalTicks_ = intervalTicks;
+            task_ = task;
+        }
+
+        void cancel() {
+            if (cancelled_.compareAndSet(false, true)) {
+                timer_.cancelled();
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled_.get();
+        }
+
+        private void run() {
+            try {
+                if (!cancelled_.get()) {
+                    task_.run();
+                }
+            } catch (Throwable e) {
+                // never let a failing heartbeat affect the others
+            } finally {
+                running_.set(false);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private final List<Heartbeat>[] wheel_ = new List[WHEEL_SIZE];
+    private final ConcurrentLinkedQueue<Heartbeat> added_ = new ConcurrentLinkedQueue<>();
+    // the number of heartbeats that haven't been cancelled
+    private final AtomicInteger scheduled_ = new AtomicInteger();
+    private final Object lifecycleLock_ = new Object();
+    private ExecutorService writers_ = null;
+    private Thread thread_ = null;
+    private long tick_ = 0;
+
+    SseHeartbeatTimer() {
+        for (var i = 0; i < WHEEL_SIZE; i++) {
+            wheel_[i] = new ArrayList<>();
+        }
+    }
+
+    static SseHeartbeatTimer shared() {
+        return SHARED;
+    }
+
+    /**
+     * Indicates whether the thread of the timer is running, which is the
+     * case as long as heartbeats are scheduled.
+     *
+     * @return {@code true} if the thread of the timer is running; or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    boolean isRunning() {
+        synchronized (lifecycleLock_) {
+            return thread_ != null;
+        }
+    }
+
+    /**
+     * Schedules a task that runs repeatedly at a fixed interval, rounded up
+     * to the tick of the timer.
+     *
+     * @param interval the interval between the runs of the task
+     * @param task     the task to run
+     * @return the scheduled heartbeat, which can be cancelled
+     * @since 1.10
+     */
+    Heartbeat schedule(Duration interval, Runnable task) {
+        var ticks = Math.max(1, (interval.toNanos() + TICK_NANOS - 1) / TICK_NANOS);
+        var heartbeat = new Heartbeat(this, ticks, task);
+        synchronized (lifecycleLock_) {
+            added_.add(heartbeat);
+            scheduled_.incrementAndGet();
+            if (null == thread_) {
+                start();
+            }
+        }
+        return heartbeat;
+    }
+
+    private void start() {
+        // the queue holds at most one run of each heartbeat, since a
+        // heartbeat isn't dispatched again before its run finished
+        var writers = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            var thread = new Thread(runnable, "sse-heartbeat-" + WRITER_THREAD_SEQUENCE.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        writers.allowCoreThreadTimeOut(true);
+        writers_ = writers;
+        thread_ = new Thread(() -> run(writers), "sse-heartbeat-timer");
+        thread_.setDaemon(true);
+        thread_.start();
+    }
+
+    // wakes up the thread when the last heartbeat was cancelled, so that
+    // it stops right away
+    private void cancelled() {
+        if (0 == scheduled_.decrementAndGet()) {
+            synchronized (lifecycleLock_) {
+                if (thread_ != null) {
+                    LockSupport.unpark(thread_);
+                }
+            }
+        }
+    }
+
+    // stops the thread and the writers when no heartbeats are scheduled
+    private boolean stopWhenIdle() {
+        synchronized (lifecycleLock_) {
+            if (scheduled_.get() != 0) {
+                return false;
+            }
+
+            // all the remaining heartbeats have been cancelled
+            added_.clear();
+            for (var slot : wheel_) {
+                slot.clear();
+            }
+            tick_ = 0;
+            writers_.shutdown();
+            writers_ = null;
+            thread_ = null;
+            return true;
+        }
+    }
+
+    private void run(ExecutorService writers) {
+        var start = System.nanoTime();
+        while (true) {
+            if (0 == scheduled_.get() && stopWhenIdle()) {
+                return;
+            }
+
+            var deadline = start + (tick_ + 1) * TICK_NANOS;
+            var remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+
+            var due = expire();
+            tick_ += 1;
+
+            for (var heartbeat : due) {
+                // skip the heartbeats that are still running
+                if (!heartbeat.running_.compareAndSet(false, true)) {
+                    continue;
+                }
+                try {
+                    writers.execute(heartbeat::run);
+                } catch (Throwable e) {
+                    // the heartbeat is retried at its next interval
+                    heartbeat.running_.set(false);
+                }
+            }
+        }
+    }
+
+    // collects the heartbeats of the current slot that are due, and
+    // schedules them again for their next interval
+    private List<Heartbeat> expire() {
+        Heartbeat added;
+        while ((added = added_.poll()) != null) {
+            place(added);
+        }
+
+        var due = new ArrayList<Heartbeat>();
+        Iterator<Heartbeat> iterator = wheel_[(int) (tick_ & (WHEEL_SIZE - 1))].iterator();
+        while (iterator.hasNext()) {
+            var heartbeat = iterator.next();
+            if (heartbeat.isCancelled()) {
+                iterator.remove();
+            } else if (heartbeat.rounds_ > 0) {
+                heartbeat.rounds_ -= 1;
+            } else {
+                iterator.remove();
+                due.add(heartbeat);
+            }
+        }
+
+        for (var heartbeat : due) {
+            place(heartbeat);
+        }
+        return due;
+    }
+
+    private void place(Heartbeat heartbeat) {
+        // the slot is visited first at the tick that lies within one
+        // revolution, and the remaining revolutions are counted down
+        var target = tick_ + heartbeat.intervalTicks_;
+        heartbeat.rounds_ = (heartbeat.intervalTicks_ - 1) / WHEEL_SIZE;
+        wheel_[(int) (target & (WHEEL_SIZE - 1))].add(heartbeat);
+    }
+}
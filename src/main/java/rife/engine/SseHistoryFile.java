@@ -0,0 +1,391 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.engine.exceptions.EngineException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only ring buffer in a memory-mapped file that holds the
+ * preformatted events of a persistent {@link SseBroadcaster} history.
+ * <p>The file starts with a header that records the epoch, the newest event
+ * ID and the region of the ring that holds the events, which allows the
+ * history to be restored after a restart. The ring is bounded both by its
+ * size in bytes and by a number of events, and the oldest events are
+ * evicted to make room for new ones. An index from event ID to offset in
+ * the ring is kept on the heap and rebuilt when the file is opened.
+ * <p>Instances aren't thread-safe, the broadcaster only accesses them while
+ * holding its history lock.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcaster#persistentHistory(Path, int, long)
+ * @since 1.10
+ */
+final class SseHistoryFile implements AutoCloseable {
+    private static final int MAGIC = 0x53534548;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_EPOCH = 8;
+    private static final int HEADER_LAST_ID = 16;
+    private static final int HEADER_FLOOR = 24;
+    private static final int HEADER_HEAD = 32;
+    private static final int HEADER_TAIL = 40;
+    private static final int HEADER_COUNT = 48;
+    private static final int HEADER_DATA_SIZE = 56;
+    static final int HEADER_SIZE = 64;
+
+    // length, id, flags and name length
+    private static final int RECORD_OVERHEAD = 4 + 8 + 1 + 2;
+    // the name length is stored as an unsigned 16-bit value
+    static final int MAX_NAME_BYTES = 0xFFFF;
+    private static final int WRAP = -1;
+    private static final byte FLAG_TARGETED = 1;
+
+    record Record(long id, String name, byte[] payload, boolean targeted) {
+    }
+
+    private final FileChannel channel_;
+    private final MappedByteBuffer buffer_;
+    private final int dataSize_;
+    private final int capacity_;
+
+    // index ring of the IDs and offsets of the records, from oldest to newest
+    private final long[] ids_;
+    private final int[] offsets_;
+    private int indexStart_ = 0;
+    private int count_ = 0;
+
+    private int head_ = 0;
+    private int tail_ = 0;
+    private long epoch_;
+    private long lastId_ = 0;
+    private long floor_ = 0;
+
+    /**
+     * Opens the history file, restoring its content when it was written
+     * with the same size in bytes, and starting a new history otherwise.
+     *
+     * @param file     the path of the file
+     * @param capacity the maximum number of events
+     * @param maxBytes the size of the ring in bytes
+     * @param epoch    the epoch of a new history
+     * @throws EngineException when the file can't be opened or mapped
+     * @since 1.10
+     */
+    SseHistoryFile(Path file, int capacity, long maxBytes, long epoch) {
+        if (maxBytes > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IllegalArgumentException("maxBytes can't exceed " + (Integer.MAX_VALUE - HEADER_SIZE));
+        }
+
+        dataSize_ = (int) maxBytes;
+        capacity_ = capacity;
+        ids_ = new long[capacity];
+        offsets_ = new int[capacity];
+
+        try {
+            channel_ = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            var restorable = channel_.size() == HEADER_SIZE + maxBytes;
+            buffer_ = channel_.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + maxBytes);
+            if (!restorable || !restore()) {
+                reset(epoch);
+            }
+        } catch (IOException e) {
+            throw new EngineException("Unable to open the SSE history file '" + file + "'.", e);
+        }
+    }
+
+    private boolean restore() {
+        if (buffer_.getInt(HEADER_MAGIC) != MAGIC ||
+            buffer_.getInt(HEADER_VERSION) != VERSION ||
+            buffer_.getInt(HEADER_DATA_SIZE) != dataSize_) {
+            return false;
+        }
+
+        epoch_ = buffer_.getLong(HEADER_EPOCH);
+        lastId_ = buffer_.getLong(HEADER_LAST_ID);
+        floor_ = buffer_.getLong(HEADER_FLOOR);
+        head_ = (int) buffer_.getLong(HEADER_HEAD);
+        tail_ = (int) buffer_.getLong(HEADER_TAIL);
+        var count = buffer_.getInt(HEADER_COUNT);
+        if (head_ < 0 || head_ > dataSize_ ||
+            tail_ < 0 || tail_ > dataSize_ ||
+            count < 0) {
+            return false;
+        }
+
+        // rebuild the index by walking the records from the oldest one
+        var offset = head_;
+        for (var i = 0; i < count; i++) {
+            offset = wrapped(offset);
+            var length = buffer_.getInt(HEADER_SIZE + offset);
+            if (length < RECORD_OVERHEAD || offset + length > dataSize_) {
+                return false;
+            }
+            var id = buffer_.getLong(HEADER_SIZE + offset + 4);
+            if (count_ == capacity_) {
+                evictOldest();
+            }
+            ids_[(indexStart_ + count_) % capacity_] = id;
+            offsets_[(indexStart_ + count_) % capacity_] = offset;
+            count_ += 1;
+            offset += length;
+        }
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Discards all the events and starts a new history.
+     *
+     * @param epoch the epoch of the new history
+     * @since 1.10
+     */
+    void reset(long epoch) {
+        epoch_ = epoch;
+        lastId_ = 0;
+        floor_ = 0;
+        head_ = 0;
+        tail_ = 0;
+        indexStart_ = 0;
+        count_ = 0;
+        buffer_.putInt(HEADER_MAGIC, MAGIC);
+        buffer_.putInt(HEADER_VERSION, VERSION);
+        buffer_.putInt(HEADER_DATA_SIZE, dataSize_);
+        writeHeader();
+    }
+
+    long epoch() {
+        return epoch_;
+    }
+
+    long lastId() {
+        return lastId_;
+    }
+
+    /**
+     * Records the newest ID of the sequence, for an event that isn't
+     * appended.
+     *
+     * @param id the ID of the event
+     * @since 1.10
+     */
+    void advance(long id) {
+        if (id > lastId_) {
+            lastId_ = id;
+            buffer_.putLong(HEADER_LAST_ID, lastId_);
+        }
+    }
+
+    /**
+     * Marks the events up to an ID as no longer covered by the history,
+     * for events that couldn't be appended.
+     *
+     * @param id the highest ID that isn't covered
+     * @since 1.10
+     */
+    void raiseFloor(long id) {
+        if (id > floor_) {
+            floor_ = id;
+            buffer_.putLong(HEADER_FLOOR, floor_);
+        }
+    }
+
+    /**
+     * Retrieves the highest ID that the history no longer covers.
+     *
+     * @return the highest evicted ID
+     * @since 1.10
+     */
+    long floor() {
+        return floor_;
+    }
+
+    int size() {
+        return count_;
+    }
+
+    long oldestId() {
+        return count_ == 0 ? 0 : ids_[indexStart_];
+    }
+
+    /**
+     * Appends an event, evicting the oldest events when the capacity or the
+     * size in bytes would be exceeded.
+     *
+     * @param id       the ID of the event, which must be higher than the
+     *                 ID of all the appended events
+     * @param name     the name of the event; or {@code null}
+     * @param payload  the formatted event, including its ID
+     * @param targeted whether the event was sent with a filter
+     * @return {@code true} when the event was appended; or
+     * <p>{@code false} when its ID isn't higher than the newest appended
+     * one, when it's larger than the ring, or when its name is longer than
+     * {@value #MAX_NAME_BYTES} bytes
+     * @since 1.10
+     */
+    boolean append(long id, String name, byte[] payload, boolean targeted) {
+        if (count_ > 0 && id <= ids_[(indexStart_ + count_ - 1) % capacity_]) {
+            return false;
+        }
+
+        var name_bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        if (name_bytes.length > MAX_NAME_BYTES) {
+            return false;
+        }
+        var length = RECORD_OVERHEAD + name_bytes.length + payload.length;
+        if (length > dataSize_) {
+            return false;
+        }
+
+        while (count_ == capacity_ || (count_ > 0 && !fits(length))) {
+            evictOldest();
+        }
+        if (count_ == 0) {
+            head_ = 0;
+            tail_ = 0;
+        }
+
+        if (tail_ + length > dataSize_) {
+            // the record doesn't fit in the remainder of the ring, which is
+            // skipped by the readers
+            if (dataSize_ - tail_ >= 4) {
+                buffer_.putInt(HEADER_SIZE + tail_, WRAP);
+            }
+            tail_ = 0;
+        }
+
+        var offset = tail_;
+        var position = HEADER_SIZE + offset;
+        buffer_.putInt(position, length);
+        buffer_.putLong(position + 4, id);
+        buffer_.put(position + 12, targeted ? FLAG_TARGETED : 0);
+        buffer_.putShort(position + 13, (short) name_bytes.length);
+        buffer_.put(position + RECORD_OVERHEAD, name_bytes);
+        buffer_.put(position + RECORD_OVERHEAD + name_bytes.length, payload);
+        tail_ = offset + length;
+
+        ids_[(indexStart_ + count_) % capacity_] = id;
+        offsets_[(indexStart_ + count_) % capacity_] = offset;
+        count_ += 1;
+        if (id > lastId_) {
+            lastId_ = id;
+        }
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Retrieves the events with an ID that is higher than the provided one.
+     *
+     * @param after the ID after which the events are retrieved
+     * @return the events in the order of their IDs
+     * @since 1.10
+     */
+    List<Record> recordsAfter(long after) {
+        // binary search for the first ID of the index that is higher
+        var low = 0;
+        var high = count_;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (ids_[(indexStart_ + middle) % capacity_] <= after) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        var records = new ArrayList<Record>(count_ - low);
+        for (var i = low; i < count_; i++) {
+            records.add(read(offsets_[(indexStart_ + i) % capacity_]));
+        }
+        return records;
+    }
+
+    /**
+     * Forces the content of the file to the storage device.
+     *
+     * @since 1.10
+     */
+    void force() {
+        buffer_.force();
+    }
+
+    @Override
+    public void close() {
+        force();
+        try {
+            channel_.close();
+        } catch (IOException e) {
+            // the mapping stays valid until it's garbage collected
+        }
+    }
+
+    private Record read(int offset) {
+        var position = HEADER_SIZE + offset;
+        var length = buffer_.getInt(position);
+        var id = buffer_.getLong(position + 4);
+        var targeted = (buffer_.get(position + 12) & FLAG_TARGETED) != 0;
+        var name_length = Short.toUnsignedInt(buffer_.getShort(position + 13));
+        String name = null;
+        if (name_length > 0) {
+            var name_bytes = new byte[name_length];
+            buffer_.get(position + RECORD_OVERHEAD, name_bytes);
+            name = new String(name_bytes, StandardCharsets.UTF_8);
+        }
+        var payload = new byte[length - RECORD_OVERHEAD - name_length];
+        buffer_.get(position + RECORD_OVERHEAD + name_length, payload);
+        return new Record(id, name, payload, targeted);
+    }
+
+    private boolean fits(int length) {
+        if (tail_ == head_) {
+            // the ring is full, since it holds records
+            return false;
+        }
+        if (tail_ > head_) {
+            return length <= dataSize_ - tail_ || length <= head_;
+        }
+        return length <= head_ - tail_;
+    }
+
+    private void evictOldest() {
+        floor_ = Math.max(floor_, ids_[indexStart_]);
+        indexStart_ = (indexStart_ + 1) % capacity_;
+        count_ -= 1;
+        if (count_ == 0) {
+            head_ = tail_;
+        } else {
+            head_ = offsets_[indexStart_];
+        }
+    }
+
+    // skips the unused remainder at the end of the ring
+    private int wrapped(int offset) {
+        if (offset > dataSize_ - 4 ||
+            buffer_.getInt(HEADER_SIZE + offset) == WRAP) {
+            return 0;
+        }
+        return offset;
+    }
+
+    private void writeHeader() {
+        buffer_.putLong(HEADER_EPOCH, epoch_);
+        buffer_.putLong(HEADER_LAST_ID, lastId_);
+        buffer_.putLong(HEADER_FLOOR, floor_);
+        buffer_.putLong(HEADER_HEAD, head_);
+        buffer_.putLong(HEADER_TAIL, tail_);
+        buffer_.putInt(HEADER_COUNT, count_);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import rife.template.Template;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * Bounded queue of the events that still have to be written to a
+ * server-sent events connection.
+ * <p>When the servlet container supports non-blocking output, the queue is
+ * drained by a servlet {@link WriteListener}, so that queueing an event
+ * never waits for the client. Otherwise, like with the out-of-container
+ * testing API, the events are written as soon as they're queued.
+ * <p>All the state is guarded by the monitor of the connection, which
+ * orders the queued events with the history replay of the connection.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcaster#outboundQueue(int, SseOverflowPolicy)
+ * @since 1.10
+ */
+final class SseOutboundQueue {
+    private final SseConnection connection_;
+    private final Response response_;
+    private final int capacity_;
+    private final SseOverflowPolicy policy_;
+    private final ArrayDeque<Outbound> pending_;
+    private ServletOutputStream servletOutput_ = null;
+    private OutputStream output_ = null;
+    private long dropped_ = 0;
+
+    record Outbound(String name, byte[] payload, Template processedTemplate) {
+    }
+
+    SseOutboundQueue(SseConnection connection, Response response, int capacity, SseOverflowPolicy policy) {
+        connection_ = connection;
+        response_ = response;
+        capacity_ = capacity;
+        policy_ = policy;
+        pending_ = new ArrayDeque<>(Math.min(capacity, 64));
+    }
+
+    /**
+     * Starts delivering the queued events, this has to be called while
+     * holding the monitor of the connection.
+     *
+     * @param asynchronous whether the request of the connection is in
+     *                     asynchronous mode, which allows non-blocking output
+     * @throws IOException when the output stream of the response couldn't
+     *                     be obtained
+     * @since 1.10
+     */
+    void start(boolean asynchronous)
+    throws IOException {
+        OutputStream out;
+        if (response_ instanceof AbstractResponse abstract_response) {
+            out = abstract_response.directOutputStream();
+        } else {
+            out = response_.getOutputStream();
+        }
+
+        if (asynchronous &&
+            out instanceof ServletOutputStream servlet_output) {
+            servletOutput_ = servlet_output;
+            servletOutput_.setWriteListener(new WriteListener() {
+                public void onWritePossible() {
+                    synchronized (connection_) {
+                        drain();
+                    }
+                }
+
+                public void onError(Throwable t) {
+                    connection_.close();
+                }
+            });
+        } else {
+            output_ = out;
+        }
+    }
+
+    /**
+     * Queues an event, applying the overflow policy when the queue is full.
+     * This has to be called while holding the monitor of the connection.
+     *
+     * @param outbound the event to queue
+     * @return {@code true} when the event was queued; or
+     * <p>{@code false} when the connection should be closed
+     * @since 1.10
+     */
+    boolean offer(Outbound outbound) {
+        if (pending_.size() >= capacity_) {
+            switch (policy_) {
+                case DISCONNECT -> {
+                    return false;
+                }
+                case COALESCE -> {
+                    if (!removeNamed(outbound.name())) {
+                        pending_.removeFirst();
+                    }
+                }
+                case DROP_OLDEST -> pending_.removeFirst();
+            }
+            dropped_ += 1;
+        }
+        pending_.addLast(outbound);
+
+        return drain();
+    }
+
+    private boolean removeNamed(String name) {
+        if (null == name) {
+            return false;
+        }
+
+        var iterator = pending_.iterator();
+        while (iterator.hasNext()) {
+            if (Objects.equals(name, iterator.next().name())) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // writes the queued events for as long as the output accepts them
+    // without blocking, the container calls the write listener again once
+    // it does
+    private boolean drain() {
+        if (!connection_.isOpen()) {
+            pending_.clear();
+            return false;
+        }
+
+        try {
+            if (servletOutput_ != null) {
+                while (!pending_.isEmpty()) {
+                    if (!servletOutput_.isReady()) {
+                        return true;
+                    }
+                    write(servletOutput_, pending_.removeFirst());
+                }
+                if (servletOutput_.isReady()) {
+                    servletOutput_.flush();
+                }
+            } else if (output_ != null) {
+                while (!pending_.isEmpty()) {
+                    write(output_, pending_.removeFirst());
+                }
+                output_.flush();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            pending_.clear();
+            connection_.close();
+            return false;
+        }
+    }
+
+    private void write(OutputStream out, Outbound outbound)
+    throws IOException {
+        out.write(outbound.payload());
+        connection_.written();
+        if (response_ instanceof AbstractResponse abstract_response) {
+            abstract_response.sseEventSent(outbound.processedTemplate());
+        }
+    }
+
+    int size() {
+        return pending_.size();
+    }
+
+    long dropped() {
+        return dropped_;
+    }
+
+    void clear() {
+        pending_.clear();
+    }
+}
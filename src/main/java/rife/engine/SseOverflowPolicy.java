@@ -0,0 +1,38 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+/**
+ * Determines what happens when an event is sent to a server-sent events
+ * connection whose outbound queue is full.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcaster#outboundQueue(int, SseOverflowPolicy)
+ * @since 1.10
+ */
+public enum SseOverflowPolicy {
+    /**
+     * Discards the oldest queued event to make room for the new one.
+     *
+     * @since 1.10
+     */
+    DROP_OLDEST,
+    /**
+     * Replaces the queued event with the same name by the new one, since
+     * only its latest state matters to the client. Events without a name,
+     * or whose name isn't queued, discard the oldest queued event instead.
+     *
+     * @since 1.10
+     */
+    COALESCE,
+    /**
+     * Closes the connection, after which the client reconnects and
+     * catches up through the {@link SseBroadcaster#history(int) history}
+     * of the broadcaster.
+     *
+     * @since 1.10
+     */
+    DISCONNECT
+}
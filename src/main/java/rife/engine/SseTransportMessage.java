@@ -0,0 +1,89 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An event that was published through an {@link SseBroadcastTransport}.
+ * <p>Transports that carry events outside the JVM can store them in the
+ * text format of the server-sent events protocol with
+ * {@link #serializeEvent(ServerSentEvent)} and restore them with
+ * {@link #deserialize(long, String, boolean, String)}.
+ *
+ * @param sequence the sequence number of the event within its channel
+ * @param origin   the identifier of the broadcaster that published the
+ *                 event
+ * @param targeted whether the event was sent with a filter, which means
+ *                 that only the publishing broadcaster delivers it
+ * @param event    the published event
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see SseBroadcastTransport
+ * @since 1.10
+ */
+public record SseTransportMessage(long sequence, String origin, boolean targeted, ServerSentEvent event) {
+    /**
+     * Serializes an event to the text format of the server-sent events
+     * protocol.
+     *
+     * @param event the event to serialize
+     * @return the serialized event
+     * @throws IllegalArgumentException when the event has a template, which
+     *                                  can only be processed by the
+     *                                  publishing node
+     * @since 1.10
+     */
+    public static String serializeEvent(ServerSentEvent event) {
+        if (null == event) throw new IllegalArgumentException("event can't be null");
+        if (event.template() != null) {
+            throw new IllegalArgumentException(
+                "template events can't be serialized, send the processed content " +
+                "of the template as data instead");
+        }
+
+        return new String(SseConnection.formatDataEventBytes(event, null), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Restores a message from an event that was serialized with
+     * {@link #serializeEvent(ServerSentEvent)}.
+     *
+     * @param sequence        the sequence number of the event
+     * @param origin          the identifier of the publishing broadcaster
+     * @param targeted        whether the event was sent with a filter
+     * @param serializedEvent the serialized event
+     * @return the restored message
+     * @since 1.10
+     */
+    public static SseTransportMessage deserialize(long sequence, String origin, boolean targeted, String serializedEvent) {
+        var event = new ServerSentEvent();
+        StringBuilder data = null;
+        for (var line : serializedEvent.split("\n")) {
+            if (line.startsWith(": ")) {
+                event.comment(line.substring(2));
+            } else if (line.startsWith("event: ")) {
+                event.name(line.substring(7));
+            } else if (line.startsWith("id: ")) {
+                event.id(line.substring(4));
+            } else if (line.startsWith("retry: ")) {
+                event.retry(Integer.parseInt(line.substring(7)));
+            } else if (line.startsWith("data: ")) {
+                // consecutive data lines form a single value, which is
+                // split into the same lines again when it's sent
+                if (data == null) {
+                    data = new StringBuilder();
+                } else {
+                    data.append('\n');
+                }
+                data.append(line, 6, line.length());
+            }
+        }
+        if (data != null) {
+            event.data(data);
+        }
+
+        return new SseTransportMessage(sequence, origin, targeted, event);
+    }
+}
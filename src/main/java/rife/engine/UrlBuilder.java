@@ -7,10 +7,8 @@ package rife.engine;
 import rife.tools.Convert;
 import rife.tools.StringUtils;
 
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * {@code UrlBuilder} helps creating valid URLs that automatically
@@ -197,41 +195,24 @@ public class UrlBuilder {
      * @since 1.0
      */
     public Segments generateSegments() {
-        final var path = new StringBuilder(rootUrl_);
-
-        path.append(StringUtils.stripFromFront(route_.path(), "/"));
+        final var template = context_.site().urlTemplate(route_);
+        final var path = new StringBuilder(rootUrl_.length() + template.path().length() + 32);
+        path.append(rootUrl_);
+        path.append(template.path());
 
         var parameters = new LinkedHashMap<String, String[]>();
 
-        // detect which parameters are annotation for output and input and retrieve those that correspond
+        // retrieve the annotated output parameters that correspond to the
+        // parameters the route accepts
         if (context_.route() instanceof RouteAnnotated) {
-            var out_params = RouteAnnotated.getAnnotatedOutParameters(context_);
+            RouteAnnotated.collectAnnotatedOutParameters(context_, template.inParameters(), parameters);
             if (context_.hasContinuationId()) {
                 // only add the continuation ID if the route is going to the same element class
                 if (context_.processedElement() != null &&
                     context_.processedElement().getClass() == route_.getElementClass()) {
-                    out_params.put(SpecialParameters.CONT_ID, new String[]{context_.continuationId()});
+                    parameters.put(SpecialParameters.CONT_ID, new String[]{context_.continuationId()});
                 }
             }
-
-            Set<String> in_params = new HashSet<>();
-            in_params.add(SpecialParameters.CONT_ID);
-
-            // input parameters
-            if (route_ instanceof RouteAnnotated route) {
-                in_params.addAll(route.getAnnotatedInParameters());
-            }
-
-            // path info parameters
-            if (route_.pathInfoHandling().type() == PathInfoType.MAP) {
-                for (var mapping : route_.pathInfoHandling().mappings()) {
-                    in_params.addAll(mapping.parameters());
-                }
-            }
-            // retain the appropriate output parameters
-            out_params.keySet().retainAll(in_params);
-
-            parameters.putAll(out_params);
         }
 
         // use all the context out parameters
@@ -248,56 +229,8 @@ public class UrlBuilder {
             path.append(StringUtils.encodeUrl(pathInfo_, "/~"));
         }
         // handle path info mapping
-        else if (route_.pathInfoHandling().type() == PathInfoType.MAP) {
-            for (var mapping : route_.pathInfoHandling().mappings()) {
-                if (parameters.keySet().containsAll(mapping.parameters())) {
-                    var parameters_it = mapping.parameters().iterator();
-
-                    var builder = new StringBuilder();
-                    String parameter_name;
-                    String[] parameter_value;
-                    for (var segment : mapping.segments()) {
-                        if (segment.isRegexp()) {
-                            if (!parameters_it.hasNext()) {
-                                continue;
-                            }
-
-                            parameter_name = parameters_it.next();
-
-                            // ensure that the parameter has at least one value
-                            parameter_value = parameters.get(parameter_name);
-                            if (null == parameter_value ||
-                                parameter_value.length < 1) {
-                                continue;
-                            }
-
-                            // ensure that the parameter value corresponds to the
-                            // regexp pattern for it
-                            var matcher = segment.pattern().matcher(parameter_value[0]);
-                            if (!matcher.matches()) {
-                                continue;
-                            }
-
-                            // add the url-encoded parameter value to the path info
-                            builder.append(StringUtils.encodeUrl(parameter_value[0]));
-                            parameters.remove(parameter_name);
-                        } else {
-                            builder.append(segment.text());
-                        }
-                    }
-
-                    // append the new path info
-                    var path_info = builder.toString();
-                    if (!path_info.isEmpty()) {
-                        if (path_info.charAt(0) != '/' && path.charAt(path.length() - 1) != '/') {
-                            path.append('/');
-                        }
-                        path.append(path_info);
-                    }
-
-                    break;
-                }
-            }
+        else if (template.hasMappings()) {
+            template.appendPathInfo(path, parameters);
         }
 
         var fragment = "";
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import rife.tools.StringUtils;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled description of the URLs that lead to a {@link Route}.
+ * <p>The template holds everything about the URL of a route that doesn't
+ * depend on the context in which a link is generated: the path of the
+ * route, the names of the parameters that the route accepts and a plan
+ * for each of its path info mappings. {@link UrlBuilder} uses it so that
+ * generating a link doesn't have to recompute any of these.
+ * <p>The templates of all the routes of a site are compiled when it's
+ * deployed, see {@link Site#urlTemplate(Route)}.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+final class UrlTemplate {
+    private final String path_;
+    private final Set<String> inParameters_;
+    private final MappingPlan[] mappings_;
+
+    UrlTemplate(Route route) {
+        path_ = StringUtils.stripFromFront(route.path(), "/");
+
+        var in_parameters = new HashSet<String>();
+        in_parameters.add(SpecialParameters.CONT_ID);
+        if (route instanceof RouteAnnotated annotated) {
+            in_parameters.addAll(annotated.getAnnotatedInParameters());
+        }
+
+        var mappings = new ArrayList<MappingPlan>();
+        if (route.pathInfoHandling().type() == PathInfoType.MAP) {
+            for (var mapping : route.pathInfoHandling().mappings()) {
+                in_parameters.addAll(mapping.parameters());
+                mappings.add(new MappingPlan(mapping));
+            }
+        }
+
+        inParameters_ = Collections.unmodifiableSet(in_parameters);
+        mappings_ = mappings.toArray(new MappingPlan[0]);
+    }
+
+    /**
+     * The path of the route, without its leading slash.
+     *
+     * @return the path of the route
+     * @since 1.10
+     */
+    String path() {
+        return path_;
+    }
+
+    /**
+     * The names of the parameters that the route accepts, which includes
+     * its annotated in-flow parameters, the parameters of its path info
+     * mappings and the continuation ID.
+     *
+     * @return the names of the accepted parameters
+     * @since 1.10
+     */
+    Set<String> inParameters() {
+        return inParameters_;
+    }
+
+    /**
+     * Indicates whether the route has path info mappings.
+     *
+     * @return {@code true} if the route maps its path info to parameters;
+     * or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    boolean hasMappings() {
+        return mappings_.length > 0;
+    }
+
+    /**
+     * Appends the path info of the first mapping whose parameters are all
+     * available, the parameters that are used in the path info are removed.
+     *
+     * @param path       the path that the path info will be appended to
+     * @param parameters the parameters of the URL
+     * @since 1.10
+     */
+    void appendPathInfo(StringBuilder path, Map<String, String[]> parameters) {
+        for (var mapping : mappings_) {
+            if (mapping.isAvailable(parameters)) {
+                var start = path.length();
+                mapping.append(path, parameters);
+
+                // separate the path info from the path if needed
+                if (path.length() > start &&
+                    path.charAt(start) != '/' &&
+                    start > 0 && path.charAt(start - 1) != '/') {
+                    path.insert(start, '/');
+                }
+                return;
+            }
+        }
+    }
+
+    private static final class MappingPlan {
+        private final String[] parameters_;
+        private final String[] texts_;
+        private final String[] names_;
+        private final Pattern[] patterns_;
+
+        MappingPlan(PathInfoMapping mapping) {
+            parameters_ = mapping.parameters().toArray(new String[0]);
+
+            // each regexp segment consumes the next mapping parameter,
+            // the segments that are left without parameter are skipped
+            var texts = new ArrayList<String>();
+            var names = new ArrayList<String>();
+            var patterns = new ArrayList<Pattern>();
+            var parameter = 0;
+            for (var segment : mapping.segments()) {
+                if (segment.isRegexp()) {
+                    if (parameter >= parameters_.length) {
+                        continue;
+                    }
+                    texts.add(null);
+                    names.add(parameters_[parameter++]);
+                    patterns.add(segment.pattern());
+                } else {
+                    texts.add(segment.text());
+                    names.add(null);
+                    patterns.add(null);
+                }
+            }
+            texts_ = texts.toArray(new String[0]);
+            names_ = names.toArray(new String[0]);
+            patterns_ = patterns.toArray(new Pattern[0]);
+        }
+
+        boolean isAvailable(Map<String, String[]> parameters) {
+            for (var parameter : parameters_) {
+                if (!parameters.containsKey(parameter)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void append(StringBuilder path, Map<String, String[]> parameters) {
+            for (var i = 0; i < texts_.length; ++i) {
+                var text = texts_[i];
+                if (text != null) {
+                    path.append(text);
+                    continue;
+                }
+
+                // ensure that the parameter has at least one value
+                var name = names_[i];
+                var value = parameters.get(name);
+                if (null == value ||
+                    value.length < 1) {
+                    continue;
+                }
+
+                // ensure that the parameter value corresponds to the
+                // regexp pattern for it
+                if (null == value[0] ||
+                    !patterns_[i].matcher(value[0]).matches()) {
+                    continue;
+                }
+
+                // add the url-encoded parameter value to the path info
+                path.append(StringUtils.encodeUrl(value[0]));
+                parameters.remove(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares that the responses of an element class are fingerprinted with
+ * a strong {@code ETag}, so that clients can make conditional requests
+ * for them.
+ * <p>When the request already carries the same {@code ETag} in its
+ * {@code If-None-Match} header, the response becomes a
+ * {@code 304 Not Modified} without body. This only applies to successful
+ * {@code GET} and {@code HEAD} requests whose content was entirely
+ * collected by the text buffer.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see rife.engine.Context#enableETag()
+ * @since 1.10
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+@Documented
+public @interface ETag {
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares that the rendered output of an element class is cached by the
+ * site, so that identical requests are served without processing any
+ * element.
+ * <p>The cached output is keyed on the route, the path info, the selected
+ * parameters and the request headers that the response
+ * {@link rife.engine.Context#varyOn varies on}.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see rife.engine.Router#cacheRendering
+ * @since 1.10
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+@Documented
+public @interface RenderCached {
+    /**
+     * The number of seconds during which the cached output stays valid.
+     *
+     * @since 1.10
+     */
+    int ttl();
+
+    /**
+     * The names of the parameters that are part of the cache key, when
+     * this is empty all the parameters are.
+     *
+     * @since 1.10
+     */
+    String[] parameters() default {};
+}
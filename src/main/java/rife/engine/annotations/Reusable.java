@@ -0,0 +1,44 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares that the instances of an element class can be reused across
+ * requests.
+ * <p>Routes that are registered with a reusable element class keep a pool
+ * of idle instances instead of creating a new one for every request. After
+ * an instance has been processed, the fields that receive injected values
+ * or that provide out-flow values are restored to the values they had
+ * right after construction, with the exception of injected parameters
+ * beans which are cleared so that they're created again. Any other state has to be cleared by implementing
+ * {@link rife.engine.ReusableElement#reset()}.
+ * <p>Since the restored values are shared by all the instances, the
+ * initial values of these fields have to be immutable, like
+ * strings, numbers, enums or {@code null}. The instances of a class that
+ * initializes such a field with a value that can be modified, like a
+ * collection or a bean, are never reused.
+ * <p>Instances are only returned to the pool once the response is
+ * complete. Instances that are paused as part of a continuation, or that
+ * handled a request whose response is completed asynchronously, like an
+ * event stream or a request body that is read asynchronously, can still be
+ * referenced afterwards and are never returned to the pool.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see rife.engine.ReusableElement
+ * @since 1.10
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+@Documented
+public @interface Reusable {
+    /**
+     * The maximum number of idle instances that are kept for each route.
+     *
+     * @since 1.10
+     */
+    int value() default 16;
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.exceptions;
+
+import java.io.Serial;
+
+/**
+ * Thrown when the body of a request that is read asynchronously exceeds
+ * the maximum size that was allowed for it.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see rife.engine.Context#bodyAsync(long)
+ * @since 1.10
+ */
+public class RequestBodyTooLargeException extends EngineException {
+    @Serial
+    private static final long serialVersionUID = 5287016843917230147L;
+
+    private final long sizeLimit_;
+
+    public RequestBodyTooLargeException(long sizeLimit) {
+        super("The size of the request body exceeds " + sizeLimit + " which is the maximum.");
+
+        sizeLimit_ = sizeLimit;
+    }
+
+    public long getSizeLimit() {
+        return sizeLimit_;
+    }
+}
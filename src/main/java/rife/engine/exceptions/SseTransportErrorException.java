@@ -0,0 +1,38 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.exceptions;
+
+import java.io.Serial;
+
+/**
+ * Thrown when a server-sent events transport fails to carry the events of
+ * a channel between the nodes of a cluster.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see rife.engine.SseBroadcastTransport
+ * @since 1.10
+ */
+public class SseTransportErrorException extends EngineException {
+    @Serial
+    private static final long serialVersionUID = -4120573349821173466L;
+
+    private final String channel_;
+
+    public SseTransportErrorException(Throwable cause) {
+        super("Error while transporting server-sent events.", cause);
+
+        channel_ = null;
+    }
+
+    public SseTransportErrorException(String channel, Throwable cause) {
+        super("Error while transporting the server-sent events of channel '" + channel + "'.", cause);
+
+        channel_ = channel;
+    }
+
+    public String getChannel() {
+        return channel_;
+    }
+}
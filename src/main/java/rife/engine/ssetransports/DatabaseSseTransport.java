@@ -0,0 +1,380 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.ssetransports;
+
+import rife.database.Datasource;
+import rife.database.DbQueryManager;
+import rife.database.DbRowProcessor;
+import rife.database.exceptions.DatabaseException;
+import rife.database.queries.*;
+import rife.engine.ServerSentEvent;
+import rife.engine.SseBroadcastTransport;
+import rife.engine.SseTransportMessage;
+import rife.engine.exceptions.SseTransportErrorException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transports server-sent events between the nodes of a cluster through a
+ * shared database.
+ * <p>Each channel has a row that holds its epoch and the sequence number of
+ * its most recent event. Publishing increments that sequence number and
+ * stores the event in the same transaction, which locks the row of the
+ * channel until the transaction commits. The events of a channel are thus
+ * committed in the order of their sequence numbers, and every node polls
+ * for the events that follow the last one that it received.
+ * <p>Events with a template can't be carried, since the template can only
+ * be processed by the node that publishes it, and publishing them throws
+ * an {@code IllegalArgumentException}. The most recent
+ * {@link #retention(int) events} of each channel are kept in the database,
+ * older ones are purged while polling.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see DatabaseSseTransportFactory
+ * @see MemorySseTransport
+ * @since 1.10
+ */
+public abstract class DatabaseSseTransport extends DbQueryManager implements SseBroadcastTransport {
+    private final Set<String> installedChannels_ = ConcurrentHashMap.newKeySet();
+    private final Map<String, Subscription> subscriptions_ = new HashMap<>();
+    private volatile long pollIntervalNanos_ = Duration.ofMillis(250).toNanos();
+    private volatile int retention_ = 10000;
+    private Thread poller_ = null;
+
+    private static class Subscription {
+        private final List<Consumer<SseTransportMessage>> receivers_ = new CopyOnWriteArrayList<>();
+        private long sequence_;
+
+        private Subscription(long sequence) {
+            sequence_ = sequence;
+        }
+    }
+
+    protected DatabaseSseTransport(Datasource datasource) {
+        super(datasource);
+    }
+
+    public abstract boolean install()
+    throws SseTransportErrorException;
+
+    public abstract boolean remove()
+    throws SseTransportErrorException;
+
+    protected abstract long latestSequence(String channel)
+    throws SseTransportErrorException;
+
+    protected abstract void fetchMessages(String channel, long after, Consumer<SseTransportMessage> receiver)
+    throws SseTransportErrorException;
+
+    protected abstract void purgeMessages(String channel, long upTo)
+    throws SseTransportErrorException;
+
+    /**
+     * Sets the interval at which the database is polled for new events,
+     * which bounds the delay before an event that is published on another
+     * node is delivered.
+     * <p>By default, the database is polled every 250 milliseconds.
+     *
+     * @param interval the interval between polls
+     * @return this transport instance
+     * @since 1.10
+     */
+    public DatabaseSseTransport pollInterval(Duration interval) {
+        if (interval == null || interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+
+        pollIntervalNanos_ = interval.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the number of events that are kept in the database for each
+     * channel, which should cover the events that can be published during
+     * the longest expected interruption of a node.
+     * <p>By default, 10000 events are kept.
+     *
+     * @param events the number of events to keep
+     * @return this transport instance
+     * @since 1.10
+     */
+    public DatabaseSseTransport retention(int events) {
+        if (events < 1) throw new IllegalArgumentException("events must be at least 1");
+
+        retention_ = events;
+        return this;
+    }
+
+    protected boolean _install(final CreateTable createTableChannel, final CreateTable createTableEvent)
+    throws SseTransportErrorException {
+        assert createTableChannel != null;
+        assert createTableEvent != null;
+
+        installedChannels_.clear();
+        try {
+            executeUpdate(createTableChannel);
+            executeUpdate(createTableEvent);
+        } catch (DatabaseException e) {
+            throw new SseTransportErrorException(e);
+        }
+
+        return true;
+    }
+
+    protected boolean _remove(final DropTable dropTableChannel, final DropTable dropTableEvent)
+    throws SseTransportErrorException {
+        assert dropTableChannel != null;
+        assert dropTableEvent != null;
+
+        installedChannels_.clear();
+        try {
+            executeUpdate(dropTableEvent);
+            executeUpdate(dropTableChannel);
+        } catch (DatabaseException e) {
+            throw new SseTransportErrorException(e);
+        }
+
+        return true;
+    }
+
+    protected long _epoch(Select getEpoch, Insert addChannel, final String channel)
+    throws SseTransportErrorException {
+        assert getEpoch != null;
+        assert addChannel != null;
+
+        if (null == channel) throw new IllegalArgumentException("channel can't be null");
+
+        try {
+            var epoch = executeGetFirstLong(getEpoch, s -> s.setString("channel", channel));
+            if (-1 == epoch) {
+                var new_epoch = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+                try {
+                    executeUpdate(addChannel, s -> s
+                        .setString("channel", channel)
+                        .setLong("epoch", new_epoch)
+                        .setLong("lastId", 0));
+                    epoch = new_epoch;
+                } catch (DatabaseException e) {
+                    // another node created the channel concurrently
+                    epoch = executeGetFirstLong(getEpoch, s -> s.setString("channel", channel));
+                    if (-1 == epoch) {
+                        throw e;
+                    }
+                }
+            }
+
+            installedChannels_.add(channel);
+            return epoch;
+        } catch (DatabaseException e) {
+            throw new SseTransportErrorException(channel, e);
+        }
+    }
+
+    protected long _publish(Update incrementLastId, Select getLastId, Insert addEvent, final String channel, final String origin, final ServerSentEvent event, final boolean targeted)
+    throws SseTransportErrorException {
+        assert incrementLastId != null;
+        assert getLastId != null;
+        assert addEvent != null;
+
+        if (null == channel) throw new IllegalArgumentException("channel can't be null");
+        if (null == origin) throw new IllegalArgumentException("origin can't be null");
+
+        var payload = SseTransportMessage.serializeEvent(event);
+
+        if (!installedChannels_.contains(channel)) {
+            epoch(channel);
+        }
+
+        try {
+            Long result = inTransaction(() -> {
+                // the update locks the row of the channel until the commit,
+                // which makes the events commit in the order of their IDs
+                executeUpdate(incrementLastId, s -> s.setString("channel", channel));
+                var id = executeGetFirstLong(getLastId, s -> s.setString("channel", channel));
+                executeUpdate(addEvent, s -> s
+                    .setString("channel", channel)
+                    .setLong("eventId", id)
+                    .setString("origin", origin)
+                    .setBoolean("targeted", targeted)
+                    .setString("payload", payload));
+                return id;
+            });
+            return result;
+        } catch (DatabaseException e) {
+            throw new SseTransportErrorException(channel, e);
+        }
+    }
+
+    protected long _latestSequence(Select getLastId, final String channel)
+    throws SseTransportErrorException {
+        assert getLastId != null;
+
+        try {
+            return Math.max(0, executeGetFirstLong(getLastId, s -> s.setString("channel", channel)));
+        } catch (DatabaseException e) {
+            throw new SseTransportErrorException(channel, e);
+        }
+    }
+
+    protected void _fetchMessages(Select getEvents, final String channel, final long after, final Consumer<SseTransportMessage> receiver)
+    throws SseTransportErrorException {
+        assert getEvents != null;
+
+        try {
+            executeFetchAll(getEvents, new DbRowProcessor() {
+                public boolean processRow(ResultSet resultSet)
+                throws SQLException {
+                    receiver.accept(SseTransportMessage.deserialize(
+                        resultSet.getLong("eventId"),
+                        resultSet.getString("origin"),
+                        resultSet.getBoolean("targeted"),
+                        resultSet.getString("payload")));
+                    return true;
+                }
+            }, s -> s
+                .setString("channel", channel)
+                .setLong("eventId", after));
+        } catch (DatabaseException e) {
+            throw new SseTransportErrorException(channel, e);
+        }
+    }
+
+    protected void _purgeMessages(Delete purgeEvents, final String channel, final long upTo)
+    throws SseTransportErrorException {
+        assert purgeEvents != null;
+
+        try {
+            executeUpdate(purgeEvents, s -> s
+                .setString("channel", channel)
+                .setLong("eventId", upTo));
+        } catch (DatabaseException e) {
+            throw new SseTransportErrorException(channel, e);
+        }
+    }
+
+    public long subscribe(String channel, Consumer<SseTransportMessage> receiver) {
+        if (null == channel) throw new IllegalArgumentException("channel can't be null");
+        if (null == receiver) throw new IllegalArgumentException("receiver can't be null");
+
+        epoch(channel);
+
+        synchronized (subscriptions_) {
+            var subscription = subscriptions_.get(channel);
+            if (null == subscription) {
+                subscription = new Subscription(latestSequence(channel));
+                subscriptions_.put(channel, subscription);
+            }
+
+            long sequence;
+            synchronized (subscription) {
+                subscription.receivers_.add(receiver);
+                sequence = subscription.sequence_;
+            }
+
+            if (null == poller_) {
+                poller_ = new Thread(this::poll, "sse-transport-poller");
+                poller_.setDaemon(true);
+                poller_.start();
+            }
+
+            return sequence;
+        }
+    }
+
+    public void unsubscribe(String channel, Consumer<SseTransportMessage> receiver) {
+        synchronized (subscriptions_) {
+            var subscription = subscriptions_.get(channel);
+            if (subscription != null) {
+                subscription.receivers_.remove(receiver);
+                if (subscription.receivers_.isEmpty()) {
+                    subscriptions_.remove(channel);
+                }
+            }
+
+            // wake up the poller so that it stops right away when there
+            // are no subscriptions left
+            if (subscriptions_.isEmpty() && poller_ != null) {
+                LockSupport.unpark(poller_);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the database is being polled, which is the case
+     * as long as a receiver is subscribed to a channel.
+     *
+     * @return {@code true} if the database is being polled; or
+     * <p>{@code false} otherwise
+     * @since 1.10
+     */
+    boolean isPolling() {
+        synchronized (subscriptions_) {
+            return poller_ != null;
+        }
+    }
+
+    private void poll() {
+        while (true) {
+            List<Map.Entry<String, Subscription>> subscriptions;
+            synchronized (subscriptions_) {
+                if (subscriptions_.isEmpty()) {
+                    poller_ = null;
+                    return;
+                }
+                subscriptions = new ArrayList<>(subscriptions_.entrySet());
+            }
+
+            for (var entry : subscriptions) {
+                pollChannel(entry.getKey(), entry.getValue());
+            }
+
+            LockSupport.parkNanos(this, pollIntervalNanos_);
+        }
+    }
+
+    private void pollChannel(String channel, Subscription subscription) {
+        synchronized (subscription) {
+            var previous = subscription.sequence_;
+            try {
+                fetchMessages(channel, previous, message -> {
+                    subscription.sequence_ = message.sequence();
+                    for (var receiver : subscription.receivers_) {
+                        try {
+                            receiver.accept(message);
+                        } catch (RuntimeException e) {
+                            // never let a failing receiver affect the others
+                            Logger.getLogger("rife.engine").log(Level.WARNING,
+                                "An SSE transport receiver failed for channel '" + channel + "'", e);
+                        }
+                    }
+                });
+
+                var purge_up_to = subscription.sequence_ - retention_;
+                if (subscription.sequence_ != previous &&
+                    purge_up_to > 0) {
+                    purgeMessages(channel, purge_up_to);
+                }
+            } catch (RuntimeException e) {
+                // the channel is polled again at the next interval
+                Logger.getLogger("rife.engine").log(Level.WARNING,
+                    "Error while polling the SSE transport for channel '" + channel + "'", e);
+            }
+        }
+    }
+}
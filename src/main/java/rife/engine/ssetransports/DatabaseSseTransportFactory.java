@@ -0,0 +1,26 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.ssetransports;
+
+import rife.database.Datasource;
+import rife.database.DbQueryManagerCache;
+import rife.database.DbQueryManagerFactory;
+
+/**
+ * Provides the database-specific {@link DatabaseSseTransport} of a
+ * datasource, which is shared by all the broadcasters that use it.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 1.10
+ */
+public abstract class DatabaseSseTransportFactory extends DbQueryManagerFactory {
+    private static final String MANAGER_PACKAGE_NAME = DatabaseSseTransportFactory.class.getPackage().getName() + ".databasedrivers.";
+
+    private static final DbQueryManagerCache cache_ = new DbQueryManagerCache();
+
+    public static DatabaseSseTransport instance(Datasource datasource) {
+        return (DatabaseSseTransport) instance(MANAGER_PACKAGE_NAME, cache_, datasource);
+    }
+}
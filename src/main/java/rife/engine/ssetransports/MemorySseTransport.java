@@ -0,0 +1,137 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.ssetransports;
+
+import rife.engine.ServerSentEvent;
+import rife.engine.SseBroadcastTransport;
+import rife.engine.SseTransportMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transports server-sent events between the broadcasters of a single JVM.
+ * <p>This allows several broadcasters, for instance from different web
+ * applications in the same server, to share their events and their event
+ * IDs.
+ * <p>Publishing assigns the sequence number of an event and hands it over
+ * to the channel, whose events are delivered to the receivers in the order
+ * of their sequence numbers by a single thread at a time. The publishing
+ * thread delivers the events itself, unless another thread is already
+ * delivering the events of the channel, in which case that thread also
+ * delivers the new event and {@code publish} returns right away. Publishers
+ * thus don't wait for each other, although the thread that delivers still
+ * writes to the connections of all the receiving broadcasters. Those
+ * broadcasters should use an
+ * {@link rife.engine.SseBroadcaster#outboundQueue outbound queue}, so that
+ * a slow client can't hold up the delivery of the channel.
+ * <p>A receiver gets the events that were published after it subscribed,
+ * and can still get an event that was published right before it
+ * unsubscribed.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @see DatabaseSseTransport
+ * @since 1.10
+ */
+public class MemorySseTransport implements SseBroadcastTransport {
+    private final Map<String, Channel> channels_ = new HashMap<>();
+
+    private static class Channel {
+        private final long epoch_ = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        private final ArrayDeque<Delivery> pending_ = new ArrayDeque<>();
+        // replaced instead of modified, so that each delivery keeps the
+        // receivers that were subscribed when its event was published
+        private List<Consumer<SseTransportMessage>> receivers_ = List.of();
+        private boolean delivering_ = false;
+        private long sequence_ = 0;
+    }
+
+    private record Delivery(SseTransportMessage message, List<Consumer<SseTransportMessage>> receivers) {
+    }
+
+    private Channel channel(String channel) {
+        if (null == channel) throw new IllegalArgumentException("channel can't be null");
+
+        synchronized (channels_) {
+            return channels_.computeIfAbsent(channel, k -> new Channel());
+        }
+    }
+
+    public long epoch(String channel) {
+        return channel(channel).epoch_;
+    }
+
+    public long publish(String channel, String origin, ServerSentEvent event, boolean targeted) {
+        if (null == event) throw new IllegalArgumentException("event can't be null");
+
+        var state = channel(channel);
+        SseTransportMessage message;
+        synchronized (state) {
+            message = new SseTransportMessage(++state.sequence_, origin, targeted, event);
+            state.pending_.add(new Delivery(message, state.receivers_));
+            if (state.delivering_) {
+                return message.sequence();
+            }
+            state.delivering_ = true;
+        }
+
+        deliver(channel, state);
+        return message.sequence();
+    }
+
+    // delivers the pending messages of a channel outside its monitor, only
+    // a single thread at a time delivers, which keeps the order of the
+    // sequence numbers
+    private static void deliver(String channel, Channel state) {
+        while (true) {
+            Delivery delivery;
+            synchronized (state) {
+                delivery = state.pending_.poll();
+                if (null == delivery) {
+                    state.delivering_ = false;
+                    return;
+                }
+            }
+
+            for (var receiver : delivery.receivers()) {
+                try {
+                    receiver.accept(delivery.message());
+                } catch (RuntimeException e) {
+                    // never let a failing receiver affect the others
+                    Logger.getLogger("rife.engine").log(Level.WARNING,
+                        "An SSE transport receiver failed for channel '" + channel + "'", e);
+                }
+            }
+        }
+    }
+
+    public long subscribe(String channel, Consumer<SseTransportMessage> receiver) {
+        if (null == receiver) throw new IllegalArgumentException("receiver can't be null");
+
+        var state = channel(channel);
+        synchronized (state) {
+            var receivers = new ArrayList<>(state.receivers_);
+            receivers.add(receiver);
+            state.receivers_ = List.copyOf(receivers);
+            return state.sequence_;
+        }
+    }
+
+    public void unsubscribe(String channel, Consumer<SseTransportMessage> receiver) {
+        var state = channel(channel);
+        synchronized (state) {
+            var receivers = new ArrayList<>(state.receivers_);
+            receivers.remove(receiver);
+            state.receivers_ = List.copyOf(receivers);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.ssetransports.databasedrivers;
+
+import rife.database.Datasource;
+import rife.database.queries.*;
+import rife.engine.ServerSentEvent;
+import rife.engine.SseTransportMessage;
+import rife.engine.exceptions.SseTransportErrorException;
+import rife.engine.ssetransports.DatabaseSseTransport;
+
+import java.util.function.Consumer;
+
+public class generic extends DatabaseSseTransport {
+    public static final String TABLE_CHANNEL = "ssechannel";
+    public static final String TABLE_EVENT = "sseevent";
+
+    protected CreateTable createTableChannel_ = null;
+    protected CreateTable createTableEvent_ = null;
+    protected DropTable dropTableChannel_ = null;
+    protected DropTable dropTableEvent_ = null;
+    protected Select getEpoch_ = null;
+    protected Insert addChannel_ = null;
+    protected Update incrementLastId_ = null;
+    protected Select getLastId_ = null;
+    protected Insert addEvent_ = null;
+    protected Select getEvents_ = null;
+    protected Delete purgeEvents_ = null;
+
+    public generic(Datasource datasource) {
+        super(datasource);
+
+        createTableChannel_ = new CreateTable(getDatasource())
+            .table(TABLE_CHANNEL)
+            .column("channel", String.class, 100, CreateTable.NOTNULL)
+            .column("epoch", long.class, CreateTable.NOTNULL)
+            .column("lastId", long.class, CreateTable.NOTNULL)
+            .primaryKey(TABLE_CHANNEL.toUpperCase() + "_PK", "channel");
+
+        createTableEvent_ = new CreateTable(getDatasource())
+            .table(TABLE_EVENT)
+            .column("channel", String.class, 100, CreateTable.NOTNULL)
+            .column("eventId", long.class, CreateTable.NOTNULL)
+            .column("origin", String.class, 40, CreateTable.NOTNULL)
+            .column("targeted", boolean.class, CreateTable.NOTNULL)
+            .column("payload", String.class)
+            .primaryKey(TABLE_EVENT.toUpperCase() + "_PK", new String[]{"channel", "eventId"});
+
+        dropTableChannel_ = new DropTable(getDatasource())
+            .table(createTableChannel_.getTable());
+
+        dropTableEvent_ = new DropTable(getDatasource())
+            .table(createTableEvent_.getTable());
+
+        getEpoch_ = new Select(getDatasource())
+            .field("epoch")
+            .from(createTableChannel_.getTable())
+            .whereParameter("channel", "=");
+
+        addChannel_ = new Insert(getDatasource())
+            .into(createTableChannel_.getTable())
+            .fieldParameter("channel")
+            .fieldParameter("epoch")
+            .fieldParameter("lastId");
+
+        incrementLastId_ = new Update(getDatasource())
+            .table(createTableChannel_.getTable())
+            .fieldCustom("lastId", "lastId + 1")
+            .whereParameter("channel", "=");
+
+        getLastId_ = new Select(getDatasource())
+            .field("lastId")
+            .from(createTableChannel_.getTable())
+            .whereParameter("channel", "=");
+
+        addEvent_ = new Insert(getDatasource())
+            .into(createTableEvent_.getTable())
+            .fieldParameter("channel")
+            .fieldParameter("eventId")
+            .fieldParameter("origin")
+            .fieldParameter("targeted")
+            .fieldParameter("payload");
+
+        getEvents_ = new Select(getDatasource())
+            .from(createTableEvent_.getTable())
+            .whereParameter("channel", "=")
+            .whereParameterAnd("eventId", ">")
+            .orderBy("eventId");
+
+        purgeEvents_ = new Delete(getDatasource())
+            .from(createTableEvent_.getTable())
+            .whereParameter("channel", "=")
+            .whereParameterAnd("eventId", "<=");
+    }
+
+    public boolean install()
+    throws SseTransportErrorException {
+        return _install(createTableChannel_, createTableEvent_);
+    }
+
+    public boolean remove()
+    throws SseTransportErrorException {
+        return _remove(dropTableChannel_, dropTableEvent_);
+    }
+
+    public long epoch(String channel)
+    throws SseTransportErrorException {
+        return _epoch(getEpoch_, addChannel_, channel);
+    }
+
+    public long publish(String channel, String origin, ServerSentEvent event, boolean targeted)
+    throws SseTransportErrorException {
+        return _publish(incrementLastId_, getLastId_, addEvent_, channel, origin, event, targeted);
+    }
+
+    protected long latestSequence(String channel)
+    throws SseTransportErrorException {
+        return _latestSequence(getLastId_, channel);
+    }
+
+    protected void fetchMessages(String channel, long after, Consumer<SseTransportMessage> receiver)
+    throws SseTransportErrorException {
+        _fetchMessages(getEvents_, channel, after, receiver);
+    }
+
+    protected void purgeMessages(String channel, long upTo)
+    throws SseTransportErrorException {
+        _purgeMessages(purgeEvents_, channel, upTo);
+    }
+}
@@ -0,0 +1,10 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+
+/**
+ * Database-specific implementations for transporting server-sent events.
+ * @since 1.10
+ */
+package rife.engine.ssetransports.databasedrivers;
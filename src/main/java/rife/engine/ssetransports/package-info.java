@@ -0,0 +1,11 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+
+/**
+ * Provides transports that carry server-sent events between the nodes of a
+ * cluster.
+ * @since 1.10
+ */
+package rife.engine.ssetransports;
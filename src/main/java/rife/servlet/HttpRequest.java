@@ -19,12 +19,13 @@ import rife.tools.StringUtils;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Enumeration;
-import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 
 public class HttpRequest implements Request {
-    private final HttpServletRequest request_;
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private HttpServletRequest request_;
 
     private Map<String, String[]> parameters_ = null;
     private Map<String, UploadedFile[]> files_ = null;
@@ -37,32 +38,50 @@ public class HttpRequest implements Request {
         request_ = request;
     }
 
+    /**
+     * Prepares this instance to be reused for another servlet request,
+     * after which {@link #init()} has to be called again.
+     *
+     * @param request the servlet request to wrap; or {@code null} to
+     *                release the previous one while the instance is idle
+     * @since 1.10
+     */
+    void reuse(HttpServletRequest request) {
+        request_ = request;
+        parameters_ = null;
+        files_ = null;
+        body_ = null;
+        bodyAsBytes_ = null;
+    }
+
     public void init() {
         if (MultipartRequest.isValidContentType(request_.getContentType())) {
             var multipart_request = new MultipartRequest(request_);
             parameters_ = multipart_request.getParameterMap();
             files_ = multipart_request.getFileMap();
         } else {
-            parameters_ = new LinkedHashMap<>();
-
             try {
                 request_.setCharacterEncoding(RifeConfig.engine().getRequestEncoding().toString());
             } catch (UnsupportedEncodingException e) {
                 // should never happen
             }
 
-            var parameter_names = request_.getParameterNames();
-            String parameter_name = null;
-            String[] parameter_values = null;
-            while (parameter_names.hasMoreElements()) {
-                parameter_name = parameter_names.nextElement();
-                parameter_values = request_.getParameterValues(parameter_name);
-
-                parameters_.put(parameter_name, parameter_values);
+            // the parameters of a form are parsed from the request body,
+            // they're obtained right away since the body can't be read
+            // anymore once an element consumed it, the other parameters
+            // are only obtained from the servlet request when they're
+            // first needed
+            if (isFormContentType(request_.getContentType())) {
+                parameters_ = request_.getParameterMap();
             }
         }
     }
 
+    private static boolean isFormContentType(String contentType) {
+        return contentType != null &&
+               contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0, FORM_CONTENT_TYPE.length());
+    }
+
     @Override
     public RequestMethod getMethod() {
         return RequestMethod.valueOf(request_.getMethod());
@@ -70,6 +89,12 @@ public class HttpRequest implements Request {
 
     @Override
     public Map<String, String[]> getParameters() {
+        if (null == parameters_) {
+            // the servlet container's map is immutable, so it can be
+            // used as is instead of being copied
+            parameters_ = request_.getParameterMap();
+        }
+
         return parameters_;
     }
 
@@ -16,7 +16,7 @@ import java.io.PrintWriter;
 import java.util.Locale;
 
 public class HttpResponse extends AbstractResponse {
-    private final HttpServletResponse response_;
+    private HttpServletResponse response_;
 
     public HttpResponse(Request request, HttpServletResponse response) {
         super(request);
@@ -24,6 +24,18 @@ public class HttpResponse extends AbstractResponse {
         response_ = response;
     }
 
+    /**
+     * Prepares this instance to be reused for another servlet response.
+     *
+     * @param response the servlet response to wrap; or {@code null} to
+     *                 release the previous one while the instance is idle
+     * @since 1.10
+     */
+    void reuse(HttpServletResponse response) {
+        recycle();
+        response_ = response;
+    }
+
     @Override
     protected void _setContentType(String contentType) {
         response_.setContentType(contentType);
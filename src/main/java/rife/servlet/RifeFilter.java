@@ -16,6 +16,9 @@ import rife.scheduler.Scheduler;
 import rife.tools.FileUtils;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
 /**
  * Servlet filter implementation that initializes a RIFE2 site and handles
@@ -27,9 +30,40 @@ import java.io.IOException;
 public class RifeFilter implements Filter {
     public static String RIFE_SITE_CLASS_NAME = "rifeSiteClass";
 
+    private static final MethodHandle IS_VIRTUAL = isVirtualMethod();
+
     private final Gate gate_ = new Gate();
+    private final ThreadLocal<RequestObjects> requestObjects_ = new ThreadLocal<>();
     private String gateUrl_ = null;
 
+    private static MethodHandle isVirtualMethod() {
+        // virtual threads aren't available in all the supported JDK versions
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtualThread() {
+        if (null == IS_VIRTUAL) {
+            return false;
+        }
+
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    // the request and response objects that are reused by a platform thread
+    private static final class RequestObjects {
+        private HttpRequest request = null;
+        private HttpResponse response = null;
+        private boolean active = false;
+    }
+
     /**
      * This method can be overridden to set up hierarchical properties
      * for your RIFE2 filter implementation without being limited by
@@ -122,11 +156,65 @@ public class RifeFilter implements Filter {
                     }
 
                     final var element_url = request_uri.substring(gateUrl_.length());
-                    final var http_request = new HttpRequest(http_servlet_request);
-                    final var http_response = new HttpResponse(http_request, http_servlet_response);
-                    http_request.init();
-                    if (gate_.handleRequest(gateUrl_, element_url, http_request, http_response)) {
-                        return;
+
+                    // reusing the request objects of the thread is pointless
+                    // for virtual threads, which only handle a single request,
+                    // and impossible while a dispatch on the same thread
+                    // is still using them
+                    RequestObjects reused = null;
+                    var site = gate_.getSite();
+                    if (site != null &&
+                        site.reuseRequestObjects() &&
+                        !isVirtualThread()) {
+                        reused = requestObjects_.get();
+                        if (null == reused) {
+                            reused = new RequestObjects();
+                            requestObjects_.set(reused);
+                        }
+                        if (reused.active) {
+                            reused = null;
+                        }
+                    }
+
+                    final HttpRequest http_request;
+                    final HttpResponse http_response;
+                    if (null == reused) {
+                        http_request = new HttpRequest(http_servlet_request);
+                        http_response = new HttpResponse(http_request, http_servlet_response);
+                    } else {
+                        if (null == reused.request) {
+                            reused.request = new HttpRequest(http_servlet_request);
+                            reused.response = new HttpResponse(reused.request, http_servlet_response);
+                        } else {
+                            reused.request.reuse(http_servlet_request);
+                            reused.response.reuse(http_servlet_response);
+                        }
+                        reused.active = true;
+                        http_request = reused.request;
+                        http_response = reused.response;
+                    }
+
+                    try {
+                        http_request.init();
+                        if (gate_.handleRequest(gateUrl_, element_url, http_request, http_response)) {
+                            return;
+                        }
+                    } finally {
+                        if (reused != null) {
+                            reused.active = false;
+                            if (http_servlet_request.isAsyncStarted()) {
+                                // the request continues asynchronously, for
+                                // instance as an event stream, and keeps its
+                                // objects
+                                reused.request = null;
+                                reused.response = null;
+                            } else {
+                                // don't hold on to the servlet objects and
+                                // the request content while the thread is idle
+                                reused.request.reuse(null);
+                                reused.response.reuse(null);
+                            }
+                        }
                     }
                 }
             } catch (Throwable e) {
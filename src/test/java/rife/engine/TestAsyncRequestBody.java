@@ -0,0 +1,217 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.engine.exceptions.RequestBodyTooLargeException;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAsyncRequestBody {
+    private MockConversation conversation() {
+        return new MockConversation(new Site() {
+            public void setup() {
+                post("/body", c -> c.bodyAsync(16).whenComplete((body, error) -> {
+                    if (error != null) {
+                        c.print(error.getClass().getSimpleName());
+                    } else {
+                        c.print(new String(body, StandardCharsets.UTF_8));
+                    }
+                }));
+                post("/chunks", c -> c.bodyPublisher(-1).subscribe(new Flow.Subscriber<>() {
+                    private final ArrayList<Integer> sizes_ = new ArrayList<>();
+                    private Flow.Subscription subscription_;
+
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscription_ = subscription;
+                        subscription_.request(1);
+                    }
+
+                    public void onNext(ByteBuffer chunk) {
+                        sizes_.add(chunk.remaining());
+                        subscription_.request(1);
+                    }
+
+                    public void onError(Throwable throwable) {
+                        c.print("error");
+                    }
+
+                    public void onComplete() {
+                        c.print(sizes_.toString());
+                    }
+                }));
+                post("/twice", c -> {
+                    c.bodyPublisher(-1);
+                    try {
+                        c.bodyPublisher(-1);
+                    } catch (IllegalStateException e) {
+                        c.print("refused");
+                    }
+                });
+            }
+        });
+    }
+
+    private static MockRequest post(String body) {
+        return new MockRequest().method(RequestMethod.POST).bodyAsBytes(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testBodyAsync() {
+        var conversation = conversation();
+
+        var response = conversation.doRequest("/body", post("0123456789"));
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getText());
+
+        response = conversation.doRequest("/body", post(""));
+        assertEquals(200, response.getStatus());
+        assertEquals("", response.getText());
+    }
+
+    @Test
+    void testBodyTooLarge() {
+        var response = conversation().doRequest("/body", post("0123456789abcdefghij"));
+        assertEquals(413, response.getStatus());
+        assertEquals(RequestBodyTooLargeException.class.getSimpleName(), response.getText());
+    }
+
+    @Test
+    void testBodyPublisherChunks() {
+        var response = conversation().doRequest("/chunks", post("x".repeat(AsyncRequestBody.CHUNK_SIZE * 2 + 10)));
+        assertEquals(200, response.getStatus());
+        assertEquals("[" + AsyncRequestBody.CHUNK_SIZE + ", " + AsyncRequestBody.CHUNK_SIZE + ", 10]", response.getText());
+    }
+
+    @Test
+    void testBodyPublishedOnce() {
+        assertEquals("refused", conversation().doRequest("/twice", post("body")).getText());
+    }
+
+    private static Site containerSite(AtomicBoolean returned) {
+        return containerSite(returned, new AtomicReference<>());
+    }
+
+    private static Site containerSite(AtomicBoolean returned, AtomicReference<Throwable> subscriberError) {
+        return new Site() {
+            public void setup() {
+                post("/upload", c -> {
+                    c.bodyAsync(-1).thenAccept(body -> c.print((returned.get() ? "returned " : "blocked ") + body.length));
+                    returned.set(true);
+                });
+                post("/limited", c -> c.bodyAsync(16).whenComplete((body, error) -> {
+                    if (error != null) {
+                        c.print(error.getClass().getSimpleName());
+                    } else {
+                        c.print("accepted");
+                    }
+                }));
+                post("/failing", c -> {
+                    c.bodyAsync(-1).whenComplete((body, error) -> {
+                        subscriberError.set(error);
+                        c.print("subscriber");
+                    });
+                    throw new IllegalStateException("element failed");
+                });
+            }
+        };
+    }
+
+    private static void writeRequestHead(OutputStream out, String path)
+    throws IOException {
+        out.write(("POST " + path + " HTTP/1.1\r\n" +
+                   "Host: localhost\r\n" +
+                   "Transfer-Encoding: chunked\r\n" +
+                   "Connection: close\r\n" +
+                   "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static void writeChunk(OutputStream out, byte[] chunk)
+    throws IOException {
+        out.write((Integer.toHexString(chunk.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(chunk);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    @Test
+    void testSlowChunkedUpload()
+    throws Exception {
+        var returned = new AtomicBoolean(false);
+        try (final var server = new TestServerRunner(containerSite(returned));
+             final var socket = new Socket("localhost", 8181)) {
+            socket.setSoTimeout(30000);
+            var out = socket.getOutputStream();
+            writeRequestHead(out, "/upload");
+
+            // the chunks trickle in while the element has already returned
+            for (var i = 0; i < 5; ++i) {
+                Thread.sleep(100);
+                writeChunk(out, "x".repeat(1000).getBytes(StandardCharsets.US_ASCII));
+            }
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            var response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.contains("returned 5000"), response);
+        }
+    }
+
+    @Test
+    void testChunkedUploadTooLarge()
+    throws Exception {
+        try (final var server = new TestServerRunner(containerSite(new AtomicBoolean()));
+             final var socket = new Socket("localhost", 8181)) {
+            socket.setSoTimeout(30000);
+            var out = socket.getOutputStream();
+            writeRequestHead(out, "/limited");
+
+            // the size isn't known upfront, the limit is only exceeded by
+            // the second chunk
+            writeChunk(out, "0123456789".getBytes(StandardCharsets.US_ASCII));
+            Thread.sleep(100);
+            writeChunk(out, "abcdefghij".getBytes(StandardCharsets.US_ASCII));
+
+            // the response is sent without waiting for the rest of the body
+            var response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 413"), response);
+            assertTrue(response.contains(RequestBodyTooLargeException.class.getSimpleName()), response);
+        }
+    }
+
+    @Test
+    void testElementFailure()
+    throws Exception {
+        var subscriber_error = new AtomicReference<Throwable>();
+        try (final var server = new TestServerRunner(containerSite(new AtomicBoolean(), subscriber_error));
+             final var socket = new Socket("localhost", 8181)) {
+            socket.setSoTimeout(30000);
+            var out = socket.getOutputStream();
+            writeRequestHead(out, "/failing");
+            writeChunk(out, "0123456789".getBytes(StandardCharsets.US_ASCII));
+
+            // the subscriber receives the error of the element, after which
+            // the error response is completed without the rest of the body
+            var response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertFalse(response.contains("subscriber"), response);
+            assertInstanceOf(IllegalStateException.class, subscriber_error.get());
+            assertEquals("element failed", subscriber_error.get().getMessage());
+        }
+    }
+}
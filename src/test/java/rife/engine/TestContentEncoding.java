@@ -0,0 +1,132 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.config.RifeConfig;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+import rife.test.MockResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestContentEncoding {
+    private static final String LINE = "<p>The quick brown fox jumps over the lazy dog.</p>\n";
+    private static final List<ContentEncoder> ENCODERS = List.of(ContentEncoder.GZIP, ContentEncoder.DEFLATE);
+
+    static class CompressedSite extends Site {
+        int flushedBytes = -1;
+
+        public void setup() {
+            get("/page", c -> {
+                for (var i = 0; i < 500; ++i) {
+                    c.print(LINE);
+                }
+                c.flush();
+                flushedBytes = ((MockResponse) c.response()).getBytes().length;
+                for (var i = 0; i < 500; ++i) {
+                    c.print(LINE);
+                }
+            });
+        }
+    }
+
+    private static String decode(InputStream in)
+    throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testNegotiation() {
+        assertNull(AbstractResponse.negotiateContentEncoder(null, ENCODERS));
+        assertNull(AbstractResponse.negotiateContentEncoder("", ENCODERS));
+        assertNull(AbstractResponse.negotiateContentEncoder("br", ENCODERS));
+        assertNull(AbstractResponse.negotiateContentEncoder("gzip;q=0, deflate;q=0", ENCODERS));
+        assertNull(AbstractResponse.negotiateContentEncoder("*;q=0", ENCODERS));
+        assertSame(ContentEncoder.GZIP, AbstractResponse.negotiateContentEncoder("gzip", ENCODERS));
+        assertSame(ContentEncoder.GZIP, AbstractResponse.negotiateContentEncoder("x-gzip", ENCODERS));
+        assertSame(ContentEncoder.GZIP, AbstractResponse.negotiateContentEncoder("deflate, gzip, br", ENCODERS));
+        assertSame(ContentEncoder.DEFLATE, AbstractResponse.negotiateContentEncoder("deflate", ENCODERS));
+        assertSame(ContentEncoder.DEFLATE, AbstractResponse.negotiateContentEncoder("gzip;q=0.5, deflate;q=0.8", ENCODERS));
+        assertSame(ContentEncoder.DEFLATE, AbstractResponse.negotiateContentEncoder("gzip;q=0, *", ENCODERS));
+        assertSame(ContentEncoder.GZIP, AbstractResponse.negotiateContentEncoder("GZIP ; q=1.0", ENCODERS));
+        assertSame(ContentEncoder.GZIP, AbstractResponse.negotiateContentEncoder("*", ENCODERS));
+        assertSame(ContentEncoder.DEFLATE, AbstractResponse.negotiateContentEncoder("gzip, deflate", List.of(ContentEncoder.DEFLATE, ContentEncoder.GZIP)));
+    }
+
+    @Test
+    void testBufferedCompression()
+    throws Exception {
+        var gzip = RifeConfig.engine().getGzipCompression();
+        RifeConfig.engine().setGzipCompression(true);
+        try {
+            var site = new CompressedSite();
+            var conversation = new MockConversation(site);
+
+            var response = conversation.doRequest("/page", new MockRequest().header("Accept-Encoding", "gzip"));
+            assertEquals("gzip", response.getHeader("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getHeader("Vary"));
+            assertEquals(response.getBytes().length, response.getContentLength());
+            assertEquals(0, site.flushedBytes);
+            assertEquals(LINE.repeat(1000), decode(new GZIPInputStream(new ByteArrayInputStream(response.getBytes()))));
+
+            response = conversation.doRequest("/page", new MockRequest().header("Accept-Encoding", "gzip;q=0.1, deflate"));
+            assertEquals("deflate", response.getHeader("Content-Encoding"));
+            assertEquals(LINE.repeat(1000), decode(new InflaterInputStream(new ByteArrayInputStream(response.getBytes()))));
+
+            response = conversation.doRequest("/page");
+            assertNull(response.getHeader("Content-Encoding"));
+            assertEquals(LINE.repeat(1000), response.getText());
+        } finally {
+            RifeConfig.engine().setGzipCompression(gzip);
+        }
+    }
+
+    @Test
+    void testStreamingCompression()
+    throws Exception {
+        var gzip = RifeConfig.engine().getGzipCompression();
+        RifeConfig.engine().setGzipCompression(true);
+        try {
+            var site = new CompressedSite();
+            site.streamingCompression(true).compressionLevel(9);
+            var conversation = new MockConversation(site);
+
+            var response = conversation.doRequest("/page", new MockRequest().header("Accept-Encoding", "gzip"));
+            assertEquals("gzip", response.getHeader("Content-Encoding"));
+            assertNull(response.getHeader("Content-Length"));
+            assertTrue(site.flushedBytes > 0);
+            assertTrue(site.flushedBytes < response.getBytes().length);
+            assertEquals(LINE.repeat(1000), decode(new GZIPInputStream(new ByteArrayInputStream(response.getBytes()))));
+        } finally {
+            RifeConfig.engine().setGzipCompression(gzip);
+        }
+    }
+
+    @Test
+    void testSiteSettings() {
+        var site = new Site();
+        assertEquals(ENCODERS, site.contentEncoders().subList(site.contentEncoders().size() - 2, site.contentEncoders().size()));
+        assertFalse(site.streamingCompression());
+        assertEquals(-1, site.compressionLevel());
+        assertEquals(8192, site.compressionFlushThreshold());
+
+        site.contentEncoders(ContentEncoder.DEFLATE).compressionFlushThreshold(0);
+        assertEquals(List.of(ContentEncoder.DEFLATE), site.contentEncoders());
+        assertEquals(0, site.compressionFlushThreshold());
+        assertThrows(IllegalArgumentException.class, () -> site.compressionLevel(10));
+        assertThrows(IllegalArgumentException.class, () -> site.compressionFlushThreshold(-1));
+    }
+}
@@ -10,6 +10,15 @@ import rife.tools.StringUtils;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TestContinuations {
+    @Test
+    void testResumableDetection() {
+        var router = new Router();
+        assertFalse(new RouteClass(router, TestNoPause.class).isResumable());
+        assertTrue(new RouteClass(router, TestConditional.class).isResumable());
+        assertTrue(new RouteSupplier(router, TestAllTypes::new).isResumable());
+        assertFalse(ChainedRoute.isResumable(new RouteInstance(router, c -> c.print("instance"))));
+    }
+
     @Test
     void testNoPause()
     throws Exception {
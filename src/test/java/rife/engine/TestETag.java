@@ -0,0 +1,143 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.config.RifeConfig;
+import rife.engine.annotations.ETag;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestETag {
+    @ETag
+    public static class AnnotatedElement implements Element {
+        public void process(Context c) {
+            c.print("annotated content");
+        }
+    }
+
+    static class ETagSite extends Site {
+        String content = "dashboard";
+
+        public void setup() {
+            get("/page", c -> {
+                c.enableETag();
+                c.print("<p>");
+                c.print(content);
+                c.print("</p>");
+            });
+            post("/page", c -> {
+                c.enableETag();
+                c.print(content);
+            });
+            get("/plain", c -> c.print(content));
+            get("/annotated", AnnotatedElement.class);
+            get("/status", c -> {
+                c.enableETag();
+                c.setStatus(404);
+                c.print(content);
+            });
+            get("/flushed", c -> {
+                c.enableETag();
+                c.print(content);
+                c.flush();
+                c.print(content);
+            });
+        }
+    }
+
+    @Test
+    void testNotModified() {
+        var site = new ETagSite();
+        var conversation = new MockConversation(site);
+
+        var response = conversation.doRequest("/page");
+        assertEquals(200, response.getStatus());
+        assertEquals("<p>dashboard</p>", response.getText());
+        var etag = response.getHeader("ETag");
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+        // the same content produces the same tag
+        assertEquals(etag, conversation.doRequest("/page").getHeader("ETag"));
+
+        response = conversation.doRequest("/page", new MockRequest().header("If-None-Match", etag));
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getText());
+        assertEquals(etag, response.getHeader("ETag"));
+
+        response = conversation.doRequest("/page", new MockRequest().header("If-None-Match", "\"other\", W/" + etag));
+        assertEquals(304, response.getStatus());
+
+        response = conversation.doRequest("/page", new MockRequest().header("If-None-Match", "*"));
+        assertEquals(304, response.getStatus());
+
+        // changed content gets a new tag
+        site.content = "updated";
+        response = conversation.doRequest("/page", new MockRequest().header("If-None-Match", etag));
+        assertEquals(200, response.getStatus());
+        assertEquals("<p>updated</p>", response.getText());
+        assertNotEquals(etag, response.getHeader("ETag"));
+    }
+
+    @Test
+    void testAnnotation() {
+        var conversation = new MockConversation(new ETagSite());
+
+        var response = conversation.doRequest("/annotated");
+        var etag = response.getHeader("ETag");
+        assertNotNull(etag);
+
+        response = conversation.doRequest("/annotated", new MockRequest().header("If-None-Match", etag));
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getText());
+    }
+
+    @Test
+    void testNotApplicable() {
+        var conversation = new MockConversation(new ETagSite());
+
+        assertNull(conversation.doRequest("/plain").getHeader("ETag"));
+        assertNull(conversation.doRequest("/page", new MockRequest().method(RequestMethod.POST)).getHeader("ETag"));
+
+        var response = conversation.doRequest("/status", new MockRequest().header("If-None-Match", "*"));
+        assertEquals(404, response.getStatus());
+        assertNull(response.getHeader("ETag"));
+
+        response = conversation.doRequest("/flushed", new MockRequest().header("If-None-Match", "*"));
+        assertEquals(200, response.getStatus());
+        assertEquals("dashboarddashboard", response.getText());
+        assertNull(response.getHeader("ETag"));
+    }
+
+    @Test
+    void testContentCoding() {
+        var gzip = RifeConfig.engine().getGzipCompression();
+        RifeConfig.engine().setGzipCompression(true);
+        try {
+            var conversation = new MockConversation(new ETagSite());
+
+            var identity = conversation.doRequest("/page").getHeader("ETag");
+            var response = conversation.doRequest("/page", new MockRequest().header("Accept-Encoding", "gzip"));
+            assertEquals("gzip", response.getHeader("Content-Encoding"));
+            var encoded = response.getHeader("ETag");
+            assertNotEquals(identity, encoded);
+            assertTrue(encoded.endsWith("-gzip\""));
+
+            // each representation is only validated by its own tag
+            response = conversation.doRequest("/page", new MockRequest().header("Accept-Encoding", "gzip").header("If-None-Match", identity));
+            assertEquals(200, response.getStatus());
+            response = conversation.doRequest("/page", new MockRequest().header("Accept-Encoding", "gzip").header("If-None-Match", encoded));
+            assertEquals(304, response.getStatus());
+            assertEquals(encoded, response.getHeader("ETag"));
+            response = conversation.doRequest("/page", new MockRequest().header("If-None-Match", encoded));
+            assertEquals(200, response.getStatus());
+        } finally {
+            RifeConfig.engine().setGzipCompression(gzip);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.test.MockConversation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestEncodedFragmentCache {
+    @Test
+    void testCaching()
+    throws Exception {
+        var cache = new EncodedFragmentCache();
+        var fragment = "<div class=\"header\">héllo</div>";
+
+        var first = cache.getBytes(fragment, "UTF-8");
+        var second = cache.getBytes(fragment, "UTF-8");
+        var third = cache.getBytes(fragment, "UTF-8");
+        assertArrayEquals(fragment.getBytes(StandardCharsets.UTF_8), first);
+        assertNotSame(first, second);
+        assertSame(second, third);
+
+        var latin = cache.getBytes(fragment, "ISO-8859-1");
+        assertArrayEquals(fragment.getBytes(StandardCharsets.ISO_8859_1), latin);
+        assertArrayEquals(fragment.getBytes(StandardCharsets.ISO_8859_1), cache.getBytes(fragment, "ISO-8859-1"));
+
+        var copy = new String(fragment);
+        assertNotSame(third, cache.getBytes(copy, "UTF-8"));
+        assertArrayEquals(third, cache.getBytes(copy, "UTF-8"));
+    }
+
+    @Test
+    void testLargeFragments()
+    throws Exception {
+        var cache = new EncodedFragmentCache();
+        var fragment = "x".repeat(EncodedFragmentCache.MAX_FRAGMENT_LENGTH + 1);
+        cache.getBytes(fragment, "UTF-8");
+        cache.getBytes(fragment, "UTF-8");
+        assertNotSame(cache.getBytes(fragment, "UTF-8"), cache.getBytes(fragment, "UTF-8"));
+    }
+
+    @Test
+    void testBoundedSize()
+    throws Exception {
+        var cache = new EncodedFragmentCache();
+        var fragments = new ArrayList<String>();
+        for (var i = 0; i < 1000; ++i) {
+            var fragment = String.valueOf(i).repeat(EncodedFragmentCache.MAX_FRAGMENT_LENGTH / 4);
+            fragments.add(fragment);
+            cache.getBytes(fragment, "UTF-8");
+            cache.getBytes(fragment, "UTF-8");
+        }
+        assertTrue(cache.totalBytes() > 0);
+        assertTrue(cache.totalBytes() <= EncodedFragmentCache.MAX_TOTAL_BYTES);
+
+        // fragments that weren't cached are still encoded correctly
+        for (var fragment : fragments) {
+            assertArrayEquals(fragment.getBytes(StandardCharsets.UTF_8), cache.getBytes(fragment, "UTF-8"));
+        }
+    }
+
+    @Test
+    void testCollectedFragmentsReleased()
+    throws Exception {
+        var cache = new EncodedFragmentCache();
+        var fragments = new ArrayList<String>();
+        for (var i = 0; i < 1000; ++i) {
+            var fragment = String.valueOf(i).repeat(EncodedFragmentCache.MAX_FRAGMENT_LENGTH / 4);
+            fragments.add(fragment);
+            cache.getBytes(fragment, "UTF-8");
+            cache.getBytes(fragment, "UTF-8");
+        }
+        var full = cache.totalBytes();
+        assertTrue(full > EncodedFragmentCache.MAX_TOTAL_BYTES / 2);
+
+        // like after a template reload, the previous fragments are no longer
+        // referenced and new ones can be cached once they're collected
+        fragments.clear();
+        var cached = false;
+        for (var i = 0; i < 50 && !cached; ++i) {
+            System.gc();
+            Thread.sleep(20);
+            var fragment = "reloaded".repeat(EncodedFragmentCache.MAX_FRAGMENT_LENGTH / 8 - i);
+            cache.getBytes(fragment, "UTF-8");
+            var bytes = cache.getBytes(fragment, "UTF-8");
+            cached = bytes == cache.getBytes(fragment, "UTF-8");
+        }
+        assertTrue(cached);
+        assertTrue(cache.totalBytes() < full);
+    }
+
+    @Test
+    void testGatheredOutput() {
+        var large = "y".repeat(20000);
+        var conversation = new MockConversation(new Site() {
+            public void setup() {
+                get("/fragments", c -> {
+                    var content = new ArrayList<CharSequence>();
+                    for (var i = 0; i < 2000; ++i) {
+                        content.add("<li>");
+                        content.add(String.valueOf(i));
+                        content.add("</li>");
+                        if (i == 1000) {
+                            content.add(large);
+                        }
+                    }
+                    c.response().print(content);
+                });
+            }
+        });
+
+        var expected = new StringBuilder();
+        for (var i = 0; i < 2000; ++i) {
+            expected.append("<li>").append(i).append("</li>");
+            if (i == 1000) {
+                expected.append(large);
+            }
+        }
+        for (var i = 0; i < 3; ++i) {
+            assertEquals(expected.toString(), conversation.doRequest("/fragments").getText());
+        }
+    }
+}
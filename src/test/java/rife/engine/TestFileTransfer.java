@@ -0,0 +1,168 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFileTransfer {
+    private Path file_;
+
+    @BeforeEach
+    void createFile()
+    throws Exception {
+        file_ = Files.createTempFile("rife-transfer", ".txt");
+        Files.writeString(file_, "0123456789abcdefghij", StandardCharsets.UTF_8);
+    }
+
+    @AfterEach
+    void deleteFile()
+    throws Exception {
+        Files.deleteIfExists(file_);
+    }
+
+    private MockConversation conversation() {
+        return new MockConversation(new Site() {
+            public void setup() {
+                get("/file", c -> c.sendFile(file_));
+                get("/missing", c -> c.sendFile(file_.resolveSibling("rife-missing-file.txt")));
+                get("/missingPrinted", c -> {
+                    c.print("partial");
+                    c.sendFile(file_.resolveSibling("rife-missing-file.txt"));
+                });
+                get("/missingResource", c -> {
+                    c.print("partial");
+                    c.sendResource("templates/rife_missing_resource.html");
+                });
+                get("/resource", c -> c.sendResource("templates/htmx_fragment.html"));
+                headGet("/head", c -> c.sendFile(file_));
+            }
+        });
+    }
+
+    @Test
+    void testSendFile() {
+        var conversation = conversation();
+
+        var response = conversation.doRequest("/file");
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789abcdefghij", response.getText());
+        assertEquals("20", response.getHeader("Content-Length"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertTrue(response.getContentType().startsWith("text/plain"));
+        assertNotNull(response.getHeader("ETag"));
+        assertNotNull(response.getHeader("Last-Modified"));
+
+        // the second request is served from the memory-mapped file
+        assertEquals("0123456789abcdefghij", conversation.doRequest("/file").getText());
+        assertEquals("0123456789abcdefghij", conversation.doRequest("/file").getText());
+
+        assertEquals(404, conversation.doRequest("/missing").getStatus());
+    }
+
+    @Test
+    void testMissingDiscardsContent() {
+        var conversation = conversation();
+
+        var response = conversation.doRequest("/missingPrinted");
+        assertEquals(404, response.getStatus());
+        assertEquals("", response.getText());
+
+        response = conversation.doRequest("/missingResource");
+        assertEquals(404, response.getStatus());
+        assertEquals("", response.getText());
+    }
+
+    @Test
+    void testConditional()
+    throws Exception {
+        var conversation = conversation();
+        var etag = conversation.doRequest("/file").getHeader("ETag");
+
+        var response = conversation.doRequest("/file", new MockRequest().header("If-None-Match", etag));
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getText());
+
+        var modified = Files.getLastModifiedTime(file_).toMillis();
+        response = conversation.doRequest("/file", new MockRequest().dateHeader("If-Modified-Since", modified + 1000));
+        assertEquals(304, response.getStatus());
+
+        response = conversation.doRequest("/file", new MockRequest().dateHeader("If-Modified-Since", modified - 10000));
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789abcdefghij", response.getText());
+    }
+
+    @Test
+    void testRanges() {
+        var conversation = conversation();
+
+        var response = conversation.doRequest("/file", new MockRequest().header("Range", "bytes=2-5"));
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getText());
+        assertEquals("bytes 2-5/20", response.getHeader("Content-Range"));
+        assertEquals("4", response.getHeader("Content-Length"));
+
+        response = conversation.doRequest("/file", new MockRequest().header("Range", "bytes=-3"));
+        assertEquals(206, response.getStatus());
+        assertEquals("hij", response.getText());
+
+        response = conversation.doRequest("/file", new MockRequest().header("Range", "bytes=15-"));
+        assertEquals("fghij", response.getText());
+
+        response = conversation.doRequest("/file", new MockRequest().header("Range", "bytes=20-"));
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader("Content-Range"));
+
+        // multiple ranges are answered with the complete content
+        response = conversation.doRequest("/file", new MockRequest().header("Range", "bytes=0-1,4-5"));
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789abcdefghij", response.getText());
+
+        // a range of an older version of the file is ignored
+        response = conversation.doRequest("/file", new MockRequest().header("Range", "bytes=2-5").header("If-Range", "\"other\""));
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789abcdefghij", response.getText());
+
+        var etag = conversation.doRequest("/file").getHeader("ETag");
+        response = conversation.doRequest("/file", new MockRequest().header("Range", "bytes=2-5").header("If-Range", etag));
+        assertEquals(206, response.getStatus());
+    }
+
+    @Test
+    void testHead() {
+        var response = conversation().doRequest("/head", new MockRequest().method(RequestMethod.HEAD));
+        assertEquals(200, response.getStatus());
+        assertEquals("20", response.getHeader("Content-Length"));
+        assertEquals("", response.getText());
+    }
+
+    @Test
+    void testSendResource() {
+        var response = conversation().doRequest("/resource");
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getText().startsWith("<html lang=\"en\">"));
+        assertTrue(response.getContentType().startsWith("text/html"));
+    }
+
+    @Test
+    void testParseRange() {
+        assertEquals(new FileTransfer.ByteRange(0, 9), FileTransfer.parseRange("bytes=0-9", 100));
+        assertEquals(new FileTransfer.ByteRange(95, 99), FileTransfer.parseRange("bytes=-5", 100));
+        assertEquals(new FileTransfer.ByteRange(0, 99), FileTransfer.parseRange("bytes=0-1000", 100));
+        assertSame(FileTransfer.ByteRange.UNSATISFIABLE, FileTransfer.parseRange("bytes=100-", 100));
+        assertSame(FileTransfer.ByteRange.UNSATISFIABLE, FileTransfer.parseRange("bytes=-0", 100));
+        assertNull(FileTransfer.parseRange("bytes=5-2", 100));
+        assertNull(FileTransfer.parseRange("items=0-1", 100));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestFormParameters {
+    private static Site createFormSite() {
+        return new Site() {
+            public void setup() {
+                post("/form", c -> {
+                    // reading the body first mustn't lose the form parameters
+                    c.body();
+                    c.print(c.parameter("name") + ";" + String.join(",", c.parameterValues("tag")));
+                });
+            }
+        };
+    }
+
+    private static String postForm(int port)
+    throws Exception {
+        var client = HttpClient.newHttpClient();
+        var request = HttpRequest.newBuilder()
+            .uri(new URI("http://localhost:" + port + "/form"))
+            .header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")
+            .POST(HttpRequest.BodyPublishers.ofString("name=the+name&tag=one&tag=two", StandardCharsets.UTF_8))
+            .build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() + ":" + response.body();
+    }
+
+    @Test
+    void testFormParametersAfterBody()
+    throws Exception {
+        try (final var server = new TestServerRunner(createFormSite())) {
+            assertEquals("200:the name;one,two", postForm(8181));
+        }
+    }
+
+    @Test
+    void testTomcatFormParametersAfterBody()
+    throws Exception {
+        try (final var server = new TestTomcatRunner(createFormSite())) {
+            assertEquals("200:the name;one,two", postForm(8282));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.engine.exceptions.EngineException;
+import rife.test.MockConversation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestParallelRendering {
+    static class ParallelSite extends Site {
+        final CountDownLatch slowInterrupted = new CountDownLatch(1);
+        volatile Throwable failure = null;
+
+        public void setup() {
+            get("/concurrent", c -> {
+                // both computations have to run at the same time to pass the barrier
+                var barrier = new CyclicBarrier(2);
+                var t = c.template("progressive_report");
+                var list = c.template("htmx_fragment");
+                c.parallel(t)
+                    .value("report", () -> {
+                        barrier.await(5, TimeUnit.SECONDS);
+                        return "<table>rows</table>";
+                    })
+                    .value("chart", () -> {
+                        barrier.await(5, TimeUnit.SECONDS);
+                        return list.getBlock("list");
+                    })
+                    .assign();
+                c.print(t);
+            });
+            get("/failure", c -> {
+                var t = c.template("progressive_report");
+                try {
+                    c.parallel(t)
+                        .value("report", () -> {
+                            try {
+                                Thread.sleep(10000);
+                            } catch (InterruptedException e) {
+                                slowInterrupted.countDown();
+                            }
+                            return "slow";
+                        })
+                        .value("chart", () -> {
+                            throw new IllegalStateException("query failed");
+                        })
+                        .assign();
+                } catch (EngineException e) {
+                    failure = e.getCause();
+                }
+                c.print(t);
+            });
+        }
+    }
+
+    @Test
+    void testConcurrentAssignment() {
+        var conversation = new MockConversation(new ParallelSite());
+
+        var text = conversation.doRequest("/concurrent").getText();
+        assertTrue(text.contains("<h1>header</h1><table>rows</table><p>middle</p>LIST:<footer>end</footer>"), text);
+    }
+
+    @Test
+    void testFirstFailure()
+    throws Exception {
+        var site = new ParallelSite();
+        var conversation = new MockConversation(site);
+
+        var start = System.nanoTime();
+        var text = conversation.doRequest("/failure").getText();
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+        assertInstanceOf(IllegalStateException.class, site.failure);
+        assertTrue(site.slowInterrupted.await(5, TimeUnit.SECONDS));
+        assertFalse(text.contains("slow"));
+    }
+}
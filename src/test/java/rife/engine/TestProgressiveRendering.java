@@ -0,0 +1,102 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.engine.exceptions.EngineException;
+import rife.test.MockConversation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestProgressiveRendering {
+    static class ProgressiveSite extends Site {
+        volatile boolean failureReported = false;
+
+        public void setup() {
+            get("/swapped", c -> {
+                var chart_started = new CountDownLatch(1);
+                c.progressive(c.template("progressive_report"))
+                    .defer("report", () -> {
+                        // only completes after the chart, to swap out of order
+                        chart_started.await(5, TimeUnit.SECONDS);
+                        Thread.sleep(50);
+                        return "<table>rows</table>";
+                    })
+                    .defer("chart", () -> {
+                        chart_started.countDown();
+                        return "<svg/>";
+                    })
+                    .defer("unused", () -> "never")
+                    .print();
+            });
+            get("/ordered", c -> {
+                c.progressive(c.template("progressive_report"))
+                    .inOrder(true)
+                    .defer("chart", () -> "<svg/>")
+                    .defer("report", () -> "<table>rows</table>")
+                    .print();
+            });
+            get("/repeated", c -> {
+                c.progressive(c.template("progressive_repeated"))
+                    .defer("total", () -> "<b>42</b>")
+                    .print();
+            });
+            get("/failure", c -> {
+                try {
+                    c.progressive(c.template("progressive_report"))
+                        .defer("report", () -> {
+                            throw new IllegalStateException("query failed");
+                        })
+                        .print();
+                } catch (EngineException e) {
+                    failureReported = e.getCause() instanceof IllegalStateException;
+                }
+            });
+        }
+    }
+
+    @Test
+    void testSwapped() {
+        var conversation = new MockConversation(new ProgressiveSite());
+
+        var text = conversation.doRequest("/swapped").getText();
+        assertTrue(text.startsWith("<html><head><title>report</title></head><body><h1>header</h1><template id=\"rife-slot-0-0\"></template><p>middle</p><template id=\"rife-slot-1-0\"></template><footer>end</footer></body></html>"));
+        assertTrue(text.contains("function rifeSwap(n,k)"));
+        var chart = text.indexOf("<template id=\"rife-fill-1\"><svg/></template><script>rifeSwap(1,1)</script>");
+        var report = text.indexOf("<template id=\"rife-fill-0\"><table>rows</table></template><script>rifeSwap(0,1)</script>");
+        assertTrue(chart > 0);
+        assertTrue(report > chart);
+        assertFalse(text.contains("never"));
+    }
+
+    @Test
+    void testRepeatedValue() {
+        var conversation = new MockConversation(new ProgressiveSite());
+
+        // each occurrence has its own placeholder, which are all filled
+        var text = conversation.doRequest("/repeated").getText();
+        assertTrue(text.startsWith("<html><body><header><template id=\"rife-slot-0-0\"></template></header><p>middle</p><footer><template id=\"rife-slot-0-1\"></template></footer></body></html>"));
+        assertTrue(text.contains("<template id=\"rife-fill-0\"><b>42</b></template><script>rifeSwap(0,2)</script>"));
+    }
+
+    @Test
+    void testInOrder() {
+        var conversation = new MockConversation(new ProgressiveSite());
+
+        assertEquals("<html><head><title>report</title></head><body><h1>header</h1><table>rows</table><p>middle</p><svg/><footer>end</footer></body></html>", conversation.doRequest("/ordered").getText().trim());
+    }
+
+    @Test
+    void testFailure() {
+        var site = new ProgressiveSite();
+        var conversation = new MockConversation(site);
+
+        conversation.doRequest("/failure");
+        assertTrue(site.failureReported);
+    }
+}
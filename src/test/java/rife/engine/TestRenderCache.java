@@ -0,0 +1,198 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.engine.annotations.RenderCached;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRenderCache {
+    static final AtomicInteger ANNOTATED_COUNT = new AtomicInteger();
+
+    @RenderCached(ttl = 60, parameters = "id")
+    public static class AnnotatedElement implements Element {
+        public void process(Context c) {
+            c.print("annotated " + c.parameter("id") + " " + ANNOTATED_COUNT.incrementAndGet());
+        }
+    }
+
+    static class RenderSite extends Site {
+        final AtomicInteger before = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+        Route page;
+        Route varied;
+        Route expiring;
+
+        public void setup() {
+            before(c -> before.incrementAndGet());
+
+            page = cacheRendering(get("/page", c -> {
+                c.setContentType("text/plain");
+                c.setHeader("X-Custom", "value");
+                c.print("page " + c.parameter("id") + " " + count.incrementAndGet());
+            }), Duration.ofMinutes(5), "id");
+            varied = cacheRendering(get("/varied", c -> {
+                c.varyOn("Accept-Language");
+                c.print(c.header("Accept-Language") + " " + count.incrementAndGet());
+            }), Duration.ofMinutes(5));
+            expiring = cacheRendering(get("/expiring", c -> c.print("expiring " + count.incrementAndGet())), Duration.ofMillis(1));
+            cacheRendering(get("/status", c -> {
+                c.setStatus(404);
+                c.print("status " + count.incrementAndGet());
+            }), Duration.ofMinutes(5));
+            cacheRendering(get("/cookie", c -> {
+                c.addCookie(new CookieBuilder("name", "value"));
+                c.print("cookie " + count.incrementAndGet());
+            }), Duration.ofMinutes(5));
+            cacheRendering(get("/flushed", c -> {
+                c.print("flushed ");
+                c.flush();
+                c.print(count.incrementAndGet());
+            }), Duration.ofMinutes(5));
+            get("/annotated", AnnotatedElement.class);
+            get("/plain", c -> c.print("plain " + count.incrementAndGet()));
+            cacheRendering(get("/etag", c -> {
+                c.enableETag();
+                c.print("etag " + count.incrementAndGet());
+            }), Duration.ofMinutes(5));
+        }
+    }
+
+    @Test
+    void testCachedRendering() {
+        var site = new RenderSite();
+        var conversation = new MockConversation(site);
+
+        var response = conversation.doRequest("/page?id=1");
+        assertEquals("page 1 1", response.getText());
+        assertEquals("value", response.getHeader("X-Custom"));
+        assertTrue(response.getContentType().startsWith("text/plain"));
+
+        response = conversation.doRequest("/page?id=1&other=x");
+        assertEquals("page 1 1", response.getText());
+        assertEquals("value", response.getHeader("X-Custom"));
+        assertTrue(response.getContentType().startsWith("text/plain"));
+        assertEquals(1, site.before.get());
+
+        assertEquals("page 2 2", conversation.doRequest("/page?id=2").getText());
+        assertEquals("page 2 2", conversation.doRequest("/page?id=2").getText());
+
+        // only GET responses are stored, HEAD requests are served from them
+        assertEquals("page 2 2", conversation.doRequest("/page?id=2", new MockRequest().method(RequestMethod.HEAD)).getText());
+
+        assertEquals(new RenderCacheStats(1024, 2, 3, 2), site.renderCacheStats());
+    }
+
+    @Test
+    void testVariedHeaders() {
+        var site = new RenderSite();
+        var conversation = new MockConversation(site);
+
+        assertEquals("en 1", conversation.doRequest("/varied", new MockRequest().header("Accept-Language", "en")).getText());
+        assertEquals("fr 2", conversation.doRequest("/varied", new MockRequest().header("Accept-Language", "fr")).getText());
+        var response = conversation.doRequest("/varied", new MockRequest().header("Accept-Language", "en"));
+        assertEquals("en 1", response.getText());
+        assertEquals("Accept-Language", response.getHeader("Vary"));
+        assertEquals("fr 2", conversation.doRequest("/varied", new MockRequest().header("Accept-Language", "fr")).getText());
+    }
+
+    @Test
+    void testAnnotation() {
+        var conversation = new MockConversation(new RenderSite());
+
+        var first = conversation.doRequest("/annotated?id=a").getText();
+        assertEquals(first, conversation.doRequest("/annotated?id=a&x=y").getText());
+        assertNotEquals(first, conversation.doRequest("/annotated?id=b").getText());
+    }
+
+    @Test
+    void testNotCacheable() {
+        var site = new RenderSite();
+        var conversation = new MockConversation(site);
+
+        assertEquals("plain 1", conversation.doRequest("/plain").getText());
+        assertEquals("plain 2", conversation.doRequest("/plain").getText());
+        assertEquals("status 3", conversation.doRequest("/status").getText());
+        assertEquals("status 4", conversation.doRequest("/status").getText());
+        assertEquals("cookie 5", conversation.doRequest("/cookie").getText());
+        assertEquals("cookie 6", conversation.doRequest("/cookie").getText());
+        assertEquals("flushed 7", conversation.doRequest("/flushed").getText());
+        assertEquals("flushed 8", conversation.doRequest("/flushed").getText());
+        assertEquals(0, site.renderCacheStats().size());
+    }
+
+    @Test
+    void testExpiration()
+    throws Exception {
+        var conversation = new MockConversation(new RenderSite());
+
+        assertEquals("expiring 1", conversation.doRequest("/expiring").getText());
+        Thread.sleep(5);
+        assertEquals("expiring 2", conversation.doRequest("/expiring").getText());
+    }
+
+    @Test
+    void testInvalidation() {
+        var site = new RenderSite();
+        var conversation = new MockConversation(site);
+
+        assertEquals("page 1 1", conversation.doRequest("/page?id=1").getText());
+        assertEquals("en 2", conversation.doRequest("/varied", new MockRequest().header("Accept-Language", "en")).getText());
+
+        site.invalidateRenderCache(site.page);
+        assertEquals("page 1 3", conversation.doRequest("/page?id=1").getText());
+        assertEquals("en 2", conversation.doRequest("/varied", new MockRequest().header("Accept-Language", "en")).getText());
+
+        site.invalidateRenderCache();
+        assertEquals("page 1 4", conversation.doRequest("/page?id=1").getText());
+        assertEquals("en 5", conversation.doRequest("/varied", new MockRequest().header("Accept-Language", "en")).getText());
+    }
+
+    @Test
+    void testCapacity() {
+        var site = new RenderSite();
+        site.renderCache(1);
+        var conversation = new MockConversation(site);
+
+        assertEquals("page 1 1", conversation.doRequest("/page?id=1").getText());
+        assertEquals("page 2 2", conversation.doRequest("/page?id=2").getText());
+        assertEquals("page 1 3", conversation.doRequest("/page?id=1").getText());
+        assertEquals(1, site.renderCacheStats().size());
+
+        site.renderCache(0);
+        assertNull(site.renderCacheStats());
+        assertEquals("page 1 4", conversation.doRequest("/page?id=1").getText());
+        assertEquals("page 1 5", conversation.doRequest("/page?id=1").getText());
+    }
+
+    @Test
+    void testCachedETag() {
+        var site = new RenderSite();
+        var conversation = new MockConversation(site);
+
+        var response = conversation.doRequest("/etag");
+        assertEquals("etag 1", response.getText());
+        var etag = response.getHeader("ETag");
+        assertNotNull(etag);
+
+        // the cached rendering carries the same tag and is validated
+        // against it
+        response = conversation.doRequest("/etag");
+        assertEquals("etag 1", response.getText());
+        assertEquals(etag, response.getHeader("ETag"));
+
+        response = conversation.doRequest("/etag", new MockRequest().header("If-None-Match", etag));
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getText());
+        assertEquals(etag, response.getHeader("ETag"));
+        assertEquals(1, site.count.get());
+    }
+}
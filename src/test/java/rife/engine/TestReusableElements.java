@@ -0,0 +1,170 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.engine.annotations.Cookie;
+import rife.engine.annotations.FlowDirection;
+import rife.engine.annotations.Parameter;
+import rife.engine.annotations.RequestAttribute;
+import rife.engine.annotations.Reusable;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestReusableElements {
+    static final AtomicInteger CREATED = new AtomicInteger();
+    static final AtomicInteger RESET = new AtomicInteger();
+
+    @Reusable(2)
+    public static class ReusableElementImpl implements ReusableElement {
+        @Parameter String name = "default";
+        StringBuilder calls = new StringBuilder();
+
+        public ReusableElementImpl() {
+            CREATED.incrementAndGet();
+        }
+
+        public void process(Context c) {
+            calls.append("x");
+            c.print(name + ":" + calls);
+        }
+
+        public void reset() {
+            RESET.incrementAndGet();
+            calls.setLength(0);
+        }
+    }
+
+    @Reusable
+    public static class MutableDefaultElement implements Element {
+        @RequestAttribute List<String> tags = new ArrayList<>();
+
+        public MutableDefaultElement() {
+            CREATED.incrementAndGet();
+        }
+
+        public void process(Context c) {
+            tags.add("x");
+            c.print(tags.size());
+        }
+    }
+
+    @Reusable
+    public static class OutCookieElement implements Element {
+        @Parameter String login;
+        @Cookie(value = "token", flow = FlowDirection.OUT) String token;
+
+        public OutCookieElement() {
+            CREATED.incrementAndGet();
+        }
+
+        public void process(Context c) {
+            if (login != null) {
+                token = "token-" + login;
+            }
+            c.print("ok");
+        }
+    }
+
+    @Reusable
+    public static class AsyncBodyElement implements Element {
+        public AsyncBodyElement() {
+            CREATED.incrementAndGet();
+        }
+
+        public void process(Context c) {
+            c.bodyAsync(-1).thenAccept(body -> c.print(body.length));
+        }
+    }
+
+    public static class RegularElement implements Element {
+        public RegularElement() {
+            CREATED.incrementAndGet();
+        }
+
+        public void process(Context c) {
+            c.print("regular");
+        }
+    }
+
+    @Test
+    void testReuse() {
+        CREATED.set(0);
+        RESET.set(0);
+
+        var conversation = new MockConversation(new Site() {
+            public void setup() {
+                get("/reusable", ReusableElementImpl.class);
+                get("/regular", RegularElement.class);
+            }
+        });
+
+        assertEquals("one:x", conversation.doRequest("/reusable?name=one").getText());
+        assertEquals("default:x", conversation.doRequest("/reusable").getText());
+        assertEquals("two:x", conversation.doRequest("/reusable?name=two").getText());
+        assertEquals(1, CREATED.get());
+        assertEquals(3, RESET.get());
+
+        conversation.doRequest("/regular");
+        conversation.doRequest("/regular");
+        assertEquals(3, CREATED.get());
+    }
+
+    @Test
+    void testMutableDefaults() {
+        CREATED.set(0);
+
+        var conversation = new MockConversation(new Site() {
+            public void setup() {
+                get("/mutable", MutableDefaultElement.class);
+            }
+        });
+
+        // the default list would otherwise be shared by the reused instances
+        assertEquals("1", conversation.doRequest("/mutable").getText());
+        assertEquals("1", conversation.doRequest("/mutable").getText());
+        assertEquals(2, CREATED.get());
+    }
+
+    @Test
+    void testOutFlowReset() {
+        CREATED.set(0);
+
+        var conversation = new MockConversation(new Site() {
+            public void setup() {
+                get("/cookie", OutCookieElement.class);
+            }
+        });
+
+        conversation.doRequest("/cookie?login=first");
+        assertEquals("token-first", conversation.getCookieValue("token"));
+
+        // the reused instance must not provide the cookie of the first request
+        conversation.doRequest("/cookie");
+        assertNotEquals("token-first", conversation.getCookieValue("token"));
+        assertEquals(1, CREATED.get());
+    }
+
+    @Test
+    void testAsyncBodyNotReused() {
+        CREATED.set(0);
+
+        var conversation = new MockConversation(new Site() {
+            public void setup() {
+                post("/async", AsyncBodyElement.class);
+            }
+        });
+
+        assertEquals("4", conversation.doRequest("/async", new MockRequest().method(RequestMethod.POST).body("body")).getText());
+        assertEquals("4", conversation.doRequest("/async", new MockRequest().method(RequestMethod.POST).body("body")).getText());
+        assertEquals(2, CREATED.get());
+    }
+}
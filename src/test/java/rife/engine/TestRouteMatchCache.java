@@ -0,0 +1,63 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRouteMatchCache {
+    @Test
+    void testClockEviction() {
+        var route = new RouteInstance(new Router(), null, "/one", PathInfoHandling.NONE, c -> c.print("one"));
+        var match = new RouteMatch(route, "");
+
+        var cache = new RouteMatchCache(2);
+        cache.put(RequestMethod.GET, "/one", match);
+        cache.put(RequestMethod.GET, "/two", match);
+        assertSame(match, cache.get(RequestMethod.GET, "/one"));
+        assertNull(cache.get(RequestMethod.POST, "/one"));
+
+        // only /two wasn't referenced since it was stored
+        cache.put(RequestMethod.GET, "/three", null);
+        assertSame(match, cache.get(RequestMethod.GET, "/one"));
+        assertNull(cache.get(RequestMethod.GET, "/two"));
+        assertSame(RouteMatchCache.NO_MATCH, cache.get(RequestMethod.GET, "/three"));
+
+        var stats = cache.stats();
+        assertEquals(2, stats.capacity());
+        assertEquals(2, stats.size());
+        assertEquals(3, stats.hits());
+        assertEquals(2, stats.misses());
+    }
+
+    @Test
+    void testSiteCache() {
+        var site = new Site() {
+            public void setup() {
+                get("/get", c -> c.print("get"));
+            }
+        };
+        site.routeCache(16);
+        var conversation = new MockConversation(site);
+        assertEquals(16, site.routeCache());
+
+        assertEquals("get", conversation.doRequest("/get", new MockRequest().method(RequestMethod.GET)).getText());
+        assertEquals("get", conversation.doRequest("/get", new MockRequest().method(RequestMethod.GET)).getText());
+        assertEquals(404, conversation.doRequest("/get", new MockRequest().method(RequestMethod.POST)).getStatus());
+        assertEquals(404, conversation.doRequest("/get", new MockRequest().method(RequestMethod.POST)).getStatus());
+
+        var stats = site.routeCacheStats();
+        assertEquals(2, stats.size());
+        assertEquals(2, stats.hits());
+        assertEquals(2, stats.misses());
+
+        site.routeCache(0);
+        assertNull(site.routeCacheStats());
+        assertEquals("get", conversation.doRequest("/get", new MockRequest().method(RequestMethod.GET)).getText());
+    }
+}
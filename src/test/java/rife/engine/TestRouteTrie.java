@@ -0,0 +1,131 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.test.MockConversation;
+import rife.test.MockRequest;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRouteTrie {
+    private static final String[] URLS = {
+        "/", "/one", "/one/", "/one/extra", "/two", "/two/", "/two/captured/path",
+        "/prefix1", "/prefix1/three", "/prefix1/three/extra", "/prefix1/prefix2",
+        "/prefix1/prefix2/four", "/prefix1/prefix2/four/extra", "/prefix1/prefix2xyz",
+        "/prefix1/prefix2/prefix3/five", "/prefix1/prefix2/prefix3/five/info",
+        "/prefix1/prefix2/prefix3/unknown", "/prefix1/prefix2/six", "/seven", "/seven/extra",
+        "/pathinfo/map/text/val1/x4321", "/pathinfo/map/text/val1", "/pathinfo/map/text",
+        "/pathinfo/map/other", "/unknown", "/unknown/deeper/path", "//", "/one//two"
+    };
+
+    static class TrieSite extends Site {
+        public void setup() {
+            group(new FallbacksSite());
+            get("/pathinfo/map", PathInfoHandling.MAP(
+                m -> m.t("text").s().p("param1"),
+                m -> m.t("text").s().p("param1").s().t("x").p("param2", "\\d+")
+            ), c -> c.print("map"));
+            post("/pathinfo/map", PathInfoHandling.CAPTURE, c -> c.print("capture"));
+            route("/", PathInfoHandling.CAPTURE, c -> c.print("root"));
+        }
+    }
+
+    @Test
+    void testCompiledMatchesStepwise() {
+        var site = new TrieSite();
+        new MockConversation(site);
+
+        for (var method : RequestMethod.values()) {
+            for (var url : URLS) {
+                var request = new MockRequest().method(method);
+
+                site.compiledRouting(false);
+                var stepwise = site.findRouteForRequest(request, url);
+                site.compiledRouting(true);
+                var compiled = site.findRouteForRequest(request, url);
+
+                assertEquals(stepwise, compiled, method + " " + url);
+            }
+        }
+    }
+
+    @Test
+    void testMethodDispatch() {
+        var site = new Site() {
+            public void setup() {
+                headGet("/item", c -> c.print("headGet"));
+                getPost("/item", c -> c.print("getPost"));
+                put("/item", c -> c.print("put"));
+                route("/item", new RequestMethod[]{RequestMethod.DELETE, RequestMethod.PATCH}, () -> c -> c.print("deletePatch"));
+                headPost("/item", PathInfoHandling.CAPTURE, c -> c.print("headPostCapture"));
+                route("/item", PathInfoHandling.CAPTURE, c -> c.print("anyCapture"));
+            }
+        };
+        var conversation = new MockConversation(site);
+
+        assertEquals("headGet", conversation.doRequest("/item", new MockRequest().method(RequestMethod.GET)).getText());
+        assertEquals("getPost", conversation.doRequest("/item", new MockRequest().method(RequestMethod.POST)).getText());
+        assertEquals("put", conversation.doRequest("/item", new MockRequest().method(RequestMethod.PUT)).getText());
+        assertEquals("deletePatch", conversation.doRequest("/item", new MockRequest().method(RequestMethod.DELETE)).getText());
+        assertEquals("deletePatch", conversation.doRequest("/item", new MockRequest().method(RequestMethod.PATCH)).getText());
+        assertEquals("anyCapture", conversation.doRequest("/item", new MockRequest().method(RequestMethod.OPTIONS)).getText());
+        assertEquals("headPostCapture", conversation.doRequest("/item/info", new MockRequest().method(RequestMethod.POST)).getText());
+        assertEquals("anyCapture", conversation.doRequest("/item/info", new MockRequest().method(RequestMethod.GET)).getText());
+
+        for (var method : RequestMethod.values()) {
+            for (var url : new String[]{"/item", "/item/", "/item/info"}) {
+                var request = new MockRequest().method(method);
+
+                site.compiledRouting(false);
+                var stepwise = site.findRouteForRequest(request, url);
+                site.compiledRouting(true);
+                var compiled = site.findRouteForRequest(request, url);
+
+                assertEquals(stepwise, compiled, method + " " + url);
+            }
+        }
+    }
+
+    @Test
+    void testFallbacks() {
+        var conversation = new MockConversation(new FallbacksSite());
+
+        assertEquals("fallback1", conversation.doRequest("/unknown").getText());
+        assertEquals("fallback2", conversation.doRequest("/prefix1/prefix2/unknown").getText());
+        assertEquals("fallback2", conversation.doRequest("/prefix1/prefix2xyz").getText());
+        assertEquals("fallback4", conversation.doRequest("/prefix1/prefix2/prefix3/unknown").getText());
+        assertEquals("/prefix1/prefix2/prefix3/five", conversation.doRequest("/prefix1/prefix2/prefix3/five/info").getText());
+    }
+
+    @Test
+    void testPathInfo() {
+        var site = new TrieSite();
+        new MockConversation(site);
+
+        var match = site.findRouteForRequest(new MockRequest().method(RequestMethod.GET), "/pathinfo/map/text/val1/x4321");
+        assertNotNull(match);
+        assertEquals("/pathinfo/map", match.route().path());
+        assertEquals("text/val1/x4321", match.pathInfo());
+        assertEquals(Map.of("param1", "val1", "param2", "4321"), match.pathInfoParameters());
+
+        match = site.findRouteForRequest(new MockRequest().method(RequestMethod.GET), "/pathinfo/map/text/val1");
+        assertNotNull(match);
+        assertEquals(Map.of("param1", "val1"), match.pathInfoParameters());
+
+        match = site.findRouteForRequest(new MockRequest().method(RequestMethod.POST), "/pathinfo/map/text/val1");
+        assertNotNull(match);
+        assertEquals(PathInfoType.CAPTURE, match.route().pathInfoHandling().type());
+        assertEquals("text/val1", match.pathInfo());
+        assertTrue(match.pathInfoParameters().isEmpty());
+
+        match = site.findRouteForRequest(new MockRequest().method(RequestMethod.GET), "/pathinfo/map/other");
+        assertNotNull(match);
+        assertEquals("/", match.route().path());
+        assertEquals("pathinfo/map/other", match.pathInfo());
+    }
+}
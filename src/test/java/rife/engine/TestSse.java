@@ -507,6 +507,115 @@ public class TestSse {
         assertEquals(0, broadcaster.historyStats().replays());
     }
 
+    static class StalledResponse extends BrokenResponse {
+        final java.io.ByteArrayOutputStream written = new java.io.ByteArrayOutputStream();
+        boolean ready = true;
+        jakarta.servlet.WriteListener listener;
+
+        StalledResponse(Request request) {
+            super(request);
+        }
+
+        protected java.io.OutputStream _getOutputStream() {
+            return new jakarta.servlet.ServletOutputStream() {
+                public boolean isReady() {
+                    return ready;
+                }
+
+                public void setWriteListener(jakarta.servlet.WriteListener writeListener) {
+                    listener = writeListener;
+                }
+
+                public void write(int b) {
+                    written.write(b);
+                }
+            };
+        }
+
+        String writtenText() {
+            return written.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static SseOutboundQueue stalledQueue(StalledResponse response, SseOverflowPolicy policy) {
+        var context = new Context("", new Site() {
+            public void setup() {
+            }
+        }, response.getRequest(), response, null);
+        var queue = new SseOutboundQueue(context.sse(), response, 2, policy);
+        assertDoesNotThrow(() -> queue.start(true));
+        assertNotNull(response.listener);
+        response.ready = false;
+        return queue;
+    }
+
+    private static SseOutboundQueue.Outbound outbound(String name, String data) {
+        return new SseOutboundQueue.Outbound(name, ("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    @Test
+    void testOutboundQueueOverflow()
+    throws Exception {
+        // the oldest queued event is discarded
+        var response = new StalledResponse(new MockRequest());
+        var queue = stalledQueue(response, SseOverflowPolicy.DROP_OLDEST);
+        assertTrue(queue.offer(outbound("a", "1")));
+        assertTrue(queue.offer(outbound("b", "2")));
+        assertTrue(queue.offer(outbound("c", "3")));
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.dropped());
+        assertEquals("", response.writtenText());
+
+        // the container signals that the client can receive again
+        response.ready = true;
+        response.listener.onWritePossible();
+        assertEquals(0, queue.size());
+        assertEquals("data: 2\n\ndata: 3\n\n", response.writtenText());
+
+        // the queued event with the same name is replaced
+        response = new StalledResponse(new MockRequest());
+        queue = stalledQueue(response, SseOverflowPolicy.COALESCE);
+        assertTrue(queue.offer(outbound("price", "1")));
+        assertTrue(queue.offer(outbound("status", "2")));
+        assertTrue(queue.offer(outbound("price", "3")));
+        assertTrue(queue.offer(outbound(null, "4")));
+        assertEquals(2, queue.dropped());
+        response.ready = true;
+        response.listener.onWritePossible();
+        assertEquals("data: 3\n\ndata: 4\n\n", response.writtenText());
+
+        // the connection is closed
+        response = new StalledResponse(new MockRequest());
+        queue = stalledQueue(response, SseOverflowPolicy.DISCONNECT);
+        assertTrue(queue.offer(outbound("a", "1")));
+        assertTrue(queue.offer(outbound("a", "2")));
+        assertFalse(queue.offer(outbound("a", "3")));
+    }
+
+    @Test
+    void testMockOutboundQueue() {
+        var broadcaster = new SseBroadcaster().history(10).outboundQueue(4, SseOverflowPolicy.DISCONNECT);
+        var m = new MockConversation(new Site() {
+            public void setup() {
+                get("/stream", c -> c.sse(broadcaster));
+            }
+        });
+
+        broadcaster.send("missed");
+        var response = m.doRequest("/stream", new MockRequest().header("Last-Event-ID", cursor(broadcaster, 0)));
+        assertEquals(1, broadcaster.send(new ServerSentEvent().name("tick").data("live")));
+
+        // without non-blocking output, the queued events are written right away
+        var events = response.getEvents();
+        assertEquals(2, events.size());
+        assertEquals("missed", events.get(0).getData());
+        assertEquals("live", events.get(1).getData());
+
+        assertThrows(IllegalArgumentException.class, () -> broadcaster.outboundQueue(0, SseOverflowPolicy.DROP_OLDEST));
+        assertThrows(IllegalArgumentException.class, () -> broadcaster.outboundQueue(1, null));
+        broadcaster.close();
+    }
+
     @Test
     void testFailedDirectSendDeregisters() {
         var broadcaster = new SseBroadcaster();
@@ -635,6 +744,281 @@ public class TestSse {
         plain_site.broadcaster.close();
     }
 
+    @Test
+    void testFanOut()
+    throws Exception {
+        var site = new DetachedBlockSite();
+        site.broadcaster.history(10);
+        var m = new MockConversation(site);
+
+        var responses = new java.util.ArrayList<rife.test.MockResponse>();
+        for (var i = 0; i < 20; i++) {
+            responses.add(m.doRequest("/events"));
+        }
+
+        var executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+        try {
+            site.broadcaster.fanOut(executor);
+            assertEquals(20, site.broadcaster.send(new ServerSentEvent().name("tick").data("first")));
+            assertEquals(20, site.broadcaster.send(new ServerSentEvent().name("tick").data("second")));
+            for (var response : responses) {
+                var events = response.getEvents();
+                assertEquals(2, events.size());
+                assertEquals("first", events.get(0).getData());
+                assertEquals("second", events.get(1).getData());
+            }
+
+            // the first exception of a filter propagates once all the
+            // connection sets have been handled
+            assertThrows(IllegalStateException.class, () -> site.broadcaster.send(new ServerSentEvent().comment("x"), connection -> {
+                throw new IllegalStateException("filter failed");
+            }));
+
+            // a connection that registers after the event was sent only
+            // receives it through the replay
+            var late = m.doRequest("/events", new MockRequest().header("Last-Event-ID", cursor(site.broadcaster, 1)));
+            var late_events = late.getEvents();
+            assertEquals(1, late_events.size());
+            assertEquals("second", late_events.get(0).getData());
+
+            var stats = site.broadcaster.fanOutStats();
+            assertEquals(2, stats.broadcasts());
+            assertTrue(stats.shards() >= 1);
+            assertTrue(stats.p50Nanos() > 0);
+            assertTrue(stats.p50Nanos() <= stats.p99Nanos());
+            assertTrue(stats.p99Nanos() <= stats.maxNanos());
+        } finally {
+            site.broadcaster.fanOut(null);
+            executor.shutdownNow();
+            site.broadcaster.close();
+        }
+    }
+
+    @Test
+    void testMemoryTransport() {
+        var transport = new rife.engine.ssetransports.MemorySseTransport();
+        var node_a = new DetachedBlockSite();
+        var node_b = new DetachedBlockSite();
+        node_a.broadcaster.history(10).transport(transport, "ticks");
+        node_b.broadcaster.history(10).transport(transport, "ticks");
+        var m_a = new MockConversation(node_a);
+        var m_b = new MockConversation(node_b);
+
+        var client_a = m_a.doRequest("/events");
+        var client_b = m_b.doRequest("/events");
+
+        // an event that is sent on one node reaches the clients of every
+        // node, with the same ID
+        assertEquals(1, node_a.broadcaster.send(new ServerSentEvent().name("tick").data("one")));
+        assertEquals(1, node_b.broadcaster.send(new ServerSentEvent().name("tick").data("two")));
+        var events_a = client_a.getEvents();
+        var events_b = client_b.getEvents();
+        assertEquals(2, events_a.size());
+        assertEquals(2, events_b.size());
+        assertEquals("one", events_b.get(0).getData());
+        assertEquals("two", events_a.get(1).getData());
+        assertEquals(events_a.get(0).getId(), events_b.get(0).getId());
+        assertEquals(events_a.get(1).getId(), events_b.get(1).getId());
+        assertEquals(node_a.broadcaster.lastEventId(), node_b.broadcaster.lastEventId());
+
+        // targeted events are only delivered by the node that sent them
+        assertEquals(1, node_a.broadcaster.send(new ServerSentEvent().data("private"), connection -> true));
+        assertEquals(3, client_a.getEvents().size());
+        assertEquals(2, client_b.getEvents().size());
+
+        // a client that reconnects to the other node receives the events
+        // that it missed
+        var reconnected = m_b.doRequest("/events", new MockRequest().header("Last-Event-ID", events_a.get(0).getId()));
+        var replayed = reconnected.getEvents();
+        assertEquals(1, replayed.size());
+        assertEquals("two", replayed.get(0).getData());
+        assertEquals(0, node_b.broadcaster.historyStats().gaps());
+
+        node_a.broadcaster.close();
+        node_b.broadcaster.close();
+    }
+
+    @Test
+    @Timeout(120)
+    void testMemoryTransportDeliveryDoesntBlockPublishers()
+    throws Exception {
+        var transport = new rife.engine.ssetransports.MemorySseTransport();
+        var received = new java.util.concurrent.CopyOnWriteArrayList<Long>();
+        var stalled = new java.util.concurrent.CountDownLatch(1);
+        var delivering = new java.util.concurrent.CountDownLatch(1);
+        transport.subscribe("ticks", message -> {
+            if (1 == message.sequence()) {
+                delivering.countDown();
+                try {
+                    stalled.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            received.add(message.sequence());
+        });
+
+        var first = new Thread(() -> transport.publish("ticks", "a", new ServerSentEvent().data("one"), false));
+        first.start();
+        try {
+            assertTrue(delivering.await(10, java.util.concurrent.TimeUnit.SECONDS));
+
+            // another publisher isn't held up by the stalled receiver
+            assertEquals(2, transport.publish("ticks", "b", new ServerSentEvent().data("two"), false));
+            assertEquals(3, transport.publish("ticks", "b", new ServerSentEvent().data("three"), false));
+            assertTrue(received.isEmpty());
+        } finally {
+            stalled.countDown();
+        }
+        first.join(10000);
+
+        // the delivering thread delivers the other messages in order
+        assertEquals(List.of(1L, 2L, 3L), received);
+    }
+
+    @Test
+    void testTransportMessageSerialization() {
+        var event = new ServerSentEvent().name("update").retry(500).comment("note").data("first\nsecond");
+        var serialized = SseTransportMessage.serializeEvent(event);
+        var message = SseTransportMessage.deserialize(7, "origin", true, serialized);
+        assertEquals(7, message.sequence());
+        assertEquals("origin", message.origin());
+        assertTrue(message.targeted());
+        assertEquals(serialized, SseTransportMessage.serializeEvent(message.event()));
+
+        var template = rife.template.TemplateFactory.HTML.get("sse_param");
+        assertThrows(IllegalArgumentException.class, () -> SseTransportMessage.serializeEvent(new ServerSentEvent().template(template)));
+    }
+
+    @Test
+    void testPersistentHistory()
+    throws Exception {
+        var file = java.nio.file.Files.createTempFile("rife-sse-history", ".bin");
+        try {
+            var site = new DetachedBlockSite();
+            site.broadcaster.persistentHistory(file, 10, 4096);
+            var m = new MockConversation(site);
+
+            site.broadcaster.send(new ServerSentEvent().name("tick").data("one"));
+            site.broadcaster.send(new ServerSentEvent().name("tick").data("two"));
+            site.broadcaster.send(new ServerSentEvent().data("private"), connection -> false);
+            site.broadcaster.send(new ServerSentEvent().name("tick").data("three"));
+            assertEquals(4, site.broadcaster.historyStats().buffered());
+
+            // templates can't be stored as preformatted events
+            var template = rife.template.TemplateFactory.HTML.get("sse_param");
+            assertThrows(IllegalArgumentException.class, () -> site.broadcaster.send(template));
+
+            var reconnected = m.doRequest("/events", new MockRequest().header("Last-Event-ID", cursor(site.broadcaster, 1)));
+            var events = reconnected.getEvents();
+            assertEquals(2, events.size());
+            assertEquals("two", events.get(0).getData());
+            assertEquals("three", events.get(1).getData());
+            assertEquals(cursor(site.broadcaster, 4), events.get(1).getId());
+
+            var last_event_id = site.broadcaster.lastEventId();
+            site.broadcaster.close();
+
+            // a new broadcaster continues the epoch and the sequence of the
+            // file, like after an application restart
+            var restarted = new DetachedBlockSite();
+            restarted.broadcaster.persistentHistory(file, 10, 4096);
+            assertEquals(last_event_id, restarted.broadcaster.lastEventId());
+            var m_restarted = new MockConversation(restarted);
+            var after_restart = m_restarted.doRequest("/events", new MockRequest().header("Last-Event-ID", cursor(restarted.broadcaster, 2)));
+            var replayed = after_restart.getEvents();
+            assertEquals(1, replayed.size());
+            assertEquals("three", replayed.get(0).getData());
+            assertEquals(0, restarted.broadcaster.historyStats().gaps());
+
+            // the capacity bounds the history, the events are small enough
+            // for the size in bytes not to be reached
+            for (var i = 0; i < 100; i++) {
+                restarted.broadcaster.send(new ServerSentEvent().name("tick").data("event " + i));
+            }
+            var stats = restarted.broadcaster.historyStats();
+            assertEquals(10, stats.buffered());
+            assertEquals(104, stats.newestId());
+            var evicted = m_restarted.doRequest("/events", new MockRequest().header("Last-Event-ID", cursor(restarted.broadcaster, 3)));
+            assertEquals(0, evicted.getEvents().size());
+            assertEquals(1, restarted.broadcaster.historyStats().gaps());
+
+            restarted.broadcaster.close();
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testHistoryFileBoundedBySize()
+    throws Exception {
+        var file = java.nio.file.Files.createTempFile("rife-sse-history", ".bin");
+        try {
+            List<SseHistoryFile.Record> retained;
+            try (var history = new SseHistoryFile(file, 100, 512, 1)) {
+                // each record takes a few dozen bytes, the size in bytes
+                // evicts the oldest events long before the capacity does,
+                // while the ring wraps around several times
+                for (var i = 1; i <= 50; i++) {
+                    assertTrue(history.append(i, "tick", ("data: event " + i + "\n\n").getBytes(java.nio.charset.StandardCharsets.UTF_8), false));
+                }
+                assertTrue(history.size() > 1);
+                assertTrue(history.size() < 20);
+                assertEquals(history.oldestId() - 1, history.floor());
+                assertEquals(50, history.lastId());
+
+                retained = history.recordsAfter(0);
+                assertEquals(history.size(), retained.size());
+                for (var i = 0; i < retained.size(); i++) {
+                    var id = history.oldestId() + i;
+                    assertEquals(id, retained.get(i).id());
+                    assertEquals("data: event " + id + "\n\n", new String(retained.get(i).payload(), java.nio.charset.StandardCharsets.UTF_8));
+                }
+            }
+
+            // the wrapped ring is restored with the same events
+            try (var restored = new SseHistoryFile(file, 100, 512, 2)) {
+                assertEquals(1, restored.epoch());
+                assertEquals(50, restored.lastId());
+                assertEquals(retained.get(0).id() - 1, restored.floor());
+                var records = restored.recordsAfter(0);
+                assertEquals(retained.size(), records.size());
+                for (var i = 0; i < records.size(); i++) {
+                    assertEquals(retained.get(i).id(), records.get(i).id());
+                    assertEquals("tick", records.get(i).name());
+                    assertArrayEquals(retained.get(i).payload(), records.get(i).payload());
+                }
+
+                // appending continues after the restored events
+                assertTrue(restored.append(51, "tick", "data: event 51\n\n".getBytes(java.nio.charset.StandardCharsets.UTF_8), false));
+                assertEquals(51, restored.recordsAfter(50).get(0).id());
+            }
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testHistoryFileLongNames()
+    throws Exception {
+        var file = java.nio.file.Files.createTempFile("rife-sse-history", ".bin");
+        try (var history = new SseHistoryFile(file, 10, 200000, 1)) {
+            // names that don't fit in a signed 16-bit length are kept
+            var long_name = "n".repeat(40000);
+            assertTrue(history.append(1, long_name, "data: one\n\n".getBytes(java.nio.charset.StandardCharsets.UTF_8), false));
+            var records = history.recordsAfter(0);
+            assertEquals(1, records.size());
+            assertEquals(long_name, records.get(0).name());
+            assertEquals("data: one\n\n", new String(records.get(0).payload(), java.nio.charset.StandardCharsets.UTF_8));
+
+            // longer names can't be stored
+            assertFalse(history.append(2, "n".repeat(SseHistoryFile.MAX_NAME_BYTES + 1), "data: two\n\n".getBytes(java.nio.charset.StandardCharsets.UTF_8), false));
+            assertEquals(1, history.size());
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
     @Test
     void testRestartCursorCountsAsGap() {
         var site = new DetachedBlockSite();
@@ -914,6 +1298,124 @@ public class TestSse {
         site.broadcaster.close();
     }
 
+    @Test
+    @Timeout(120)
+    void testConnectionHeartbeat()
+    throws Exception {
+        var site = new HolderSite();
+        var m = new MockConversation(site);
+        var response = m.doRequest("/events");
+        var connection = site.holder[0];
+
+        assertThrows(IllegalArgumentException.class, () -> connection.heartbeat(null));
+        assertThrows(IllegalArgumentException.class, () -> connection.heartbeat(Duration.ZERO));
+
+        // an idle connection receives keep-alive comments
+        connection.heartbeat(Duration.ofMillis(25));
+        var deadline = System.currentTimeMillis() + 10000;
+        while (response.getEvents().isEmpty() &&
+               System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(response.getEvents().isEmpty());
+        assertEquals(List.of("keep-alive"), response.getEvents().get(0).getComments());
+
+        // a connection that keeps sending events doesn't need heartbeats
+        connection.heartbeat(Duration.ofMillis(200));
+        Thread.sleep(50);
+        var before = response.getEvents().size();
+        var end = System.currentTimeMillis() + 600;
+        while (System.currentTimeMillis() < end) {
+            assertTrue(connection.send("busy"));
+            Thread.sleep(5);
+        }
+        var events = response.getEvents();
+        for (var event : events.subList(before, events.size())) {
+            assertEquals("busy", event.getData());
+        }
+
+        // closing the connection stops its heartbeat
+        connection.close();
+        var settled = response.getEvents().size();
+        Thread.sleep(300);
+        assertEquals(settled, response.getEvents().size());
+
+        site.broadcaster.close();
+    }
+
+    @Test
+    @Timeout(120)
+    void testHeartbeatSkippedWhileRunning()
+    throws Exception {
+        var runs = new java.util.concurrent.atomic.AtomicInteger();
+        var stalled = new java.util.concurrent.CountDownLatch(1);
+        var heartbeat = SseHeartbeatTimer.shared().schedule(Duration.ofMillis(10), () -> {
+            runs.incrementAndGet();
+            try {
+                stalled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            // a stalled heartbeat isn't run again until it finishes
+            Thread.sleep(300);
+            assertEquals(1, runs.get());
+
+            stalled.countDown();
+            var deadline = System.currentTimeMillis() + 10000;
+            while (runs.get() < 3 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(runs.get() >= 3);
+        } finally {
+            heartbeat.cancel();
+            stalled.countDown();
+        }
+    }
+
+    @Test
+    @Timeout(120)
+    void testHeartbeatTimerStopsWhenIdle()
+    throws Exception {
+        var timer = new SseHeartbeatTimer();
+        assertFalse(timer.isRunning());
+
+        var runs = new java.util.concurrent.atomic.AtomicInteger();
+        var first = timer.schedule(Duration.ofMillis(10), runs::incrementAndGet);
+        var second = timer.schedule(Duration.ofSeconds(30), () -> {});
+        assertTrue(timer.isRunning());
+
+        // the timer keeps running as long as a heartbeat is scheduled
+        first.cancel();
+        Thread.sleep(100);
+        assertTrue(timer.isRunning());
+
+        second.cancel();
+        var deadline = System.currentTimeMillis() + 10000;
+        while (timer.isRunning() &&
+               System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(timer.isRunning());
+
+        // scheduling again starts a new thread
+        runs.set(0);
+        var third = timer.schedule(Duration.ofMillis(10), runs::incrementAndGet);
+        try {
+            assertTrue(timer.isRunning());
+            deadline = System.currentTimeMillis() + 10000;
+            while (runs.get() < 2 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(runs.get() >= 2);
+        } finally {
+            third.cancel();
+        }
+    }
+
     @Test
     void testDirectSendBypassesHistory() {
         var site = new HolderSite();
@@ -1547,6 +2049,50 @@ public class TestSse {
         }
     }
 
+    @Test
+    @Timeout(120)
+    void testDetachedBroadcastOutboundQueue()
+    throws Exception {
+        var broadcaster = new SseBroadcaster().outboundQueue(16, SseOverflowPolicy.DISCONNECT);
+        var holder = new SseConnection[1];
+        try (final var server = new TestServerRunner(new Site() {
+            public void setup() {
+                get("/stream", c -> holder[0] = c.sse(broadcaster));
+            }
+        })) {
+            var client = HttpClient.newHttpClient();
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:8181/stream"))
+                .timeout(Duration.ofSeconds(30)).build();
+            var response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            assertEquals(200, response.statusCode());
+
+            var deadline = System.currentTimeMillis() + 30000;
+            while (broadcaster.connectionCount() == 0 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, broadcaster.connectionCount());
+
+            for (var i = 1; i <= 10; i++) {
+                assertEquals(1, broadcaster.send(new ServerSentEvent().name("tick").data("event " + i)));
+            }
+
+            // the queued events are written by the container
+            while (holder[0].queuedEvents() > 0 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, holder[0].queuedEvents());
+            broadcaster.close();
+
+            var expected = new StringBuilder();
+            for (var i = 1; i <= 10; i++) {
+                expected.append("event: tick\ndata: event ").append(i).append("\n\n");
+            }
+            assertEquals(expected.toString(), new String(response.body().readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
     // Stands up a Jetty server with the RIFE2 filter and servlet with async
     // support explicitly disabled, which reproduces the default of a plain war
     // deployment where <async-supported>true</async-supported> hasn't been
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.test.MockConversation;
+import rife.test.MockResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStreamingOutput {
+    static class StreamingSite extends Site {
+        int printedBytes = -1;
+        int flushedBytes = -1;
+
+        public void setup() {
+            get("/loop", c -> {
+                c.enableTextBuffer(false);
+                for (var i = 0; i < 100; ++i) {
+                    c.print("line " + i + "\n");
+                }
+                printedBytes = ((MockResponse) c.response()).getBytes().length;
+                c.flush();
+                flushedBytes = ((MockResponse) c.response()).getBytes().length;
+                c.print("end");
+            });
+            get("/mixed", c -> {
+                c.enableTextBuffer(false);
+                c.print("a");
+                c.outputStream().write('b');
+                c.outputStream().write("cd".getBytes(StandardCharsets.UTF_8));
+                c.print("e");
+                c.enableTextBuffer(true);
+                c.print("f");
+            });
+            get("/unicode", c -> {
+                c.enableTextBuffer(false);
+                for (var i = 0; i < 10; ++i) {
+                    c.print("é😀x");
+                }
+            });
+        }
+    }
+
+    private static String expectedLoop() {
+        var expected = new StringBuilder();
+        for (var i = 0; i < 100; ++i) {
+            expected.append("line ").append(i).append("\n");
+        }
+        return expected.toString();
+    }
+
+    @Test
+    void testDisabled() {
+        var site = new StreamingSite();
+        var conversation = new MockConversation(site);
+
+        assertEquals(0, site.streamingOutput());
+        assertEquals(expectedLoop() + "end", conversation.doRequest("/loop").getText());
+        assertEquals(expectedLoop().length(), site.printedBytes);
+    }
+
+    @Test
+    void testCoalescing() {
+        var site = new StreamingSite();
+        site.streamingOutput(64 * 1024);
+        var conversation = new MockConversation(site);
+
+        assertEquals(64 * 1024, site.streamingOutput());
+        assertEquals(expectedLoop() + "end", conversation.doRequest("/loop").getText());
+        assertEquals(0, site.printedBytes);
+        assertEquals(expectedLoop().length(), site.flushedBytes);
+
+        // the buffers are reused by the next responses
+        assertEquals(expectedLoop() + "end", conversation.doRequest("/loop").getText());
+    }
+
+    @Test
+    void testSmallBuffer() {
+        var site = new StreamingSite();
+        site.streamingOutput(16);
+        var conversation = new MockConversation(site);
+
+        assertEquals(expectedLoop() + "end", conversation.doRequest("/loop").getText());
+        assertTrue(site.printedBytes > 0);
+        assertEquals(expectedLoop().length(), site.flushedBytes);
+
+        var response = conversation.doRequest("/unicode");
+        assertEquals("é😀x".repeat(10), new String(response.getBytes(), StandardCharsets.UTF_8));
+
+        site.streamingOutput(3);
+        response = conversation.doRequest("/unicode");
+        assertEquals("é😀x".repeat(10), new String(response.getBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testOutputStreamOrder() {
+        var site = new StreamingSite();
+        site.streamingOutput(1024);
+        var conversation = new MockConversation(site);
+
+        assertEquals("abcdef", conversation.doRequest("/mixed").getText());
+
+        site.streamingOutput(0);
+        assertEquals("abcdef", conversation.doRequest("/mixed").getText());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine;
+
+import org.junit.jupiter.api.Test;
+import rife.test.MockConversation;
+import rife.tools.StringUtils;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestUrlTemplate {
+    private static final PathInfoHandling MAPPINGS = PathInfoHandling.MAP(
+        m -> m.t("text").s().p("param1").s().t("x").p("param2", "\\d+"),
+        m -> m.t("text").s().p("param1"),
+        m -> m.p("param3", "[a-z]+").t(".html")
+    );
+
+    static class LinkSite extends Site {
+        Route mapped;
+
+        public void setup() {
+            mapped = get("/pathinfo/map", MAPPINGS, c -> c.print(c.pathInfo()));
+            get("/links", c -> {
+                c.print(c.urlFor(mapped).param("param1", "v1").param("param2", "412"));
+                c.print("\n");
+                c.print(c.urlFor(mapped).param("param1", "v1").param("param2", "abc"));
+                c.print("\n");
+                c.print(c.urlFor(mapped).param("param3", "page").param("other", "o"));
+                c.print("\n");
+                c.print(c.urlFor(mapped).param("other", "o"));
+            });
+        }
+    }
+
+    // the path info generation as it was done before the templates were compiled
+    private static void appendPathInfoStepwise(Route route, StringBuilder path, Map<String, String[]> parameters) {
+        for (var mapping : route.pathInfoHandling().mappings()) {
+            if (parameters.keySet().containsAll(mapping.parameters())) {
+                var parameters_it = mapping.parameters().iterator();
+
+                var builder = new StringBuilder();
+                for (var segment : mapping.segments()) {
+                    if (segment.isRegexp()) {
+                        if (!parameters_it.hasNext()) {
+                            continue;
+                        }
+
+                        var parameter_name = parameters_it.next();
+                        var parameter_value = parameters.get(parameter_name);
+                        if (null == parameter_value ||
+                            parameter_value.length < 1) {
+                            continue;
+                        }
+
+                        if (!segment.pattern().matcher(parameter_value[0]).matches()) {
+                            continue;
+                        }
+
+                        builder.append(StringUtils.encodeUrl(parameter_value[0]));
+                        parameters.remove(parameter_name);
+                    } else {
+                        builder.append(segment.text());
+                    }
+                }
+
+                var path_info = builder.toString();
+                if (!path_info.isEmpty()) {
+                    if (path_info.charAt(0) != '/' && path.charAt(path.length() - 1) != '/') {
+                        path.append('/');
+                    }
+                    path.append(path_info);
+                }
+
+                break;
+            }
+        }
+    }
+
+    @Test
+    void testLinks() {
+        var conversation = new MockConversation(new LinkSite());
+        var response = conversation.doRequest("/links");
+        assertEquals("""
+            http://localhost/pathinfo/map/text/v1/x412
+            http://localhost/pathinfo/map/text/v1/x?param2=abc
+            http://localhost/pathinfo/map/page.html?other=o
+            http://localhost/pathinfo/map?other=o""", response.getText());
+    }
+
+    @Test
+    void testMatchesStepwise() {
+        var site = new LinkSite();
+        new MockConversation(site);
+
+        var template = site.urlTemplate(site.mapped);
+        assertSame(template, site.urlTemplate(site.mapped));
+        assertEquals(Set.of(SpecialParameters.CONT_ID, "param1", "param2", "param3"), template.inParameters());
+
+        String[][] values = {null, {}, {"v1"}, {"412"}, {"page"}, {"a b"}};
+        for (var value1 : values) {
+            for (var value2 : values) {
+                for (var value3 : values) {
+                    var parameters = new LinkedHashMap<String, String[]>();
+                    if (value1 != null) parameters.put("param1", value1);
+                    if (value2 != null) parameters.put("param2", value2);
+                    if (value3 != null) parameters.put("param3", value3);
+                    parameters.put("other", new String[]{"o"});
+
+                    var stepwise_parameters = new LinkedHashMap<>(parameters);
+                    var stepwise_path = new StringBuilder("http://localhost/pathinfo/map");
+                    appendPathInfoStepwise(site.mapped, stepwise_path, stepwise_parameters);
+
+                    var template_parameters = new LinkedHashMap<>(parameters);
+                    var template_path = new StringBuilder("http://localhost/pathinfo/map");
+                    template.appendPathInfo(template_path, template_parameters);
+
+                    assertEquals(stepwise_path.toString(), template_path.toString(), parameters.keySet().toString());
+                    assertEquals(stepwise_parameters.keySet(), template_parameters.keySet());
+                }
+            }
+        }
+    }
+}
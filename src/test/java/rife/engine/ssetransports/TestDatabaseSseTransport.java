@@ -0,0 +1,128 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.engine.ssetransports;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+import rife.database.Datasource;
+import rife.database.TestDatasources;
+import rife.engine.ServerSentEvent;
+import rife.engine.SseBroadcaster;
+import rife.engine.SseTransportMessage;
+
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDatabaseSseTransport {
+    @ParameterizedTest
+    @ArgumentsSource(TestDatasources.class)
+    void testInstantiateTransport(Datasource datasource) {
+        var transport = DatabaseSseTransportFactory.instance(datasource);
+        assertNotNull(transport);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(TestDatasources.class)
+    void testInstallRemove(Datasource datasource) {
+        var transport = DatabaseSseTransportFactory.instance(datasource);
+        assertTrue(transport.install());
+        assertTrue(transport.remove());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(TestDatasources.class)
+    void testEpoch(Datasource datasource) {
+        var transport = DatabaseSseTransportFactory.instance(datasource);
+        transport.install();
+        try {
+            var epoch = transport.epoch("ticks");
+            assertTrue(epoch >= 0);
+            assertEquals(epoch, transport.epoch("ticks"));
+            assertNotEquals(epoch, transport.epoch("other"));
+        } finally {
+            transport.remove();
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(TestDatasources.class)
+    void testPublishSubscribe(Datasource datasource)
+    throws Exception {
+        var transport = DatabaseSseTransportFactory.instance(datasource);
+        transport.install();
+        var received = new LinkedBlockingQueue<SseTransportMessage>();
+        Consumer<SseTransportMessage> receiver = received::add;
+        try {
+            transport.pollInterval(Duration.ofMillis(20));
+            assertEquals(1, transport.publish("ticks", "a", new ServerSentEvent().data("before"), false));
+
+            // only the messages after the subscription are received
+            assertEquals(1, transport.subscribe("ticks", receiver));
+            assertEquals(2, transport.publish("ticks", "a", new ServerSentEvent().name("tick").data("one\ntwo"), false));
+            assertEquals(3, transport.publish("ticks", "b", new ServerSentEvent().comment("targeted"), true));
+
+            var first = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            assertEquals(2, first.sequence());
+            assertEquals("a", first.origin());
+            assertFalse(first.targeted());
+            assertEquals("event: tick\ndata: one\ndata: two\n\n", SseTransportMessage.serializeEvent(first.event()));
+
+            var second = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(second);
+            assertEquals(3, second.sequence());
+            assertEquals("b", second.origin());
+            assertTrue(second.targeted());
+
+            var template = rife.template.TemplateFactory.HTML.get("sse_param");
+            assertThrows(IllegalArgumentException.class, () -> transport.publish("ticks", "a", new ServerSentEvent().template(template), false));
+        } finally {
+            transport.unsubscribe("ticks", receiver);
+            transport.remove();
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(TestDatasources.class)
+    void testPollerStopsWhenBroadcastersClose(Datasource datasource)
+    throws Exception {
+        var transport = DatabaseSseTransportFactory.instance(datasource);
+        transport.install();
+        var first = new SseBroadcaster();
+        var second = new SseBroadcaster();
+        try {
+            transport.pollInterval(Duration.ofMillis(20));
+            first.transport(transport, "ticks");
+            second.transport(transport, "ticks");
+            assertTrue(transport.isPolling());
+
+            // the poller keeps running as long as a broadcaster uses it
+            first.close();
+            Thread.sleep(100);
+            assertTrue(transport.isPolling());
+
+            second.close();
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (transport.isPolling() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(transport.isPolling());
+
+            // a closed broadcaster doesn't receive the events of the channel
+            var last_event_id = second.lastEventId();
+            transport.publish("ticks", "other", new ServerSentEvent().data("after"), false);
+            Thread.sleep(100);
+            assertEquals(last_event_id, second.lastEventId());
+        } finally {
+            first.close();
+            second.close();
+            transport.remove();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.servlet;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import rife.engine.Site;
+import rife.ioc.HierarchicalProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRequestObjectReuse {
+    static class HelloSite extends Site {
+        public void setup() {
+            get("/hello", c -> c.print("hello"));
+        }
+    }
+
+    static class DiscardingOutputStream extends ServletOutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        public boolean isReady() {
+            return true;
+        }
+
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        public void write(int b) {
+            bytes.write(b);
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+
+    private static HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(TestRequestObjectReuse.class.getClassLoader(), new Class[]{HttpServletRequest.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getRequestURI" -> "/hello";
+            case "getContextPath" -> "";
+            case "getMethod" -> "GET";
+            case "getParameterMap" -> Collections.emptyMap();
+            case "getParameterNames", "getHeaderNames", "getAttributeNames" -> Collections.emptyEnumeration();
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    private static HttpServletResponse response(DiscardingOutputStream out) {
+        return (HttpServletResponse) Proxy.newProxyInstance(TestRequestObjectReuse.class.getClassLoader(), new Class[]{HttpServletResponse.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getOutputStream" -> out;
+            case "getCharacterEncoding" -> "UTF-8";
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    @Test
+    void testReuse()
+    throws Exception {
+        var site = new HelloSite();
+        var filter = new RifeFilter();
+        filter.init(new HierarchicalProperties(), site);
+        try {
+            var out = new DiscardingOutputStream();
+            var request = request();
+            var response = response(out);
+
+            filter.doFilter(request, response, (req, res) -> fail());
+            assertEquals("hello", out.bytes.toString());
+            out.bytes.reset();
+
+            site.reuseRequestObjects(true);
+            filter.doFilter(request, response, (req, res) -> fail());
+            assertEquals("hello", out.bytes.toString());
+            out.bytes.reset();
+            filter.doFilter(request, response, (req, res) -> fail());
+            assertEquals("hello", out.bytes.toString());
+        } finally {
+            filter.destroy();
+        }
+    }
+}